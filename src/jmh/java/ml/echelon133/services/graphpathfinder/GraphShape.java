@@ -0,0 +1,118 @@
+package ml.echelon133.services.graphpathfinder;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import ml.echelon133.services.graphpathfinder.engine.GraphSnapshot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+// Synthetic graphs used by benchmarks. Vertexes are named 'v0', 'v1', ..., every weight is between 0.01 and 100.00
+// and graphs are generated from a fixed seed, so every run of a benchmark works on exactly the same graph.
+public enum GraphShape {
+
+    // square grid, every vertex connected in both directions with up to 4 neighbours
+    GRID {
+        @Override
+        void addEdges(GraphSnapshot snapshot, int vertexCount, Random random) {
+            int side = (int) Math.ceil(Math.sqrt(vertexCount));
+            for (int v = 0; v < vertexCount; v++) {
+                if ((v + 1) % side != 0 && v + 1 < vertexCount) {
+                    addBothWays(snapshot, v, v + 1, random);
+                }
+                if (v + side < vertexCount) {
+                    addBothWays(snapshot, v, v + side, random);
+                }
+            }
+        }
+    },
+
+    // 4 edges from every vertex to uniformly chosen vertexes
+    RANDOM_SPARSE {
+        @Override
+        void addEdges(GraphSnapshot snapshot, int vertexCount, Random random) {
+            for (int v = 0; v < vertexCount; v++) {
+                for (int i = 0; i < 4; i++) {
+                    addEdge(snapshot, v, random.nextInt(vertexCount), random);
+                }
+            }
+        }
+    },
+
+    // preferential attachment (Barabasi-Albert), every new vertex connected in both directions with 3 earlier ones,
+    // chosen with probability proportional to their degree, which creates a few hubs with very high degrees
+    SCALE_FREE {
+        @Override
+        void addEdges(GraphSnapshot snapshot, int vertexCount, Random random) {
+            int edgesPerVertex = 3;
+            // every vertex appears here once for every edge it has, so a uniform pick is a pick proportional to degree
+            int[] endpoints = new int[2 * edgesPerVertex * vertexCount];
+            int endpointCount = 0;
+            for (int v = 1; v < vertexCount; v++) {
+                for (int i = 0; i < Math.min(v, edgesPerVertex); i++) {
+                    int target = endpointCount == 0 ? 0 : endpoints[random.nextInt(endpointCount)];
+                    addBothWays(snapshot, v, target, random);
+                    endpoints[endpointCount++] = v;
+                    endpoints[endpointCount++] = target;
+                }
+            }
+        }
+    },
+
+    // single path connected in both directions, the worst case for the depth of shortest path trees
+    CHAIN {
+        @Override
+        void addEdges(GraphSnapshot snapshot, int vertexCount, Random random) {
+            for (int v = 0; v + 1 < vertexCount; v++) {
+                addBothWays(snapshot, v, v + 1, random);
+            }
+        }
+    };
+
+    private static final long SEED = 42;
+
+    abstract void addEdges(GraphSnapshot snapshot, int vertexCount, Random random);
+
+    public GraphSnapshot create(int vertexCount) {
+        GraphSnapshot snapshot = new GraphSnapshot(vertexCount, 4 * vertexCount);
+        for (int v = 0; v < vertexCount; v++) {
+            snapshot.addVertex("v" + v);
+        }
+        addEdges(snapshot, vertexCount, new Random(SEED));
+        return snapshot;
+    }
+
+    private static void addEdge(GraphSnapshot snapshot, int source, int target, Random random) {
+        snapshot.addEdge(source, target, random.nextInt(10_000) + 1, 2);
+    }
+
+    private static void addBothWays(GraphSnapshot snapshot, int first, int second, Random random) {
+        addEdge(snapshot, first, second, random);
+        addEdge(snapshot, second, first, random);
+    }
+
+    // the graph in the JSON format of graph-storage-service
+    public static byte[] toJson(GraphSnapshot snapshot) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator gen = new JsonFactory().createGenerator(out)) {
+            gen.writeStartObject();
+            gen.writeArrayFieldStart("vertexes");
+            for (int v = 0; v < snapshot.getVertexCount(); v++) {
+                gen.writeString(snapshot.getVertexName(v));
+            }
+            gen.writeEndArray();
+            gen.writeArrayFieldStart("edges");
+            for (int edge = 0; edge < snapshot.getEdgeCount(); edge++) {
+                gen.writeStartObject();
+                gen.writeStringField("source", snapshot.getVertexName(snapshot.getSource(edge)));
+                gen.writeStringField("destination", snapshot.getVertexName(snapshot.getTarget(edge)));
+                gen.writeNumberField("weight", snapshot.getWeight(edge));
+                gen.writeEndObject();
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,74 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+import ml.echelon133.services.graphpathfinder.GraphShape;
+import ml.echelon133.services.graphpathfinder.TestBeans;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Point-to-point searches between random pairs of vertexes, with and without a contraction hierarchy
+// of the graph, together with the time it takes to build the hierarchy. Only road-network-like graphs are measured,
+// because contraction of random graphs gives up on them.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContractionHierarchyBenchmark {
+
+    private static final int QUERY_COUNT = 1024;
+
+    @Param({"GRID"})
+    private GraphShape shape;
+
+    @Param({"10000", "100000"})
+    private int vertexCount;
+
+    private CompactGraph graph;
+    private CompactGraph graphWithHierarchy;
+    private DijkstraEngine engine;
+    private int[] sources;
+    private int[] targets;
+    private int nextQuery;
+
+    @Setup
+    public void setUp() {
+        GraphSnapshot snapshot = shape.create(vertexCount);
+        graph = snapshot.toCompactGraph();
+        graph.getReverse();
+        graphWithHierarchy = snapshot.toCompactGraph();
+        graphWithHierarchy.setContractionHierarchy(ContractionHierarchy.build(graphWithHierarchy));
+        engine = TestBeans.dijkstraEngine();
+
+        Random random = new Random(42);
+        sources = new int[QUERY_COUNT];
+        targets = new int[QUERY_COUNT];
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            sources[i] = random.nextInt(vertexCount);
+            targets[i] = random.nextInt(vertexCount);
+        }
+    }
+
+    @Benchmark
+    public ShortestPathTree solveBetween() {
+        int query = nextQuery++ & (QUERY_COUNT - 1);
+        return engine.solveBetween(graph, sources[query], targets[query]);
+    }
+
+    @Benchmark
+    public ShortestPathTree solveBetweenWithHierarchy() {
+        int query = nextQuery++ & (QUERY_COUNT - 1);
+        return engine.solveBetween(graphWithHierarchy, sources[query], targets[query]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public ContractionHierarchy build() {
+        return ContractionHierarchy.build(graph);
+    }
+}
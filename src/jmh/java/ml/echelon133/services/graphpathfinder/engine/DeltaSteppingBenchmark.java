@@ -0,0 +1,49 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+import ml.echelon133.services.graphpathfinder.GraphShape;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+// Full searches of DeltaStepping from the first vertex, with a single thread, a few of them and all cores, to be
+// compared with solve of DijkstraEngineBenchmark. Delta 0 selects it from the weights of the graph.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeltaSteppingBenchmark {
+
+    @Param({"GRID", "RANDOM_SPARSE", "SCALE_FREE", "CHAIN"})
+    private GraphShape shape;
+
+    @Param({"100000", "1000000"})
+    private int vertexCount;
+
+    @Param({"1", "4", "0"})
+    private int parallelism;
+
+    @Param({"0"})
+    private String delta;
+
+    private CompactGraph graph;
+    private DeltaStepping deltaStepping;
+
+    @Setup
+    public void setUp() {
+        graph = shape.create(vertexCount).toCompactGraph();
+        deltaStepping = new DeltaStepping(true, 0, new BigDecimal(delta), parallelism);
+    }
+
+    @TearDown
+    public void tearDown() {
+        deltaStepping.shutdown();
+    }
+
+    @Benchmark
+    public ShortestPathTree search() {
+        return deltaStepping.search(graph, 0);
+    }
+}
@@ -0,0 +1,52 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+import ml.echelon133.services.graphpathfinder.GraphShape;
+import ml.echelon133.services.graphpathfinder.TestBeans;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Searches of DijkstraEngine over a CompactGraph, from the first to every vertex and from the first to the last vertex.
+// Graphs have either fixed-point (LONG) or floating-point (DOUBLE) weights; DIAL is used only with the former.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DijkstraEngineBenchmark {
+
+    @Param({"GRID", "RANDOM_SPARSE", "SCALE_FREE", "CHAIN"})
+    private GraphShape shape;
+
+    @Param({"1000", "100000", "1000000"})
+    private int vertexCount;
+
+    @Param({"HEAP", "DIAL"})
+    private QueueType queueType;
+
+    @Param({"LONG", "DOUBLE"})
+    private WeightMode weightMode;
+
+    private CompactGraph graph;
+    private DijkstraEngine engine;
+
+    @Setup
+    public void setUp() {
+        GraphSnapshot snapshot = shape.create(vertexCount);
+        graph = weightMode == WeightMode.DOUBLE ? snapshot.toFloatingPointCompactGraph() : snapshot.toCompactGraph();
+        engine = TestBeans.dijkstraEngine(queueType);
+        // the reversed graph is built once per graph in the service as well, so it's not a part of the measurement
+        graph.getReverse();
+    }
+
+    @Benchmark
+    public ShortestPathTree solve() {
+        return engine.solve(graph, 0);
+    }
+
+    @Benchmark
+    public ShortestPathTree solveBetween() {
+        return engine.solveBetween(graph, 0, vertexCount - 1);
+    }
+}
@@ -0,0 +1,45 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+import ml.echelon133.graph.Graph;
+import ml.echelon133.graph.ShortestPathSolver;
+import ml.echelon133.graph.Vertex;
+import ml.echelon133.graph.VertexResult;
+import ml.echelon133.services.graphpathfinder.GraphShape;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// ShortestPathSolver of the graph library, which is still used for graphs that do not fit in a CompactGraph.
+// Its running time explodes on graphs where vertexes are reached through many alternative paths (a search on a grid
+// with a thousand vertexes takes minutes, on a scale-free graph with 3000 vertexes close to a minute), so it is
+// measured only on graphs where it finishes. Other shapes and sizes can still be given with -p.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShortestPathSolverBenchmark {
+
+    @Param({"RANDOM_SPARSE", "SCALE_FREE", "CHAIN"})
+    private GraphShape shape;
+
+    @Param({"1000"})
+    private int vertexCount;
+
+    private Graph<BigDecimal> graph;
+    private Vertex<BigDecimal> startVertex;
+
+    @Setup
+    public void setUp() {
+        graph = shape.create(vertexCount).toGraph();
+        startVertex = graph.findVertex("v0");
+    }
+
+    @Benchmark
+    public Map<Vertex<BigDecimal>, VertexResult<BigDecimal>> solveStartingFrom() throws Exception {
+        return new ShortestPathSolver<>(graph).solveStartingFrom(startVertex);
+    }
+}
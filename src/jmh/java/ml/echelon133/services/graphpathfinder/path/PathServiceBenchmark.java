@@ -0,0 +1,118 @@
+package ml.echelon133.services.graphpathfinder.path;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ml.echelon133.services.graphpathfinder.GraphPathFinderApp;
+import ml.echelon133.services.graphpathfinder.GraphShape;
+import ml.echelon133.services.graphpathfinder.TestBeans;
+import ml.echelon133.services.graphpathfinder.cache.GraphCache;
+import ml.echelon133.services.graphpathfinder.cache.ResultCache;
+import ml.echelon133.services.graphpathfinder.engine.DijkstraEngine;
+import ml.echelon133.services.graphpathfinder.engine.GraphChanges;
+import ml.echelon133.services.graphpathfinder.engine.GraphSnapshot;
+import ml.echelon133.services.graphpathfinder.storageclient.GraphStorageClient;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.ResponseEntity;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
+
+// The whole path of a request through PathServiceImpl. The storage client decodes the graph from JSON on every call,
+// just like the Feign client does, so a request for a graph which is not cached includes the deserializer as well.
+// Results are requested without paths, because a response with every path of a deep graph grows quadratically.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PathServiceBenchmark {
+
+    private static final String GRAPH_ID = "benchmark-graph";
+
+    @Param({"GRID", "RANDOM_SPARSE", "SCALE_FREE", "CHAIN"})
+    private GraphShape shape;
+
+    @Param({"1000", "100000", "1000000"})
+    private int vertexCount;
+
+    private GraphCache graphCache;
+    private PathService pathService;
+    private PathService pathServiceWithResultCache;
+    private PathQuery query;
+    private PathQuery queryWithTarget;
+
+    @Setup
+    public void setUp() throws Exception {
+        ObjectMapper mapper = GraphPathFinderApp.objectMapper();
+        byte[] json = GraphShape.toJson(shape.create(vertexCount));
+        // graphs are sent without ETag, so every load fetches and decodes the whole graph
+        GraphStorageClient graphClient = new GraphStorageClient() {
+            @Override
+            public ResponseEntity<GraphSnapshot> getGraph(String id) {
+                try {
+                    return ResponseEntity.ok(mapper.readValue(json, GraphSnapshot.class));
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+
+            @Override
+            public ResponseEntity<GraphSnapshot> getGraphIfModified(String id, String version) {
+                return getGraph(id);
+            }
+
+            // no changes are kept, so an expired graph is always fetched as a whole
+            @Override
+            public ResponseEntity<GraphChanges> getGraphChanges(String id, String version) {
+                return ResponseEntity.notFound().build();
+            }
+        };
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        graphCache = TestBeans.graphCache(graphClient, meterRegistry, 4096);
+        DijkstraEngine engine = TestBeans.dijkstraEngine();
+        // a result cache which never keeps anything, so that every request solves and serializes
+        ResultCache noResultCache = new ResultCache(meterRegistry, 0, 30) {
+            @Override
+            public void putResult(String graphId, String graphVersion, Object query, byte[] result) {
+            }
+        };
+        pathService = TestBeans.pathService(graphCache, noResultCache, engine, mapper);
+        pathServiceWithResultCache = TestBeans.pathService(graphCache, new ResultCache(meterRegistry, 4096, 30), engine, mapper);
+
+        query = PathQuery.startingFrom("v0").withIncludePaths(IncludePaths.NONE);
+        queryWithTarget = query.withTarget("v" + (vertexCount - 1));
+
+        // loads the graph into the cache, which is shared by both services
+        pathServiceWithResultCache.calculateShortestPathAsJson(GRAPH_ID, query);
+    }
+
+    @Benchmark
+    public PathResult calculateShortestPath() throws Exception {
+        return pathService.calculateShortestPath(GRAPH_ID, query);
+    }
+
+    @Benchmark
+    public byte[] calculateShortestPathAsJson() throws Exception {
+        return pathService.calculateShortestPathAsJson(GRAPH_ID, query);
+    }
+
+    @Benchmark
+    public byte[] calculateShortestPathAsJsonBetween() throws Exception {
+        return pathService.calculateShortestPathAsJson(GRAPH_ID, queryWithTarget);
+    }
+
+    @Benchmark
+    public byte[] calculateShortestPathAsJsonCached() throws Exception {
+        return pathServiceWithResultCache.calculateShortestPathAsJson(GRAPH_ID, query);
+    }
+
+    // the graph is fetched, decoded and converted to a CompactGraph again before it's solved
+    @Benchmark
+    public byte[] calculateShortestPathAsJsonUncachedGraph() throws Exception {
+        graphCache.invalidate(GRAPH_ID);
+        return pathService.calculateShortestPathAsJson(GRAPH_ID, query);
+    }
+}
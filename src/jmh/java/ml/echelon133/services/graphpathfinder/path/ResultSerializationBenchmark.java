@@ -0,0 +1,87 @@
+package ml.echelon133.services.graphpathfinder.path;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ml.echelon133.graph.Graph;
+import ml.echelon133.graph.ShortestPathSolver;
+import ml.echelon133.graph.Vertex;
+import ml.echelon133.graph.VertexResult;
+import ml.echelon133.services.graphpathfinder.GraphPathFinderApp;
+import ml.echelon133.services.graphpathfinder.GraphShape;
+import ml.echelon133.services.graphpathfinder.TestBeans;
+import ml.echelon133.services.graphpathfinder.engine.CompactGraph;
+import ml.echelon133.services.graphpathfinder.engine.DijkstraEngine;
+import ml.echelon133.services.graphpathfinder.engine.GraphSnapshot;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+// Writing of the same results by ResultMapSerializer of the graph library and by PathResultSerializer. Results are
+// written to a stream which drops everything, so only the work of the serializers is measured. Graphs are
+// limited to the ones of ShortestPathSolverBenchmark, because the library result has to be calculated by its solver.
+// Encodings other than plain JSON are measured on the same result, and their sizes are reported by ResultSizeReport.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResultSerializationBenchmark {
+
+    @Param({"RANDOM_SPARSE", "SCALE_FREE", "CHAIN"})
+    private GraphShape shape;
+
+    @Param({"1000"})
+    private int vertexCount;
+
+    private ObjectMapper mapper;
+    private Map<Vertex<BigDecimal>, VertexResult<BigDecimal>> solverResult;
+    private PathResult pathResult;
+    private PathResult pathResultWithoutPaths;
+
+    @Setup
+    public void setUp() throws Exception {
+        mapper = GraphPathFinderApp.objectMapper();
+        GraphSnapshot snapshot = shape.create(vertexCount);
+
+        Graph<BigDecimal> graph = snapshot.toGraph();
+        solverResult = new ShortestPathSolver<>(graph).solveStartingFrom(graph.findVertex("v0"));
+
+        CompactGraph compactGraph = snapshot.toCompactGraph();
+        DijkstraEngine engine = TestBeans.dijkstraEngine();
+        PathQuery query = PathQuery.startingFrom("v0");
+        pathResult = new TreePathResult(query, engine.solve(compactGraph, 0));
+        pathResultWithoutPaths = new TreePathResult(query.withIncludePaths(IncludePaths.NONE), engine.solve(compactGraph, 0));
+    }
+
+    @Benchmark
+    public void resultMapSerializer() throws IOException {
+        mapper.writeValue(OutputStream.nullOutputStream(), solverResult);
+    }
+
+    @Benchmark
+    public void pathResultSerializer() throws IOException {
+        mapper.writeValue(OutputStream.nullOutputStream(), pathResult);
+    }
+
+    @Benchmark
+    public void pathResultSerializerWithoutPaths() throws IOException {
+        mapper.writeValue(OutputStream.nullOutputStream(), pathResultWithoutPaths);
+    }
+
+    @Benchmark
+    public void pathResultSerializerGzipped() throws IOException {
+        try (GZIPOutputStream gzip = new GZIPOutputStream(OutputStream.nullOutputStream(), 8192)) {
+            mapper.writeValue(gzip, pathResult);
+        }
+    }
+
+    @Benchmark
+    public void pathResultBinaryFormat() throws IOException {
+        PathResultBinaryFormat.write(pathResult, OutputStream.nullOutputStream());
+    }
+}
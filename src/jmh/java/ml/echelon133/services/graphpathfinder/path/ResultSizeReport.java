@@ -0,0 +1,40 @@
+package ml.echelon133.services.graphpathfinder.path;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ml.echelon133.services.graphpathfinder.GraphPathFinderApp;
+import ml.echelon133.services.graphpathfinder.GraphShape;
+import ml.echelon133.services.graphpathfinder.TestBeans;
+import ml.echelon133.services.graphpathfinder.engine.DijkstraEngine;
+import ml.echelon133.services.graphpathfinder.engine.GraphSnapshot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+// Sizes of the results written by ResultSerializationBenchmark in every encoding. Sizes do not change between runs,
+// so they are reported once by `./gradlew resultSizeReport` instead of being measured by the benchmark.
+public class ResultSizeReport {
+
+    // same as the vertexCount of ResultSerializationBenchmark
+    private static final int VERTEX_COUNT = 1000;
+
+    public static void main(String[] args) throws IOException {
+        ObjectMapper mapper = GraphPathFinderApp.objectMapper();
+        DijkstraEngine engine = TestBeans.dijkstraEngine();
+
+        System.out.println(String.format("%-14s %9s %12s %12s %12s", "shape", "vertexes", "json", "json-gzip", "binary"));
+        for (GraphShape shape : List.of(GraphShape.RANDOM_SPARSE, GraphShape.SCALE_FREE, GraphShape.CHAIN)) {
+            GraphSnapshot snapshot = shape.create(VERTEX_COUNT);
+            PathResult pathResult = new TreePathResult(PathQuery.startingFrom("v0"), engine.solve(snapshot.toCompactGraph(), 0));
+
+            ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped, 8192)) {
+                mapper.writeValue(gzip, pathResult);
+            }
+            System.out.println(String.format("%-14s %9d %12d %12d %12d", shape, VERTEX_COUNT,
+                    mapper.writeValueAsBytes(pathResult).length, gzipped.size(),
+                    PathResultBinaryFormat.toBytes(pathResult).length));
+        }
+    }
+}
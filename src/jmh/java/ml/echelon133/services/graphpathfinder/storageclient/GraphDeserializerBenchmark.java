@@ -0,0 +1,77 @@
+package ml.echelon133.services.graphpathfinder.storageclient;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import ml.echelon133.graph.Graph;
+import ml.echelon133.graph.json.GraphDeserializer;
+import ml.echelon133.services.graphpathfinder.GraphPathFinderApp;
+import ml.echelon133.services.graphpathfinder.GraphShape;
+import ml.echelon133.services.graphpathfinder.engine.GraphSnapshot;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+// Compares GraphDeserializer of the graph library (tree model) with the deserializers of this service,
+// and with decoding of the same graph sent in GraphBinaryFormat.
+// Graphs with a million vertexes are left out, because the tree model of such a graph does not fit in a default heap.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GraphDeserializerBenchmark {
+
+    @Param({"RANDOM_SPARSE"})
+    private GraphShape shape;
+
+    @Param({"1000", "100000"})
+    private int vertexCount;
+
+    private byte[] json;
+    private byte[] binary;
+    private ObjectMapper treeModelMapper;
+    private ObjectMapper streamingMapper;
+
+    @Setup
+    public void setUp() throws IOException {
+        GraphSnapshot snapshot = shape.create(vertexCount);
+        json = GraphShape.toJson(snapshot);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GraphBinaryFormat.write(snapshot, out);
+        binary = out.toByteArray();
+
+        treeModelMapper = new ObjectMapper();
+        SimpleModule module = new SimpleModule();
+        module.addDeserializer(Graph.class, new GraphDeserializer(
+                treeModelMapper.getTypeFactory().constructParametricType(Graph.class, BigDecimal.class)));
+        treeModelMapper.registerModule(module);
+
+        streamingMapper = GraphPathFinderApp.objectMapper();
+    }
+
+    @Benchmark
+    public Graph<BigDecimal> treeModelGraph() throws IOException {
+        return treeModelMapper.readValue(json, Graph.class);
+    }
+
+    @Benchmark
+    public Graph<BigDecimal> streamingGraph() throws IOException {
+        return streamingMapper.readValue(json, Graph.class);
+    }
+
+    @Benchmark
+    public GraphSnapshot streamingSnapshot() throws IOException {
+        return streamingMapper.readValue(json, GraphSnapshot.class);
+    }
+
+    @Benchmark
+    public GraphSnapshot binarySnapshot() throws IOException {
+        return GraphBinaryFormat.read(new ByteArrayInputStream(binary));
+    }
+}
@@ -7,13 +7,23 @@ import ml.echelon133.graph.Graph;
 import ml.echelon133.graph.Vertex;
 import ml.echelon133.graph.VertexResult;
 import ml.echelon133.graph.json.*;
+import ml.echelon133.services.graphpathfinder.engine.GraphChanges;
+import ml.echelon133.services.graphpathfinder.engine.GraphSnapshot;
+import ml.echelon133.services.graphpathfinder.path.PathResultSerializer;
+import ml.echelon133.services.graphpathfinder.storageclient.GraphChangesDeserializer;
+import ml.echelon133.services.graphpathfinder.storageclient.GraphSnapshotDeserializer;
+import ml.echelon133.services.graphpathfinder.storageclient.StreamingGraphDeserializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.task.TaskExecutorBuilder;
 import org.springframework.boot.builder.SpringApplicationBuilder;
 import org.springframework.cloud.client.discovery.EnableDiscoveryClient;
 import org.springframework.cloud.openfeign.EnableFeignClients;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import springfox.documentation.builders.ApiInfoBuilder;
 import springfox.documentation.builders.PathSelectors;
 import springfox.documentation.builders.RequestHandlerSelectors;
@@ -21,8 +31,10 @@ import springfox.documentation.spi.DocumentationType;
 import springfox.documentation.spring.web.plugins.Docket;
 import springfox.documentation.swagger2.annotations.EnableSwagger2;
 
-import java.math.BigDecimal;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 
 @SpringBootApplication
 @EnableDiscoveryClient
@@ -39,15 +51,18 @@ public class GraphPathFinderApp {
         ObjectMapper mapper = new ObjectMapper();
 
         JavaType vertexType = mapper.constructType(Vertex.class);
-        JavaType graphBigDecimalType = mapper.getTypeFactory().constructParametricType(Graph.class, BigDecimal.class);
         JavaType vertexResultType = mapper.constructType(VertexResult.class);
         JavaType resultMapType = mapper.getTypeFactory().constructMapType(Map.class, Vertex.class, VertexResult.class);
 
         module.addSerializer(new VertexSerializer(vertexType));
         module.addSerializer(new VertexResultSerializer(vertexResultType));
         module.addSerializer(new ResultMapSerializer(resultMapType));
+        module.addSerializer(new PathResultSerializer());
 
-        module.addDeserializer(Graph.class, new GraphDeserializer(graphBigDecimalType));
+        // graphs are read token by token, instead of through the tree model like GraphDeserializer does
+        module.addDeserializer(Graph.class, new StreamingGraphDeserializer());
+        module.addDeserializer(GraphSnapshot.class, new GraphSnapshotDeserializer());
+        module.addDeserializer(GraphChanges.class, new GraphChangesDeserializer());
 
         mapper.registerModule(module);
 
@@ -55,6 +70,27 @@ public class GraphPathFinderApp {
         return mapper;
     }
 
+    // shared by all batch requests, so that together they never take more threads than configured (all cores by default)
+    @Bean(destroyMethod = "shutdown")
+    public ForkJoinPool pathBatchPool(@Value("${path-batch.parallelism:0}") int parallelism) {
+        return new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    // downloads of graphs block on the storage client, so they have their own threads and never hold request
+    // or solver threads while waiting for graph-storage-service
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService graphFetchExecutor(@Value("${graph-fetch.threads:16}") int threads) {
+        return Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("graph-fetch-"));
+    }
+
+    // Spring Boot backs off from creating its own executor when any other Executor bean exists, in which case
+    // Spring MVC would write streamed responses on a new thread per request. This restores the default one
+    // (configured with 'spring.task.execution' properties)
+    @Bean
+    public ThreadPoolTaskExecutor applicationTaskExecutor(TaskExecutorBuilder builder) {
+        return builder.build();
+    }
+
     @Bean
     public Docket swaggerApi() {
         return new Docket(DocumentationType.SWAGGER_2)
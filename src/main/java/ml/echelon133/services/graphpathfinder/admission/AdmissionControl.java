@@ -0,0 +1,123 @@
+package ml.echelon133.services.graphpathfinder.admission;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import ml.echelon133.services.graphpathfinder.cache.CachedGraph;
+import ml.echelon133.services.graphpathfinder.path.exception.ServiceOverloadedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Decides whether a search may run, based on the estimated cost of searches which are already waiting or running.
+// Searches over small and large graphs run in separate lanes (unless configured otherwise), so that a few searches
+// over huge graphs cannot take every solver thread and make searches over small graphs wait behind them.
+@Component
+public class AdmissionControl implements MeterBinder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdmissionControl.class);
+
+    // the solver of the graph library is orders of magnitude slower than DijkstraEngine
+    static final long OBJECT_GRAPH_COST_FACTOR = 100;
+    static final long MAX_RETRY_AFTER_SECONDS = 60;
+
+    private SolverLane smallLane;
+    private SolverLane largeLane;
+    private long largeSearchMinCost;
+
+    @Autowired
+    public AdmissionControl(@Value("${admission.small-lane.threads:0}") int smallLaneThreads,
+                            @Value("${admission.small-lane.max-admitted-cost:20000000}") long smallLaneMaxAdmittedCost,
+                            @Value("${admission.large-lane.threads:0}") int largeLaneThreads,
+                            @Value("${admission.large-lane.max-admitted-cost:50000000}") long largeLaneMaxAdmittedCost,
+                            @Value("${admission.large-search-min-cost:2000000}") long largeSearchMinCost,
+                            @Value("${admission.separate-lanes:true}") boolean separateLanes) {
+        int processors = Runtime.getRuntime().availableProcessors();
+
+        // by default small searches get every core, and large ones a quarter of them, so that even when both lanes
+        // are busy, small searches are not slowed down much
+        this.smallLane = createLane("small", smallLaneThreads > 0 ? smallLaneThreads : processors, smallLaneMaxAdmittedCost);
+        if (separateLanes) {
+            int threads = largeLaneThreads > 0 ? largeLaneThreads : Math.max(1, processors / 4);
+            this.largeLane = createLane("large", threads, largeLaneMaxAdmittedCost);
+        } else {
+            this.largeLane = smallLane;
+        }
+        this.largeSearchMinCost = largeSearchMinCost;
+    }
+
+    private static SolverLane createLane(String name, int threads, long maxAdmittedCost) {
+        // the queue does not need a bound of its own, the number of queued searches is limited by their cost
+        ExecutorService executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new CustomizableThreadFactory("path-solver-" + name + "-"));
+        return new SolverLane(name, executor, threads, maxAdmittedCost);
+    }
+
+    // a search visits every vertex and edge at most once, so their count is what its running time depends on.
+    // A graph with an all-pairs index is not searched at all, only its result is read
+    public static long estimateCost(CachedGraph cachedGraph) {
+        if (cachedGraph.isCompact() && cachedGraph.getCompactGraph().getAllPairsIndex() != null) {
+            return cachedGraph.getVertexCount();
+        }
+        long cost = (long) cachedGraph.getVertexCount() + cachedGraph.getEdgeCount();
+        return cachedGraph.isCompact() ? cost : cost * OBJECT_GRAPH_COST_FACTOR;
+    }
+
+    // runs the search in the lane matching its cost, or fails right away if that lane already has too much work
+    public <T> CompletableFuture<T> submit(String graphId, long cost, Callable<T> search) {
+        SolverLane lane = laneFor(cost);
+
+        CompletableFuture<T> future = lane.submit(cost, search);
+        if (future == null) {
+            future = CompletableFuture.failedFuture(createOverloadedException(graphId, lane, cost));
+        }
+        return future;
+    }
+
+    // admits searches which run on threads of their own (i.e. a batch), so that their total cost counts against the
+    // limit of the lane matching it. The returned runnable releases that cost and has to be run once they are done
+    public Runnable admit(String graphId, long cost) throws ServiceOverloadedException {
+        SolverLane lane = laneFor(cost);
+
+        Runnable release = lane.admit(cost);
+        if (release == null) {
+            throw createOverloadedException(graphId, lane, cost);
+        }
+        return release;
+    }
+
+    private SolverLane laneFor(long cost) {
+        return cost >= largeSearchMinCost ? largeLane : smallLane;
+    }
+
+    private static ServiceOverloadedException createOverloadedException(String graphId, SolverLane lane, long cost) {
+        long retryAfter = Math.max(1, Math.min(MAX_RETRY_AFTER_SECONDS, lane.estimateSecondsUntilIdle()));
+        String msg = String.format("Too many searches are waiting to run. Cannot find shortest paths in graph with ID %s right now", graphId);
+        LOGGER.debug(String.format("%s (lane %s, cost %d, retry after %d s)", msg, lane.getName(), cost, retryAfter));
+        return new ServiceOverloadedException(msg, retryAfter);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        smallLane.bindTo(registry);
+        if (largeLane != smallLane) {
+            largeLane.bindTo(registry);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        smallLane.shutdown();
+        largeLane.shutdown();
+    }
+}
@@ -0,0 +1,158 @@
+package ml.echelon133.services.graphpathfinder.admission;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Threads which run searches of similar cost, together with a limit of work admitted to them. The work of a search
+// is its estimated cost, and it stays admitted from the moment the search is queued until it finishes.
+class SolverLane implements MeterBinder {
+
+    // a first guess of how long a unit of cost takes, replaced by measurements as soon as searches finish
+    private static final double INITIAL_NANOS_PER_COST_UNIT = 100;
+    private static final double NANOS_PER_COST_UNIT_SMOOTHING = 0.2;
+
+    private String name;
+    private ExecutorService executor;
+    private int threads;
+    private long maxAdmittedCost;
+
+    private AtomicLong admittedCost = new AtomicLong();
+    private AtomicLong admittedSearches = new AtomicLong();
+    private AtomicLong rejectedSearches = new AtomicLong();
+    private AtomicLong finishedSearches = new AtomicLong();
+    private AtomicLong searchNanos = new AtomicLong();
+    private volatile double nanosPerCostUnit = INITIAL_NANOS_PER_COST_UNIT;
+
+    SolverLane(String name, ExecutorService executor, int threads, long maxAdmittedCost) {
+        this.name = name;
+        this.executor = executor;
+        this.threads = threads;
+        this.maxAdmittedCost = maxAdmittedCost;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    // a search is always admitted to an idle lane, even if its cost alone is above the limit,
+    // so that searches over the largest graphs are slow instead of impossible
+    private boolean tryAdmit(long cost) {
+        while (true) {
+            long current = admittedCost.get();
+            if (current > 0 && current + cost > maxAdmittedCost) {
+                rejectedSearches.incrementAndGet();
+                return false;
+            }
+            if (admittedCost.compareAndSet(current, current + cost)) {
+                admittedSearches.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    private void release(long cost, long nanos) {
+        admittedCost.addAndGet(-cost);
+        finishedSearches.incrementAndGet();
+        searchNanos.addAndGet(nanos);
+        double sample = (double) nanos / Math.max(1, cost);
+        nanosPerCostUnit += NANOS_PER_COST_UNIT_SMOOTHING * (sample - nanosPerCostUnit);
+    }
+
+    // returns null if the search was not admitted
+    <T> CompletableFuture<T> submit(long cost, Callable<T> search) {
+        if (!tryAdmit(cost)) {
+            return null;
+        }
+
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                long start = System.nanoTime();
+                T result = null;
+                Throwable failure = null;
+                try {
+                    result = search.call();
+                } catch (Throwable ex) {
+                    failure = ex;
+                }
+                // released before the future completes, so that whoever waits for it can be admitted right away
+                release(cost, System.nanoTime() - start);
+                if (failure == null) {
+                    future.complete(result);
+                } else {
+                    future.completeExceptionally(failure);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            // only happens while the application shuts down
+            admittedCost.addAndGet(-cost);
+            rejectedSearches.incrementAndGet();
+            return null;
+        }
+        return future;
+    }
+
+    // admits work which runs on threads other than the ones of the lane, and returns what releases it once that work
+    // is done (or null if it was not admitted). It is not measured, because its running time does not depend on the lane
+    Runnable admit(long cost) {
+        if (!tryAdmit(cost)) {
+            return null;
+        }
+        AtomicBoolean released = new AtomicBoolean();
+        return () -> {
+            if (released.compareAndSet(false, true)) {
+                admittedCost.addAndGet(-cost);
+            }
+        };
+    }
+
+    // time in which all work admitted right now should be done, if searches keep taking as long as they did so far
+    long estimateSecondsUntilIdle() {
+        double nanos = admittedCost.get() * nanosPerCostUnit / threads;
+        return (long) Math.ceil(nanos / TimeUnit.SECONDS.toNanos(1));
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Iterable<Tag> tags = Tags.of("lane", name);
+
+        Gauge.builder("path.solver.admitted.cost", admittedCost, AtomicLong::get)
+                .description("Estimated cost of searches queued or running in the lane")
+                .tags(tags)
+                .register(registry);
+        Gauge.builder("path.solver.admitted.cost.max", this, lane -> lane.maxAdmittedCost)
+                .tags(tags)
+                .register(registry);
+        FunctionCounter.builder("path.solver.admitted", admittedSearches, AtomicLong::get)
+                .tags(tags)
+                .register(registry);
+        FunctionCounter.builder("path.solver.rejected", rejectedSearches, AtomicLong::get)
+                .description("Searches rejected because the lane had too much work admitted")
+                .tags(tags)
+                .register(registry);
+        FunctionTimer.builder("path.solver.searches", this,
+                lane -> lane.finishedSearches.get(), lane -> lane.searchNanos.get(), TimeUnit.NANOSECONDS)
+                .tags(tags)
+                .register(registry);
+
+        new ExecutorServiceMetrics(executor, "path.solver." + name, tags).bindTo(registry);
+    }
+}
@@ -0,0 +1,69 @@
+package ml.echelon133.services.graphpathfinder.cache;
+
+import ml.echelon133.graph.Graph;
+import ml.echelon133.services.graphpathfinder.engine.CompactGraph;
+
+import java.math.BigDecimal;
+
+public class CachedGraph {
+    private String version;
+    private CompactGraph compactGraph;
+
+    // only kept for graphs which cannot be represented as a CompactGraph, otherwise null
+    private Graph<BigDecimal> graph;
+
+    // estimated size of the graph alone, which never changes, so it's computed only once
+    private volatile long graphSizeInBytes = -1;
+    // estimated size of the graph together with everything attached to it, the last time a cache weighed it
+    private volatile int weightInKilobytes;
+
+    public CachedGraph(String version, CompactGraph compactGraph) {
+        this.version = version;
+        this.compactGraph = compactGraph;
+    }
+
+    public CachedGraph(String version, Graph<BigDecimal> graph) {
+        this.version = version;
+        this.graph = graph;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public boolean isCompact() {
+        return compactGraph != null;
+    }
+
+    public CompactGraph getCompactGraph() {
+        return compactGraph;
+    }
+
+    public Graph<BigDecimal> getGraph() {
+        return graph;
+    }
+
+    public int getVertexCount() {
+        return isCompact() ? compactGraph.getVertexCount() : graph.getVertexes().size();
+    }
+
+    public int getEdgeCount() {
+        return isCompact() ? compactGraph.getEdgeCount() : graph.getEdges().size();
+    }
+
+    long getGraphSizeInBytes() {
+        return graphSizeInBytes;
+    }
+
+    void setGraphSizeInBytes(long graphSizeInBytes) {
+        this.graphSizeInBytes = graphSizeInBytes;
+    }
+
+    int getWeightInKilobytes() {
+        return weightInKilobytes;
+    }
+
+    void setWeightInKilobytes(int weightInKilobytes) {
+        this.weightInKilobytes = weightInKilobytes;
+    }
+}
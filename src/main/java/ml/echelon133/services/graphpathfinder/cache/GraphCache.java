@@ -0,0 +1,352 @@
+package ml.echelon133.services.graphpathfinder.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import feign.FeignException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import ml.echelon133.graph.Graph;
+import ml.echelon133.graph.Vertex;
+import ml.echelon133.services.graphpathfinder.engine.CompactGraph;
+import ml.echelon133.services.graphpathfinder.engine.GraphChanges;
+import ml.echelon133.services.graphpathfinder.engine.GraphSnapshot;
+import ml.echelon133.services.graphpathfinder.engine.IncrementalRecomputation;
+import ml.echelon133.services.graphpathfinder.engine.WeightMode;
+import ml.echelon133.services.graphpathfinder.metrics.PipelineMetrics;
+import ml.echelon133.services.graphpathfinder.storageclient.GraphStorageClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Component
+public class GraphCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GraphCache.class);
+
+    // rough per-element heap cost of the object graph built by GraphSnapshot.toGraph
+    // (Vertex + its edge list + helper map entry, Edge + BigDecimal weight referenced from two lists)
+    private static final long VERTEX_SIZE_IN_BYTES = 160;
+    private static final long EDGE_SIZE_IN_BYTES = 96;
+
+    // prefix of versions assigned to graphs sent without ETag, which graph-storage-service does not know
+    private static final String LOCAL_VERSION_PREFIX = "local-";
+
+    private GraphStorageClient graphStorageClient;
+    private WeightMode weightMode;
+    private GraphSnapshotFiles snapshotFiles;
+    private IncrementalRecomputation incrementalRecomputation;
+    private boolean fetchChanges;
+    private PipelineMetrics pipelineMetrics;
+    private AsyncLoadingCache<String, CachedGraph> cache;
+    // invalidated versions of graphs, until their next versions are loaded. The next version is asked for
+    // as changes since the previous one, or only if it differs from it, and it takes over trees of the previous one
+    private Cache<String, CachedGraph> previousVersions;
+    private AtomicLong loadCounter = new AtomicLong();
+    private final Object loadLock = new Object();
+
+    // the storage client blocks for the whole download, so graphs are loaded on the given executor instead of
+    // on the threads which ask for them
+    @Autowired
+    public GraphCache(GraphStorageClient graphStorageClient,
+                      MeterRegistry meterRegistry,
+                      @Value("${graph-cache.maximum-size-mb:512}") long maximumSizeMb,
+                      @Value("${graph-cache.expire-after-access-minutes:30}") long expireAfterAccessMinutes,
+                      @Value("${engine.weight-mode:long}") String weightMode,
+                      @Qualifier("graphFetchExecutor") Executor graphFetchExecutor,
+                      GraphSnapshotFiles snapshotFiles,
+                      IncrementalRecomputation incrementalRecomputation,
+                      @Value("${graph-cache.fetch-changes:false}") boolean fetchChanges,
+                      PipelineMetrics pipelineMetrics) {
+        this.graphStorageClient = graphStorageClient;
+        this.weightMode = WeightMode.fromString(weightMode);
+        this.snapshotFiles = snapshotFiles;
+        this.incrementalRecomputation = incrementalRecomputation;
+        this.fetchChanges = fetchChanges;
+        this.pipelineMetrics = pipelineMetrics;
+
+        // weights are kept in kilobytes, because a single entry's weight has to fit in an int
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maximumSizeMb * 1024)
+                .<String, CachedGraph>weigher((graphId, cachedGraph) -> weigh(cachedGraph))
+                .expireAfterAccess(expireAfterAccessMinutes, TimeUnit.MINUTES)
+                .executor(graphFetchExecutor)
+                .recordStats()
+                .buildAsync(this::load);
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), "graphs");
+
+        // a graph which is not requested again is not worth keeping for longer than the current version would be,
+        // and previous versions never take more memory than the cache itself
+        this.previousVersions = Caffeine.newBuilder()
+                .maximumWeight(maximumSizeMb * 1024)
+                .<String, CachedGraph>weigher((graphId, cachedGraph) -> weigh(cachedGraph))
+                .expireAfterWrite(expireAfterAccessMinutes, TimeUnit.MINUTES)
+                .build();
+    }
+
+    // concurrent calls for the same id wait for a single load instead of fetching the graph on their own;
+    // exceptions thrown by the storage client (i.e. FeignException) are not cached and complete the future
+    public CompletableFuture<CachedGraph> getGraphAsync(String graphId) {
+        // Caffeine removes a failed load on its executor, so without removing it here as well, a call made right
+        // after the failure could still receive it. Only the failed load is removed, and since the async cache
+        // has no conditional remove, starting loads and removing failed ones is done under a lock, so that
+        // a load started in between is never removed instead
+        CompletableFuture<CachedGraph> future;
+        synchronized (loadLock) {
+            future = cache.get(graphId);
+        }
+        return future.whenComplete((cachedGraph, ex) -> {
+            if (ex != null) {
+                synchronized (loadLock) {
+                    if (cache.getIfPresent(graphId) == future) {
+                        cache.synchronous().invalidate(graphId);
+                    }
+                }
+            }
+        });
+    }
+
+    // same as getGraphAsync, except that exceptions thrown by the storage client reach the caller unchanged
+    public CachedGraph getGraph(String graphId) {
+        try {
+            return getGraphAsync(graphId).join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    // a graph is invalidated when it changes, so it's kept aside for the next version, which is built out of
+    // this one and its changes, or at least compared with it once it's loaded. A graph which is still being
+    // loaded is not waited for
+    public void invalidate(String graphId) {
+        CompletableFuture<CachedGraph> current = cache.getIfPresent(graphId);
+        if (current != null && current.isDone() && !current.isCompletedExceptionally()) {
+            CachedGraph cachedGraph = current.join();
+            if (cachedGraph.isCompact() && (!isLocalVersion(cachedGraph.getVersion())
+                    || incrementalRecomputation.hasTrees(cachedGraph.getCompactGraph()))) {
+                previousVersions.put(graphId, cachedGraph);
+            }
+        }
+        cache.synchronous().invalidate(graphId);
+        snapshotFiles.delete(graphId);
+    }
+
+    private static boolean isLocalVersion(String version) {
+        return version.startsWith(LOCAL_VERSION_PREFIX);
+    }
+
+    private CachedGraph carryOverTrees(String graphId, CachedGraph cachedGraph) {
+        CachedGraph previous = previousVersions.asMap().remove(graphId);
+        // a previous version which is still the current one already has its trees
+        if (previous != null && previous != cachedGraph && cachedGraph.isCompact()) {
+            incrementalRecomputation.carryOver(previous.getCompactGraph(), cachedGraph.getCompactGraph());
+        }
+        return cachedGraph;
+    }
+
+    // a graph which is not downloaded at all (i.e. not modified since the version kept in a file) is still timed
+    // as fetched, because that's what it takes instead of the download
+    private CachedGraph load(String graphId) {
+        return pipelineMetrics.record(PipelineMetrics.Stage.FETCH, () -> loadGraph(graphId), CachedGraph::getVertexCount);
+    }
+
+    private CachedGraph loadGraph(String graphId) {
+        long start = System.nanoTime();
+
+        // a previous version with a version known to graph-storage-service is in memory, so it's a better starting
+        // point than a file (which is deleted on invalidate anyway)
+        CachedGraph previous = previousVersions.getIfPresent(graphId);
+        if (previous != null && isLocalVersion(previous.getVersion())) {
+            previous = null;
+        }
+        if (previous != null && fetchChanges) {
+            CachedGraph cachedGraph = loadChanges(graphId, previous);
+            if (cachedGraph != null) {
+                snapshotFiles.write(graphId, cachedGraph.getVersion(), cachedGraph.getCompactGraph());
+                LOGGER.debug(String.format("Graph with ID %s (version %s) loaded into the cache from changes since version %s in %d ms",
+                        graphId, cachedGraph.getVersion(), previous.getVersion(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+                return carryOverTrees(graphId, cachedGraph);
+            }
+        }
+
+        ResponseEntity<GraphSnapshot> response;
+        // object graphs are never written to files, so in EXACT mode no file would be of any use
+        String fileVersion = weightMode == WeightMode.EXACT ? null : snapshotFiles.findVersion(graphId);
+        String knownVersion = previous != null ? previous.getVersion() : fileVersion;
+        if (knownVersion == null) {
+            response = graphStorageClient.getGraph(graphId);
+        } else {
+            // graph-storage-service only confirms that the known version is still the current one, without
+            // sending the graph, and only a graph which has changed since that version is downloaded
+            try {
+                response = graphStorageClient.getGraphIfModified(graphId, knownVersion);
+            } catch (FeignException ex) {
+                if (ex.status() != 304) {
+                    throw ex;
+                }
+                CachedGraph cachedGraph = previous;
+                if (cachedGraph != null) {
+                    snapshotFiles.write(graphId, knownVersion, cachedGraph.getCompactGraph());
+                } else {
+                    cachedGraph = readFile(graphId, knownVersion);
+                }
+                if (cachedGraph != null) {
+                    LOGGER.debug(String.format("Graph with ID %s (version %s) was not modified and loaded into the cache in %d ms",
+                            graphId, knownVersion, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+                    return carryOverTrees(graphId, cachedGraph);
+                }
+                response = graphStorageClient.getGraph(graphId);
+            }
+        }
+
+        // graph-storage-service does not have to set ETag, in which case every load is treated as a new version,
+        // so results calculated for a graph never outlive the graph itself
+        String version = response.getHeaders().getETag();
+        if (version == null) {
+            version = LOCAL_VERSION_PREFIX + loadCounter.incrementAndGet();
+        }
+
+        // the compact graph is built once per graph version and the decoded snapshot is dropped right after that
+        CachedGraph cachedGraph = toCachedGraph(graphId, version, response.getBody());
+
+        // a locally assigned version cannot be confirmed by graph-storage-service, so such graph is not written
+        if (cachedGraph.isCompact() && response.getHeaders().getETag() != null) {
+            snapshotFiles.write(graphId, version, cachedGraph.getCompactGraph());
+        } else if (fileVersion != null) {
+            snapshotFiles.delete(graphId);
+        }
+
+        LOGGER.debug(String.format("Graph with ID %s (version %s) loaded into the cache in %d ms",
+                graphId, version, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        return carryOverTrees(graphId, cachedGraph);
+    }
+
+    // returns null if graph-storage-service does not send changes since the previous version (i.e. it does not keep
+    // them, or not for that long), or if they cannot be applied to the previous version, in which case the graph
+    // is fetched as a whole
+    private CachedGraph loadChanges(String graphId, CachedGraph previous) {
+        ResponseEntity<GraphChanges> response;
+        try {
+            response = graphStorageClient.getGraphChanges(graphId, previous.getVersion());
+        } catch (FeignException ex) {
+            LOGGER.debug(String.format("Changes of graph with ID %s since version %s not received (status %d)",
+                    graphId, previous.getVersion(), ex.status()));
+            return null;
+        }
+        String version = response.getHeaders().getETag();
+        if (version == null || response.getBody() == null) {
+            return null;
+        }
+        if (version.equals(previous.getVersion())) {
+            return previous;
+        }
+        try {
+            CompactGraph graph = pipelineMetrics.record(PipelineMetrics.Stage.CONVERSION,
+                    () -> response.getBody().applyTo(previous.getCompactGraph()), CompactGraph::getVertexCount);
+            return new CachedGraph(version, graph);
+        } catch (IllegalArgumentException | ArithmeticException ex) {
+            LOGGER.warn(String.format("Changes of graph with ID %s since version %s cannot be applied: %s",
+                    graphId, previous.getVersion(), ex.getMessage()));
+            return null;
+        }
+    }
+
+    // returns null if the file does not hold a graph which the current weight mode would create
+    private CachedGraph readFile(String graphId, String version) {
+        CompactGraph graph = snapshotFiles.read(graphId, version);
+        if (graph == null || (graph.isFloatingPoint() && weightMode != WeightMode.DOUBLE)) {
+            return null;
+        }
+        return new CachedGraph(version, graph);
+    }
+
+    private CachedGraph toCachedGraph(String graphId, String version, GraphSnapshot snapshot) {
+        return pipelineMetrics.record(PipelineMetrics.Stage.CONVERSION, () -> convert(graphId, version, snapshot),
+                CachedGraph::getVertexCount);
+    }
+
+    // every mode but EXACT tries fixed-point weights first, because they are exact and at least as fast as doubles
+    private CachedGraph convert(String graphId, String version, GraphSnapshot snapshot) {
+        if (weightMode != WeightMode.EXACT) {
+            try {
+                return new CachedGraph(version, snapshot.toCompactGraph());
+            } catch (ArithmeticException ex) {
+                if (weightMode == WeightMode.LONG) {
+                    LOGGER.warn(String.format("Weights of graph with ID %s do not fit in fixed-point longs, keeping it as an object graph", graphId));
+                    return new CachedGraph(version, snapshot.toGraph());
+                }
+            }
+            try {
+                LOGGER.debug(String.format("Weights of graph with ID %s do not fit in fixed-point longs, using floating-point weights", graphId));
+                return new CachedGraph(version, snapshot.toFloatingPointCompactGraph());
+            } catch (ArithmeticException ex) {
+                LOGGER.warn(String.format("Weights of graph with ID %s do not fit in doubles, keeping it as an object graph", graphId));
+            }
+        }
+        return new CachedGraph(version, snapshot.toGraph());
+    }
+
+    // structures attached to a graph after it's loaded (i.e. an all-pairs index, a contraction hierarchy or trees of
+    // recent searches) are only weighed when the graph is put into the cache, so a graph which has grown since it was
+    // weighed is put again. A graph which is no longer the cached one is left alone
+    public void reweigh(String graphId, CachedGraph cachedGraph) {
+        if (estimateSizeInKilobytes(cachedGraph) == cachedGraph.getWeightInKilobytes()) {
+            return;
+        }
+        synchronized (loadLock) {
+            CompletableFuture<CachedGraph> current = cache.getIfPresent(graphId);
+            if (current != null && current.getNow(null) == cachedGraph) {
+                cache.put(graphId, CompletableFuture.completedFuture(cachedGraph));
+            }
+        }
+    }
+
+    // the weight is remembered, so that reweigh can tell whether the graph has grown since
+    private static int weigh(CachedGraph cachedGraph) {
+        int kilobytes = estimateSizeInKilobytes(cachedGraph);
+        cachedGraph.setWeightInKilobytes(kilobytes);
+        return kilobytes;
+    }
+
+    static int estimateSizeInKilobytes(CachedGraph cachedGraph) {
+        long bytes = cachedGraph.getGraphSizeInBytes();
+        if (bytes < 0) {
+            bytes = estimateGraphSizeInBytes(cachedGraph);
+            cachedGraph.setGraphSizeInBytes(bytes);
+        }
+        if (cachedGraph.isCompact()) {
+            bytes += cachedGraph.getCompactGraph().estimateAttachedSizeInBytes();
+        }
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, bytes / 1024));
+    }
+
+    private static long estimateGraphSizeInBytes(CachedGraph cachedGraph) {
+        if (cachedGraph.isCompact()) {
+            return cachedGraph.getCompactGraph().estimateSizeInBytes();
+        }
+        Graph<BigDecimal> graph = cachedGraph.getGraph();
+        long bytes = graph.getEdges().size() * EDGE_SIZE_IN_BYTES;
+        for (Vertex<BigDecimal> vertex : graph.getVertexes()) {
+            bytes += VERTEX_SIZE_IN_BYTES + 2L * vertex.getName().length();
+        }
+        return bytes;
+    }
+}
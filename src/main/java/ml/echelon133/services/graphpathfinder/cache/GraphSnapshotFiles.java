@@ -0,0 +1,175 @@
+package ml.echelon133.services.graphpathfinder.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import ml.echelon133.services.graphpathfinder.engine.CompactGraph;
+import ml.echelon133.services.graphpathfinder.engine.ContractionHierarchies;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Keeps a copy of every compact graph loaded into the cache in a file of its own, together with the version (ETag)
+// it had in graph-storage-service. After a restart, or once a graph is evicted, its file is mapped into memory and
+// read with bulk copies instead of downloading and parsing the graph again - as long as graph-storage-service
+// confirms that the version did not change. A file holds only the latest version of its graph.
+@Component
+public class GraphSnapshotFiles implements MeterBinder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GraphSnapshotFiles.class);
+
+    private static final int FORMAT_MAGIC = 0x47530001;
+    private static final String FILE_EXTENSION = ".graph";
+
+    private boolean enabled;
+    private Path directory;
+
+    private AtomicLong reads = new AtomicLong();
+    private AtomicLong writes = new AtomicLong();
+    private AtomicLong failures = new AtomicLong();
+
+    @Autowired
+    public GraphSnapshotFiles(@Value("${graph-snapshots.enabled:false}") boolean enabled,
+                              @Value("${graph-snapshots.directory:${java.io.tmpdir}/graph-path-finder/graphs}") String directory) {
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    private Path getFile(String graphId) {
+        return directory.resolve(ContractionHierarchies.toFilePrefix(graphId) + "snapshot" + FILE_EXTENSION);
+    }
+
+    // returns the version of the graph kept in its file, or null if there is no such file
+    public String findVersion(String graphId) {
+        if (!enabled) {
+            return null;
+        }
+        Path file = getFile(graphId);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return readHeader(buffer);
+        } catch (IOException ex) {
+            failures.incrementAndGet();
+            LOGGER.warn(String.format("Could not read version of graph with ID %s from %s: %s", graphId, file, ex));
+            return null;
+        }
+    }
+
+    // returns the graph kept in its file, or null if the file does not hold the given version of the graph
+    public CompactGraph read(String graphId, String version) {
+        if (!enabled) {
+            return null;
+        }
+        long start = System.nanoTime();
+        Path file = getFile(graphId);
+        // the mapping stays valid after the channel is closed, and arrays of the graph are copied out of it, so
+        // the file can be replaced by a newer version while the graph is still in use
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (!version.equals(readHeader(buffer))) {
+                return null;
+            }
+            CompactGraph graph = CompactGraph.readFrom(buffer);
+            reads.incrementAndGet();
+            LOGGER.debug(String.format("Graph with ID %s (version %s) read from %s in %d ms",
+                    graphId, version, file, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+            return graph;
+        } catch (IOException ex) {
+            // a file left by a different version of this service, or damaged in any other way
+            failures.incrementAndGet();
+            LOGGER.warn(String.format("Could not read graph with ID %s from %s: %s", graphId, file, ex));
+            return null;
+        }
+    }
+
+    private static String readHeader(MappedByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt() != FORMAT_MAGIC) {
+                throw new IOException("File is not a graph snapshot");
+            }
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                throw new IOException("Graph snapshot is truncated");
+            }
+            byte[] version = new byte[length];
+            buffer.get(version);
+            return new String(version, StandardCharsets.UTF_8);
+        } catch (BufferUnderflowException ex) {
+            throw new IOException("Graph snapshot is truncated", ex);
+        }
+    }
+
+    // the graph is written to a temporary file first, so that a file with the final name is always complete
+    public void write(String graphId, String version, CompactGraph graph) {
+        if (!enabled) {
+            return;
+        }
+        Path file = getFile(graphId);
+        try {
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                byte[] versionBytes = version.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(FORMAT_MAGIC);
+                out.writeInt(versionBytes.length);
+                out.write(versionBytes);
+                graph.writeTo(out);
+            } catch (IOException ex) {
+                Files.deleteIfExists(temporary);
+                throw ex;
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            writes.incrementAndGet();
+        } catch (IOException ex) {
+            // the graph is still cached, it only has to be downloaded again after a restart
+            failures.incrementAndGet();
+            LOGGER.warn(String.format("Could not write graph with ID %s to %s: %s", graphId, file, ex));
+        }
+    }
+
+    public void delete(String graphId) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(getFile(graphId));
+        } catch (IOException ex) {
+            LOGGER.debug(String.format("Could not delete snapshot of graph with ID %s: %s", graphId, ex));
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("graph-snapshots.reads", reads, AtomicLong::get)
+                .description("Graphs read from local files instead of being downloaded")
+                .register(registry);
+        FunctionCounter.builder("graph-snapshots.writes", writes, AtomicLong::get)
+                .register(registry);
+        FunctionCounter.builder("graph-snapshots.failures", failures, AtomicLong::get)
+                .register(registry);
+    }
+}
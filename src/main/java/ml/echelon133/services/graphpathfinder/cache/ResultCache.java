@@ -0,0 +1,74 @@
+package ml.echelon133.services.graphpathfinder.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+@Component
+public class ResultCache {
+
+    static class Key {
+        private String graphId;
+        private String graphVersion;
+        private Object query;
+
+        Key(String graphId, String graphVersion, Object query) {
+            this.graphId = graphId;
+            this.graphVersion = graphVersion;
+            this.query = query;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return graphId.equals(key.graphId) &&
+                    graphVersion.equals(key.graphVersion) &&
+                    query.equals(key.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(graphId, graphVersion, query);
+        }
+    }
+
+    // already serialized results, so that a hit skips both the solver and Jackson
+    private Cache<Key, byte[]> cache;
+
+    @Autowired
+    public ResultCache(MeterRegistry meterRegistry,
+                       @Value("${result-cache.maximum-size-mb:256}") long maximumSizeMb,
+                       @Value("${result-cache.expire-after-access-minutes:30}") long expireAfterAccessMinutes) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maximumSizeMb * 1024 * 1024)
+                .<Key, byte[]>weigher((key, result) -> result.length)
+                .expireAfterAccess(expireAfterAccessMinutes, TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "results");
+    }
+
+    // query can be any immutable object which implements equals and hashCode
+    public byte[] getResult(String graphId, String graphVersion, Object query) {
+        return cache.getIfPresent(new Key(graphId, graphVersion, query));
+    }
+
+    public void putResult(String graphId, String graphVersion, Object query, byte[] result) {
+        cache.put(new Key(graphId, graphVersion, query), result);
+    }
+
+    // results of older versions would never be hit again, but they are dropped right away to free the memory
+    public void invalidate(String graphId) {
+        cache.asMap().keySet().removeIf(key -> key.graphId.equals(graphId));
+    }
+}
@@ -0,0 +1,119 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+import java.util.Arrays;
+
+// A* search between two vertexes of a graph with fixed-point weights. Vertexes are queued by their distance from
+// the source plus the estimate of the distance left to the target, so the search goes towards the target and
+// settles far fewer vertexes than Dijkstra's algorithm. A vertex whose distance improves after it was expanded
+// is queued again, which keeps paths the shortest ones even if the estimates are not consistent
+// (i.e. because of rounding of geometric distances).
+class AStarSearch {
+
+    private static final int HEAP_ARITY = 4;
+    private static final long NOT_ESTIMATED = -1;
+
+    private CompactGraph graph;
+    private Heuristic heuristic;
+
+    private long[] distances;
+    private int[] predecessors;
+    // estimates are computed once per vertex, NOT_ESTIMATED until then
+    private long[] estimates;
+    private DaryHeap queue;
+    private SearchWork work = new SearchWork();
+
+    AStarSearch(CompactGraph graph, Heuristic heuristic) {
+        this.graph = graph;
+        this.heuristic = heuristic;
+
+        int vertexCount = graph.getVertexCount();
+        distances = new long[vertexCount];
+        predecessors = new int[vertexCount];
+        estimates = new long[vertexCount];
+        Arrays.fill(distances, ShortestPathTree.UNREACHABLE);
+        Arrays.fill(predecessors, ShortestPathTree.NO_PREDECESSOR);
+        Arrays.fill(estimates, NOT_ESTIMATED);
+        queue = new DaryHeap(HEAP_ARITY, vertexCount);
+    }
+
+    ShortestPathTree solve(int sourceId, int targetId) {
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        long[] weights = graph.getWeights();
+
+        distances[sourceId] = 0;
+        long sourceEstimate = estimate(sourceId);
+        if (sourceEstimate != ShortestPathTree.UNREACHABLE) {
+            queue.insertOrDecrease(sourceId, sourceEstimate);
+            work.pushed(queue.size());
+        }
+
+        while (!queue.isEmpty()) {
+            int vertex = queue.pollMin();
+            work.settledCount++;
+            if (vertex == targetId) {
+                break;
+            }
+
+            long distance = distances[vertex];
+            work.relaxedEdgeCount += offsets[vertex + 1] - offsets[vertex];
+            for (int edge = offsets[vertex]; edge < offsets[vertex + 1]; edge++) {
+                int target = targets[edge];
+                long newDistance = distance + weights[edge];
+                if (newDistance < distances[target]) {
+                    long estimate = estimate(target);
+                    if (estimate == ShortestPathTree.UNREACHABLE) {
+                        continue;
+                    }
+                    distances[target] = newDistance;
+                    predecessors[target] = vertex;
+                    queue.insertOrDecrease(target, saturatedAdd(newDistance, estimate));
+                    work.pushed(queue.size());
+                }
+            }
+        }
+
+        return createPathTree(sourceId, targetId);
+    }
+
+    // number of vertexes taken from the queue, counting a vertex once for every time it was queued
+    int getSettledCount() {
+        return (int) work.settledCount;
+    }
+
+    SearchWork getWork() {
+        return work;
+    }
+
+    private long estimate(int vertex) {
+        long estimate = estimates[vertex];
+        if (estimate == NOT_ESTIMATED) {
+            estimate = heuristic.estimate(vertex);
+            estimates[vertex] = estimate;
+        }
+        return estimate;
+    }
+
+    // a distance and an estimate are both bounded by the sum of all weights, but their sum does not have to be
+    private static long saturatedAdd(long distance, long estimate) {
+        long sum = distance + estimate;
+        return sum < distance ? Long.MAX_VALUE - 1 : sum;
+    }
+
+    // only the path to the target is settled in the returned tree, just like in a tree of a bidirectional search
+    private ShortestPathTree createPathTree(int sourceId, int targetId) {
+        int[] settledOrder = new int[graph.getVertexCount()];
+        int pathLength = 0;
+        if (distances[targetId] != ShortestPathTree.UNREACHABLE) {
+            for (int v = targetId; v != ShortestPathTree.NO_PREDECESSOR; v = predecessors[v]) {
+                settledOrder[pathLength++] = v;
+            }
+            for (int i = 0, j = pathLength - 1; i < j; i++, j--) {
+                int tmp = settledOrder[i];
+                settledOrder[i] = settledOrder[j];
+                settledOrder[j] = tmp;
+            }
+        }
+        return new ShortestPathTree(graph, sourceId, distances, predecessors, settledOrder, pathLength);
+    }
+}
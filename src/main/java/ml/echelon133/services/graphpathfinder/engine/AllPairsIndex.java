@@ -0,0 +1,39 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+import java.util.stream.IntStream;
+
+// Shortest path trees of every vertex of a graph, so that any search over that graph is a lookup of an array
+// element, and any path is read from predecessors of the tree of its start vertex. A tree keeps a distance,
+// a predecessor and a position in the settled order of every vertex, so an index of a graph with n vertexes
+// takes about 16 * n^2 bytes, which limits it to small graphs.
+public class AllPairsIndex {
+
+    private static final long TREE_OVERHEAD_IN_BYTES = 80;
+
+    private ShortestPathTree[] trees;
+
+    private AllPairsIndex(ShortestPathTree[] trees) {
+        this.trees = trees;
+    }
+
+    // searches from different vertexes are independent, so they run as a parallel stream. Called from a task
+    // of a ForkJoinPool, the stream runs on threads of that pool
+    static AllPairsIndex build(CompactGraph graph, DijkstraEngine engine) {
+        ShortestPathTree[] trees = new ShortestPathTree[graph.getVertexCount()];
+        IntStream.range(0, trees.length).parallel().forEach(sourceId -> trees[sourceId] = engine.search(graph, sourceId));
+        return new AllPairsIndex(trees);
+    }
+
+    public int getVertexCount() {
+        return trees.length;
+    }
+
+    public ShortestPathTree getTree(int sourceId) {
+        return trees[sourceId];
+    }
+
+    public long estimateSizeInBytes() {
+        long vertexCount = trees.length;
+        return vertexCount * (TREE_OVERHEAD_IN_BYTES + 16 * vertexCount);
+    }
+}
@@ -0,0 +1,172 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Decides which graphs get an AllPairsIndex and builds them in the background. A graph gets an index when it has
+// no more vertexes than configured, and it was searched at least as many times as configured within a minute.
+// Until its index is ready, searches of a graph run as usual.
+@Component
+public class AllPairsPrecomputation implements MeterBinder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AllPairsPrecomputation.class);
+
+    static final long REQUEST_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static class GraphUsage {
+        private long windowStart;
+        private int searchesInWindow;
+        private boolean buildStarted;
+    }
+
+    private boolean enabled;
+    private int maxVertexCount;
+    private int minSearchesPerMinute;
+    private DijkstraEngine dijkstraEngine;
+    private int parallelism;
+    private volatile ForkJoinPool buildPool;
+
+    // graphs are weak keys, so usage of a graph is forgotten together with the graph once the cache drops it.
+    // CompactGraph does not override equals, so graphs are compared by identity and a new version is a new key
+    private Map<CompactGraph, GraphUsage> usages = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private AtomicLong finishedBuilds = new AtomicLong();
+    private AtomicLong failedBuilds = new AtomicLong();
+    private AtomicLong buildNanos = new AtomicLong();
+
+    @Autowired
+    public AllPairsPrecomputation(DijkstraEngine dijkstraEngine,
+                                  @Value("${precompute.all-pairs.enabled:false}") boolean enabled,
+                                  @Value("${precompute.all-pairs.max-vertex-count:1000}") int maxVertexCount,
+                                  @Value("${precompute.all-pairs.min-searches-per-minute:60}") int minSearchesPerMinute,
+                                  @Value("${precompute.all-pairs.parallelism:0}") int parallelism) {
+        this.dijkstraEngine = dijkstraEngine;
+        this.enabled = enabled;
+        this.maxVertexCount = maxVertexCount;
+        this.minSearchesPerMinute = minSearchesPerMinute;
+        // by default half of the cores, so that searches which run while an index is built are not slowed down much
+        this.parallelism = parallelism > 0 ? parallelism : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    }
+
+    private ForkJoinPool getBuildPool() {
+        ForkJoinPool result = buildPool;
+        if (result == null) {
+            synchronized (this) {
+                if (buildPool == null) {
+                    buildPool = new ForkJoinPool(parallelism);
+                }
+                result = buildPool;
+            }
+        }
+        return result;
+    }
+
+    // counts a search of the graph, and starts building its index if this search made the graph hot enough
+    public void recordSearch(CompactGraph graph) {
+        if (!enabled || graph.getVertexCount() > maxVertexCount || graph.getAllPairsIndex() != null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        GraphUsage usage = usages.computeIfAbsent(graph, g -> new GraphUsage());
+        synchronized (usage) {
+            if (usage.buildStarted) {
+                return;
+            }
+            if (now - usage.windowStart >= REQUEST_WINDOW_MILLIS) {
+                usage.windowStart = now;
+                usage.searchesInWindow = 0;
+            }
+            usage.searchesInWindow++;
+            if (usage.searchesInWindow < minSearchesPerMinute) {
+                return;
+            }
+            usage.buildStarted = true;
+        }
+
+        try {
+            getBuildPool().execute(() -> build(graph));
+        } catch (RejectedExecutionException ex) {
+            // only happens while the application shuts down
+            LOGGER.debug("All-pairs index not built, because the application is shutting down");
+        }
+    }
+
+    void build(CompactGraph graph) {
+        LOGGER.debug(String.format("Building an all-pairs index of a graph with %d vertexes", graph.getVertexCount()));
+        long start = System.nanoTime();
+        try {
+            AllPairsIndex index = AllPairsIndex.build(graph, dijkstraEngine);
+            graph.setAllPairsIndex(index);
+            long nanos = System.nanoTime() - start;
+            buildNanos.addAndGet(nanos);
+            finishedBuilds.incrementAndGet();
+            LOGGER.debug(String.format("Built an all-pairs index of a graph with %d vertexes in %d ms (%d bytes)",
+                    graph.getVertexCount(), TimeUnit.NANOSECONDS.toMillis(nanos), index.estimateSizeInBytes()));
+        } catch (RuntimeException | OutOfMemoryError ex) {
+            // the graph keeps being searched without an index, and is not tried again until a new version is loaded
+            failedBuilds.incrementAndGet();
+            LOGGER.debug(String.format("Could not build an all-pairs index of a graph with %d vertexes: %s",
+                    graph.getVertexCount(), ex));
+        }
+    }
+
+    private List<AllPairsIndex> getLiveIndexes() {
+        List<CompactGraph> graphs;
+        synchronized (usages) {
+            graphs = new ArrayList<>(usages.keySet());
+        }
+        List<AllPairsIndex> indexes = new ArrayList<>();
+        for (CompactGraph graph : graphs) {
+            AllPairsIndex index = graph.getAllPairsIndex();
+            if (index != null) {
+                indexes.add(index);
+            }
+        }
+        return indexes;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("precompute.all-pairs.indexes", this, p -> p.getLiveIndexes().size())
+                .description("All-pairs indexes of graphs which are still cached")
+                .register(registry);
+        Gauge.builder("precompute.all-pairs.memory", this,
+                p -> p.getLiveIndexes().stream().mapToLong(AllPairsIndex::estimateSizeInBytes).sum())
+                .description("Estimated size of all-pairs indexes of graphs which are still cached")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionTimer.builder("precompute.all-pairs.builds", this,
+                p -> p.finishedBuilds.get(), p -> p.buildNanos.get(), TimeUnit.NANOSECONDS)
+                .register(registry);
+        FunctionCounter.builder("precompute.all-pairs.failures", failedBuilds, AtomicLong::get)
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ForkJoinPool pool = buildPool;
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+}
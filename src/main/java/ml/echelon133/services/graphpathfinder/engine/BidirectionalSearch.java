@@ -0,0 +1,137 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+import java.util.Arrays;
+
+// Bidirectional Dijkstra's algorithm. One search goes forward from the source, the other goes backward from
+// the target over the reversed graph. The side whose queue has a smaller minimum is expanded first.
+// Every edge relaxed between vertexes reached by both searches gives a candidate for the shortest path,
+// and the search stops when the sum of both queue minimums cannot improve the best candidate anymore.
+class BidirectionalSearch {
+
+    private CompactGraph graph;
+    private CompactGraph reverse;
+    private VertexQueue forwardQueue;
+    private VertexQueue backwardQueue;
+
+    private long[] forwardDistances;
+    private long[] backwardDistances;
+    private int[] predecessors;
+    private int[] successors;
+
+    private long bestDistance = ShortestPathTree.UNREACHABLE;
+    private int meetingVertex = ShortestPathTree.NO_PREDECESSOR;
+    private SearchWork work = new SearchWork();
+
+    BidirectionalSearch(CompactGraph graph, VertexQueue forwardQueue, VertexQueue backwardQueue) {
+        this.graph = graph;
+        this.reverse = graph.getReverse();
+        this.forwardQueue = forwardQueue;
+        this.backwardQueue = backwardQueue;
+
+        int vertexCount = graph.getVertexCount();
+        forwardDistances = new long[vertexCount];
+        backwardDistances = new long[vertexCount];
+        predecessors = new int[vertexCount];
+        successors = new int[vertexCount];
+        Arrays.fill(forwardDistances, ShortestPathTree.UNREACHABLE);
+        Arrays.fill(backwardDistances, ShortestPathTree.UNREACHABLE);
+        Arrays.fill(predecessors, ShortestPathTree.NO_PREDECESSOR);
+        Arrays.fill(successors, ShortestPathTree.NO_PREDECESSOR);
+    }
+
+    ShortestPathTree solve(int sourceId, int targetId) {
+        forwardDistances[sourceId] = 0;
+        forwardQueue.insertOrDecrease(sourceId, 0);
+        work.pushed(forwardQueue.size());
+        backwardDistances[targetId] = 0;
+        backwardQueue.insertOrDecrease(targetId, 0);
+        work.pushed(forwardQueue.size() + backwardQueue.size());
+
+        while (!forwardQueue.isEmpty() && !backwardQueue.isEmpty()) {
+            long forwardMin = forwardQueue.peekMinKey();
+            long backwardMin = backwardQueue.peekMinKey();
+            if (bestDistance != ShortestPathTree.UNREACHABLE && forwardMin + backwardMin >= bestDistance) {
+                break;
+            }
+            if (forwardMin <= backwardMin) {
+                expand(graph, forwardQueue, forwardDistances, backwardDistances, predecessors);
+            } else {
+                expand(reverse, backwardQueue, backwardDistances, forwardDistances, successors);
+            }
+        }
+
+        return createPathTree(sourceId);
+    }
+
+    SearchWork getWork() {
+        return work;
+    }
+
+    private void expand(CompactGraph searchedGraph, VertexQueue queue, long[] distances, long[] oppositeDistances, int[] parents) {
+        int[] offsets = searchedGraph.getOffsets();
+        int[] targets = searchedGraph.getTargets();
+        long[] weights = searchedGraph.getWeights();
+
+        int vertex = queue.pollMin();
+        long distance = distances[vertex];
+        work.settledCount++;
+        work.relaxedEdgeCount += offsets[vertex + 1] - offsets[vertex];
+        for (int edge = offsets[vertex]; edge < offsets[vertex + 1]; edge++) {
+            int target = targets[edge];
+            long newDistance = distance + weights[edge];
+            if (newDistance < distances[target]) {
+                distances[target] = newDistance;
+                parents[target] = vertex;
+                queue.insertOrDecrease(target, newDistance);
+                work.pushed(forwardQueue.size() + backwardQueue.size());
+            }
+            if (oppositeDistances[target] != ShortestPathTree.UNREACHABLE) {
+                long candidate = distances[target] + oppositeDistances[target];
+                if (candidate < bestDistance) {
+                    bestDistance = candidate;
+                    meetingVertex = target;
+                }
+            }
+        }
+    }
+
+    // joins both halves of the path at the meeting vertex, so that the path can be read from predecessors
+    // of the target just like in a tree built by a single-source search
+    private ShortestPathTree createPathTree(int sourceId) {
+        int[] settledOrder = new int[graph.getVertexCount()];
+        int settledCount = 0;
+
+        if (meetingVertex != ShortestPathTree.NO_PREDECESSOR) {
+            for (int v = meetingVertex; v != ShortestPathTree.NO_PREDECESSOR; v = predecessors[v]) {
+                settledOrder[settledCount++] = v;
+            }
+            // the forward half was collected from the meeting vertex back to the source
+            for (int i = 0, j = settledCount - 1; i < j; i++, j--) {
+                int tmp = settledOrder[i];
+                settledOrder[i] = settledOrder[j];
+                settledOrder[j] = tmp;
+            }
+            boolean[] onPath = new boolean[graph.getVertexCount()];
+            for (int i = 0; i < settledCount; i++) {
+                onPath[settledOrder[i]] = true;
+            }
+            for (int v = meetingVertex; successors[v] != ShortestPathTree.NO_PREDECESSOR; v = successors[v]) {
+                int next = successors[v];
+                if (onPath[next]) {
+                    // both halves went through the same vertex (possible only with zero weight cycles),
+                    // so the part of the path between both visits is dropped to keep predecessors acyclic
+                    while (settledOrder[settledCount - 1] != next) {
+                        onPath[settledOrder[--settledCount]] = false;
+                    }
+                    continue;
+                }
+                predecessors[next] = v;
+                forwardDistances[next] = bestDistance - backwardDistances[next];
+                settledOrder[settledCount++] = next;
+                onPath[next] = true;
+            }
+        }
+
+        return new ShortestPathTree(graph, sourceId, forwardDistances, predecessors, settledOrder, settledCount);
+    }
+}
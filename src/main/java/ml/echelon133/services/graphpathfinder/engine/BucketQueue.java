@@ -0,0 +1,97 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+import java.util.Arrays;
+
+// Bucket queue used by Dial's algorithm. Requires integer keys and the maximum edge weight C to be known:
+// all queued keys are then within [current, current + C], so C + 1 buckets used cyclically are enough.
+// Every bucket is a doubly linked list threaded through next/previous arrays indexed by vertex,
+// so insert, decrease-key and removal are O(1) and allocate nothing.
+class BucketQueue implements VertexQueue {
+
+    private static final int NONE = -1;
+
+    private int[] bucketHeads;
+    private int[] next;
+    private int[] previous;
+    private long[] keys;
+    private long current;
+    private int size;
+
+    BucketQueue(long maxWeight, int vertexCount) {
+        this.bucketHeads = new int[(int) maxWeight + 1];
+        this.next = new int[vertexCount];
+        this.previous = new int[vertexCount];
+        this.keys = new long[vertexCount];
+        Arrays.fill(bucketHeads, NONE);
+        Arrays.fill(keys, NONE);
+        this.current = NONE;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void insertOrDecrease(int vertex, long key) {
+        // current stays at the last polled key even if the queue gets empty, because vertexes queued
+        // after that (while relaxing edges of the polled vertex) may come in any order of keys
+        if (current == NONE) {
+            current = key;
+        }
+        if (keys[vertex] == NONE) {
+            size++;
+        } else {
+            unlink(vertex);
+        }
+        keys[vertex] = key;
+
+        int bucket = bucketOf(key);
+        int head = bucketHeads[bucket];
+        next[vertex] = head;
+        previous[vertex] = NONE;
+        if (head != NONE) {
+            previous[head] = vertex;
+        }
+        bucketHeads[bucket] = vertex;
+    }
+
+    // moving current up to the first non-empty bucket is safe, because nothing lower than the minimum can be queued later
+    @Override
+    public long peekMinKey() {
+        while (bucketHeads[bucketOf(current)] == NONE) {
+            current++;
+        }
+        return current;
+    }
+
+    @Override
+    public int pollMin() {
+        int vertex = bucketHeads[bucketOf(peekMinKey())];
+        unlink(vertex);
+        keys[vertex] = NONE;
+        size--;
+        return vertex;
+    }
+
+    private void unlink(int vertex) {
+        int bucket = bucketOf(keys[vertex]);
+        if (previous[vertex] == NONE) {
+            bucketHeads[bucket] = next[vertex];
+        } else {
+            next[previous[vertex]] = next[vertex];
+        }
+        if (next[vertex] != NONE) {
+            previous[next[vertex]] = previous[vertex];
+        }
+    }
+
+    private int bucketOf(long key) {
+        return (int) (key % bucketHeads.length);
+    }
+}
@@ -0,0 +1,482 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+import ml.echelon133.graph.Edge;
+import ml.echelon133.graph.Graph;
+import ml.echelon133.graph.Vertex;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compressed sparse row snapshot of a graph. Vertexes are identified by ints (their position on the vertex list
+// of the source graph), outgoing edges of vertex 'v' are stored at indexes from offsets[v] (inclusive)
+// to offsets[v + 1] (exclusive) of targets and weights arrays.
+//
+// Weights are stored as fixed-point longs: every weight is multiplied by 10^weightScale, where weightScale is
+// the largest number of fractional digits among all weights of the graph. This keeps sums of weights exact.
+//
+// Graphs whose weights do not fit in fixed-point longs can instead have floating-point weights (see WeightMode.DOUBLE).
+// Their distances are still longs, holding raw bits of doubles. Bits of non-negative doubles are ordered just
+// like the doubles themselves, so searches and queues compare such distances the same way as fixed-point ones.
+public class CompactGraph {
+
+    private static final int FORMAT_MAGIC = 0x43470002;
+
+    private String[] vertexNames;
+    private Map<String, Integer> vertexIds;
+    private int[] offsets;
+    private int[] targets;
+    // exactly one of weights and floatingPointWeights is not null
+    private long[] weights;
+    private double[] floatingPointWeights;
+    private int weightScale;
+    private long maxWeight;
+    // only set if every vertex has coordinates
+    private Coordinates coordinates;
+
+    // graph with all edges reversed, built on first use
+    private volatile CompactGraph reverse;
+    // shortest path trees of all vertexes, set once they are precomputed
+    private volatile AllPairsIndex allPairsIndex;
+    // set once it's built or read from disk
+    private volatile ContractionHierarchy contractionHierarchy;
+    // built on first A* search with the landmark heuristic
+    private volatile Landmarks landmarks;
+    // trees of recently searched start vertexes, created once the first of them is kept
+    private volatile SourceTrees sourceTrees;
+
+    CompactGraph(String[] vertexNames, int[] offsets, int[] targets, long[] weights, int weightScale) {
+        this(vertexNames, createVertexIds(vertexNames), offsets, targets, weights, null, weightScale);
+    }
+
+    CompactGraph(String[] vertexNames, int[] offsets, int[] targets, double[] floatingPointWeights) {
+        this(vertexNames, createVertexIds(vertexNames), offsets, targets, null, floatingPointWeights, 0);
+    }
+
+    private CompactGraph(String[] vertexNames, Map<String, Integer> vertexIds, int[] offsets, int[] targets,
+                         long[] weights, double[] floatingPointWeights, int weightScale) {
+        this.vertexNames = vertexNames;
+        this.vertexIds = vertexIds;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.floatingPointWeights = floatingPointWeights;
+        this.weightScale = weightScale;
+        if (weights != null) {
+            for (long weight : weights) {
+                maxWeight = Math.max(maxWeight, weight);
+            }
+        } else {
+            // there is no integer bound of weights, which keeps queues that need one from being used
+            maxWeight = Long.MAX_VALUE;
+        }
+    }
+
+    private static Map<String, Integer> createVertexIds(String[] vertexNames) {
+        Map<String, Integer> vertexIds = new HashMap<>(vertexNames.length * 4 / 3 + 1);
+        for (int i = 0; i < vertexNames.length; i++) {
+            vertexIds.put(vertexNames[i], i);
+        }
+        return vertexIds;
+    }
+
+    // throws ArithmeticException if weights of the graph cannot be represented exactly as fixed-point longs,
+    // or if a sum of all weights (which bounds the length of every shortest path) does not fit in a long
+    public static CompactGraph fromGraph(Graph<BigDecimal> graph) throws ArithmeticException {
+        List<Vertex<BigDecimal>> vertexes = graph.getVertexes();
+        int vertexCount = vertexes.size();
+
+        String[] vertexNames = new String[vertexCount];
+        Map<Vertex<BigDecimal>, Integer> idsOfVertexes = new IdentityHashMap<>(vertexCount);
+        int edgeCount = 0;
+        int weightScale = 0;
+
+        for (int i = 0; i < vertexCount; i++) {
+            Vertex<BigDecimal> vertex = vertexes.get(i);
+            vertexNames[i] = vertex.getName();
+            idsOfVertexes.put(vertex, i);
+            for (Edge<BigDecimal> edge : vertex.getEdges()) {
+                weightScale = Math.max(weightScale, edge.getWeight().stripTrailingZeros().scale());
+                edgeCount++;
+            }
+        }
+
+        int[] offsets = new int[vertexCount + 1];
+        int[] targets = new int[edgeCount];
+        long[] weights = new long[edgeCount];
+        long sumOfWeights = 0;
+        int edgeIndex = 0;
+
+        for (int i = 0; i < vertexCount; i++) {
+            offsets[i] = edgeIndex;
+            for (Edge<BigDecimal> edge : vertexes.get(i).getEdges()) {
+                targets[edgeIndex] = idsOfVertexes.get(edge.getDestination());
+                weights[edgeIndex] = edge.getWeight().movePointRight(weightScale).longValueExact();
+                sumOfWeights = Math.addExact(sumOfWeights, weights[edgeIndex]);
+                edgeIndex++;
+            }
+        }
+        offsets[vertexCount] = edgeIndex;
+
+        return new CompactGraph(vertexNames, offsets, targets, weights, weightScale);
+    }
+
+    public int getVertexCount() {
+        return vertexNames.length;
+    }
+
+    public int getEdgeCount() {
+        return targets.length;
+    }
+
+    // returns -1 if the graph does not have a vertex with such name
+    public int findVertexId(String vertexName) {
+        Integer id = vertexIds.get(vertexName);
+        return id == null ? -1 : id;
+    }
+
+    public String getVertexName(int vertexId) {
+        return vertexNames[vertexId];
+    }
+
+    public int[] getOffsets() {
+        return offsets;
+    }
+
+    public int[] getTargets() {
+        return targets;
+    }
+
+    // null if the graph has floating-point weights
+    public long[] getWeights() {
+        return weights;
+    }
+
+    // null if the graph has fixed-point weights
+    public double[] getFloatingPointWeights() {
+        return floatingPointWeights;
+    }
+
+    public boolean isFloatingPoint() {
+        return floatingPointWeights != null;
+    }
+
+    // adds a weight to a distance of a graph with floating-point weights, both the distance and the result
+    // being raw bits of doubles
+    static long addFloatingPoint(long distance, double weight) {
+        return Double.doubleToRawLongBits(Double.longBitsToDouble(distance) + weight);
+    }
+
+    public int getWeightScale() {
+        return weightScale;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    // reversed graph shares vertex names and ids with this graph, so ids can be used interchangeably
+    public CompactGraph getReverse() {
+        CompactGraph result = reverse;
+        if (result == null) {
+            synchronized (this) {
+                if (reverse == null) {
+                    reverse = buildReverse();
+                }
+                result = reverse;
+            }
+        }
+        return result;
+    }
+
+    // null if the graph does not have coordinates of its vertexes
+    public Coordinates getCoordinates() {
+        return coordinates;
+    }
+
+    void setCoordinates(Coordinates coordinates) {
+        if (coordinates != null && coordinates.getVertexCount() != getVertexCount()) {
+            throw new IllegalArgumentException("Every vertex needs coordinates");
+        }
+        this.coordinates = coordinates;
+    }
+
+    public AllPairsIndex getAllPairsIndex() {
+        return allPairsIndex;
+    }
+
+    void setAllPairsIndex(AllPairsIndex allPairsIndex) {
+        this.allPairsIndex = allPairsIndex;
+    }
+
+    public ContractionHierarchy getContractionHierarchy() {
+        return contractionHierarchy;
+    }
+
+    void setContractionHierarchy(ContractionHierarchy contractionHierarchy) {
+        this.contractionHierarchy = contractionHierarchy;
+    }
+
+    public Landmarks getLandmarks() {
+        return landmarks;
+    }
+
+    void setLandmarks(Landmarks landmarks) {
+        this.landmarks = landmarks;
+    }
+
+    public SourceTrees getSourceTrees() {
+        return sourceTrees;
+    }
+
+    void setSourceTrees(SourceTrees sourceTrees) {
+        this.sourceTrees = sourceTrees;
+    }
+
+    private CompactGraph buildReverse() {
+        int vertexCount = getVertexCount();
+        int[] reverseOffsets = new int[vertexCount + 1];
+        int[] reverseTargets = new int[targets.length];
+        long[] reverseWeights = weights == null ? null : new long[targets.length];
+        double[] reverseFloatingPointWeights = floatingPointWeights == null ? null : new double[targets.length];
+
+        // count incoming edges of every vertex, then turn counts into offsets
+        for (int target : targets) {
+            reverseOffsets[target + 1]++;
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            reverseOffsets[v + 1] += reverseOffsets[v];
+        }
+
+        int[] nextFree = Arrays.copyOf(reverseOffsets, vertexCount);
+        for (int source = 0; source < vertexCount; source++) {
+            for (int edge = offsets[source]; edge < offsets[source + 1]; edge++) {
+                int index = nextFree[targets[edge]]++;
+                reverseTargets[index] = source;
+                if (weights != null) {
+                    reverseWeights[index] = weights[edge];
+                } else {
+                    reverseFloatingPointWeights[index] = floatingPointWeights[edge];
+                }
+            }
+        }
+
+        CompactGraph reversed = new CompactGraph(vertexNames, vertexIds, reverseOffsets, reverseTargets,
+                reverseWeights, reverseFloatingPointWeights, weightScale);
+        reversed.reverse = this;
+        reversed.coordinates = coordinates;
+        return reversed;
+    }
+
+    // arrays are written as they are, so that reading them back is a bulk copy instead of parsing
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_MAGIC);
+        out.writeInt(vertexNames.length);
+        out.writeInt(targets.length);
+        out.writeBoolean(isFloatingPoint());
+        out.writeInt(weightScale);
+        for (String name : vertexNames) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        for (int offset : offsets) {
+            out.writeInt(offset);
+        }
+        for (int target : targets) {
+            out.writeInt(target);
+        }
+        if (isFloatingPoint()) {
+            for (double weight : floatingPointWeights) {
+                out.writeDouble(weight);
+            }
+        } else {
+            for (long weight : weights) {
+                out.writeLong(weight);
+            }
+        }
+        out.writeBoolean(coordinates != null);
+        if (coordinates != null) {
+            for (int v = 0; v < vertexNames.length; v++) {
+                out.writeDouble(coordinates.getX(v));
+                out.writeDouble(coordinates.getY(v));
+            }
+        }
+    }
+
+    // reads a graph written by writeTo, starting at the current position of the buffer (which usually is a file
+    // mapped into memory). Throws IOException if the data is not a valid graph, i.e. when the file is truncated
+    public static CompactGraph readFrom(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt() != FORMAT_MAGIC) {
+                throw new IOException("Data is not a compact graph");
+            }
+            int vertexCount = buffer.getInt();
+            int edgeCount = buffer.getInt();
+            boolean floatingPoint = buffer.get() != 0;
+            int weightScale = buffer.getInt();
+            if (vertexCount < 0 || edgeCount < 0) {
+                throw new IOException("Compact graph has a negative number of vertexes or edges");
+            }
+            // lengths of names, offsets, targets and weights
+            int weightBytes = floatingPoint ? Double.BYTES : Long.BYTES;
+            checkRemaining(buffer, Integer.BYTES * (2L * vertexCount + 1) + (long) (Integer.BYTES + weightBytes) * edgeCount);
+
+            String[] vertexNames = new String[vertexCount];
+            for (int v = 0; v < vertexCount; v++) {
+                int length = buffer.getInt();
+                checkRemaining(buffer, length);
+                byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                vertexNames[v] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            int[] offsets = new int[vertexCount + 1];
+            buffer.asIntBuffer().get(offsets);
+            buffer.position(buffer.position() + Integer.BYTES * offsets.length);
+            int[] targets = new int[edgeCount];
+            buffer.asIntBuffer().get(targets);
+            buffer.position(buffer.position() + Integer.BYTES * targets.length);
+            checkStructure(offsets, targets);
+
+            CompactGraph graph;
+            if (floatingPoint) {
+                double[] floatingPointWeights = new double[edgeCount];
+                buffer.asDoubleBuffer().get(floatingPointWeights);
+                buffer.position(buffer.position() + Double.BYTES * edgeCount);
+                graph = new CompactGraph(vertexNames, offsets, targets, floatingPointWeights);
+            } else {
+                long[] weights = new long[edgeCount];
+                buffer.asLongBuffer().get(weights);
+                buffer.position(buffer.position() + Long.BYTES * edgeCount);
+                graph = new CompactGraph(vertexNames, offsets, targets, weights, weightScale);
+            }
+
+            if (buffer.get() != 0) {
+                checkRemaining(buffer, 2L * Double.BYTES * vertexCount);
+                double[] xs = new double[vertexCount];
+                double[] ys = new double[vertexCount];
+                for (int v = 0; v < vertexCount; v++) {
+                    xs[v] = buffer.getDouble();
+                    ys[v] = buffer.getDouble();
+                }
+                graph.setCoordinates(new Coordinates(xs, ys));
+            }
+            return graph;
+        } catch (BufferUnderflowException | IllegalArgumentException ex) {
+            throw new IOException("Compact graph data is truncated", ex);
+        }
+    }
+
+    // arrays are allocated only after the data they are read from is known to be there, so that a damaged length
+    // cannot make the reader allocate more than the size of the data
+    private static void checkRemaining(ByteBuffer buffer, long bytes) throws IOException {
+        if (bytes < 0 || bytes > buffer.remaining()) {
+            throw new IOException("Compact graph data is truncated");
+        }
+    }
+
+    // a search trusts offsets and targets completely, so a damaged file must not get that far
+    private static void checkStructure(int[] offsets, int[] targets) throws IOException {
+        int vertexCount = offsets.length - 1;
+        if (offsets[0] != 0 || offsets[vertexCount] != targets.length) {
+            throw new IOException("Offsets of compact graph do not match its edges");
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            if (offsets[v] > offsets[v + 1]) {
+                throw new IOException("Offsets of compact graph are not ordered");
+            }
+        }
+        for (int target : targets) {
+            if (target < 0 || target >= vertexCount) {
+                throw new IOException("Compact graph has an edge to a vertex which does not exist");
+            }
+        }
+    }
+
+    // converts a sum of weights (fixed-point, or bits of a double) back into a decimal, without trailing zeros
+    // in its fractional part. A double is converted to the shortest decimal which reads back as the same double
+    public BigDecimal toBigDecimal(long sumOfWeights) {
+        BigDecimal value;
+        if (floatingPointWeights != null) {
+            value = BigDecimal.valueOf(Double.longBitsToDouble(sumOfWeights));
+        } else {
+            value = BigDecimal.valueOf(sumOfWeights, weightScale);
+        }
+        if (value.scale() > 0) {
+            value = value.stripTrailingZeros();
+            if (value.scale() < 0) {
+                value = value.setScale(0);
+            }
+        }
+        return value;
+    }
+
+    // converts a non-negative decimal into the largest sum of weights which is not greater than it, so that a search
+    // bounded by the result never goes past the decimal. Sums too large for the graph are clamped below UNREACHABLE
+    public long toSumOfWeights(BigDecimal value) {
+        if (floatingPointWeights != null) {
+            double bound = value.doubleValue();
+            if (Double.isFinite(bound) && new BigDecimal(bound).compareTo(value) > 0) {
+                bound = Math.nextDown(bound);
+            }
+            return Double.doubleToRawLongBits(bound);
+        }
+        BigDecimal scaled = value.movePointRight(weightScale).setScale(0, RoundingMode.FLOOR);
+        if (scaled.compareTo(BigDecimal.valueOf(ShortestPathTree.UNREACHABLE - 1)) >= 0) {
+            return ShortestPathTree.UNREACHABLE - 1;
+        }
+        return scaled.longValueExact();
+    }
+
+    public long estimateSizeInBytes() {
+        long bytes = estimateEdgesSizeInBytes();
+        if (coordinates != null) {
+            bytes += coordinates.estimateSizeInBytes();
+        }
+        for (String name : vertexNames) {
+            // name itself, its slot in the array and an entry of vertexIds map
+            bytes += 40 + name.length() + 8 + 64;
+        }
+        return bytes;
+    }
+
+    // structures attached to the graph after it was built, which only grow it from then on
+    public long estimateAttachedSizeInBytes() {
+        long bytes = 0;
+        CompactGraph reverse = this.reverse;
+        if (reverse != null) {
+            // vertex names and ids are shared
+            bytes += reverse.estimateEdgesSizeInBytes();
+        }
+        AllPairsIndex allPairsIndex = this.allPairsIndex;
+        if (allPairsIndex != null) {
+            bytes += allPairsIndex.estimateSizeInBytes();
+        }
+        ContractionHierarchy contractionHierarchy = this.contractionHierarchy;
+        if (contractionHierarchy != null) {
+            bytes += contractionHierarchy.estimateSizeInBytes();
+        }
+        Landmarks landmarks = this.landmarks;
+        if (landmarks != null) {
+            bytes += landmarks.estimateSizeInBytes();
+        }
+        SourceTrees sourceTrees = this.sourceTrees;
+        if (sourceTrees != null) {
+            bytes += sourceTrees.estimateSizeInBytes();
+        }
+        return bytes;
+    }
+
+    private long estimateEdgesSizeInBytes() {
+        return 4L * offsets.length + 12L * targets.length;
+    }
+}
@@ -0,0 +1,225 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Prepares contraction hierarchies of large graphs in the background, as soon as a graph version is searched for
+// the first time. A hierarchy is written to a file in the configured directory, so that after a restart it's read
+// instead of being built again. Files are named after the graph and the fingerprint of its version, and files
+// of older versions of a graph are deleted once a hierarchy of its newer version is ready.
+@Component
+public class ContractionHierarchies implements MeterBinder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContractionHierarchies.class);
+
+    private static final String FILE_EXTENSION = ".ch";
+
+    private boolean enabled;
+    private int minVertexCount;
+    private Path directory;
+    private ExecutorService buildExecutor;
+
+    // graphs are weak keys, so a graph dropped by the cache is forgotten together with its hierarchy
+    private Map<CompactGraph, Boolean> preparedGraphs = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private AtomicLong finishedBuilds = new AtomicLong();
+    private AtomicLong buildNanos = new AtomicLong();
+    private AtomicLong loads = new AtomicLong();
+    private AtomicLong failures = new AtomicLong();
+
+    @Autowired
+    public ContractionHierarchies(@Value("${precompute.contraction-hierarchy.enabled:false}") boolean enabled,
+                                  @Value("${precompute.contraction-hierarchy.min-vertex-count:10000}") int minVertexCount,
+                                  @Value("${precompute.contraction-hierarchy.directory:${java.io.tmpdir}/graph-path-finder/contraction-hierarchies}") String directory,
+                                  @Value("${precompute.contraction-hierarchy.threads:1}") int threads) {
+        this.enabled = enabled;
+        this.minVertexCount = minVertexCount;
+        this.directory = Paths.get(directory);
+        // building a hierarchy takes a single core for a long time, so by default hierarchies are built one by one
+        this.buildExecutor = Executors.newFixedThreadPool(Math.max(1, threads), new CustomizableThreadFactory("contraction-hierarchy-"));
+    }
+
+    // starts preparing a hierarchy of the graph, unless it's already prepared or being prepared
+    public void prepare(String graphId, CompactGraph graph) {
+        if (!enabled || graph.getVertexCount() < minVertexCount || graph.isFloatingPoint()
+                || graph.getContractionHierarchy() != null || preparedGraphs.putIfAbsent(graph, Boolean.TRUE) != null) {
+            return;
+        }
+
+        try {
+            buildExecutor.execute(() -> prepareNow(graphId, graph));
+        } catch (RejectedExecutionException ex) {
+            // only happens while the application shuts down
+            LOGGER.debug("Contraction hierarchy not prepared, because the application is shutting down");
+        }
+    }
+
+    void prepareNow(String graphId, CompactGraph graph) {
+        long fingerprint = ContractionHierarchy.fingerprint(graph);
+        String filePrefix = toFilePrefix(graphId);
+        Path file = directory.resolve(String.format("%s%016x%s", filePrefix, fingerprint, FILE_EXTENSION));
+
+        ContractionHierarchy hierarchy = read(graphId, graph, file);
+        if (hierarchy == null) {
+            hierarchy = build(graphId, graph);
+            if (hierarchy == null) {
+                return;
+            }
+            write(graphId, hierarchy, file);
+        }
+        graph.setContractionHierarchy(hierarchy);
+        deleteOtherVersions(filePrefix, file);
+    }
+
+    private ContractionHierarchy read(String graphId, CompactGraph graph, Path file) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            ContractionHierarchy hierarchy = ContractionHierarchy.readFrom(in, graph);
+            loads.incrementAndGet();
+            LOGGER.debug(String.format("Contraction hierarchy of graph with ID %s read from %s", graphId, file));
+            return hierarchy;
+        } catch (IOException | RuntimeException ex) {
+            // a file left by a crash in the middle of writing, by a different version of this service, or damaged
+            // on disk. It's deleted, so that it's not read again if the hierarchy cannot be built either
+            LOGGER.warn(String.format("Could not read contraction hierarchy of graph with ID %s from %s: %s", graphId, file, ex));
+            deleteUnreadable(file);
+            return null;
+        }
+    }
+
+    private void deleteUnreadable(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            LOGGER.debug(String.format("Could not delete contraction hierarchy %s: %s", file, ex));
+        }
+    }
+
+    private ContractionHierarchy build(String graphId, CompactGraph graph) {
+        long start = System.nanoTime();
+        try {
+            ContractionHierarchy hierarchy = ContractionHierarchy.build(graph);
+            long nanos = System.nanoTime() - start;
+            buildNanos.addAndGet(nanos);
+            finishedBuilds.incrementAndGet();
+            LOGGER.debug(String.format("Contraction hierarchy of graph with ID %s built in %d ms (%d bytes)",
+                    graphId, TimeUnit.NANOSECONDS.toMillis(nanos), hierarchy.estimateSizeInBytes()));
+            return hierarchy;
+        } catch (RuntimeException | OutOfMemoryError ex) {
+            // searches of this graph version keep using plain Dijkstra's algorithm
+            failures.incrementAndGet();
+            LOGGER.warn(String.format("Could not build contraction hierarchy of graph with ID %s: %s", graphId, ex));
+            return null;
+        }
+    }
+
+    // the hierarchy is written to a temporary file first, so that a file with the final name is always complete
+    private void write(String graphId, ContractionHierarchy hierarchy, Path file) {
+        try {
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                hierarchy.writeTo(out);
+            } catch (IOException ex) {
+                Files.deleteIfExists(temporary);
+                throw ex;
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            // the hierarchy is still used, it only has to be built again after a restart
+            LOGGER.warn(String.format("Could not write contraction hierarchy of graph with ID %s to %s: %s", graphId, file, ex));
+        }
+    }
+
+    private void deleteOtherVersions(String filePrefix, Path currentFile) {
+        // the fingerprint always has 16 digits, so the pattern does not match files of graphs whose ids start with this id
+        String pattern = filePrefix + "????????????????" + FILE_EXTENSION;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, pattern)) {
+            for (Path file : files) {
+                if (!file.equals(currentFile)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException ex) {
+            LOGGER.debug(String.format("Could not delete old contraction hierarchies: %s", ex));
+        }
+    }
+
+    // graph ids come from requests, so only characters which are safe in a file name are kept, followed by
+    // a hash of the whole id, so that ids which differ only in unsafe characters still get files of their own.
+    // Other files kept per graph are named the same way
+    public static String toFilePrefix(String graphId) {
+        String safeId = graphId.replaceAll("[^A-Za-z0-9_-]", "_");
+        return String.format("%s-%08x-", safeId, graphId.hashCode());
+    }
+
+    private List<ContractionHierarchy> getLiveHierarchies() {
+        List<CompactGraph> graphs;
+        synchronized (preparedGraphs) {
+            graphs = new ArrayList<>(preparedGraphs.keySet());
+        }
+        List<ContractionHierarchy> hierarchies = new ArrayList<>();
+        for (CompactGraph graph : graphs) {
+            ContractionHierarchy hierarchy = graph.getContractionHierarchy();
+            if (hierarchy != null) {
+                hierarchies.add(hierarchy);
+            }
+        }
+        return hierarchies;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("precompute.contraction-hierarchy.memory", this,
+                c -> c.getLiveHierarchies().stream().mapToLong(ContractionHierarchy::estimateSizeInBytes).sum())
+                .description("Estimated size of contraction hierarchies of graphs which are still cached")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionTimer.builder("precompute.contraction-hierarchy.builds", this,
+                c -> c.finishedBuilds.get(), c -> c.buildNanos.get(), TimeUnit.NANOSECONDS)
+                .register(registry);
+        FunctionCounter.builder("precompute.contraction-hierarchy.loads", loads, AtomicLong::get)
+                .description("Contraction hierarchies read from disk instead of being built")
+                .register(registry);
+        FunctionCounter.builder("precompute.contraction-hierarchy.failures", failures, AtomicLong::get)
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        buildExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,523 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+
+// Contraction hierarchy of a CompactGraph with fixed-point weights. Every vertex has a rank (the order in which it
+// was contracted), and every edge of the graph extended with shortcuts is kept at its lower-ranked end - either
+// as an upward edge (for the forward search) or as a downward edge (for the backward search). A query searches
+// upwards from both of its ends and the shortest path goes through the vertex where the sum of both distances
+// is the lowest. A shortcut remembers the vertex it was added for, which is how it's unpacked into edges.
+public class ContractionHierarchy {
+
+    static final int NO_MIDDLE = -1;
+
+    private static final int FORMAT_MAGIC = 0x43480001;
+    private static final int HEAP_ARITY = 4;
+    // idle query states kept by a hierarchy, enough for every core to run a query at the same time. States of
+    // queries running above that are dropped after the query
+    private static final int MAX_IDLE_QUERY_STATES = Runtime.getRuntime().availableProcessors();
+    private static final long QUERY_STATE_OVERHEAD_IN_BYTES = 200;
+
+    // state of a single query, reused by later queries. A query settles only a tiny part of the graph, so clearing
+    // arrays of the size of the graph for every query would take longer than the query
+    private static class QueryState {
+        private long[] forwardDistances;
+        private long[] backwardDistances;
+        private int[] forwardParents;
+        private int[] forwardEdges;
+        private int[] backwardParents;
+        private int[] backwardEdges;
+        private DaryHeap forwardQueue;
+        private DaryHeap backwardQueue;
+        private int[] touched;
+        private int touchedCount;
+
+        QueryState(int vertexCount) {
+            forwardDistances = new long[vertexCount];
+            backwardDistances = new long[vertexCount];
+            Arrays.fill(forwardDistances, ShortestPathTree.UNREACHABLE);
+            Arrays.fill(backwardDistances, ShortestPathTree.UNREACHABLE);
+            forwardParents = new int[vertexCount];
+            forwardEdges = new int[vertexCount];
+            backwardParents = new int[vertexCount];
+            backwardEdges = new int[vertexCount];
+            forwardQueue = new DaryHeap(HEAP_ARITY, vertexCount);
+            backwardQueue = new DaryHeap(HEAP_ARITY, vertexCount);
+            touched = new int[vertexCount];
+        }
+
+        void touch(int vertex) {
+            if (forwardDistances[vertex] == ShortestPathTree.UNREACHABLE && backwardDistances[vertex] == ShortestPathTree.UNREACHABLE) {
+                touched[touchedCount++] = vertex;
+            }
+        }
+
+        void reset() {
+            for (int i = 0; i < touchedCount; i++) {
+                forwardDistances[touched[i]] = ShortestPathTree.UNREACHABLE;
+                backwardDistances[touched[i]] = ShortestPathTree.UNREACHABLE;
+            }
+            touchedCount = 0;
+            forwardQueue.clear();
+            backwardQueue.clear();
+        }
+
+        long estimateSizeInBytes() {
+            return QUERY_STATE_OVERHEAD_IN_BYTES + 36L * touched.length
+                    + forwardQueue.estimateSizeInBytes() + backwardQueue.estimateSizeInBytes();
+        }
+    }
+
+    private long fingerprint;
+    private int[] ranks;
+    private int[] upwardOffsets;
+    private int[] upwardTargets;
+    private long[] upwardWeights;
+    private int[] upwardMiddles;
+    private int[] downwardOffsets;
+    private int[] downwardSources;
+    private long[] downwardWeights;
+    private int[] downwardMiddles;
+
+    // states belong to the hierarchy, so they are freed together with it when its graph version is dropped
+    private ArrayBlockingQueue<QueryState> idleQueryStates = new ArrayBlockingQueue<>(MAX_IDLE_QUERY_STATES);
+
+    ContractionHierarchy(long fingerprint, int[] ranks,
+                         int[] upwardOffsets, int[] upwardTargets, long[] upwardWeights, int[] upwardMiddles,
+                         int[] downwardOffsets, int[] downwardSources, long[] downwardWeights, int[] downwardMiddles) {
+        this.fingerprint = fingerprint;
+        this.ranks = ranks;
+        this.upwardOffsets = upwardOffsets;
+        this.upwardTargets = upwardTargets;
+        this.upwardWeights = upwardWeights;
+        this.upwardMiddles = upwardMiddles;
+        this.downwardOffsets = downwardOffsets;
+        this.downwardSources = downwardSources;
+        this.downwardWeights = downwardWeights;
+        this.downwardMiddles = downwardMiddles;
+    }
+
+    // throws IllegalArgumentException if the graph has floating-point weights, and IllegalStateException
+    // if the graph needs too many shortcuts to be worth contracting
+    public static ContractionHierarchy build(CompactGraph graph) {
+        if (graph.isFloatingPoint()) {
+            throw new IllegalArgumentException("Contraction hierarchies need fixed-point weights");
+        }
+        return new ContractionHierarchyBuilder(graph).build();
+    }
+
+    // identifies the graph a hierarchy was built for, so that a hierarchy read from disk is never used
+    // with a different graph (or a different version of the same graph)
+    public static long fingerprint(CompactGraph graph) {
+        long hash = 1125899906842597L;
+        hash = 31 * hash + graph.getVertexCount();
+        hash = 31 * hash + graph.getWeightScale();
+        for (int v = 0; v < graph.getVertexCount(); v++) {
+            hash = 31 * hash + graph.getVertexName(v).hashCode();
+        }
+        for (int offset : graph.getOffsets()) {
+            hash = 31 * hash + offset;
+        }
+        for (int target : graph.getTargets()) {
+            hash = 31 * hash + target;
+        }
+        long[] weights = graph.getWeights();
+        if (weights != null) {
+            for (long weight : weights) {
+                hash = 31 * hash + weight;
+            }
+        }
+        return hash;
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    public long estimateSizeInBytes() {
+        return 4L * ranks.length + 4L * (upwardOffsets.length + downwardOffsets.length)
+                + 16L * (upwardTargets.length + downwardSources.length) + estimateQueryStatesSizeInBytes();
+    }
+
+    private long estimateQueryStatesSizeInBytes() {
+        long bytes = 0;
+        for (QueryState state : idleQueryStates) {
+            bytes += state.estimateSizeInBytes();
+        }
+        return bytes;
+    }
+
+    // finds the shortest path between two different vertexes. Just like with a bidirectional search, the returned
+    // tree contains a distance and a full chain of predecessors only for the target and vertexes on its path
+    ShortestPathTree solve(CompactGraph graph, int sourceId, int targetId, SearchWork work) {
+        QueryState state = idleQueryStates.poll();
+        if (state == null) {
+            state = new QueryState(ranks.length);
+        }
+        try {
+            return solve(graph, state, sourceId, targetId, work);
+        } finally {
+            state.reset();
+            idleQueryStates.offer(state);
+        }
+    }
+
+    private ShortestPathTree solve(CompactGraph graph, QueryState state, int sourceId, int targetId, SearchWork work) {
+        long[] forwardDistances = state.forwardDistances;
+        long[] backwardDistances = state.backwardDistances;
+        DaryHeap forwardQueue = state.forwardQueue;
+        DaryHeap backwardQueue = state.backwardQueue;
+
+        state.touch(sourceId);
+        forwardDistances[sourceId] = 0;
+        state.forwardParents[sourceId] = ShortestPathTree.NO_PREDECESSOR;
+        forwardQueue.insertOrDecrease(sourceId, 0);
+        work.pushed(forwardQueue.size());
+        state.touch(targetId);
+        backwardDistances[targetId] = 0;
+        state.backwardParents[targetId] = ShortestPathTree.NO_PREDECESSOR;
+        backwardQueue.insertOrDecrease(targetId, 0);
+        work.pushed(forwardQueue.size() + backwardQueue.size());
+
+        long bestDistance = ShortestPathTree.UNREACHABLE;
+        int meetingVertex = ShortestPathTree.NO_PREDECESSOR;
+
+        // upward searches do not settle vertexes in the order of their real distances, so neither of them can stop
+        // at the first meeting, only when its queue has nothing closer than the best path found so far
+        while (true) {
+            boolean forwardActive = !forwardQueue.isEmpty() && forwardQueue.peekMinKey() < bestDistance;
+            boolean backwardActive = !backwardQueue.isEmpty() && backwardQueue.peekMinKey() < bestDistance;
+            if (!forwardActive && !backwardActive) {
+                break;
+            }
+
+            boolean forward = forwardActive && (!backwardActive || forwardQueue.peekMinKey() <= backwardQueue.peekMinKey());
+            int vertex;
+            if (forward) {
+                vertex = forwardQueue.pollMin();
+                relax(state, vertex, upwardOffsets, upwardTargets, upwardWeights,
+                        forwardDistances, state.forwardParents, state.forwardEdges, forwardQueue, work);
+            } else {
+                vertex = backwardQueue.pollMin();
+                relax(state, vertex, downwardOffsets, downwardSources, downwardWeights,
+                        backwardDistances, state.backwardParents, state.backwardEdges, backwardQueue, work);
+            }
+            work.settledCount++;
+            work.peakQueueSize = Math.max(work.peakQueueSize, forwardQueue.size() + backwardQueue.size());
+
+            if (forwardDistances[vertex] != ShortestPathTree.UNREACHABLE && backwardDistances[vertex] != ShortestPathTree.UNREACHABLE) {
+                long candidate = forwardDistances[vertex] + backwardDistances[vertex];
+                if (candidate < bestDistance) {
+                    bestDistance = candidate;
+                    meetingVertex = vertex;
+                }
+            }
+        }
+
+        return createPathTree(graph, state, sourceId, meetingVertex);
+    }
+
+    private static void relax(QueryState state, int vertex, int[] offsets, int[] neighbours, long[] weights,
+                              long[] distances, int[] parents, int[] parentEdges, DaryHeap queue, SearchWork work) {
+        long distance = distances[vertex];
+        work.relaxedEdgeCount += offsets[vertex + 1] - offsets[vertex];
+        for (int edge = offsets[vertex]; edge < offsets[vertex + 1]; edge++) {
+            int neighbour = neighbours[edge];
+            long newDistance = distance + weights[edge];
+            if (newDistance < distances[neighbour]) {
+                state.touch(neighbour);
+                distances[neighbour] = newDistance;
+                parents[neighbour] = vertex;
+                parentEdges[neighbour] = edge;
+                queue.insertOrDecrease(neighbour, newDistance);
+                work.queuePushCount++;
+            }
+        }
+    }
+
+    // unpacks every shortcut on the path found by the query into edges of the graph, and stores the path
+    // in the tree so that it can be read from predecessors of the target
+    private ShortestPathTree createPathTree(CompactGraph graph, QueryState state, int sourceId, int meetingVertex) {
+        int vertexCount = graph.getVertexCount();
+        long[] distances = new long[vertexCount];
+        int[] predecessors = new int[vertexCount];
+        Arrays.fill(distances, ShortestPathTree.UNREACHABLE);
+        Arrays.fill(predecessors, ShortestPathTree.NO_PREDECESSOR);
+
+        if (meetingVertex == ShortestPathTree.NO_PREDECESSOR) {
+            return new ShortestPathTree(graph, sourceId, distances, predecessors, new int[0], 0);
+        }
+
+        PathBuilder path = new PathBuilder(sourceId, distances, predecessors);
+
+        // the forward half is collected from the meeting vertex back to the source, so it's unpacked in reverse
+        int forwardEdgeCount = 0;
+        for (int v = meetingVertex; state.forwardParents[v] != ShortestPathTree.NO_PREDECESSOR; v = state.forwardParents[v]) {
+            forwardEdgeCount++;
+        }
+        int[] forwardEdges = new int[forwardEdgeCount];
+        for (int v = meetingVertex, i = forwardEdgeCount - 1; i >= 0; v = state.forwardParents[v], i--) {
+            forwardEdges[i] = state.forwardEdges[v];
+        }
+        int from = sourceId;
+        for (int edge : forwardEdges) {
+            int to = upwardTargets[edge];
+            unpack(path, from, to, upwardWeights[edge], upwardMiddles[edge]);
+            from = to;
+        }
+        for (int v = meetingVertex; state.backwardParents[v] != ShortestPathTree.NO_PREDECESSOR; v = state.backwardParents[v]) {
+            int edge = state.backwardEdges[v];
+            unpack(path, v, state.backwardParents[v], downwardWeights[edge], downwardMiddles[edge]);
+        }
+
+        return new ShortestPathTree(graph, sourceId, distances, predecessors, path.order, path.size);
+    }
+
+    // vertexes of a path in the order in which they are visited
+    private static class PathBuilder {
+        private long[] distances;
+        private int[] predecessors;
+        private int[] order = new int[16];
+        private int size;
+
+        PathBuilder(int sourceId, long[] distances, int[] predecessors) {
+            this.distances = distances;
+            this.predecessors = predecessors;
+            distances[sourceId] = 0;
+            order[size++] = sourceId;
+        }
+
+        void append(int vertex, long weight) {
+            if (distances[vertex] != ShortestPathTree.UNREACHABLE) {
+                // the path went through the same vertex twice (possible only with zero weight cycles),
+                // so the part of the path between both visits is dropped to keep predecessors acyclic
+                while (order[size - 1] != vertex) {
+                    int dropped = order[--size];
+                    distances[dropped] = ShortestPathTree.UNREACHABLE;
+                    predecessors[dropped] = ShortestPathTree.NO_PREDECESSOR;
+                }
+                return;
+            }
+            int last = order[size - 1];
+            if (size == order.length) {
+                order = Arrays.copyOf(order, size * 2);
+            }
+            distances[vertex] = distances[last] + weight;
+            predecessors[vertex] = last;
+            order[size++] = vertex;
+        }
+    }
+
+    // a shortcut from 'from' to 'to' added for 'middle' stands for an edge from 'from' to 'middle' followed by an edge
+    // from 'middle' to 'to'. The middle vertex was contracted before both of them, so the first edge is a downward
+    // edge of the middle vertex, and the second one is its upward edge. Shortcuts can be nested deeply,
+    // so they are unpacked with a stack instead of recursion
+    private void unpack(PathBuilder path, int from, int to, long weight, int middle) {
+        int[] stack = new int[12];
+        long[] stackWeights = new long[4];
+        stack[0] = from;
+        stack[1] = to;
+        stack[2] = middle;
+        stackWeights[0] = weight;
+        int size = 1;
+
+        while (size > 0) {
+            size--;
+            int edgeFrom = stack[3 * size];
+            int edgeTo = stack[3 * size + 1];
+            int edgeMiddle = stack[3 * size + 2];
+            long edgeWeight = stackWeights[size];
+
+            if (edgeMiddle == NO_MIDDLE) {
+                path.append(edgeTo, edgeWeight);
+                continue;
+            }
+
+            if (3 * (size + 2) > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+                stackWeights = Arrays.copyOf(stackWeights, stackWeights.length * 2);
+            }
+            // the second half is pushed first, so that the first half is unpacked first
+            int up = findEdge(upwardOffsets, upwardTargets, edgeMiddle, edgeTo);
+            stack[3 * size] = edgeMiddle;
+            stack[3 * size + 1] = edgeTo;
+            stack[3 * size + 2] = upwardMiddles[up];
+            stackWeights[size] = upwardWeights[up];
+            size++;
+            int down = findEdge(downwardOffsets, downwardSources, edgeMiddle, edgeFrom);
+            stack[3 * size] = edgeFrom;
+            stack[3 * size + 1] = edgeMiddle;
+            stack[3 * size + 2] = downwardMiddles[down];
+            stackWeights[size] = downwardWeights[down];
+            size++;
+        }
+    }
+
+    private static int findEdge(int[] offsets, int[] neighbours, int vertex, int neighbour) {
+        for (int edge = offsets[vertex]; edge < offsets[vertex + 1]; edge++) {
+            if (neighbours[edge] == neighbour) {
+                return edge;
+            }
+        }
+        throw new IllegalStateException("Contraction hierarchy does not contain an edge of a shortcut");
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_MAGIC);
+        out.writeLong(fingerprint);
+        writeInts(out, ranks);
+        writeInts(out, upwardOffsets);
+        writeInts(out, upwardTargets);
+        writeLongs(out, upwardWeights);
+        writeInts(out, upwardMiddles);
+        writeInts(out, downwardOffsets);
+        writeInts(out, downwardSources);
+        writeLongs(out, downwardWeights);
+        writeInts(out, downwardMiddles);
+    }
+
+    // throws IOException if the data is not a hierarchy of the given graph, or if it's damaged. Every array is checked
+    // before it's used, so that a damaged file can neither make the reader allocate huge arrays, nor make a query
+    // fail (or never end) long after the hierarchy was read
+    public static ContractionHierarchy readFrom(DataInputStream in, CompactGraph graph) throws IOException {
+        if (in.readInt() != FORMAT_MAGIC) {
+            throw new IOException("Data is not a contraction hierarchy");
+        }
+        long fingerprint = in.readLong();
+        if (fingerprint != fingerprint(graph)) {
+            throw new IOException("Contraction hierarchy was built for a different graph");
+        }
+        int vertexCount = graph.getVertexCount();
+        int[] ranks = readInts(in, vertexCount);
+        if (ranks.length != vertexCount) {
+            throw new IOException("Contraction hierarchy was built for a different graph");
+        }
+        // contraction gives up long before a vertex adds this many edges over the limit
+        int maxEdgeCount = (int) Math.min(Integer.MAX_VALUE,
+                2L * Math.max(graph.getEdgeCount(), 1) * ContractionHierarchyBuilder.MAX_EDGES_PER_ORIGINAL_EDGE);
+        int[] upwardOffsets = readInts(in, vertexCount + 1);
+        int[] upwardTargets = readInts(in, maxEdgeCount);
+        long[] upwardWeights = readLongs(in, upwardTargets.length);
+        int[] upwardMiddles = readInts(in, upwardTargets.length);
+        int[] downwardOffsets = readInts(in, vertexCount + 1);
+        int[] downwardSources = readInts(in, maxEdgeCount);
+        long[] downwardWeights = readLongs(in, downwardSources.length);
+        int[] downwardMiddles = readInts(in, downwardSources.length);
+
+        ContractionHierarchy hierarchy = new ContractionHierarchy(fingerprint, ranks,
+                upwardOffsets, upwardTargets, upwardWeights, upwardMiddles,
+                downwardOffsets, downwardSources, downwardWeights, downwardMiddles);
+        hierarchy.checkStructure();
+        return hierarchy;
+    }
+
+    private void checkStructure() throws IOException {
+        int vertexCount = ranks.length;
+        boolean[] ranked = new boolean[vertexCount];
+        for (int rank : ranks) {
+            if (rank < 0 || rank >= vertexCount || ranked[rank]) {
+                throw new IOException("Ranks of contraction hierarchy are not an order of its vertexes");
+            }
+            ranked[rank] = true;
+        }
+        checkEdges(upwardOffsets, upwardTargets, upwardWeights, upwardMiddles);
+        checkEdges(downwardOffsets, downwardSources, downwardWeights, downwardMiddles);
+
+        // the middle vertex of a shortcut is ranked lower than both of its ends, so the edges it's unpacked into
+        // always have lower ranked middle vertexes than the shortcut, which is why unpacking ends
+        for (int v = 0; v < vertexCount; v++) {
+            for (int edge = upwardOffsets[v]; edge < upwardOffsets[v + 1]; edge++) {
+                checkShortcut(v, upwardTargets[edge], upwardMiddles[edge]);
+            }
+            for (int edge = downwardOffsets[v]; edge < downwardOffsets[v + 1]; edge++) {
+                checkShortcut(downwardSources[edge], v, downwardMiddles[edge]);
+            }
+        }
+    }
+
+    // edges are kept at their lower ranked ends, so searches which follow them only ever go upwards and always end
+    private void checkEdges(int[] offsets, int[] neighbours, long[] weights, int[] middles) throws IOException {
+        int vertexCount = ranks.length;
+        if (offsets.length != vertexCount + 1 || offsets[0] != 0 || offsets[vertexCount] != neighbours.length
+                || weights.length != neighbours.length || middles.length != neighbours.length) {
+            throw new IOException("Offsets of contraction hierarchy do not match its edges");
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            if (offsets[v] > offsets[v + 1]) {
+                throw new IOException("Offsets of contraction hierarchy are not ordered");
+            }
+            for (int edge = offsets[v]; edge < offsets[v + 1]; edge++) {
+                int neighbour = neighbours[edge];
+                int middle = middles[edge];
+                if (neighbour < 0 || neighbour >= vertexCount || (middle != NO_MIDDLE && (middle < 0 || middle >= vertexCount))) {
+                    throw new IOException("Contraction hierarchy has an edge of a vertex which does not exist");
+                }
+                if (ranks[neighbour] <= ranks[v] || weights[edge] < 0) {
+                    throw new IOException("Contraction hierarchy has an edge which does not go upwards");
+                }
+            }
+        }
+    }
+
+    private void checkShortcut(int from, int to, int middle) throws IOException {
+        if (middle == NO_MIDDLE) {
+            return;
+        }
+        if (ranks[middle] >= ranks[from] || ranks[middle] >= ranks[to]
+                || !hasEdge(downwardOffsets, downwardSources, middle, from) || !hasEdge(upwardOffsets, upwardTargets, middle, to)) {
+            throw new IOException("Contraction hierarchy has a shortcut which cannot be unpacked");
+        }
+    }
+
+    private static boolean hasEdge(int[] offsets, int[] neighbours, int vertex, int neighbour) {
+        for (int edge = offsets[vertex]; edge < offsets[vertex + 1]; edge++) {
+            if (neighbours[edge] == neighbour) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+        out.writeInt(values.length);
+        for (long value : values) {
+            out.writeLong(value);
+        }
+    }
+
+    // lengths are checked before arrays are allocated
+    private static int readLength(DataInputStream in, int maxLength) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > maxLength) {
+            throw new IOException(String.format("Contraction hierarchy has an array of %d elements, expected at most %d", length, maxLength));
+        }
+        return length;
+    }
+
+    private static int[] readInts(DataInputStream in, int maxLength) throws IOException {
+        int[] values = new int[readLength(in, maxLength)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    private static long[] readLongs(DataInputStream in, int maxLength) throws IOException {
+        long[] values = new long[readLength(in, maxLength)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readLong();
+        }
+        return values;
+    }
+}
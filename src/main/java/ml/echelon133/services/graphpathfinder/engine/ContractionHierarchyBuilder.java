@@ -0,0 +1,306 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+import java.util.Arrays;
+
+// Contracts vertexes of a graph one by one, from the least to the most important one. Contracting a vertex
+// removes it from the remaining graph, and adds a shortcut between every pair of its remaining neighbours
+// whose shortest path led through it. The next vertex to contract is the one whose contraction changes
+// the remaining graph the least (edge difference), preferring vertexes with few contracted neighbours and
+// low in the hierarchy built so far, so that contracted vertexes are spread evenly over the graph.
+class ContractionHierarchyBuilder {
+
+    // a witness search only has to prove that a shortcut is not needed, so it can give up early,
+    // at the price of adding a few shortcuts which are not strictly necessary
+    private static final int WITNESS_SETTLED_LIMIT = 100;
+    // priorities are only estimates and are computed many times for every vertex, so their searches give up sooner
+    private static final int PRIORITY_WITNESS_SETTLED_LIMIT = 10;
+
+    // graphs which are not road-network-like (i.e. scale-free ones) need so many shortcuts that their hierarchy
+    // would be larger and slower than the graph itself, so contraction gives up on them
+    static final int MAX_EDGES_PER_ORIGINAL_EDGE = 8;
+    // ...and so much work, that contraction of such graphs would take hours before running out of edges
+    static final int MAX_WITNESS_SETTLED_PER_ORIGINAL_EDGE = 500;
+
+    private static final int HEAP_ARITY = 4;
+
+    // edges of a single vertex, which only keep the lightest of all edges between the same pair of vertexes
+    private static class Edges {
+        private int[] vertexes = new int[4];
+        private long[] weights = new long[4];
+        private int[] middles = new int[4];
+        private int size;
+
+        // returns true if there was no edge to that vertex yet
+        boolean addOrImprove(int vertex, long weight, int middle) {
+            for (int i = 0; i < size; i++) {
+                if (vertexes[i] == vertex) {
+                    if (weight < weights[i]) {
+                        weights[i] = weight;
+                        middles[i] = middle;
+                    }
+                    return false;
+                }
+            }
+            if (size == vertexes.length) {
+                vertexes = Arrays.copyOf(vertexes, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+                middles = Arrays.copyOf(middles, size * 2);
+            }
+            vertexes[size] = vertex;
+            weights[size] = weight;
+            middles[size] = middle;
+            size++;
+            return true;
+        }
+
+        void remove(int vertex) {
+            for (int i = 0; i < size; i++) {
+                if (vertexes[i] == vertex) {
+                    size--;
+                    vertexes[i] = vertexes[size];
+                    weights[i] = weights[size];
+                    middles[i] = middles[size];
+                    return;
+                }
+            }
+        }
+    }
+
+    private CompactGraph graph;
+    private int vertexCount;
+    // edges between vertexes which are not contracted yet. Once a vertex is contracted, its edges are removed from
+    // lists of its neighbours, and its own lists are not changed anymore - they become its upward and downward edges
+    private Edges[] outgoing;
+    private Edges[] incoming;
+    private int[] contractedNeighbours;
+    private int[] ranks;
+    private int[] levels;
+    private long edgeCount;
+    private long maxEdgeCount;
+    private long witnessSettledCount;
+    private long maxWitnessSettledCount;
+
+    // state of witness searches, reused by all of them
+    private long[] witnessDistances;
+    private int[] touched;
+    private int touchedCount;
+    private DaryHeap witnessQueue;
+    // vertexes marked with the number of the current witness search are the ones it looks for
+    private int[] witnessTargets;
+    private int witnessSearchCount;
+
+    ContractionHierarchyBuilder(CompactGraph graph) {
+        this.graph = graph;
+        this.vertexCount = graph.getVertexCount();
+        this.outgoing = new Edges[vertexCount];
+        this.incoming = new Edges[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            outgoing[v] = new Edges();
+            incoming[v] = new Edges();
+        }
+        this.contractedNeighbours = new int[vertexCount];
+        this.ranks = new int[vertexCount];
+        this.levels = new int[vertexCount];
+
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        long[] weights = graph.getWeights();
+        for (int source = 0; source < vertexCount; source++) {
+            for (int edge = offsets[source]; edge < offsets[source + 1]; edge++) {
+                // a loop is never a part of a shortest path
+                if (targets[edge] != source) {
+                    addEdge(source, targets[edge], weights[edge], ContractionHierarchy.NO_MIDDLE);
+                }
+            }
+        }
+        this.maxEdgeCount = Math.max(edgeCount, 1) * MAX_EDGES_PER_ORIGINAL_EDGE;
+        this.maxWitnessSettledCount = Math.max(edgeCount, 1) * MAX_WITNESS_SETTLED_PER_ORIGINAL_EDGE;
+
+        this.witnessDistances = new long[vertexCount];
+        Arrays.fill(witnessDistances, ShortestPathTree.UNREACHABLE);
+        this.touched = new int[vertexCount];
+        this.witnessQueue = new DaryHeap(HEAP_ARITY, vertexCount);
+        this.witnessTargets = new int[vertexCount];
+    }
+
+    private void addEdge(int source, int target, long weight, int middle) {
+        incoming[target].addOrImprove(source, weight, middle);
+        if (outgoing[source].addOrImprove(target, weight, middle)) {
+            edgeCount++;
+        }
+    }
+
+    // throws IllegalStateException if the graph needs too many shortcuts or too much work
+    ContractionHierarchy build() {
+        DaryHeap order = new DaryHeap(HEAP_ARITY, vertexCount);
+        for (int v = 0; v < vertexCount; v++) {
+            order.insertOrDecrease(v, computePriority(v));
+        }
+
+        int rank = 0;
+        while (!order.isEmpty()) {
+            int vertex = order.pollMin();
+            // priorities change when neighbours of a vertex are contracted, and instead of updating them right away,
+            // a stale priority is fixed when its vertex reaches the top. The vertex goes back to the queue if it's
+            // not the least important one anymore
+            long priority = computePriority(vertex);
+            if (!order.isEmpty() && priority > order.peekMinKey()) {
+                order.insertOrDecrease(vertex, priority);
+                continue;
+            }
+
+            processShortcuts(vertex, true);
+            ranks[vertex] = rank++;
+            if (edgeCount > maxEdgeCount) {
+                throw new IllegalStateException(String.format(
+                        "Contraction needs more than %d edges per edge of the graph", MAX_EDGES_PER_ORIGINAL_EDGE));
+            }
+            if (witnessSettledCount > maxWitnessSettledCount) {
+                throw new IllegalStateException(String.format(
+                        "Contraction needs more than %d witness search steps per edge of the graph", MAX_WITNESS_SETTLED_PER_ORIGINAL_EDGE));
+            }
+
+            Edges out = outgoing[vertex];
+            for (int i = 0; i < out.size; i++) {
+                incoming[out.vertexes[i]].remove(vertex);
+            }
+            Edges in = incoming[vertex];
+            for (int i = 0; i < in.size; i++) {
+                outgoing[in.vertexes[i]].remove(vertex);
+            }
+            updateNeighbours(vertex, out);
+            updateNeighbours(vertex, in);
+        }
+
+        return createHierarchy();
+    }
+
+    private void updateNeighbours(int contractedVertex, Edges edges) {
+        for (int i = 0; i < edges.size; i++) {
+            int neighbour = edges.vertexes[i];
+            contractedNeighbours[neighbour]++;
+            levels[neighbour] = Math.max(levels[neighbour], levels[contractedVertex] + 1);
+        }
+    }
+
+    private long computePriority(int vertex) {
+        int removedEdges = outgoing[vertex].size + incoming[vertex].size;
+        return 2L * processShortcuts(vertex, false) - removedEdges + contractedNeighbours[vertex] + levels[vertex];
+    }
+
+    // returns the number of shortcuts which contraction of the vertex needs, and adds them if told to
+    private int processShortcuts(int vertex, boolean add) {
+        Edges in = incoming[vertex];
+        Edges out = outgoing[vertex];
+        int shortcuts = 0;
+
+        for (int i = 0; i < in.size; i++) {
+            int source = in.vertexes[i];
+            witnessSearchCount++;
+            int targetCount = 0;
+            long maxOutWeight = -1;
+            for (int j = 0; j < out.size; j++) {
+                int target = out.vertexes[j];
+                if (target != source) {
+                    maxOutWeight = Math.max(maxOutWeight, out.weights[j]);
+                    witnessTargets[target] = witnessSearchCount;
+                    targetCount++;
+                }
+            }
+            if (targetCount == 0) {
+                continue;
+            }
+
+            long inWeight = in.weights[i];
+            searchWitnesses(source, vertex, targetCount, inWeight + maxOutWeight,
+                    add ? WITNESS_SETTLED_LIMIT : PRIORITY_WITNESS_SETTLED_LIMIT);
+            for (int j = 0; j < out.size; j++) {
+                int target = out.vertexes[j];
+                if (target == source) {
+                    continue;
+                }
+                long viaVertex = inWeight + out.weights[j];
+                if (witnessDistances[target] > viaVertex) {
+                    shortcuts++;
+                    if (add) {
+                        addEdge(source, target, viaVertex, vertex);
+                    }
+                }
+            }
+        }
+        return shortcuts;
+    }
+
+    // Dijkstra's search over vertexes which are not contracted yet, which avoids the given vertex. It stops once
+    // all of its targets are settled, or at the given distance, because a longer path cannot make a shortcut unnecessary
+    private void searchWitnesses(int source, int avoidedVertex, int targetCount, long maxDistance, int settledLimit) {
+        for (int i = 0; i < touchedCount; i++) {
+            witnessDistances[touched[i]] = ShortestPathTree.UNREACHABLE;
+        }
+        touchedCount = 0;
+        witnessQueue.clear();
+
+        witnessDistances[source] = 0;
+        touched[touchedCount++] = source;
+        witnessQueue.insertOrDecrease(source, 0);
+
+        int settled = 0;
+        while (!witnessQueue.isEmpty() && witnessQueue.peekMinKey() <= maxDistance && settled < settledLimit) {
+            int vertex = witnessQueue.pollMin();
+            long distance = witnessDistances[vertex];
+            settled++;
+            witnessSettledCount++;
+            if (witnessTargets[vertex] == witnessSearchCount && --targetCount == 0) {
+                break;
+            }
+
+            Edges out = outgoing[vertex];
+            for (int i = 0; i < out.size; i++) {
+                int target = out.vertexes[i];
+                if (target == avoidedVertex) {
+                    continue;
+                }
+                long newDistance = distance + out.weights[i];
+                if (newDistance < witnessDistances[target]) {
+                    if (witnessDistances[target] == ShortestPathTree.UNREACHABLE) {
+                        touched[touchedCount++] = target;
+                    }
+                    witnessDistances[target] = newDistance;
+                    witnessQueue.insertOrDecrease(target, newDistance);
+                }
+            }
+        }
+    }
+
+    // every edge of the contracted graph goes up the hierarchy either from its source or from its target, and is
+    // kept at its lower end, so that both searches of a query only ever look at edges of the vertex they settle
+    private ContractionHierarchy createHierarchy() {
+        int[] upwardOffsets = new int[vertexCount + 1];
+        int[] downwardOffsets = new int[vertexCount + 1];
+        for (int v = 0; v < vertexCount; v++) {
+            upwardOffsets[v + 1] = upwardOffsets[v] + outgoing[v].size;
+            downwardOffsets[v + 1] = downwardOffsets[v] + incoming[v].size;
+        }
+
+        int[] upwardTargets = new int[upwardOffsets[vertexCount]];
+        long[] upwardWeights = new long[upwardTargets.length];
+        int[] upwardMiddles = new int[upwardTargets.length];
+        int[] downwardSources = new int[downwardOffsets[vertexCount]];
+        long[] downwardWeights = new long[downwardSources.length];
+        int[] downwardMiddles = new int[downwardSources.length];
+        for (int v = 0; v < vertexCount; v++) {
+            Edges out = outgoing[v];
+            System.arraycopy(out.vertexes, 0, upwardTargets, upwardOffsets[v], out.size);
+            System.arraycopy(out.weights, 0, upwardWeights, upwardOffsets[v], out.size);
+            System.arraycopy(out.middles, 0, upwardMiddles, upwardOffsets[v], out.size);
+            Edges in = incoming[v];
+            System.arraycopy(in.vertexes, 0, downwardSources, downwardOffsets[v], in.size);
+            System.arraycopy(in.weights, 0, downwardWeights, downwardOffsets[v], in.size);
+            System.arraycopy(in.middles, 0, downwardMiddles, downwardOffsets[v], in.size);
+        }
+
+        return new ContractionHierarchy(ContractionHierarchy.fingerprint(graph), ranks,
+                upwardOffsets, upwardTargets, upwardWeights, upwardMiddles,
+                downwardOffsets, downwardSources, downwardWeights, downwardMiddles);
+    }
+}
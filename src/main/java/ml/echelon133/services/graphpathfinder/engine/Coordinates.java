@@ -0,0 +1,84 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Coordinates of every vertex of a graph, used only by geometric heuristics of A*. For the haversine metric
+// x is the longitude and y is the latitude, both in degrees.
+public class Coordinates {
+
+    private double[] xs;
+    private double[] ys;
+
+    // largest factors by which distances between coordinates can be scaled without making any edge shorter than
+    // the scaled distance between its ends, computed on first use
+    private volatile double euclideanFactor = Double.NaN;
+    private volatile double haversineFactor = Double.NaN;
+
+    public Coordinates(double[] xs, double[] ys) {
+        if (xs.length != ys.length) {
+            throw new IllegalArgumentException("Every vertex needs both coordinates");
+        }
+        this.xs = xs;
+        this.ys = ys;
+    }
+
+    public int getVertexCount() {
+        return xs.length;
+    }
+
+    public double getX(int vertexId) {
+        return xs[vertexId];
+    }
+
+    public double getY(int vertexId) {
+        return ys[vertexId];
+    }
+
+    // coordinates of a graph with more vertexes, whose factors are computed again, because its edges are different
+    Coordinates withAddedVertexes(List<double[]> addedCoordinates) {
+        double[] nextXs = Arrays.copyOf(xs, xs.length + addedCoordinates.size());
+        double[] nextYs = Arrays.copyOf(ys, ys.length + addedCoordinates.size());
+        for (int i = 0; i < addedCoordinates.size(); i++) {
+            nextXs[xs.length + i] = addedCoordinates.get(i)[0];
+            nextYs[ys.length + i] = addedCoordinates.get(i)[1];
+        }
+        return new Coordinates(nextXs, nextYs);
+    }
+
+    double getLowerBoundFactor(CompactGraph graph, GeometricHeuristic.Metric metric) {
+        double factor = metric == GeometricHeuristic.Metric.EUCLIDEAN ? euclideanFactor : haversineFactor;
+        if (Double.isNaN(factor)) {
+            // computing it twice in two threads at once gives the same result, so it's not synchronized
+            factor = computeLowerBoundFactor(graph, metric);
+            if (metric == GeometricHeuristic.Metric.EUCLIDEAN) {
+                euclideanFactor = factor;
+            } else {
+                haversineFactor = factor;
+            }
+        }
+        return factor;
+    }
+
+    // weights are fixed-point, so the factor turns a distance between coordinates into a fixed-point weight
+    private double computeLowerBoundFactor(CompactGraph graph, GeometricHeuristic.Metric metric) {
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        long[] weights = graph.getWeights();
+        double factor = Double.POSITIVE_INFINITY;
+        for (int source = 0; source < graph.getVertexCount(); source++) {
+            for (int edge = offsets[source]; edge < offsets[source + 1]; edge++) {
+                double distance = metric.distance(this, source, targets[edge]);
+                if (distance > 0) {
+                    factor = Math.min(factor, weights[edge] / distance);
+                }
+            }
+        }
+        // a graph whose edges all connect vertexes with the same coordinates gives no bound at all
+        return Double.isInfinite(factor) ? 0 : factor;
+    }
+
+    public long estimateSizeInBytes() {
+        return 16L * xs.length;
+    }
+}
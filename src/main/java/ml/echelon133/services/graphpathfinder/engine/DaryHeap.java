@@ -0,0 +1,117 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+import java.util.Arrays;
+
+// Indexed d-ary min-heap. positions[v] holds the index of vertex 'v' in the heap (or -1 if it is not queued),
+// which makes decrease-key a single sift-up. Keys are stored next to vertexes, so comparisons never leave the heap arrays.
+class DaryHeap implements VertexQueue {
+
+    private static final int NOT_QUEUED = -1;
+
+    private int arity;
+    private int[] heap;
+    private long[] keys;
+    private int[] positions;
+    private int size;
+
+    DaryHeap(int arity, int vertexCount) {
+        this.arity = arity;
+        int initialCapacity = Math.max(16, Math.min(vertexCount, 1024));
+        this.heap = new int[initialCapacity];
+        this.keys = new long[initialCapacity];
+        this.positions = new int[vertexCount];
+        Arrays.fill(positions, NOT_QUEUED);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void insertOrDecrease(int vertex, long key) {
+        int position = positions[vertex];
+        if (position == NOT_QUEUED) {
+            if (size == heap.length) {
+                int newCapacity = Math.min(positions.length, size * 2);
+                heap = Arrays.copyOf(heap, newCapacity);
+                keys = Arrays.copyOf(keys, newCapacity);
+            }
+            position = size++;
+        }
+        siftUp(vertex, key, position);
+    }
+
+    @Override
+    public long peekMinKey() {
+        return keys[0];
+    }
+
+    @Override
+    public int pollMin() {
+        int top = heap[0];
+        positions[top] = NOT_QUEUED;
+        size--;
+        if (size > 0) {
+            siftDown(heap[size], keys[size], 0);
+        }
+        return top;
+    }
+
+    // removes every queued vertex, so that the heap can be reused by another search over the same graph
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = NOT_QUEUED;
+        }
+        size = 0;
+    }
+
+    long estimateSizeInBytes() {
+        return 12L * heap.length + 4L * positions.length;
+    }
+
+    private void siftUp(int vertex, long key, int position) {
+        while (position > 0) {
+            int parent = (position - 1) / arity;
+            if (keys[parent] <= key) {
+                break;
+            }
+            place(heap[parent], keys[parent], position);
+            position = parent;
+        }
+        place(vertex, key, position);
+    }
+
+    private void siftDown(int vertex, long key, int position) {
+        while (true) {
+            int firstChild = position * arity + 1;
+            if (firstChild >= size) {
+                break;
+            }
+            int lastChild = Math.min(firstChild + arity, size);
+            int minChild = firstChild;
+            for (int child = firstChild + 1; child < lastChild; child++) {
+                if (keys[child] < keys[minChild]) {
+                    minChild = child;
+                }
+            }
+            if (key <= keys[minChild]) {
+                break;
+            }
+            place(heap[minChild], keys[minChild], position);
+            position = minChild;
+        }
+        place(vertex, key, position);
+    }
+
+    private void place(int vertex, long key, int position) {
+        heap[position] = vertex;
+        keys[position] = key;
+        positions[vertex] = position;
+    }
+}
@@ -0,0 +1,128 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Decides which full searches (without a target) run as a parallel DeltaSteppingSearch instead of Dijkstra's
+// algorithm, which uses a single core however large the graph is. Only graphs with at least the configured number
+// of edges are searched in parallel, because on smaller ones the phases of delta-stepping cost more than they save.
+// Graphs with floating-point weights are always searched by Dijkstra's algorithm.
+@Component
+public class DeltaStepping implements MeterBinder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DeltaStepping.class);
+
+    // every bucket of a search is a reference, so a delta which is too small for the weights of a graph is raised
+    static final int MAX_BUCKET_COUNT = 1 << 16;
+    // DeltaSteppingSearch sorts vertexes of a bucket by their distance from the start of that bucket, in 32 bits
+    static final long MAX_DELTA = 1L << 32;
+
+    private boolean enabled;
+    private long minEdgeCount;
+    private BigDecimal delta;
+    private int parallelism;
+    private volatile ForkJoinPool searchPool;
+
+    private AtomicLong searches = new AtomicLong();
+    private AtomicLong searchNanos = new AtomicLong();
+    private AtomicLong phases = new AtomicLong();
+
+    @Autowired
+    public DeltaStepping(@Value("${engine.delta-stepping.enabled:false}") boolean enabled,
+                         @Value("${engine.delta-stepping.min-edge-count:1000000}") long minEdgeCount,
+                         @Value("${engine.delta-stepping.delta:0}") BigDecimal delta,
+                         @Value("${engine.delta-stepping.parallelism:0}") int parallelism) {
+        this.enabled = enabled;
+        this.minEdgeCount = minEdgeCount;
+        this.delta = delta;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    // threads are shared by all parallel searches, so that together they never take more than configured
+    private ForkJoinPool getSearchPool() {
+        ForkJoinPool result = searchPool;
+        if (result == null) {
+            synchronized (this) {
+                if (searchPool == null) {
+                    searchPool = new ForkJoinPool(parallelism);
+                }
+                result = searchPool;
+            }
+        }
+        return result;
+    }
+
+    // weights so large that no delta keeps the number of buckets within the limit are searched by Dijkstra's
+    // algorithm as well
+    public boolean applies(CompactGraph graph) {
+        return enabled && !graph.isFloatingPoint() && graph.getEdgeCount() >= minEdgeCount
+                && graph.getMaxWeight() / (MAX_BUCKET_COUNT - 2) < MAX_DELTA;
+    }
+
+    // the configured delta is in the same units as weights, 0 selects the maximum weight divided by the average
+    // out-degree, so that a vertex has about one light edge whose end lands in the same bucket
+    long selectDelta(CompactGraph graph) {
+        long selected;
+        if (delta.signum() > 0) {
+            BigDecimal fixedPoint = delta.movePointRight(graph.getWeightScale()).setScale(0, RoundingMode.CEILING);
+            selected = fixedPoint.compareTo(BigDecimal.valueOf(MAX_DELTA)) > 0 ? MAX_DELTA : fixedPoint.longValue();
+        } else {
+            long averageDegree = Math.max(1, graph.getEdgeCount() / Math.max(1, graph.getVertexCount()));
+            selected = graph.getMaxWeight() / averageDegree;
+        }
+        long minDelta = graph.getMaxWeight() / (MAX_BUCKET_COUNT - 2) + 1;
+        return Math.min(MAX_DELTA, Math.max(minDelta, selected));
+    }
+
+    // only for graphs which this search applies to
+    public ShortestPathTree search(CompactGraph graph, int sourceId) {
+        return search(graph, sourceId, new SearchWork());
+    }
+
+    ShortestPathTree search(CompactGraph graph, int sourceId, SearchWork work) {
+        long selectedDelta = selectDelta(graph);
+        long start = System.nanoTime();
+        DeltaSteppingSearch search = new DeltaSteppingSearch(graph, selectedDelta, getSearchPool(), work);
+        ShortestPathTree tree = search.solve(sourceId);
+        long nanos = System.nanoTime() - start;
+        searches.incrementAndGet();
+        searchNanos.addAndGet(nanos);
+        phases.addAndGet(search.getPhaseCount());
+        LOGGER.debug(String.format("Searched a graph with %d edges from vertex %d in %d phases of delta-stepping (delta %d) in %d ms",
+                graph.getEdgeCount(), sourceId, search.getPhaseCount(), selectedDelta, TimeUnit.NANOSECONDS.toMillis(nanos)));
+        return tree;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionTimer.builder("engine.delta-stepping.searches", this,
+                d -> d.searches.get(), d -> d.searchNanos.get(), TimeUnit.NANOSECONDS)
+                .description("Full searches run in parallel by delta-stepping")
+                .register(registry);
+        FunctionCounter.builder("engine.delta-stepping.phases", phases, AtomicLong::get)
+                .description("Phases of delta-stepping, each of which relaxes edges of a whole frontier in parallel")
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ForkJoinPool pool = searchPool;
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+}
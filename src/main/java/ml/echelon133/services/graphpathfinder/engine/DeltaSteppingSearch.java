@@ -0,0 +1,282 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Delta-stepping (Meyer and Sanders) over a graph with fixed-point weights. Queued vertexes are kept in buckets
+// of distances [i * delta, (i + 1) * delta), and all vertexes of the lowest bucket are expanded at once, by tasks
+// of the given pool:
+// 1. light edges (weight <= delta) of the bucket are relaxed in phases, until no vertex is queued in that bucket
+//    again, because they may lead back into it,
+// 2. heavy edges of all vertexes settled in the bucket are relaxed once, because they always lead to later buckets.
+// A distance and its predecessor are updated together under one of a few striped locks, and a relaxation checks
+// the distance without the lock first, so that edges which do not improve anything never take it.
+// Vertexes are settled bucket by bucket, and within a bucket they are sorted by distance, with predecessors
+// always before their vertexes, so the tree is the same kind of tree which Dijkstra's algorithm returns.
+class DeltaSteppingSearch {
+
+    private static final VarHandle DISTANCES = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private static final int LOCK_STRIPES = 1024;
+    // a frontier smaller than this is expanded by the calling thread alone
+    private static final int MIN_VERTEXES_PER_TASK = 512;
+    private static final int TASKS_PER_THREAD = 4;
+    private static final long NOT_QUEUED = -1;
+
+    // a growable array of vertex ids
+    private static class IntList {
+        private int[] elements = new int[16];
+        private int size;
+
+        void add(int element) {
+            if (size == elements.length) {
+                elements = Arrays.copyOf(elements, size * 2);
+            }
+            elements[size++] = element;
+        }
+    }
+
+    private CompactGraph graph;
+    private long delta;
+    private ForkJoinPool pool;
+
+    private int[] offsets;
+    private int[] targets;
+    private long[] weights;
+
+    private long[] distances;
+    private int[] predecessors;
+    private Object[] locks;
+    // bucket in which a vertex is queued, so that it's queued at most once per bucket
+    private long[] queuedBuckets;
+    private boolean[] settled;
+    // all queued distances are at most the maximum weight away from the current bucket, so buckets are reused
+    // cyclically, and bucket i is buckets[i % buckets.length]
+    private IntList[] buckets;
+    private long queuedCount;
+    private int phaseCount;
+    // a queued vertex is pushed once per bucket, and edges are relaxed by tasks running in parallel
+    private SearchWork work;
+    private LongAdder relaxedEdgeCount = new LongAdder();
+
+    DeltaSteppingSearch(CompactGraph graph, long delta, ForkJoinPool pool, SearchWork work) {
+        this.graph = graph;
+        this.delta = delta;
+        this.pool = pool;
+        this.work = work;
+
+        offsets = graph.getOffsets();
+        targets = graph.getTargets();
+        weights = graph.getWeights();
+
+        int vertexCount = graph.getVertexCount();
+        distances = new long[vertexCount];
+        predecessors = new int[vertexCount];
+        queuedBuckets = new long[vertexCount];
+        settled = new boolean[vertexCount];
+        Arrays.fill(distances, ShortestPathTree.UNREACHABLE);
+        Arrays.fill(predecessors, ShortestPathTree.NO_PREDECESSOR);
+        Arrays.fill(queuedBuckets, NOT_QUEUED);
+        locks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        buckets = new IntList[(int) (graph.getMaxWeight() / delta) + 2];
+    }
+
+    ShortestPathTree solve(int sourceId) {
+        int[] settledOrder = new int[graph.getVertexCount()];
+        int settledCount = 0;
+
+        distances[sourceId] = 0;
+        queue(sourceId);
+        long bucket = 0;
+        while (queuedCount > 0) {
+            bucket = findNextBucket(bucket);
+            IntList settledInBucket = new IntList();
+            int slot = (int) (bucket % buckets.length);
+            while (buckets[slot] != null) {
+                IntList frontier = takeFrontier(bucket, slot, settledInBucket);
+                queueAll(relax(frontier, true));
+            }
+
+            int[] ordered = orderSettled(settledInBucket, bucket);
+            System.arraycopy(ordered, 0, settledOrder, settledCount, ordered.length);
+            settledCount += ordered.length;
+            IntList heavy = new IntList();
+            heavy.elements = ordered;
+            heavy.size = ordered.length;
+            queueAll(relax(heavy, false));
+        }
+
+        work.settledCount = settledCount;
+        work.relaxedEdgeCount = relaxedEdgeCount.sum();
+        return new ShortestPathTree(graph, sourceId, distances, predecessors, settledOrder, settledCount);
+    }
+
+    int getPhaseCount() {
+        return phaseCount;
+    }
+
+    private long getBucket(int vertex) {
+        return distances[vertex] / delta;
+    }
+
+    private void queue(int vertex) {
+        long bucket = getBucket(vertex);
+        if (queuedBuckets[vertex] == bucket) {
+            return;
+        }
+        queuedBuckets[vertex] = bucket;
+        int slot = (int) (bucket % buckets.length);
+        if (buckets[slot] == null) {
+            buckets[slot] = new IntList();
+        }
+        buckets[slot].add(vertex);
+        queuedCount++;
+        work.pushed((int) Math.min(Integer.MAX_VALUE, queuedCount));
+    }
+
+    private void queueAll(List<IntList> updated) {
+        for (IntList vertexes : updated) {
+            for (int i = 0; i < vertexes.size; i++) {
+                queue(vertexes.elements[i]);
+            }
+        }
+    }
+
+    private long findNextBucket(long bucket) {
+        while (buckets[(int) (bucket % buckets.length)] == null) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    // a vertex whose distance got into an earlier bucket after it was queued here was already settled there
+    private IntList takeFrontier(long bucket, int slot, IntList settledInBucket) {
+        IntList queued = buckets[slot];
+        buckets[slot] = null;
+        queuedCount -= queued.size;
+        phaseCount++;
+
+        IntList frontier = new IntList();
+        for (int i = 0; i < queued.size; i++) {
+            int vertex = queued.elements[i];
+            if (queuedBuckets[vertex] == bucket) {
+                queuedBuckets[vertex] = NOT_QUEUED;
+            }
+            if (getBucket(vertex) == bucket) {
+                frontier.add(vertex);
+                if (!settled[vertex]) {
+                    settled[vertex] = true;
+                    settledInBucket.add(vertex);
+                }
+            }
+        }
+        return frontier;
+    }
+
+    // returns lists of vertexes whose distances were improved, which may have duplicates
+    private List<IntList> relax(IntList vertexes, boolean light) {
+        int taskCount = Math.min(pool.getParallelism() * TASKS_PER_THREAD, vertexes.size / MIN_VERTEXES_PER_TASK);
+        if (taskCount <= 1) {
+            List<IntList> updated = new ArrayList<>(1);
+            updated.add(relax(vertexes, 0, vertexes.size, light));
+            return updated;
+        }
+        // called from a task of the pool, the stream runs on threads of that pool
+        return pool.submit(() -> IntStream.range(0, taskCount).parallel()
+                .mapToObj(task -> relax(vertexes,
+                        (int) ((long) vertexes.size * task / taskCount),
+                        (int) ((long) vertexes.size * (task + 1) / taskCount),
+                        light))
+                .collect(Collectors.toList()))
+                .join();
+    }
+
+    private IntList relax(IntList vertexes, int from, int to, boolean light) {
+        IntList updated = new IntList();
+        long relaxed = 0;
+        for (int i = from; i < to; i++) {
+            int vertex = vertexes.elements[i];
+            // another task may be improving this distance right now, in which case the vertex is expanded again
+            long distance = (long) DISTANCES.getOpaque(distances, vertex);
+            for (int edge = offsets[vertex]; edge < offsets[vertex + 1]; edge++) {
+                long weight = weights[edge];
+                if ((weight <= delta) != light) {
+                    continue;
+                }
+                relaxed++;
+                int target = targets[edge];
+                long newDistance = distance + weight;
+                if (newDistance < (long) DISTANCES.getOpaque(distances, target)) {
+                    synchronized (locks[target & (LOCK_STRIPES - 1)]) {
+                        if (newDistance < distances[target]) {
+                            DISTANCES.setOpaque(distances, target, newDistance);
+                            predecessors[target] = vertex;
+                            updated.add(target);
+                        }
+                    }
+                }
+            }
+        }
+        relaxedEdgeCount.add(relaxed);
+        return updated;
+    }
+
+    // distances within a bucket differ by less than delta (at most 2^32), and vertex ids are less than 2^31,
+    // so both fit in a single long which is sorted. Vertexes with equal distances are connected by edges of zero
+    // weight, and their predecessors are moved before them
+    private int[] orderSettled(IntList settledInBucket, long bucket) {
+        long bucketStart = bucket * delta;
+        long[] keys = new long[settledInBucket.size];
+        for (int i = 0; i < keys.length; i++) {
+            int vertex = settledInBucket.elements[i];
+            keys[i] = ((distances[vertex] - bucketStart) << 31) | vertex;
+        }
+        Arrays.sort(keys);
+
+        int[] ordered = new int[keys.length];
+        int orderedCount = 0;
+        IntList chain = new IntList();
+        int groupStart = 0;
+        while (groupStart < keys.length) {
+            int groupEnd = groupStart + 1;
+            while (groupEnd < keys.length && keys[groupEnd] >>> 31 == keys[groupStart] >>> 31) {
+                groupEnd++;
+            }
+            if (groupEnd - groupStart == 1) {
+                ordered[orderedCount++] = (int) (keys[groupStart] & Integer.MAX_VALUE);
+                groupStart = groupEnd;
+                continue;
+            }
+
+            // settled is reused to mark vertexes of the group which are not ordered yet
+            for (int i = groupStart; i < groupEnd; i++) {
+                settled[(int) (keys[i] & Integer.MAX_VALUE)] = false;
+            }
+            for (int i = groupStart; i < groupEnd; i++) {
+                int vertex = (int) (keys[i] & Integer.MAX_VALUE);
+                chain.size = 0;
+                while (vertex != ShortestPathTree.NO_PREDECESSOR && !settled[vertex]
+                        && distances[vertex] == distances[(int) (keys[i] & Integer.MAX_VALUE)]) {
+                    settled[vertex] = true;
+                    chain.add(vertex);
+                    vertex = predecessors[vertex];
+                }
+                for (int j = chain.size - 1; j >= 0; j--) {
+                    ordered[orderedCount++] = chain.elements[j];
+                }
+            }
+            groupStart = groupEnd;
+        }
+        return ordered;
+    }
+}
@@ -0,0 +1,276 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+import ml.echelon133.services.graphpathfinder.metrics.PipelineMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Dijkstra's algorithm over a CompactGraph. All state of a single search lives in primitive arrays
+// allocated once per search, so relaxing an edge does not allocate anything.
+@Component
+public class DijkstraEngine {
+
+    // bucket queue pays off only when there are enough vertexes to amortize scanning of empty buckets
+    static final int DIAL_MIN_VERTEX_COUNT = 10_000;
+    static final long DIAL_MAX_WEIGHT = 1 << 16;
+
+    private static final int HEAP_ARITY = 4;
+    private static final int NO_TARGET = -1;
+
+    private QueueType queueType;
+    private int bidirectionalMinVertexCount;
+    private int landmarkCount;
+    private DeltaStepping deltaStepping;
+    private PipelineMetrics pipelineMetrics;
+
+    // searching from both ends settles far fewer vertexes, but needs a reversed copy of the graph. Every landmark
+    // takes 16 bytes per vertex, and more of them make every estimate of A* slower
+    @Autowired
+    public DijkstraEngine(@Value("${engine.queue-type:auto}") String queueType,
+                          @Value("${engine.bidirectional-min-vertex-count:10000}") int bidirectionalMinVertexCount,
+                          @Value("${engine.landmark-count:8}") int landmarkCount,
+                          DeltaStepping deltaStepping,
+                          PipelineMetrics pipelineMetrics) {
+        this.queueType = QueueType.fromString(queueType);
+        this.bidirectionalMinVertexCount = bidirectionalMinVertexCount;
+        this.landmarkCount = landmarkCount;
+        this.deltaStepping = deltaStepping;
+        this.pipelineMetrics = pipelineMetrics;
+    }
+
+    QueueType selectQueueType(CompactGraph graph) {
+        boolean dialApplicable = graph.getMaxWeight() <= DIAL_MAX_WEIGHT;
+        switch (queueType) {
+            case DIAL:
+                return dialApplicable ? QueueType.DIAL : QueueType.HEAP;
+            case HEAP:
+                return QueueType.HEAP;
+            default:
+                return dialApplicable && graph.getVertexCount() >= DIAL_MIN_VERTEX_COUNT ? QueueType.DIAL : QueueType.HEAP;
+        }
+    }
+
+    VertexQueue createQueue(CompactGraph graph) {
+        if (selectQueueType(graph) == QueueType.DIAL) {
+            return new BucketQueue(graph.getMaxWeight(), graph.getVertexCount());
+        }
+        return new DaryHeap(HEAP_ARITY, graph.getVertexCount());
+    }
+
+    static void checkVertexId(CompactGraph graph, int vertexId) {
+        if (vertexId < 0 || vertexId >= graph.getVertexCount()) {
+            throw new IllegalArgumentException("Graph does not contain the vertex given as an argument");
+        }
+    }
+
+    // only work of searches made for callers is reported, lookups of kept trees do not search anything,
+    // and searches which build landmarks or indexes are measured by what they build
+    private ShortestPathTree report(CompactGraph graph, ShortestPathTree tree, SearchWork work) {
+        pipelineMetrics.recordSearchWork(graph.getVertexCount(), work.settledCount, work.relaxedEdgeCount,
+                work.queuePushCount, work.peakQueueSize);
+        return tree;
+    }
+
+    // searches of a graph with a precomputed all-pairs index only look up the tree of their source,
+    // and so do searches from start vertexes whose trees are kept
+    public ShortestPathTree solve(CompactGraph graph, int sourceId) {
+        AllPairsIndex index = graph.getAllPairsIndex();
+        if (index != null) {
+            checkVertexId(graph, sourceId);
+            return index.getTree(sourceId);
+        }
+        SourceTrees sourceTrees = graph.getSourceTrees();
+        if (sourceTrees != null) {
+            checkVertexId(graph, sourceId);
+            ShortestPathTree tree = sourceTrees.getTree(sourceId);
+            if (tree != null) {
+                return tree;
+            }
+        }
+        SearchWork work = new SearchWork();
+        return report(graph, search(graph, sourceId, work), work);
+    }
+
+    // search from the source which stops as soon as it settles all targets (any vertex, if targets are null),
+    // a vertex further away than maxDistance, or limit of vertexes matching targets. The returned tree is
+    // guaranteed to contain a distance and a full chain of predecessors only for the vertexes it settled, and kept
+    // trees are full trees, so they are returned as they are. Bounded searches are never run in parallel, because
+    // delta-stepping only knows that a distance is final once the whole search is done
+    public ShortestPathTree solveWithin(CompactGraph graph, int sourceId, BitSet targets, long maxDistance, int limit) {
+        AllPairsIndex index = graph.getAllPairsIndex();
+        if (index != null) {
+            checkVertexId(graph, sourceId);
+            return index.getTree(sourceId);
+        }
+        SourceTrees sourceTrees = graph.getSourceTrees();
+        if (sourceTrees != null) {
+            checkVertexId(graph, sourceId);
+            ShortestPathTree tree = sourceTrees.getTree(sourceId);
+            if (tree != null) {
+                return tree;
+            }
+        }
+        SearchWork work = new SearchWork();
+        return report(graph, solve(graph, sourceId, NO_TARGET, targets, maxDistance, limit, work), work);
+    }
+
+    // full search which never uses the all-pairs index, so that the index can be built with it. Large enough graphs
+    // are searched in parallel, which needs no queue, and so does not depend on the queue type
+    ShortestPathTree search(CompactGraph graph, int sourceId) {
+        return search(graph, sourceId, new SearchWork());
+    }
+
+    private ShortestPathTree search(CompactGraph graph, int sourceId, SearchWork work) {
+        if (deltaStepping.applies(graph)) {
+            checkVertexId(graph, sourceId);
+            return deltaStepping.search(graph, sourceId, work);
+        }
+        return solve(graph, sourceId, NO_TARGET, work);
+    }
+
+    // finds the shortest path between two vertexes. The returned tree is guaranteed to contain
+    // a distance and a full chain of predecessors only for the target and vertexes on its path
+    public ShortestPathTree solveBetween(CompactGraph graph, int sourceId, int targetId) {
+        checkVertexId(graph, sourceId);
+        checkVertexId(graph, targetId);
+        AllPairsIndex index = graph.getAllPairsIndex();
+        if (index != null) {
+            return index.getTree(sourceId);
+        }
+        SearchWork work = new SearchWork();
+        ContractionHierarchy hierarchy = graph.getContractionHierarchy();
+        if (sourceId != targetId && hierarchy != null) {
+            return report(graph, hierarchy.solve(graph, sourceId, targetId, work), work);
+        }
+        // the stopping rule of the bidirectional search adds up distances, which only works for fixed-point ones
+        if (sourceId != targetId && !graph.isFloatingPoint() && graph.getVertexCount() >= bidirectionalMinVertexCount) {
+            CompactGraph reverse = graph.getReverse();
+            BidirectionalSearch search = new BidirectionalSearch(graph, createQueue(graph), createQueue(reverse));
+            return report(graph, search.solve(sourceId, targetId), search.getWork());
+        }
+        return report(graph, solve(graph, sourceId, targetId, work), work);
+    }
+
+    // same as solveBetween, but with the given algorithm. A* needs fixed-point weights, so graphs with floating-point
+    // weights are searched with Dijkstra's algorithm. Throws IllegalArgumentException if the algorithm needs
+    // coordinates, and the graph does not have them
+    public ShortestPathTree solveBetween(CompactGraph graph, int sourceId, int targetId, SearchAlgorithm algorithm) {
+        if (algorithm == SearchAlgorithm.DIJKSTRA || graph.isFloatingPoint() || graph.getAllPairsIndex() != null) {
+            return solveBetween(graph, sourceId, targetId);
+        }
+        checkVertexId(graph, sourceId);
+        checkVertexId(graph, targetId);
+        if (algorithm.needsCoordinates() && graph.getCoordinates() == null) {
+            throw new IllegalArgumentException("Graph does not have coordinates of its vertexes");
+        }
+        AStarSearch search = new AStarSearch(graph, createHeuristic(graph, targetId, algorithm));
+        return report(graph, search.solve(sourceId, targetId), search.getWork());
+    }
+
+    Heuristic createHeuristic(CompactGraph graph, int targetId, SearchAlgorithm algorithm) {
+        switch (algorithm) {
+            case ASTAR_EUCLIDEAN:
+                return new GeometricHeuristic(graph, GeometricHeuristic.Metric.EUCLIDEAN, targetId);
+            case ASTAR_HAVERSINE:
+                return new GeometricHeuristic(graph, GeometricHeuristic.Metric.HAVERSINE, targetId);
+            default:
+                return getLandmarks(graph).createHeuristic(targetId);
+        }
+    }
+
+    // landmarks are built by the first search which needs them, just like the reversed graph
+    Landmarks getLandmarks(CompactGraph graph) {
+        Landmarks landmarks = graph.getLandmarks();
+        if (landmarks == null) {
+            synchronized (graph) {
+                landmarks = graph.getLandmarks();
+                if (landmarks == null) {
+                    landmarks = Landmarks.build(graph, this, landmarkCount);
+                    graph.setLandmarks(landmarks);
+                }
+            }
+        }
+        return landmarks;
+    }
+
+    // stops as soon as the target is settled, because its distance cannot change after that
+    private ShortestPathTree solve(CompactGraph graph, int sourceId, int targetId, SearchWork work) {
+        return solve(graph, sourceId, targetId, null, ShortestPathTree.UNREACHABLE, Integer.MAX_VALUE, work);
+    }
+
+    // vertexes are settled in the order of their distances, so once one of them is too far away, all remaining
+    // ones are as well, and the first vertexes matching targets which are settled are the nearest ones
+    private ShortestPathTree solve(CompactGraph graph, int sourceId, int targetId,
+                                   BitSet targetSet, long maxDistance, int limit, SearchWork work) {
+        checkVertexId(graph, sourceId);
+        int vertexCount = graph.getVertexCount();
+
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        long[] weights = graph.getWeights();
+        double[] floatingPointWeights = graph.getFloatingPointWeights();
+
+        long[] distances = new long[vertexCount];
+        int[] predecessors = new int[vertexCount];
+        int[] settledOrder = new int[vertexCount];
+        int settledCount = 0;
+        Arrays.fill(distances, ShortestPathTree.UNREACHABLE);
+        Arrays.fill(predecessors, ShortestPathTree.NO_PREDECESSOR);
+
+        // counted in locals, the loop below is what every search spends its time in
+        long relaxedEdgeCount = 0;
+        long queuePushCount = 1;
+        int queueSize = 1;
+        int peakQueueSize = 1;
+
+        int remaining = targetSet == null ? limit : Math.min(limit, targetSet.cardinality());
+
+        VertexQueue queue = createQueue(graph);
+        distances[sourceId] = 0;
+        queue.insertOrDecrease(sourceId, 0);
+
+        while (!queue.isEmpty()) {
+            int vertex = queue.pollMin();
+            long distance = distances[vertex];
+            if (distance > maxDistance) {
+                break;
+            }
+            settledOrder[settledCount++] = vertex;
+            queueSize--;
+            if (vertex == targetId) {
+                break;
+            }
+            if ((targetSet == null || targetSet.get(vertex)) && --remaining <= 0) {
+                break;
+            }
+            relaxedEdgeCount += offsets[vertex + 1] - offsets[vertex];
+
+            // weights are not negative, so a settled vertex never gets a better distance and is never queued again
+            for (int edge = offsets[vertex]; edge < offsets[vertex + 1]; edge++) {
+                int target = targets[edge];
+                long newDistance = weights != null ?
+                        distance + weights[edge] :
+                        CompactGraph.addFloatingPoint(distance, floatingPointWeights[edge]);
+                if (newDistance < distances[target]) {
+                    // a vertex without a distance is not queued yet
+                    if (distances[target] == ShortestPathTree.UNREACHABLE && ++queueSize > peakQueueSize) {
+                        peakQueueSize = queueSize;
+                    }
+                    distances[target] = newDistance;
+                    predecessors[target] = vertex;
+                    queue.insertOrDecrease(target, newDistance);
+                    queuePushCount++;
+                }
+            }
+        }
+
+        work.settledCount = settledCount;
+        work.relaxedEdgeCount = relaxedEdgeCount;
+        work.queuePushCount = queuePushCount;
+        work.peakQueueSize = peakQueueSize;
+        return new ShortestPathTree(graph, sourceId, distances, predecessors, settledOrder, settledCount);
+    }
+}
@@ -0,0 +1,177 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+import java.util.Arrays;
+
+// Updates a full shortest path tree of the previous version of a graph, so that it becomes the tree of the next
+// version, without searching the whole graph again (in the spirit of the dynamic algorithm of Ramalingam and Reps):
+// 1. vertexes whose path in the tree goes through an edge which got heavier or was removed lose their distances,
+//    and get the best distance through any of their in-neighbours which kept theirs,
+// 2. ends of edges which got lighter or were added get the distance through that edge, if it's better,
+// 3. vertexes which got a distance in steps 1 and 2 are settled by Dijkstra's algorithm, which relaxes their
+//    edges as usual, and goes further only where distances keep changing.
+// Only the affected vertexes and their neighbours are searched, but every update takes a few passes over
+// arrays of the tree, so it's linear in the number of vertexes anyway.
+class DynamicSearch {
+
+    private static final int HEAP_ARITY = 4;
+
+    private ShortestPathTree previousTree;
+    private CompactGraph graph;
+    private GraphDelta delta;
+
+    private long[] distances;
+    private int[] predecessors;
+    // vertexes whose path went through an edge which got heavier or was removed
+    private boolean[] affected;
+    // vertexes settled by this update, in the order of settling
+    private int[] changedOrder;
+    private int changedCount;
+    private boolean[] changed;
+
+    DynamicSearch(ShortestPathTree previousTree, CompactGraph graph, GraphDelta delta) {
+        this.previousTree = previousTree;
+        this.graph = graph;
+        this.delta = delta;
+
+        int vertexCount = graph.getVertexCount();
+        distances = new long[vertexCount];
+        predecessors = new int[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            distances[v] = previousTree.getDistance(v);
+            predecessors[v] = previousTree.getPredecessor(v);
+        }
+        affected = new boolean[vertexCount];
+        changedOrder = new int[vertexCount];
+        changed = new boolean[vertexCount];
+    }
+
+    // the previous tree has to be a tree of a full search (not stopped at a target) of a graph with fixed-point weights
+    ShortestPathTree update() {
+        DaryHeap queue = new DaryHeap(HEAP_ARITY, graph.getVertexCount());
+        if (markAffected()) {
+            queueAffected(queue);
+        }
+        queueLighterEdges(queue);
+        settle(queue);
+        return createTree();
+    }
+
+    // returns false if no edge of the tree got heavier
+    private boolean markAffected() {
+        boolean anyAffected = false;
+        for (int change = 0; change < delta.getChangeCount(); change++) {
+            int source = delta.getSource(change);
+            int target = delta.getTarget(change);
+            // the lightest edge between two vertexes is the only one which can be an edge of the tree
+            if (delta.getWeight(change) > delta.getPreviousWeight(change) && predecessors[target] == source) {
+                affected[target] = true;
+                anyAffected = true;
+            }
+        }
+        if (!anyAffected) {
+            return false;
+        }
+        // a predecessor is settled before its vertex, so a single pass marks whole subtrees
+        for (int i = 0; i < previousTree.getSettledCount(); i++) {
+            int vertex = previousTree.getSettledVertex(i);
+            int predecessor = predecessors[vertex];
+            if (predecessor != ShortestPathTree.NO_PREDECESSOR && affected[predecessor]) {
+                affected[vertex] = true;
+            }
+        }
+        for (int v = 0; v < affected.length; v++) {
+            if (affected[v]) {
+                distances[v] = ShortestPathTree.UNREACHABLE;
+                predecessors[v] = ShortestPathTree.NO_PREDECESSOR;
+            }
+        }
+        return true;
+    }
+
+    // in-neighbours of a vertex are its neighbours in the reversed graph, which is built once per graph version
+    private void queueAffected(DaryHeap queue) {
+        CompactGraph reverse = graph.getReverse();
+        int[] offsets = reverse.getOffsets();
+        int[] targets = reverse.getTargets();
+        long[] weights = reverse.getWeights();
+        for (int vertex = 0; vertex < affected.length; vertex++) {
+            if (!affected[vertex]) {
+                continue;
+            }
+            for (int edge = offsets[vertex]; edge < offsets[vertex + 1]; edge++) {
+                int inNeighbour = targets[edge];
+                if (!affected[inNeighbour]) {
+                    relax(queue, inNeighbour, vertex, weights[edge]);
+                }
+            }
+        }
+    }
+
+    // a predecessor has to be settled before its vertex, so only vertexes which kept their previous distances relax
+    // their edges here. Edges of vertexes which are queued are relaxed once these vertexes are settled
+    private void queueLighterEdges(DaryHeap queue) {
+        for (int change = 0; change < delta.getChangeCount(); change++) {
+            int source = delta.getSource(change);
+            long weight = delta.getWeight(change);
+            if (weight < delta.getPreviousWeight(change) && !affected[source]
+                    && distances[source] == previousTree.getDistance(source)) {
+                relax(queue, source, delta.getTarget(change), weight);
+            }
+        }
+    }
+
+    private void relax(DaryHeap queue, int source, int target, long weight) {
+        long distance = distances[source];
+        if (distance == ShortestPathTree.UNREACHABLE) {
+            return;
+        }
+        long newDistance = distance + weight;
+        if (newDistance < distances[target]) {
+            distances[target] = newDistance;
+            predecessors[target] = source;
+            queue.insertOrDecrease(target, newDistance);
+        }
+    }
+
+    private void settle(DaryHeap queue) {
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        long[] weights = graph.getWeights();
+        while (!queue.isEmpty()) {
+            int vertex = queue.pollMin();
+            changed[vertex] = true;
+            changedOrder[changedCount++] = vertex;
+            for (int edge = offsets[vertex]; edge < offsets[vertex + 1]; edge++) {
+                relax(queue, vertex, targets[edge], weights[edge]);
+            }
+        }
+    }
+
+    // vertexes which kept their distances stay in their previous order, and the settled ones are merged into it by
+    // distance. On equal distances the ones which kept theirs go first, because a vertex which kept its distance
+    // also kept its predecessor, while a settled vertex may have any of them as its predecessor
+    private ShortestPathTree createTree() {
+        int[] settledOrder = new int[graph.getVertexCount()];
+        int settledCount = 0;
+        int nextChanged = 0;
+        for (int i = 0; i < previousTree.getSettledCount(); i++) {
+            int vertex = previousTree.getSettledVertex(i);
+            if (affected[vertex] || changed[vertex]) {
+                continue;
+            }
+            while (nextChanged < changedCount && distances[changedOrder[nextChanged]] < distances[vertex]) {
+                settledOrder[settledCount++] = changedOrder[nextChanged++];
+            }
+            settledOrder[settledCount++] = vertex;
+        }
+        while (nextChanged < changedCount) {
+            settledOrder[settledCount++] = changedOrder[nextChanged++];
+        }
+        return new ShortestPathTree(graph, previousTree.getSourceId(), distances, predecessors, settledOrder, settledCount);
+    }
+
+    // number of vertexes whose distance or predecessor was set by the update
+    int getChangedCount() {
+        return changedCount;
+    }
+}
@@ -0,0 +1,54 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+// Distance between coordinates of a vertex and of the target, scaled by the largest factor for which no edge
+// of the graph is shorter than the scaled distance between its ends. By the triangle inequality no path is shorter
+// either, so the estimate is a lower bound whatever the units of weights and coordinates are. Graphs whose weights
+// have nothing to do with their coordinates just get a factor close to 0, and A* becomes Dijkstra's algorithm.
+class GeometricHeuristic implements Heuristic {
+
+    // scaled distances are rounded, which must never make an estimate larger than the real distance
+    private static final double ROUNDING_MARGIN = 1 - 1e-9;
+    private static final double EARTH_RADIUS_IN_METERS = 6_371_008.8;
+
+    enum Metric {
+        EUCLIDEAN {
+            @Override
+            double distance(Coordinates coordinates, int first, int second) {
+                double dx = coordinates.getX(first) - coordinates.getX(second);
+                double dy = coordinates.getY(first) - coordinates.getY(second);
+                return Math.sqrt(dx * dx + dy * dy);
+            }
+        },
+        HAVERSINE {
+            @Override
+            double distance(Coordinates coordinates, int first, int second) {
+                double firstLatitude = Math.toRadians(coordinates.getY(first));
+                double secondLatitude = Math.toRadians(coordinates.getY(second));
+                double latitudeDelta = secondLatitude - firstLatitude;
+                double longitudeDelta = Math.toRadians(coordinates.getX(second) - coordinates.getX(first));
+                double a = Math.pow(Math.sin(latitudeDelta / 2), 2)
+                        + Math.cos(firstLatitude) * Math.cos(secondLatitude) * Math.pow(Math.sin(longitudeDelta / 2), 2);
+                return 2 * EARTH_RADIUS_IN_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+            }
+        };
+
+        abstract double distance(Coordinates coordinates, int first, int second);
+    }
+
+    private Coordinates coordinates;
+    private Metric metric;
+    private int targetId;
+    private double factor;
+
+    GeometricHeuristic(CompactGraph graph, Metric metric, int targetId) {
+        this.coordinates = graph.getCoordinates();
+        this.metric = metric;
+        this.targetId = targetId;
+        this.factor = coordinates.getLowerBoundFactor(graph, metric) * ROUNDING_MARGIN;
+    }
+
+    @Override
+    public long estimate(int vertexId) {
+        return (long) (factor * metric.distance(coordinates, vertexId, targetId));
+    }
+}
@@ -0,0 +1,187 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Changes made to a graph between two of its versions, the same ones which Graph.addVertex, Graph.addEdge and
+// Graph.removeEdge of the graph library make. Changes are applied in this order: new vertexes are added, edges are
+// removed, and then edges are added, so that a changed weight is a removed edge and an added one. Vertexes
+// are never removed, because that would change ids of other vertexes.
+public class GraphChanges {
+
+    private List<String> addedVertexNames = new ArrayList<>();
+    private List<double[]> addedCoordinates = new ArrayList<>();
+    private List<String> removedEdgeEndpoints = new ArrayList<>();
+    private List<BigDecimal> removedEdgeWeights = new ArrayList<>();
+    private List<String> addedEdgeEndpoints = new ArrayList<>();
+    private List<BigDecimal> addedEdgeWeights = new ArrayList<>();
+
+    public void addVertex(String name) {
+        addedVertexNames.add(name);
+    }
+
+    // coordinates of added vertexes, in the order in which they were added
+    public void addCoordinates(double x, double y) {
+        addedCoordinates.add(new double[]{x, y});
+    }
+
+    public void removeEdge(String source, String destination, BigDecimal weight) {
+        removedEdgeEndpoints.add(source);
+        removedEdgeEndpoints.add(destination);
+        removedEdgeWeights.add(weight);
+    }
+
+    public void addEdge(String source, String destination, BigDecimal weight) {
+        addedEdgeEndpoints.add(source);
+        addedEdgeEndpoints.add(destination);
+        addedEdgeWeights.add(weight);
+    }
+
+    public int getAddedVertexCount() {
+        return addedVertexNames.size();
+    }
+
+    public int getRemovedEdgeCount() {
+        return removedEdgeWeights.size();
+    }
+
+    public int getAddedEdgeCount() {
+        return addedEdgeWeights.size();
+    }
+
+    public int getChangeCount() {
+        return getAddedVertexCount() + getRemovedEdgeCount() + getAddedEdgeCount();
+    }
+
+    // builds the next version of the graph out of arrays of the given one, without looking at any other edges.
+    // Vertexes keep their ids, and new ones get ids after them. Coordinates are kept if every new vertex has them.
+    // Throws IllegalArgumentException if the changes do not match the graph (i.e. a removed edge does not exist),
+    // and ArithmeticException if the next version cannot have the same fixed-point weights, in both cases
+    // the next version has to be read as a whole
+    public CompactGraph applyTo(CompactGraph graph) throws ArithmeticException {
+        if (graph.isFloatingPoint()) {
+            throw new ArithmeticException("Changes cannot be applied to a graph with floating-point weights");
+        }
+
+        int previousVertexCount = graph.getVertexCount();
+        int vertexCount = previousVertexCount + addedVertexNames.size();
+        String[] vertexNames = new String[vertexCount];
+        for (int v = 0; v < previousVertexCount; v++) {
+            vertexNames[v] = graph.getVertexName(v);
+        }
+        Map<String, Integer> addedVertexIds = new HashMap<>();
+        for (int i = 0; i < addedVertexNames.size(); i++) {
+            String name = addedVertexNames.get(i);
+            if (graph.findVertexId(name) != -1 || addedVertexIds.put(name, previousVertexCount + i) != null) {
+                throw new IllegalArgumentException(String.format("Vertex '%s' is added more than once", name));
+            }
+            vertexNames[previousVertexCount + i] = name;
+        }
+
+        int[] previousOffsets = graph.getOffsets();
+        int[] previousTargets = graph.getTargets();
+        long[] previousWeights = graph.getWeights();
+        int weightScale = graph.getWeightScale();
+
+        // a removed edge is the first edge of its source with the same target and weight which was not removed yet
+        boolean[] removed = new boolean[previousTargets.length];
+        int[] outDegrees = new int[vertexCount];
+        for (int v = 0; v < previousVertexCount; v++) {
+            outDegrees[v] = previousOffsets[v + 1] - previousOffsets[v];
+        }
+        for (int i = 0; i < removedEdgeWeights.size(); i++) {
+            int source = findVertexId(graph, addedVertexIds, removedEdgeEndpoints.get(2 * i));
+            int target = findVertexId(graph, addedVertexIds, removedEdgeEndpoints.get(2 * i + 1));
+            long weight = toFixedPoint(removedEdgeWeights.get(i), weightScale);
+            int found = -1;
+            if (source < previousVertexCount) {
+                for (int edge = previousOffsets[source]; edge < previousOffsets[source + 1] && found == -1; edge++) {
+                    if (!removed[edge] && previousTargets[edge] == target && previousWeights[edge] == weight) {
+                        found = edge;
+                    }
+                }
+            }
+            if (found == -1) {
+                throw new IllegalArgumentException(String.format("Removed edge from '%s' to '%s' does not exist",
+                        removedEdgeEndpoints.get(2 * i), removedEdgeEndpoints.get(2 * i + 1)));
+            }
+            removed[found] = true;
+            outDegrees[source]--;
+        }
+
+        int[] addedSources = new int[addedEdgeWeights.size()];
+        int[] addedTargets = new int[addedEdgeWeights.size()];
+        long[] addedWeights = new long[addedEdgeWeights.size()];
+        for (int i = 0; i < addedEdgeWeights.size(); i++) {
+            addedSources[i] = findVertexId(graph, addedVertexIds, addedEdgeEndpoints.get(2 * i));
+            addedTargets[i] = findVertexId(graph, addedVertexIds, addedEdgeEndpoints.get(2 * i + 1));
+            BigDecimal weight = addedEdgeWeights.get(i);
+            if (weight.signum() < 0) {
+                throw new IllegalArgumentException("Edge weight cannot be negative");
+            }
+            // a weight with more fractional digits would change the scale, and so every other weight of the graph
+            if (weight.stripTrailingZeros().scale() > weightScale) {
+                throw new ArithmeticException("Added weight does not fit the weight scale of the graph");
+            }
+            addedWeights[i] = weight.movePointRight(weightScale).longValueExact();
+            outDegrees[addedSources[i]]++;
+        }
+
+        int[] offsets = new int[vertexCount + 1];
+        for (int v = 0; v < vertexCount; v++) {
+            offsets[v + 1] = offsets[v] + outDegrees[v];
+        }
+        int[] targets = new int[offsets[vertexCount]];
+        long[] weights = new long[offsets[vertexCount]];
+        // next free position of every source. Edges which were not removed keep their order, and added ones follow them.
+        // The sum of all weights bounds the length of every shortest path, so it has to fit in a long, just like
+        // in a graph built from a snapshot
+        int[] positions = Arrays.copyOf(offsets, vertexCount);
+        long sumOfWeights = 0;
+        for (int v = 0; v < previousVertexCount; v++) {
+            for (int edge = previousOffsets[v]; edge < previousOffsets[v + 1]; edge++) {
+                if (!removed[edge]) {
+                    targets[positions[v]] = previousTargets[edge];
+                    weights[positions[v]++] = previousWeights[edge];
+                    sumOfWeights = Math.addExact(sumOfWeights, previousWeights[edge]);
+                }
+            }
+        }
+        for (int i = 0; i < addedSources.length; i++) {
+            int source = addedSources[i];
+            targets[positions[source]] = addedTargets[i];
+            weights[positions[source]++] = addedWeights[i];
+            sumOfWeights = Math.addExact(sumOfWeights, addedWeights[i]);
+        }
+
+        CompactGraph next = new CompactGraph(vertexNames, offsets, targets, weights, weightScale);
+        Coordinates coordinates = graph.getCoordinates();
+        if (coordinates != null && addedCoordinates.size() == addedVertexNames.size()) {
+            next.setCoordinates(coordinates.withAddedVertexes(addedCoordinates));
+        }
+        return next;
+    }
+
+    private static int findVertexId(CompactGraph graph, Map<String, Integer> addedVertexIds, String name) {
+        int id = graph.findVertexId(name);
+        if (id == -1) {
+            id = addedVertexIds.getOrDefault(name, -1);
+        }
+        if (id == -1) {
+            throw new IllegalArgumentException(String.format("Vertex '%s' does not exist", name));
+        }
+        return id;
+    }
+
+    // a weight which cannot be represented at the scale of the graph cannot be a weight of any of its edges
+    private static long toFixedPoint(BigDecimal weight, int weightScale) {
+        if (weight.stripTrailingZeros().scale() > weightScale) {
+            throw new IllegalArgumentException("Removed weight does not fit the weight scale of the graph");
+        }
+        return weight.movePointRight(weightScale).longValueExact();
+    }
+}
@@ -0,0 +1,119 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+import java.util.Arrays;
+
+// Edges which differ between two versions of a graph with the same vertexes. Only the lightest of parallel edges
+// can be on a shortest path, so a change is a pair of vertexes whose lightest edge was added, removed or got
+// a different weight. NO_EDGE stands for the weight of a pair which has no edge at all.
+public class GraphDelta {
+
+    public static final long NO_EDGE = Long.MAX_VALUE;
+
+    private int changeCount;
+    private int[] sources;
+    private int[] targets;
+    private long[] previousWeights;
+    private long[] weights;
+
+    private GraphDelta(int capacity) {
+        sources = new int[capacity];
+        targets = new int[capacity];
+        previousWeights = new long[capacity];
+        weights = new long[capacity];
+    }
+
+    // returns null if the graphs cannot be compared edge by edge (i.e. their vertexes or weight scales differ),
+    // or if more than maxChangeCount pairs of vertexes have changed, in which case updating anything computed
+    // for the previous version would take longer than computing it again
+    public static GraphDelta between(CompactGraph previous, CompactGraph next, int maxChangeCount) {
+        if (previous.isFloatingPoint() || next.isFloatingPoint()
+                || previous.getVertexCount() != next.getVertexCount()
+                || previous.getWeightScale() != next.getWeightScale()) {
+            return null;
+        }
+        int vertexCount = next.getVertexCount();
+        for (int v = 0; v < vertexCount; v++) {
+            if (!previous.getVertexName(v).equals(next.getVertexName(v))) {
+                return null;
+            }
+        }
+
+        // lightest weights of edges of a single source vertex, indexed by their target. Only the targets which
+        // are listed in touched are set, so the arrays are cleared in time proportional to the edges of a vertex
+        long[] previousLightest = new long[vertexCount];
+        long[] nextLightest = new long[vertexCount];
+        Arrays.fill(previousLightest, NO_EDGE);
+        Arrays.fill(nextLightest, NO_EDGE);
+        int[] touched = new int[vertexCount];
+
+        GraphDelta delta = new GraphDelta(Math.min(16, maxChangeCount + 1));
+        for (int source = 0; source < vertexCount; source++) {
+            int touchedCount = 0;
+            touchedCount = collectLightest(previous, source, previousLightest, nextLightest, touched, touchedCount);
+            touchedCount = collectLightest(next, source, nextLightest, previousLightest, touched, touchedCount);
+            for (int i = 0; i < touchedCount; i++) {
+                int target = touched[i];
+                if (previousLightest[target] != nextLightest[target]) {
+                    if (delta.changeCount == maxChangeCount) {
+                        return null;
+                    }
+                    delta.add(source, target, previousLightest[target], nextLightest[target]);
+                }
+                previousLightest[target] = NO_EDGE;
+                nextLightest[target] = NO_EDGE;
+            }
+        }
+        return delta;
+    }
+
+    // a target is touched the first time either graph has an edge to it, which is when both of its weights are NO_EDGE
+    private static int collectLightest(CompactGraph graph, int source, long[] lightest, long[] otherLightest,
+                                       int[] touched, int touchedCount) {
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        long[] weights = graph.getWeights();
+        for (int edge = offsets[source]; edge < offsets[source + 1]; edge++) {
+            int target = targets[edge];
+            if (lightest[target] == NO_EDGE && otherLightest[target] == NO_EDGE) {
+                touched[touchedCount++] = target;
+            }
+            lightest[target] = Math.min(lightest[target], weights[edge]);
+        }
+        return touchedCount;
+    }
+
+    private void add(int source, int target, long previousWeight, long weight) {
+        if (changeCount == sources.length) {
+            int newCapacity = changeCount * 2;
+            sources = Arrays.copyOf(sources, newCapacity);
+            targets = Arrays.copyOf(targets, newCapacity);
+            previousWeights = Arrays.copyOf(previousWeights, newCapacity);
+            weights = Arrays.copyOf(weights, newCapacity);
+        }
+        sources[changeCount] = source;
+        targets[changeCount] = target;
+        previousWeights[changeCount] = previousWeight;
+        weights[changeCount] = weight;
+        changeCount++;
+    }
+
+    public int getChangeCount() {
+        return changeCount;
+    }
+
+    public int getSource(int change) {
+        return sources[change];
+    }
+
+    public int getTarget(int change) {
+        return targets[change];
+    }
+
+    public long getPreviousWeight(int change) {
+        return previousWeights[change];
+    }
+
+    public long getWeight(int change) {
+        return weights[change];
+    }
+}
@@ -0,0 +1,305 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+import ml.echelon133.graph.Edge;
+import ml.echelon133.graph.Graph;
+import ml.echelon133.graph.Vertex;
+import ml.echelon133.graph.WeightedGraph;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Graph received from graph-storage-service, kept as a list of edges in primitive arrays. Decoders write vertexes
+// and edges straight into it, so a graph never has to be materialized as Vertex and Edge objects
+// unless its weights cannot be represented by a CompactGraph.
+//
+// Every weight is stored as an unscaled long and a scale (weight = unscaled * 10^-scale). Weights which
+// do not fit in that form are kept as BigDecimals, in an array which is allocated only when it's needed.
+//
+// Coordinates of vertexes are optional, and are added in the same order as vertexes themselves.
+public class GraphSnapshot {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // every integer up to 2^53, and every power of ten up to 10^22, is exactly representable as a double
+    private static final long MAX_EXACT_DOUBLE_INTEGER = 1L << 53;
+    private static final double[] EXACT_POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private String[] vertexNames = new String[INITIAL_CAPACITY];
+    private Map<String, Integer> vertexIds = new HashMap<>();
+    private int vertexCount;
+
+    private int[] sources = new int[INITIAL_CAPACITY];
+    private int[] targets = new int[INITIAL_CAPACITY];
+    private long[] unscaledWeights = new long[INITIAL_CAPACITY];
+    private int[] scales = new int[INITIAL_CAPACITY];
+    private BigDecimal[] bigWeights;
+    private int edgeCount;
+
+    private double[] xs;
+    private double[] ys;
+    private int coordinateCount;
+
+    public GraphSnapshot() {
+    }
+
+    public GraphSnapshot(int expectedVertexCount, int expectedEdgeCount) {
+        vertexNames = new String[Math.max(expectedVertexCount, 1)];
+        vertexIds = new HashMap<>(expectedVertexCount * 4 / 3 + 1);
+        sources = new int[Math.max(expectedEdgeCount, 1)];
+        targets = new int[sources.length];
+        unscaledWeights = new long[sources.length];
+        scales = new int[sources.length];
+    }
+
+    public static GraphSnapshot fromGraph(Graph<BigDecimal> graph) {
+        List<Vertex<BigDecimal>> vertexes = graph.getVertexes();
+        GraphSnapshot snapshot = new GraphSnapshot(vertexes.size(), graph.getEdges().size());
+        Map<Vertex<BigDecimal>, Integer> idsOfVertexes = new IdentityHashMap<>(vertexes.size());
+        for (Vertex<BigDecimal> vertex : vertexes) {
+            idsOfVertexes.put(vertex, snapshot.addVertex(vertex.getName()));
+        }
+        for (Vertex<BigDecimal> vertex : vertexes) {
+            for (Edge<BigDecimal> edge : vertex.getEdges()) {
+                snapshot.addEdge(idsOfVertexes.get(vertex), idsOfVertexes.get(edge.getDestination()), edge.getWeight());
+            }
+        }
+        return snapshot;
+    }
+
+    // a name given more than once creates another vertex, but only the last one can be found by that name
+    public int addVertex(String name) {
+        if (vertexCount == vertexNames.length) {
+            vertexNames = Arrays.copyOf(vertexNames, vertexCount * 2);
+        }
+        vertexNames[vertexCount] = name;
+        vertexIds.put(name, vertexCount);
+        return vertexCount++;
+    }
+
+    // adds coordinates of the next vertex, which does not have to be added yet
+    public void addCoordinates(double x, double y) {
+        if (xs == null) {
+            xs = new double[vertexNames.length];
+            ys = new double[vertexNames.length];
+        } else if (coordinateCount == xs.length) {
+            xs = Arrays.copyOf(xs, coordinateCount * 2);
+            ys = Arrays.copyOf(ys, coordinateCount * 2);
+        }
+        xs[coordinateCount] = x;
+        ys[coordinateCount] = y;
+        coordinateCount++;
+    }
+
+    public int getCoordinateCount() {
+        return coordinateCount;
+    }
+
+    // null unless every vertex has coordinates
+    public Coordinates getCoordinates() {
+        if (coordinateCount == 0 || coordinateCount != vertexCount) {
+            return null;
+        }
+        return new Coordinates(Arrays.copyOf(xs, vertexCount), Arrays.copyOf(ys, vertexCount));
+    }
+
+    // returns -1 if the snapshot does not have a vertex with such name
+    public int findVertexId(String name) {
+        Integer id = vertexIds.get(name);
+        return id == null ? -1 : id;
+    }
+
+    public void addEdge(int source, int target, long unscaledWeight, int scale) {
+        if (edgeCount == sources.length) {
+            int capacity = edgeCount * 2;
+            sources = Arrays.copyOf(sources, capacity);
+            targets = Arrays.copyOf(targets, capacity);
+            unscaledWeights = Arrays.copyOf(unscaledWeights, capacity);
+            scales = Arrays.copyOf(scales, capacity);
+            if (bigWeights != null) {
+                bigWeights = Arrays.copyOf(bigWeights, capacity);
+            }
+        }
+        sources[edgeCount] = source;
+        targets[edgeCount] = target;
+        unscaledWeights[edgeCount] = unscaledWeight;
+        scales[edgeCount] = scale;
+        edgeCount++;
+    }
+
+    public void addEdge(int source, int target, BigDecimal weight) {
+        BigDecimal stripped = weight.signum() == 0 ? BigDecimal.ZERO : weight.stripTrailingZeros();
+        if (stripped.precision() <= 18) {
+            addEdge(source, target, stripped.unscaledValue().longValue(), stripped.scale());
+            return;
+        }
+        addEdge(source, target, 0, 0);
+        if (bigWeights == null) {
+            bigWeights = new BigDecimal[sources.length];
+        }
+        bigWeights[edgeCount - 1] = weight;
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    public String getVertexName(int vertexId) {
+        return vertexNames[vertexId];
+    }
+
+    public int getSource(int edge) {
+        return sources[edge];
+    }
+
+    public int getTarget(int edge) {
+        return targets[edge];
+    }
+
+    public BigDecimal getWeight(int edge) {
+        if (bigWeights != null && bigWeights[edge] != null) {
+            return bigWeights[edge];
+        }
+        return BigDecimal.valueOf(unscaledWeights[edge], scales[edge]);
+    }
+
+    // throws ArithmeticException under the same conditions as CompactGraph.fromGraph
+    public CompactGraph toCompactGraph() throws ArithmeticException {
+        if (bigWeights != null) {
+            for (int edge = 0; edge < edgeCount; edge++) {
+                if (bigWeights[edge] != null) {
+                    throw new ArithmeticException("Edge weight does not fit in a long");
+                }
+            }
+        }
+
+        // scale of a weight without trailing zeros, so that 1.50 and 1.5 need the same scale
+        int weightScale = 0;
+        for (int edge = 0; edge < edgeCount; edge++) {
+            long unscaled = unscaledWeights[edge];
+            int scale = scales[edge];
+            while (scale > 0 && unscaled % 10 == 0) {
+                unscaled /= 10;
+                scale--;
+            }
+            weightScale = Math.max(weightScale, unscaled == 0 ? 0 : scale);
+        }
+
+        int[] offsets = createOffsets();
+        int[] positions = createEdgePositions(offsets);
+        int[] compactTargets = new int[edgeCount];
+        long[] compactWeights = new long[edgeCount];
+        long sumOfWeights = 0;
+        for (int edge = 0; edge < edgeCount; edge++) {
+            int index = positions[edge];
+            compactTargets[index] = targets[edge];
+            compactWeights[index] = scaleExact(unscaledWeights[edge], weightScale - scales[edge]);
+            sumOfWeights = Math.addExact(sumOfWeights, compactWeights[index]);
+        }
+
+        CompactGraph graph = new CompactGraph(Arrays.copyOf(vertexNames, vertexCount), offsets, compactTargets, compactWeights, weightScale);
+        graph.setCoordinates(getCoordinates());
+        return graph;
+    }
+
+    // weights are rounded to the nearest doubles, so sums of weights are accurate to about 15 significant digits.
+    // Throws ArithmeticException if the sum of all weights (which bounds the length of every shortest path)
+    // does not fit in a double
+    public CompactGraph toFloatingPointCompactGraph() throws ArithmeticException {
+        int[] offsets = createOffsets();
+        int[] positions = createEdgePositions(offsets);
+        int[] compactTargets = new int[edgeCount];
+        double[] compactWeights = new double[edgeCount];
+        double sumOfWeights = 0;
+        for (int edge = 0; edge < edgeCount; edge++) {
+            int index = positions[edge];
+            compactTargets[index] = targets[edge];
+            compactWeights[index] = getWeightAsDouble(edge);
+            sumOfWeights += compactWeights[index];
+        }
+        if (Double.isInfinite(sumOfWeights)) {
+            throw new ArithmeticException("Sum of edge weights does not fit in a double");
+        }
+
+        CompactGraph graph = new CompactGraph(Arrays.copyOf(vertexNames, vertexCount), offsets, compactTargets, compactWeights);
+        graph.setCoordinates(getCoordinates());
+        return graph;
+    }
+
+    private double getWeightAsDouble(int edge) {
+        long unscaled = unscaledWeights[edge];
+        int scale = scales[edge];
+        // a division of two doubles which are both exact is rounded correctly, which saves parsing the decimal
+        if ((bigWeights == null || bigWeights[edge] == null)
+                && Math.abs(unscaled) <= MAX_EXACT_DOUBLE_INTEGER && scale >= 0 && scale < EXACT_POWERS_OF_TEN.length) {
+            return unscaled / EXACT_POWERS_OF_TEN[scale];
+        }
+        return getWeight(edge).doubleValue();
+    }
+
+    // edges of every vertex keep the order in which they were added, just like edges of a Vertex
+    private int[] createOffsets() {
+        int[] offsets = new int[vertexCount + 1];
+        for (int edge = 0; edge < edgeCount; edge++) {
+            offsets[sources[edge] + 1]++;
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        return offsets;
+    }
+
+    // position of every edge in the arrays of a CompactGraph with given offsets
+    private int[] createEdgePositions(int[] offsets) {
+        int[] nextFree = Arrays.copyOf(offsets, vertexCount);
+        int[] positions = new int[edgeCount];
+        for (int edge = 0; edge < edgeCount; edge++) {
+            positions[edge] = nextFree[sources[edge]]++;
+        }
+        return positions;
+    }
+
+    // multiplies by 10^exponent, throws ArithmeticException if the result does not fit in a long
+    private static long scaleExact(long unscaled, int exponent) {
+        long result = unscaled;
+        if (result == 0) {
+            return 0;
+        }
+        // only trailing zeros are dropped here, because weightScale is not lower than the scale of any stripped weight
+        for (int i = exponent; i < 0; i++) {
+            result /= 10;
+        }
+        for (int i = 0; i < exponent; i++) {
+            result = Math.multiplyExact(result, 10);
+        }
+        return result;
+    }
+
+    public Graph<BigDecimal> toGraph() {
+        Graph<BigDecimal> graph = new WeightedGraph<>();
+        Vertex<BigDecimal>[] vertexes = createVertexArray(vertexCount);
+        for (int v = 0; v < vertexCount; v++) {
+            vertexes[v] = new Vertex<>(vertexNames[v]);
+            graph.addVertex(vertexes[v]);
+        }
+        for (int edge = 0; edge < edgeCount; edge++) {
+            graph.addEdge(new Edge<>(vertexes[sources[edge]], vertexes[targets[edge]], getWeight(edge)));
+        }
+        return graph;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Vertex<BigDecimal>[] createVertexArray(int length) {
+        return new Vertex[length];
+    }
+}
@@ -0,0 +1,10 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+// Estimate of the distance from a vertex to the target of an A* search. It must never be larger than the real
+// distance, otherwise paths found by the search are not the shortest ones. UNREACHABLE is returned only for
+// vertexes from which the target certainly cannot be reached, which A* does not expand at all.
+// Every heuristic is created for a single target.
+interface Heuristic {
+
+    long estimate(int vertexId);
+}
@@ -0,0 +1,143 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Keeps shortest path trees of the most recently searched start vertexes of every graph (see SourceTrees), and when
+// a new version of a graph differs from the previous one by no more than the configured number of edges, updates
+// these trees for the new version (see DynamicSearch) instead of dropping them. Hot start vertexes of graphs which
+// often change a little then never wait for a full search.
+@Component
+public class IncrementalRecomputation implements MeterBinder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IncrementalRecomputation.class);
+
+    private boolean enabled;
+    private int treesPerGraph;
+    private int maxVertexCount;
+    private int maxChangedEdges;
+
+    // graphs are weak keys, so a graph dropped by the cache is forgotten together with its trees
+    private Map<CompactGraph, Boolean> graphsWithTrees = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private AtomicLong updatedTrees = new AtomicLong();
+    private AtomicLong updateNanos = new AtomicLong();
+    private AtomicLong droppedTrees = new AtomicLong();
+
+    @Autowired
+    public IncrementalRecomputation(@Value("${precompute.incremental.enabled:false}") boolean enabled,
+                                    @Value("${precompute.incremental.trees-per-graph:16}") int treesPerGraph,
+                                    @Value("${precompute.incremental.max-vertex-count:100000}") int maxVertexCount,
+                                    @Value("${precompute.incremental.max-changed-edges:1000}") int maxChangedEdges) {
+        this.enabled = enabled;
+        this.treesPerGraph = treesPerGraph;
+        this.maxVertexCount = maxVertexCount;
+        this.maxChangedEdges = maxChangedEdges;
+    }
+
+    // keeps the tree of a full search of the graph. Graphs with floating-point weights cannot have their trees
+    // updated, and graphs with an all-pairs index already have all of their trees
+    public void recordTree(CompactGraph graph, ShortestPathTree tree) {
+        if (!enabled || treesPerGraph <= 0 || graph.getVertexCount() > maxVertexCount || graph.isFloatingPoint()
+                || graph.getAllPairsIndex() != null || tree.getGraph() != graph) {
+            return;
+        }
+        getOrCreateSourceTrees(graph).putTree(tree);
+    }
+
+    private SourceTrees getOrCreateSourceTrees(CompactGraph graph) {
+        SourceTrees sourceTrees = graph.getSourceTrees();
+        if (sourceTrees == null) {
+            synchronized (graph) {
+                sourceTrees = graph.getSourceTrees();
+                if (sourceTrees == null) {
+                    sourceTrees = new SourceTrees(treesPerGraph);
+                    graph.setSourceTrees(sourceTrees);
+                    graphsWithTrees.put(graph, Boolean.TRUE);
+                }
+            }
+        }
+        return sourceTrees;
+    }
+
+    // whether trees kept for this version of a graph could be carried over to its next version
+    public boolean hasTrees(CompactGraph graph) {
+        SourceTrees sourceTrees = graph.getSourceTrees();
+        return enabled && sourceTrees != null && sourceTrees.getTreeCount() > 0;
+    }
+
+    // called once the next version of a graph is loaded, before it's searched
+    public void carryOver(CompactGraph previous, CompactGraph next) {
+        if (!hasTrees(previous) || next.getVertexCount() > maxVertexCount) {
+            return;
+        }
+        List<ShortestPathTree> trees = previous.getSourceTrees().getTrees();
+
+        long start = System.nanoTime();
+        GraphDelta delta = GraphDelta.between(previous, next, maxChangedEdges);
+        if (delta == null) {
+            droppedTrees.addAndGet(trees.size());
+            LOGGER.debug(String.format("Dropped %d shortest path trees of a graph with %d vertexes, because its new version differs too much",
+                    trees.size(), next.getVertexCount()));
+            return;
+        }
+
+        SourceTrees nextTrees = getOrCreateSourceTrees(next);
+        for (ShortestPathTree tree : trees) {
+            nextTrees.putTree(new DynamicSearch(tree, next, delta).update());
+        }
+        long nanos = System.nanoTime() - start;
+        updateNanos.addAndGet(nanos);
+        updatedTrees.addAndGet(trees.size());
+        LOGGER.debug(String.format("Updated %d shortest path trees of a graph with %d vertexes for %d changed edges in %d ms",
+                trees.size(), next.getVertexCount(), delta.getChangeCount(), TimeUnit.NANOSECONDS.toMillis(nanos)));
+    }
+
+    private List<SourceTrees> getLiveSourceTrees() {
+        List<CompactGraph> graphs;
+        synchronized (graphsWithTrees) {
+            graphs = new ArrayList<>(graphsWithTrees.keySet());
+        }
+        List<SourceTrees> sourceTrees = new ArrayList<>();
+        for (CompactGraph graph : graphs) {
+            sourceTrees.add(graph.getSourceTrees());
+        }
+        return sourceTrees;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("precompute.incremental.trees", this,
+                p -> p.getLiveSourceTrees().stream().mapToLong(SourceTrees::getTreeCount).sum())
+                .description("Shortest path trees kept for start vertexes of graphs which are still cached")
+                .register(registry);
+        Gauge.builder("precompute.incremental.memory", this,
+                p -> p.getLiveSourceTrees().stream().mapToLong(SourceTrees::estimateSizeInBytes).sum())
+                .description("Estimated size of shortest path trees kept for start vertexes of graphs which are still cached")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionTimer.builder("precompute.incremental.updates", this,
+                p -> p.updatedTrees.get(), p -> p.updateNanos.get(), TimeUnit.NANOSECONDS)
+                .description("Shortest path trees updated for a new version of their graph")
+                .register(registry);
+        FunctionCounter.builder("precompute.incremental.dropped", droppedTrees, AtomicLong::get)
+                .description("Shortest path trees dropped, because a new version of their graph differed too much")
+                .register(registry);
+    }
+}
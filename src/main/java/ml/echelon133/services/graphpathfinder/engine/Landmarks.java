@@ -0,0 +1,107 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+// Distances from and to a few landmark vertexes, which give the ALT heuristic of A*. For any landmark L,
+// by the triangle inequality: dist(v, t) >= dist(L, t) - dist(L, v) and dist(v, t) >= dist(v, L) - dist(t, L).
+// Landmarks are picked one by one, every next one being the vertex farthest from the ones picked so far,
+// so they end up on the edges of the graph, "behind" most vertexes, where the bounds are the tightest.
+public class Landmarks {
+
+    private int[] landmarkIds;
+    // fromLandmark[i][v] is the distance from landmark i to v, toLandmark[i][v] from v to landmark i
+    private long[][] fromLandmark;
+    private long[][] toLandmark;
+
+    private Landmarks(int[] landmarkIds, long[][] fromLandmark, long[][] toLandmark) {
+        this.landmarkIds = landmarkIds;
+        this.fromLandmark = fromLandmark;
+        this.toLandmark = toLandmark;
+    }
+
+    // takes two full searches per landmark, one of them over the reversed graph
+    static Landmarks build(CompactGraph graph, DijkstraEngine engine, int landmarkCount) {
+        int vertexCount = graph.getVertexCount();
+        int count = Math.min(landmarkCount, vertexCount);
+        int[] landmarkIds = new int[count];
+        long[][] fromLandmark = new long[count][];
+        long[][] toLandmark = new long[count][];
+
+        // the smallest distance from any landmark picked so far, for every vertex. The first landmark is
+        // the vertex farthest from vertex 0, which is as good a start as any other
+        long[] closestLandmarkDistances = copyDistances(engine.search(graph, 0));
+        int nextLandmark = findFarthest(closestLandmarkDistances);
+        for (int i = 0; i < count; i++) {
+            landmarkIds[i] = nextLandmark;
+            fromLandmark[i] = copyDistances(engine.search(graph, nextLandmark));
+            toLandmark[i] = copyDistances(engine.search(graph.getReverse(), nextLandmark));
+            for (int v = 0; v < vertexCount; v++) {
+                closestLandmarkDistances[v] = Math.min(closestLandmarkDistances[v], fromLandmark[i][v]);
+            }
+            nextLandmark = findFarthest(closestLandmarkDistances);
+        }
+        return new Landmarks(landmarkIds, fromLandmark, toLandmark);
+    }
+
+    private static long[] copyDistances(ShortestPathTree tree) {
+        long[] distances = new long[tree.getGraph().getVertexCount()];
+        for (int v = 0; v < distances.length; v++) {
+            distances[v] = tree.getDistance(v);
+        }
+        return distances;
+    }
+
+    // vertexes which no landmark reaches are the farthest ones of all, so that parts of a graph which are
+    // not connected with the others still get landmarks of their own
+    private static int findFarthest(long[] closestLandmarkDistances) {
+        int farthest = 0;
+        for (int v = 1; v < closestLandmarkDistances.length; v++) {
+            if (closestLandmarkDistances[v] > closestLandmarkDistances[farthest]) {
+                farthest = v;
+            }
+        }
+        return farthest;
+    }
+
+    public int getLandmarkCount() {
+        return landmarkIds.length;
+    }
+
+    public int getLandmarkId(int index) {
+        return landmarkIds[index];
+    }
+
+    Heuristic createHeuristic(int targetId) {
+        return vertexId -> estimate(vertexId, targetId);
+    }
+
+    long estimate(int vertexId, int targetId) {
+        long bound = 0;
+        for (int i = 0; i < landmarkIds.length; i++) {
+            long fromToTarget = fromLandmark[i][targetId];
+            long fromToVertex = fromLandmark[i][vertexId];
+            long vertexToLandmark = toLandmark[i][vertexId];
+            long targetToLandmark = toLandmark[i][targetId];
+
+            // if there was a path from the vertex to the target, the landmark would reach the target whenever it reaches
+            // the vertex, and the vertex would reach the landmark whenever the target reaches it
+            if ((fromToVertex != ShortestPathTree.UNREACHABLE && fromToTarget == ShortestPathTree.UNREACHABLE)
+                    || (targetToLandmark != ShortestPathTree.UNREACHABLE && vertexToLandmark == ShortestPathTree.UNREACHABLE)) {
+                return ShortestPathTree.UNREACHABLE;
+            }
+            if (fromToTarget != ShortestPathTree.UNREACHABLE && fromToVertex != ShortestPathTree.UNREACHABLE) {
+                bound = Math.max(bound, fromToTarget - fromToVertex);
+            }
+            if (vertexToLandmark != ShortestPathTree.UNREACHABLE && targetToLandmark != ShortestPathTree.UNREACHABLE) {
+                bound = Math.max(bound, vertexToLandmark - targetToLandmark);
+            }
+        }
+        return bound;
+    }
+
+    public long estimateSizeInBytes() {
+        long bytes = 0;
+        for (int i = 0; i < landmarkIds.length; i++) {
+            bytes += 8L * (fromLandmark[i].length + toLandmark[i].length);
+        }
+        return bytes;
+    }
+}
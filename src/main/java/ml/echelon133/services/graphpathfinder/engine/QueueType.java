@@ -0,0 +1,14 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+public enum QueueType {
+    // DIAL for large graphs with small integer weights, HEAP otherwise
+    AUTO,
+    // indexed 4-ary heap with decrease-key
+    HEAP,
+    // bucket queue of Dial's algorithm, used only if the maximum weight of the graph is small enough
+    DIAL;
+
+    public static QueueType fromString(String value) {
+        return QueueType.valueOf(value.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,38 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+// Algorithm of a point-to-point search. A* variants differ only in the heuristic which estimates the distance
+// left to the target. Every heuristic is a lower bound of that distance, so all of them find shortest paths.
+public enum SearchAlgorithm {
+    // plain, bidirectional or contraction hierarchy search, whichever the graph allows
+    DIJKSTRA("dijkstra"),
+    // straight-line distance between coordinates of vertexes (x, y)
+    ASTAR_EUCLIDEAN("astar-euclidean"),
+    // great-circle distance between coordinates of vertexes (longitude, latitude in degrees)
+    ASTAR_HAVERSINE("astar-haversine"),
+    // triangle inequality with distances to and from a few landmark vertexes (ALT), for any graph
+    ASTAR_LANDMARKS("astar-landmarks");
+
+    private String parameterValue;
+
+    SearchAlgorithm(String parameterValue) {
+        this.parameterValue = parameterValue;
+    }
+
+    public String getParameterValue() {
+        return parameterValue;
+    }
+
+    public boolean needsCoordinates() {
+        return this == ASTAR_EUCLIDEAN || this == ASTAR_HAVERSINE;
+    }
+
+    // returns null if the value is not one of the accepted parameter values
+    public static SearchAlgorithm fromParameterValue(String value) {
+        for (SearchAlgorithm algorithm : values()) {
+            if (algorithm.parameterValue.equalsIgnoreCase(value.trim())) {
+                return algorithm;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,18 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+// Work done by a single search, which DijkstraEngine reports once the search is done. A push is every insert
+// or decrease of a key, and searches from both ends count vertexes queued on both sides together.
+class SearchWork {
+
+    long settledCount;
+    long relaxedEdgeCount;
+    long queuePushCount;
+    int peakQueueSize;
+
+    void pushed(int queueSize) {
+        queuePushCount++;
+        if (queueSize > peakQueueSize) {
+            peakQueueSize = queueSize;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+import java.math.BigDecimal;
+
+// Result of a single-source search over a CompactGraph. Only vertexes which were reached by the search
+// have a distance; settledOrder lists them in the order in which their distances became final,
+// so a predecessor of a vertex always comes before the vertex itself.
+public class ShortestPathTree {
+
+    public static final long UNREACHABLE = Long.MAX_VALUE;
+    public static final int NO_PREDECESSOR = -1;
+
+    private CompactGraph graph;
+    private int sourceId;
+    private long[] distances;
+    private int[] predecessors;
+    private int[] settledOrder;
+    private int settledCount;
+
+    ShortestPathTree(CompactGraph graph, int sourceId, long[] distances, int[] predecessors, int[] settledOrder, int settledCount) {
+        this.graph = graph;
+        this.sourceId = sourceId;
+        this.distances = distances;
+        this.predecessors = predecessors;
+        this.settledOrder = settledOrder;
+        this.settledCount = settledCount;
+    }
+
+    public CompactGraph getGraph() {
+        return graph;
+    }
+
+    public int getSourceId() {
+        return sourceId;
+    }
+
+    public boolean isReachable(int vertexId) {
+        return distances[vertexId] != UNREACHABLE;
+    }
+
+    public long getDistance(int vertexId) {
+        return distances[vertexId];
+    }
+
+    public BigDecimal getSumOfWeights(int vertexId) {
+        return graph.toBigDecimal(distances[vertexId]);
+    }
+
+    public int getPredecessor(int vertexId) {
+        return predecessors[vertexId];
+    }
+
+    public int getSettledCount() {
+        return settledCount;
+    }
+
+    public int getSettledVertex(int index) {
+        return settledOrder[index];
+    }
+
+    // ids of vertexes on the path from the source to the given vertex, without the vertex itself
+    public int[] getPathTo(int vertexId) {
+        int length = 0;
+        for (int v = predecessors[vertexId]; v != NO_PREDECESSOR; v = predecessors[v]) {
+            length++;
+        }
+        int[] path = new int[length];
+        for (int v = predecessors[vertexId]; v != NO_PREDECESSOR; v = predecessors[v]) {
+            path[--length] = v;
+        }
+        return path;
+    }
+}
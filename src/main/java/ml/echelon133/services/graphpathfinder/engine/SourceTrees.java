@@ -0,0 +1,55 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Full shortest path trees of the most recently searched start vertexes of a graph. Searches from these vertexes
+// only look up their trees, and when a new version of the graph differs by a few edges, the trees are updated
+// for it instead of being searched for again (see IncrementalRecomputation).
+public class SourceTrees {
+
+    private static final long TREE_OVERHEAD_IN_BYTES = 80;
+
+    private int maxTreeCount;
+    // in access order, so the least recently used tree is dropped first
+    private LinkedHashMap<Integer, ShortestPathTree> trees;
+
+    SourceTrees(int maxTreeCount) {
+        this.maxTreeCount = maxTreeCount;
+        this.trees = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, ShortestPathTree> eldest) {
+                return size() > SourceTrees.this.maxTreeCount;
+            }
+        };
+    }
+
+    // returns null if the tree of the vertex is not kept
+    public synchronized ShortestPathTree getTree(int sourceId) {
+        return trees.get(sourceId);
+    }
+
+    synchronized void putTree(ShortestPathTree tree) {
+        trees.put(tree.getSourceId(), tree);
+    }
+
+    // from the least to the most recently used one, so that putting them in that order into another
+    // SourceTrees keeps their order
+    synchronized List<ShortestPathTree> getTrees() {
+        return new ArrayList<>(trees.values());
+    }
+
+    public synchronized int getTreeCount() {
+        return trees.size();
+    }
+
+    public synchronized long estimateSizeInBytes() {
+        long bytes = 0;
+        for (ShortestPathTree tree : trees.values()) {
+            bytes += TREE_OVERHEAD_IN_BYTES + 16L * tree.getGraph().getVertexCount();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,17 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+// Min-priority queue of vertex ids, keyed by their tentative distances.
+// Every vertex is stored at most once, a better distance found for a queued vertex decreases its key in place.
+interface VertexQueue {
+
+    boolean isEmpty();
+
+    int size();
+
+    // key has to be lower than the current key of the vertex, if the vertex is already queued
+    void insertOrDecrease(int vertex, long key);
+
+    long peekMinKey();
+
+    int pollMin();
+}
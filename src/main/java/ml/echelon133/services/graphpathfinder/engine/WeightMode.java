@@ -0,0 +1,17 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+// How weights of graphs are kept and added up. Each mode falls back to the next exact one when a graph
+// cannot be represented in it, so a mode only decides how much precision may be traded for speed.
+public enum WeightMode {
+    // fixed-point longs (exact), or BigDecimals if weights or their sum do not fit in longs
+    LONG,
+    // fixed-point longs if they fit, otherwise doubles (sums are rounded to the nearest double),
+    // or BigDecimals if the sum of all weights does not fit in a double
+    DOUBLE,
+    // BigDecimals and the solver of the graph library, for every graph
+    EXACT;
+
+    public static WeightMode fromString(String value) {
+        return WeightMode.valueOf(value.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,235 @@
+package ml.echelon133.services.graphpathfinder.metrics;
+
+import brave.Span;
+import brave.Tracer;
+import brave.Tracing;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+// Where the time of a request goes, stage by stage, and how much work its search does. Every stage is timed
+// and traced as a span of its own (if tracing is on), and every measurement is tagged with the size bucket
+// of the graph, so that a regression or the capacity needed can be told apart for small and huge graphs.
+// Stages nest: fetch covers decode and conversion of the graph it loads.
+@Component
+public class PipelineMetrics {
+
+    public enum Stage {
+        FETCH("fetch"),
+        DECODE("decode"),
+        CONVERSION("conversion"),
+        SEARCH("search"),
+        SERIALIZATION("serialization");
+
+        private String tagValue;
+
+        Stage(String tagValue) {
+            this.tagValue = tagValue;
+        }
+
+        public String getTagValue() {
+            return tagValue;
+        }
+    }
+
+    // buckets of graphs by their vertex count, every one of them an order of magnitude larger than the previous one
+    public enum SizeBucket {
+        SMALL("small", 10_000),
+        MEDIUM("medium", 100_000),
+        LARGE("large", 1_000_000),
+        HUGE("huge", Integer.MAX_VALUE);
+
+        private String tagValue;
+        private int maxVertexCount;
+
+        SizeBucket(String tagValue, int maxVertexCount) {
+            this.tagValue = tagValue;
+            this.maxVertexCount = maxVertexCount;
+        }
+
+        public String getTagValue() {
+            return tagValue;
+        }
+
+        public static SizeBucket of(int vertexCount) {
+            for (SizeBucket bucket : values()) {
+                if (vertexCount < bucket.maxVertexCount) {
+                    return bucket;
+                }
+            }
+            return HUGE;
+        }
+    }
+
+    // formats of responses with paths, whose sizes are recorded apart
+    public enum ResponseFormat {
+        JSON("json"),
+        GZIPPED_JSON("json-gzip"),
+        BINARY("binary"),
+        NDJSON("ndjson");
+
+        private String tagValue;
+
+        ResponseFormat(String tagValue) {
+            this.tagValue = tagValue;
+        }
+
+        public String getTagValue() {
+            return tagValue;
+        }
+    }
+
+    public interface StageWork<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    // a stage which has started on the current thread, and has to be stopped or failed on that same thread
+    public class Sample {
+        private Stage stage;
+        private long start;
+        private Span span;
+        private Tracer.SpanInScope scope;
+
+        private Sample(Stage stage) {
+            this.stage = stage;
+            if (tracing != null) {
+                span = tracing.tracer().nextSpan().name("path-" + stage.getTagValue()).start();
+                scope = tracing.tracer().withSpanInScope(span);
+            }
+            this.start = System.nanoTime();
+        }
+
+        public void stop(int vertexCount) {
+            long nanos = System.nanoTime() - start;
+            SizeBucket bucket = SizeBucket.of(vertexCount);
+            getStageTimer(stage, bucket).record(nanos, TimeUnit.NANOSECONDS);
+            if (span != null) {
+                span.tag("graph.size", bucket.getTagValue());
+                span.tag("graph.vertexes", Integer.toString(vertexCount));
+                finish();
+            }
+        }
+
+        // the size of a graph which failed to load is not known, so a failed stage is only traced
+        public void fail(Throwable ex) {
+            if (span != null) {
+                span.error(ex);
+                finish();
+            }
+        }
+
+        private void finish() {
+            scope.close();
+            span.finish();
+        }
+    }
+
+    private static final int STAGE_COUNT = Stage.values().length;
+    private static final int BUCKET_COUNT = SizeBucket.values().length;
+    private static final int FORMAT_COUNT = ResponseFormat.values().length;
+
+    private MeterRegistry registry;
+    private Tracing tracing;
+    private boolean histograms;
+
+    // meters are registered by the first measurement of their stage and bucket
+    private Timer[] stageTimers = new Timer[STAGE_COUNT * BUCKET_COUNT];
+    private DistributionSummary[] settledVertexes = new DistributionSummary[BUCKET_COUNT];
+    private DistributionSummary[] relaxedEdges = new DistributionSummary[BUCKET_COUNT];
+    private DistributionSummary[] queuePushes = new DistributionSummary[BUCKET_COUNT];
+    private DistributionSummary[] peakQueueSizes = new DistributionSummary[BUCKET_COUNT];
+    private DistributionSummary[] responseSizes = new DistributionSummary[FORMAT_COUNT * BUCKET_COUNT];
+
+    @Autowired
+    public PipelineMetrics(MeterRegistry registry,
+                           ObjectProvider<Tracing> tracing,
+                           @Value("${metrics.pipeline.histograms:true}") boolean histograms) {
+        this.registry = registry;
+        // tracing is not available when there is nothing to send spans to
+        this.tracing = tracing.getIfAvailable();
+        this.histograms = histograms;
+    }
+
+    public Sample start(Stage stage) {
+        return new Sample(stage);
+    }
+
+    // runs the whole stage on the calling thread, and takes the vertex count from its result
+    public <T, E extends Exception> T record(Stage stage, StageWork<T, E> work, ToIntFunction<T> vertexCount) throws E {
+        Sample sample = start(stage);
+        T result;
+        try {
+            result = work.run();
+        } catch (Exception | Error ex) {
+            sample.fail(ex);
+            throw ex;
+        }
+        sample.stop(vertexCount.applyAsInt(result));
+        return result;
+    }
+
+    // a task which runs on another thread still belongs to the trace which was current when it was created
+    public <T> Callable<T> inCurrentTrace(Callable<T> task) {
+        return tracing == null ? task : tracing.currentTraceContext().wrap(task);
+    }
+
+    public void recordSearchWork(int vertexCount, long settledCount, long relaxedEdgeCount, long queuePushCount, int peakQueueSize) {
+        int bucket = SizeBucket.of(vertexCount).ordinal();
+        getSummary(settledVertexes, bucket, "engine.search.settled-vertexes", null,
+                "Vertexes taken from the queue by a search").record(settledCount);
+        getSummary(relaxedEdges, bucket, "engine.search.relaxed-edges", null,
+                "Edges relaxed by a search").record(relaxedEdgeCount);
+        getSummary(queuePushes, bucket, "engine.search.queue-pushes", null,
+                "Vertexes queued or given a lower key by a search").record(queuePushCount);
+        getSummary(peakQueueSizes, bucket, "engine.search.peak-queue-size", null,
+                "Largest number of vertexes queued at once during a search").record(peakQueueSize);
+    }
+
+    // streamed responses are written while they are sent, so they are counted apart from the ones sent at once,
+    // and compact formats apart from JSON, so that the bytes they save can be seen
+    public void recordResponseSize(int vertexCount, long bytes, ResponseFormat format) {
+        int index = format.ordinal() * BUCKET_COUNT + SizeBucket.of(vertexCount).ordinal();
+        getSummary(responseSizes, index, "path.response.size", format.getTagValue(),
+                "Size of serialized paths sent in a response").record(bytes);
+    }
+
+    private Timer getStageTimer(Stage stage, SizeBucket bucket) {
+        int index = stage.ordinal() * BUCKET_COUNT + bucket.ordinal();
+        Timer timer = stageTimers[index];
+        if (timer == null) {
+            // registering is idempotent, so threads which race here get the same timer
+            timer = Timer.builder("path.stage")
+                    .tag("stage", stage.getTagValue())
+                    .tag("size", bucket.getTagValue())
+                    .description("Time taken by a stage of finding paths")
+                    .publishPercentileHistogram(histograms)
+                    .register(registry);
+            stageTimers[index] = timer;
+        }
+        return timer;
+    }
+
+    private DistributionSummary getSummary(DistributionSummary[] summaries, int index, String name, String format, String description) {
+        DistributionSummary summary = summaries[index];
+        if (summary == null) {
+            DistributionSummary.Builder builder = DistributionSummary.builder(name)
+                    .tag("size", SizeBucket.values()[index % BUCKET_COUNT].getTagValue())
+                    .description(description)
+                    .publishPercentileHistogram(histograms);
+            if (format != null) {
+                builder.tag("format", format).baseUnit("bytes");
+            }
+            summary = builder.register(registry);
+            summaries[index] = summary;
+        }
+        return summary;
+    }
+}
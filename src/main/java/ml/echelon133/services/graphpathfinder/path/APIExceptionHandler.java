@@ -3,8 +3,12 @@ package ml.echelon133.services.graphpathfinder.path;
 import ml.echelon133.services.graphpathfinder.path.exception.GraphDoesNotExistException;
 import ml.echelon133.services.graphpathfinder.path.exception.GraphDoesNotHaveGivenVertexException;
 import ml.echelon133.services.graphpathfinder.path.exception.GraphNotAvailableException;
+import ml.echelon133.services.graphpathfinder.path.exception.InvalidParameterValueException;
 import ml.echelon133.services.graphpathfinder.path.exception.RequiredParameterNotGivenException;
+import ml.echelon133.services.graphpathfinder.path.exception.ServiceOverloadedException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -40,27 +44,43 @@ public class APIExceptionHandler extends ResponseEntityExceptionHandler {
         }
     }
 
+    // content type is set explicitly, so that errors are written as JSON even to clients which accept only NDJSON
+    private ResponseEntity<ErrorMessage> createErrorResponse(Exception ex, WebRequest request, HttpStatus status) {
+        ErrorMessage msg = new ErrorMessage(ex.getMessage(), request.getDescription(false));
+        return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON_UTF8).body(msg);
+    }
+
     @ExceptionHandler(value = RequiredParameterNotGivenException.class)
     protected ResponseEntity<ErrorMessage> handleRequiredParameterNotGivenException(RequiredParameterNotGivenException ex, WebRequest request) {
-        ErrorMessage msg = new ErrorMessage(ex.getMessage(), request.getDescription(false));
-        return new ResponseEntity<>(msg, HttpStatus.BAD_REQUEST);
+        return createErrorResponse(ex, request, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(value = InvalidParameterValueException.class)
+    protected ResponseEntity<ErrorMessage> handleInvalidParameterValueException(InvalidParameterValueException ex, WebRequest request) {
+        return createErrorResponse(ex, request, HttpStatus.BAD_REQUEST);
     }
 
     @ExceptionHandler(value = GraphDoesNotHaveGivenVertexException.class)
     protected ResponseEntity<ErrorMessage> handleGraphDoesNotHaveGivenVertexException(GraphDoesNotHaveGivenVertexException ex, WebRequest request) {
-        ErrorMessage msg = new ErrorMessage(ex.getMessage(), request.getDescription(false));
-        return new ResponseEntity<>(msg, HttpStatus.BAD_REQUEST);
+        return createErrorResponse(ex, request, HttpStatus.BAD_REQUEST);
     }
 
     @ExceptionHandler(value = GraphDoesNotExistException.class)
     protected ResponseEntity<ErrorMessage> handleGraphDoesNotExistException(GraphDoesNotExistException ex, WebRequest request) {
-        ErrorMessage msg = new ErrorMessage(ex.getMessage(), request.getDescription(false));
-        return new ResponseEntity<>(msg, HttpStatus.NOT_FOUND);
+        return createErrorResponse(ex, request, HttpStatus.NOT_FOUND);
     }
 
     @ExceptionHandler(value = GraphNotAvailableException.class)
     protected ResponseEntity<ErrorMessage> handleGraphNotAvailableException(GraphNotAvailableException ex, WebRequest request) {
-        ErrorMessage msg = new ErrorMessage(ex.getMessage(), request.getDescription(false));
-        return new ResponseEntity<>(msg, HttpStatus.INTERNAL_SERVER_ERROR);
+        return createErrorResponse(ex, request, HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    @ExceptionHandler(value = ServiceOverloadedException.class)
+    protected ResponseEntity<ErrorMessage> handleServiceOverloadedException(ServiceOverloadedException ex, WebRequest request) {
+        ResponseEntity<ErrorMessage> response = createErrorResponse(ex, request, HttpStatus.SERVICE_UNAVAILABLE);
+        return ResponseEntity.status(response.getStatusCode())
+                .headers(response.getHeaders())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(response.getBody());
     }
 }
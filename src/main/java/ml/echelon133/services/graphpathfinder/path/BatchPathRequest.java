@@ -0,0 +1,17 @@
+package ml.echelon133.services.graphpathfinder.path;
+
+import java.util.List;
+
+// body of a batch request: {"startFrom": ["v1", "v2", ...]}
+public class BatchPathRequest {
+
+    private List<String> startFrom;
+
+    public List<String> getStartFrom() {
+        return startFrom;
+    }
+
+    public void setStartFrom(List<String> startFrom) {
+        this.startFrom = startFrom;
+    }
+}
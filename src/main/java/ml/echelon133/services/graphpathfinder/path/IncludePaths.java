@@ -0,0 +1,29 @@
+package ml.echelon133.services.graphpathfinder.path;
+
+// Decides which results contain 'pathToVertex'. Paths are always rebuilt from predecessors while serializing,
+// so leaving them out makes the response (and the cached result) much smaller for deep graphs.
+public enum IncludePaths {
+    ALL("true"),
+    NONE("false"),
+    TARGET_ONLY("target-only");
+
+    private String parameterValue;
+
+    IncludePaths(String parameterValue) {
+        this.parameterValue = parameterValue;
+    }
+
+    public String getParameterValue() {
+        return parameterValue;
+    }
+
+    // returns null if the value is not one of the accepted parameter values
+    public static IncludePaths fromParameterValue(String value) {
+        for (IncludePaths includePaths : values()) {
+            if (includePaths.parameterValue.equalsIgnoreCase(value.trim())) {
+                return includePaths;
+            }
+        }
+        return null;
+    }
+}
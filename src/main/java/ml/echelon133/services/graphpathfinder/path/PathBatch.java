@@ -0,0 +1,86 @@
+package ml.echelon133.services.graphpathfinder.path;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+// Searches of many queries over a single, already loaded graph. Searches are independent (every one of them
+// allocates its own state), so they run in parallel on the given executor, but no more than maxInFlight of them
+// are either running or waiting to be consumed at any moment, so that a consumer slower than the searches
+// does not make all results pile up in memory. Once all searches are done (or the batch fails), onFinished is run.
+public class PathBatch {
+
+    interface Solver {
+        PathResult solve(PathQuery query) throws Exception;
+    }
+
+    public interface ResultConsumer {
+        void accept(PathResult result) throws Exception;
+    }
+
+    private List<PathQuery> queries;
+    private Solver solver;
+    private Executor executor;
+    private int maxInFlight;
+    private Runnable onFinished;
+
+    PathBatch(List<PathQuery> queries, Solver solver, Executor executor, int maxInFlight, Runnable onFinished) {
+        this.queries = queries;
+        this.solver = solver;
+        this.executor = executor;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.onFinished = onFinished;
+    }
+
+    public int size() {
+        return queries.size();
+    }
+
+    // runs all searches and passes their results to the consumer in the order in which they finish. The consumer
+    // is always called from the calling thread. If a search or the consumer throws, searches which have not
+    // finished yet are cancelled and the exception is rethrown
+    public void forEachResult(ResultConsumer consumer) throws Exception {
+        CompletionService<PathResult> completionService = new ExecutorCompletionService<>(executor);
+        // only futures which were not taken yet are kept, a taken one would hold its result until the batch ends
+        Set<Future<PathResult>> pending = new HashSet<>();
+        Iterator<PathQuery> remaining = queries.iterator();
+
+        try {
+            while (pending.size() < maxInFlight && remaining.hasNext()) {
+                pending.add(submit(completionService, remaining.next()));
+            }
+            for (int consumed = 0; consumed < queries.size(); consumed++) {
+                Future<PathResult> finished = completionService.take();
+                pending.remove(finished);
+                if (remaining.hasNext()) {
+                    pending.add(submit(completionService, remaining.next()));
+                }
+                consumer.accept(getResult(finished));
+            }
+        } finally {
+            pending.forEach(future -> future.cancel(true));
+            onFinished.run();
+        }
+    }
+
+    private Future<PathResult> submit(CompletionService<PathResult> completionService, PathQuery query) {
+        return completionService.submit(() -> solver.solve(query));
+    }
+
+    private static PathResult getResult(Future<PathResult> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw ex;
+        }
+    }
+}
@@ -1,33 +1,86 @@
 package ml.echelon133.services.graphpathfinder.path;
 
-import ml.echelon133.graph.Vertex;
-import ml.echelon133.graph.VertexResult;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import ml.echelon133.services.graphpathfinder.engine.SearchAlgorithm;
+import ml.echelon133.services.graphpathfinder.metrics.PipelineMetrics;
+import ml.echelon133.services.graphpathfinder.path.exception.InvalidParameterValueException;
 import ml.echelon133.services.graphpathfinder.path.exception.RequiredParameterNotGivenException;
+import ml.echelon133.services.graphpathfinder.routing.GraphRouting;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/graphs/{id}")
 public class PathController {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(PathController.class);
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    // a single batch holds the graph and its queries until all of them are done, so it cannot grow without limits
+    static final int MAX_BATCH_SIZE = 10_000;
+
+    // counts bytes of a streamed response, which is never held in memory as a whole
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
 
     private PathService pathService;
+    private PipelineMetrics pipelineMetrics;
+    private GraphRouting graphRouting;
 
     @Autowired
-    public PathController(PathService pathService) {
+    public PathController(PathService pathService, PipelineMetrics pipelineMetrics, GraphRouting graphRouting) {
         this.pathService = pathService;
+        this.pipelineMetrics = pipelineMetrics;
+        this.graphRouting = graphRouting;
     }
 
-    @PostMapping("/paths")
-    public ResponseEntity<Map<Vertex<BigDecimal>, VertexResult<BigDecimal>>> calcPath(@PathVariable String id, @RequestParam(required = false) String startFrom) throws Exception {
+    private PathQuery createQuery(String id, String startFrom, String to, List<String> targets, String maxDistance, String limit,
+                                  String includePaths, String algorithm) throws Exception {
 
         // startFrom param 'required' set to false, so that we can handle its content our own way
         if (startFrom == null || startFrom.isBlank() || startFrom.isEmpty()) {
@@ -35,9 +88,282 @@ public class PathController {
             throw new RequiredParameterNotGivenException("Parameter 'startFrom' is required to proceed with the request");
         }
 
-        Map<Vertex<BigDecimal>, VertexResult<BigDecimal>> result = pathService.calculateShortestPath(id, startFrom);
+        // with 'to' given only the path to that single vertex is calculated and returned
+        PathQuery query = PathQuery.startingFrom(startFrom);
+        if (to != null && !to.isBlank()) {
+            query = query.withTarget(to);
+        }
+        if (includePaths != null) {
+            IncludePaths parsedIncludePaths = IncludePaths.fromParameterValue(includePaths);
+            if (parsedIncludePaths == null) {
+                LOGGER.debug(String.format("Attempt of calculating paths for graph with ID %s with invalid 'includePaths' param value %s", id, includePaths));
+                throw new InvalidParameterValueException("Parameter 'includePaths' has to be one of: true, false, target-only");
+            }
+            query = query.withIncludePaths(parsedIncludePaths);
+        }
+        if (algorithm != null) {
+            SearchAlgorithm parsedAlgorithm = SearchAlgorithm.fromParameterValue(algorithm);
+            if (parsedAlgorithm == null) {
+                LOGGER.debug(String.format("Attempt of calculating paths for graph with ID %s with invalid 'algorithm' param value %s", id, algorithm));
+                throw new InvalidParameterValueException("Parameter 'algorithm' has to be one of: dijkstra, astar-euclidean, astar-haversine, astar-landmarks");
+            }
+            // A* is goal-directed, so it needs a goal
+            if (parsedAlgorithm != SearchAlgorithm.DIJKSTRA && !query.hasTarget()) {
+                LOGGER.debug(String.format("Attempt of calculating paths for graph with ID %s with 'algorithm' param value %s, but without 'to'", id, algorithm));
+                throw new InvalidParameterValueException("Parameter 'algorithm' other than dijkstra requires parameter 'to'");
+            }
+            query = query.withAlgorithm(parsedAlgorithm);
+        }
+        return withBounds(id, query, targets, maxDistance, limit);
+    }
+
+    // bounds let a search without 'to' stop early: at the last of 'targets', past 'maxDistance', or once 'limit'
+    // of the nearest vertexes are found. They narrow down the result the same way
+    private PathQuery withBounds(String id, PathQuery query, List<String> targets, String maxDistance, String limit) throws Exception {
+        List<String> targetNames = targets == null ? List.of() :
+                targets.stream().filter(name -> name != null && !name.isBlank()).collect(Collectors.toList());
+        boolean bounded = !targetNames.isEmpty() || maxDistance != null || limit != null;
+        if (bounded && query.hasTarget()) {
+            LOGGER.debug(String.format("Attempt of calculating paths for graph with ID %s with both 'to' and bounds of the search", id));
+            throw new InvalidParameterValueException("Parameters 'targets', 'maxDistance' and 'limit' cannot be combined with parameter 'to'");
+        }
+        if (!targetNames.isEmpty()) {
+            query = query.withTargets(targetNames);
+        }
+        if (maxDistance != null) {
+            BigDecimal parsedMaxDistance;
+            try {
+                parsedMaxDistance = new BigDecimal(maxDistance);
+            } catch (NumberFormatException ex) {
+                parsedMaxDistance = null;
+            }
+            if (parsedMaxDistance == null || parsedMaxDistance.signum() < 0) {
+                LOGGER.debug(String.format("Attempt of calculating paths for graph with ID %s with invalid 'maxDistance' param value %s", id, maxDistance));
+                throw new InvalidParameterValueException("Parameter 'maxDistance' has to be a non-negative number");
+            }
+            query = query.withMaxDistance(parsedMaxDistance);
+        }
+        if (limit != null) {
+            int parsedLimit;
+            try {
+                parsedLimit = Integer.parseInt(limit);
+            } catch (NumberFormatException ex) {
+                parsedLimit = 0;
+            }
+            if (parsedLimit <= 0) {
+                LOGGER.debug(String.format("Attempt of calculating paths for graph with ID %s with invalid 'limit' param value %s", id, limit));
+                throw new InvalidParameterValueException("Parameter 'limit' has to be a positive integer");
+            }
+            query = query.withLimit(parsedLimit);
+        }
+        return query;
+    }
+
+    // handlers return as soon as the request is validated, so request threads do not wait for graphs to be downloaded
+    // or for searches to finish. Responses are written when the futures returned by the service complete
+    @PostMapping("/paths")
+    public CompletableFuture<ResponseEntity<byte[]>> calcPath(@PathVariable String id,
+                                                              @RequestParam(required = false) String startFrom,
+                                                              @RequestParam(required = false) String to,
+                                                              @RequestParam(required = false) List<String> targets,
+                                                              @RequestParam(required = false) String maxDistance,
+                                                              @RequestParam(required = false) String limit,
+                                                              @RequestParam(required = false) String includePaths,
+                                                              @RequestParam(required = false) String algorithm,
+                                                              HttpServletRequest httpRequest) throws Exception {
+
+        PathQuery query = createQuery(id, startFrom, to, targets, maxDistance, limit, includePaths, algorithm);
+
+        // JSON compresses well, because the same vertex names repeat in paths, so it's compressed whenever
+        // the client allows it
+        ResultEncoding encoding = acceptsGzip(httpRequest) ? ResultEncoding.GZIPPED_JSON : ResultEncoding.JSON;
+        return graphRouting.route(id, httpRequest, owner -> graphRouting.forward(owner, httpRequest, null),
+                () -> encodedPaths(id, query, encoding));
+    }
+
+    // chosen over calcPath only when the client explicitly accepts the binary path result format, which writes
+    // every vertex name only once and leaves paths to be rebuilt from predecessors
+    @PostMapping(value = "/paths", produces = PathResultBinaryFormat.MEDIA_TYPE_VALUE)
+    public CompletableFuture<ResponseEntity<byte[]>> calcPathAsBinary(@PathVariable String id,
+                                                                      @RequestParam(required = false) String startFrom,
+                                                                      @RequestParam(required = false) String to,
+                                                                      @RequestParam(required = false) List<String> targets,
+                                                                      @RequestParam(required = false) String maxDistance,
+                                                                      @RequestParam(required = false) String limit,
+                                                                      @RequestParam(required = false) String includePaths,
+                                                                      @RequestParam(required = false) String algorithm,
+                                                                      HttpServletRequest httpRequest) throws Exception {
 
-        LOGGER.debug(String.format("About to return calculated paths of a graph with ID %s (startFrom=%s)", id, startFrom));
-        return new ResponseEntity<>(result, HttpStatus.OK);
+        PathQuery query = createQuery(id, startFrom, to, targets, maxDistance, limit, includePaths, algorithm);
+
+        return graphRouting.route(id, httpRequest, owner -> graphRouting.forward(owner, httpRequest, null),
+                () -> encodedPaths(id, query, ResultEncoding.BINARY));
+    }
+
+    // result is already encoded, because encoded results are what the service caches
+    private CompletableFuture<ResponseEntity<byte[]>> encodedPaths(String id, PathQuery query, ResultEncoding encoding) {
+        return pathService.calculateShortestPathEncodedAsync(id, query, encoding).thenApply(result -> {
+            LOGGER.debug(String.format("About to return calculated paths of a graph with ID %s (%s, %s)", id, query, encoding));
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.parseMediaType(encoding.getContentType()));
+            if (encoding != ResultEncoding.BINARY) {
+                response.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            }
+            if (encoding.getContentEncoding() != null) {
+                response.header(HttpHeaders.CONTENT_ENCODING, encoding.getContentEncoding());
+            }
+            return response.body(result);
+        });
+    }
+
+    // true if gzip is among content codings accepted by the client, and its quality is not 0
+    private static boolean acceptsGzip(HttpServletRequest httpRequest) {
+        Enumeration<String> headers = httpRequest.getHeaders(HttpHeaders.ACCEPT_ENCODING);
+        while (headers != null && headers.hasMoreElements()) {
+            for (String coding : headers.nextElement().split(",")) {
+                String[] parts = coding.split(";");
+                if (!parts[0].trim().equalsIgnoreCase("gzip")) {
+                    continue;
+                }
+                boolean refused = false;
+                for (int i = 1; i < parts.length; i++) {
+                    String parameter = parts[i].replace(" ", "");
+                    refused |= parameter.matches("(?i)q=0(\\.0*)?");
+                }
+                if (!refused) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // chosen over calcPath only when the client explicitly accepts NDJSON. Results are written one vertex per line
+    // while the response is being sent, so they are never held in memory in their serialized form (nor cached)
+    @PostMapping(value = "/paths", produces = APPLICATION_NDJSON_VALUE)
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> calcPathAsStream(@PathVariable String id,
+                                                                                     @RequestParam(required = false) String startFrom,
+                                                                                     @RequestParam(required = false) String to,
+                                                                                     @RequestParam(required = false) List<String> targets,
+                                                                                     @RequestParam(required = false) String maxDistance,
+                                                                                     @RequestParam(required = false) String limit,
+                                                                                     @RequestParam(required = false) String includePaths,
+                                                                                     @RequestParam(required = false) String algorithm,
+                                                                                     HttpServletRequest httpRequest) throws Exception {
+
+        PathQuery query = createQuery(id, startFrom, to, targets, maxDistance, limit, includePaths, algorithm);
+
+        return graphRouting.route(id, httpRequest, owner -> graphRouting.forwardAsStream(owner, httpRequest, null),
+                () -> streamPaths(id, query));
+    }
+
+    // the search itself happens before the response is committed, so that its errors are still reported as usual
+    private CompletableFuture<ResponseEntity<StreamingResponseBody>> streamPaths(String id, PathQuery query) {
+        return pathService.calculateShortestPathAsync(id, query).thenApply(result -> {
+            LOGGER.debug(String.format("About to stream %d calculated paths of a graph with ID %s (%s)", result.getVertexCount(), id, query));
+            StreamingResponseBody body = outputStream -> {
+                CountingOutputStream countingStream = new CountingOutputStream(outputStream);
+                pipelineMetrics.record(PipelineMetrics.Stage.SERIALIZATION, () -> {
+                    try (JsonGenerator gen = JSON_FACTORY.createGenerator(countingStream)) {
+                        PathResultSerializer.writeLines(result, gen);
+                    }
+                    return result;
+                }, PathResult::getGraphVertexCount);
+                pipelineMetrics.recordResponseSize(result.getGraphVertexCount(), countingStream.getCount(), PipelineMetrics.ResponseFormat.NDJSON);
+            };
+            return ResponseEntity.ok().contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE)).body(body);
+        });
+    }
+
+    // searches from many start vertexes over a graph which is loaded once. Their results are written as NDJSON,
+    // one line per start vertex in the order in which searches finish, so every line names its start vertex
+    @PostMapping("/paths/batch")
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> calcPathsInBatch(@PathVariable String id,
+                                                                                     @RequestBody(required = false) BatchPathRequest request,
+                                                                                     @RequestParam(required = false) String to,
+                                                                                     @RequestParam(required = false) List<String> targets,
+                                                                                     @RequestParam(required = false) String maxDistance,
+                                                                                     @RequestParam(required = false) String limit,
+                                                                                     @RequestParam(required = false) String includePaths,
+                                                                                     @RequestParam(required = false) String algorithm,
+                                                                                     HttpServletRequest httpRequest) throws Exception {
+
+        List<String> startVertexes = request == null ? null : request.getStartFrom();
+        if (startVertexes == null || startVertexes.isEmpty()) {
+            LOGGER.debug(String.format("Attempt of calculating paths in batch for graph with ID %s without giving 'startFrom' list", id));
+            throw new RequiredParameterNotGivenException("List 'startFrom' in the request body is required to proceed with the request");
+        }
+        if (startVertexes.size() > MAX_BATCH_SIZE) {
+            LOGGER.debug(String.format("Attempt of calculating paths in batch for graph with ID %s from %d vertexes", id, startVertexes.size()));
+            throw new InvalidParameterValueException(String.format("List 'startFrom' cannot have more than %d elements", MAX_BATCH_SIZE));
+        }
+
+        List<PathQuery> queries = new ArrayList<>(startVertexes.size());
+        for (String startFrom : startVertexes) {
+            queries.add(createQuery(id, startFrom, to, targets, maxDistance, limit, includePaths, algorithm));
+        }
+
+        // the body has already been read, so the owner gets it written again
+        return graphRouting.route(id, httpRequest,
+                owner -> graphRouting.forwardAsStream(owner, httpRequest, writeBatchRequest(startVertexes)),
+                () -> streamBatch(id, queries));
+    }
+
+    private static byte[] writeBatchRequest(List<String> startVertexes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator gen = JSON_FACTORY.createGenerator(out)) {
+            gen.writeStartObject();
+            gen.writeArrayFieldStart("startFrom");
+            for (String startFrom : startVertexes) {
+                gen.writeString(startFrom);
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+        } catch (IOException ex) {
+            // nothing is written anywhere but to memory
+            throw new IllegalStateException(ex);
+        }
+        return out.toByteArray();
+    }
+
+    // the graph is loaded and all vertex names are checked before the response is committed
+    private CompletableFuture<ResponseEntity<StreamingResponseBody>> streamBatch(String id, List<PathQuery> queries) {
+        return pathService.createBatchAsync(id, queries).thenApply(batch -> {
+            LOGGER.debug(String.format("About to stream paths of a graph with ID %s from %d start vertexes", id, batch.size()));
+            // lines are written while later searches still run, so only the size of the response is measured
+            StreamingResponseBody body = outputStream -> {
+                CountingOutputStream countingStream = new CountingOutputStream(outputStream);
+                AtomicInteger graphVertexCount = new AtomicInteger();
+                try (JsonGenerator gen = JSON_FACTORY.createGenerator(countingStream)) {
+                    batch.forEachResult(result -> {
+                        graphVertexCount.set(result.getGraphVertexCount());
+                        PathResultSerializer.writeBatchLine(result, gen);
+                    });
+                } catch (IOException ex) {
+                    throw ex;
+                } catch (Exception ex) {
+                    // the response is already committed, so it can only be aborted
+                    throw new IOException(String.format("Batch of searches over a graph with ID %s failed", id), ex);
+                }
+                pipelineMetrics.recordResponseSize(graphVertexCount.get(), countingStream.getCount(), PipelineMetrics.ResponseFormat.NDJSON);
+            };
+            return ResponseEntity.ok().contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE)).body(body);
+        });
+    }
+
+    @DeleteMapping("/cache")
+    public ResponseEntity<Void> evictGraph(@PathVariable String id, HttpServletRequest httpRequest) {
+        // called when a graph changes in graph-storage-service, so that it gets fetched again on the next request.
+        // An instance which does not own the graph may still hold it (i.e. it served for an owner which could not
+        // be reached), so the graph is evicted both here and by its owner, without waiting for the owner
+        pathService.evictGraph(id);
+        ServiceInstance owner = graphRouting.findOwner(id, httpRequest);
+        if (owner != null) {
+            graphRouting.forward(owner, httpRequest, null).whenComplete((response, ex) -> {
+                if (ex != null) {
+                    LOGGER.warn(String.format("Graph with ID %s could not be evicted by its owner: %s", id, ex.getMessage()));
+                }
+            });
+        }
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
     }
 }
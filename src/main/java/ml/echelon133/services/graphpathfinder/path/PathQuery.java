@@ -0,0 +1,146 @@
+package ml.echelon133.services.graphpathfinder.path;
+
+import ml.echelon133.services.graphpathfinder.engine.SearchAlgorithm;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+// Parameters of a single request for shortest paths. Instances are used as a part of the result cache key,
+// so they are immutable - every 'with' method returns a new query.
+public class PathQuery {
+
+    public static final int NO_LIMIT = Integer.MAX_VALUE;
+
+    private String startVertexName;
+    private String targetVertexName;
+    private IncludePaths includePaths;
+    // different algorithms can find different paths of the same length, so the algorithm is a part of the query
+    private SearchAlgorithm algorithm;
+    // bounds of a search without a single target, which stops as soon as the first of them is reached
+    private List<String> targetVertexNames;
+    private BigDecimal maxDistance;
+    private int limit;
+
+    private PathQuery(String startVertexName, String targetVertexName, IncludePaths includePaths, SearchAlgorithm algorithm,
+                      List<String> targetVertexNames, BigDecimal maxDistance, int limit) {
+        this.startVertexName = startVertexName;
+        this.targetVertexName = targetVertexName;
+        this.includePaths = includePaths;
+        this.algorithm = algorithm;
+        this.targetVertexNames = targetVertexNames;
+        this.maxDistance = maxDistance;
+        this.limit = limit;
+    }
+
+    public static PathQuery startingFrom(String startVertexName) {
+        return new PathQuery(startVertexName, null, IncludePaths.ALL, SearchAlgorithm.DIJKSTRA, null, null, NO_LIMIT);
+    }
+
+    public PathQuery withTarget(String targetVertexName) {
+        return new PathQuery(startVertexName, targetVertexName, includePaths, algorithm, targetVertexNames, maxDistance, limit);
+    }
+
+    public PathQuery withIncludePaths(IncludePaths includePaths) {
+        return new PathQuery(startVertexName, targetVertexName, includePaths, algorithm, targetVertexNames, maxDistance, limit);
+    }
+
+    public PathQuery withAlgorithm(SearchAlgorithm algorithm) {
+        return new PathQuery(startVertexName, targetVertexName, includePaths, algorithm, targetVertexNames, maxDistance, limit);
+    }
+
+    // the order of names does not matter, so equal sets of targets make equal queries
+    public PathQuery withTargets(List<String> targetVertexNames) {
+        List<String> sorted = targetVertexNames.stream().distinct().sorted().collect(Collectors.toUnmodifiableList());
+        return new PathQuery(startVertexName, targetVertexName, includePaths, algorithm, sorted, maxDistance, limit);
+    }
+
+    // 10 and 10.0 are the same distance, so they make equal queries
+    public PathQuery withMaxDistance(BigDecimal maxDistance) {
+        BigDecimal normalized = maxDistance.stripTrailingZeros();
+        if (normalized.scale() < 0) {
+            normalized = normalized.setScale(0);
+        }
+        return new PathQuery(startVertexName, targetVertexName, includePaths, algorithm, targetVertexNames, normalized, limit);
+    }
+
+    public PathQuery withLimit(int limit) {
+        return new PathQuery(startVertexName, targetVertexName, includePaths, algorithm, targetVertexNames, maxDistance, limit);
+    }
+
+    public String getStartVertexName() {
+        return startVertexName;
+    }
+
+    // null when paths to all vertexes are requested
+    public String getTargetVertexName() {
+        return targetVertexName;
+    }
+
+    public IncludePaths getIncludePaths() {
+        return includePaths;
+    }
+
+    // only used by queries with a target
+    public SearchAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public boolean hasTarget() {
+        return targetVertexName != null;
+    }
+
+    // null when results are not narrowed down to a set of targets
+    public List<String> getTargetVertexNames() {
+        return targetVertexNames;
+    }
+
+    public boolean hasTargets() {
+        return targetVertexNames != null;
+    }
+
+    // null when distances are not bounded
+    public BigDecimal getMaxDistance() {
+        return maxDistance;
+    }
+
+    // at most this many vertexes (the start vertex included) are returned, the nearest ones
+    public int getLimit() {
+        return limit;
+    }
+
+    public boolean isBounded() {
+        return targetVertexNames != null || maxDistance != null || limit != NO_LIMIT;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        PathQuery query = (PathQuery) o;
+        return startVertexName.equals(query.startVertexName) &&
+                Objects.equals(targetVertexName, query.targetVertexName) &&
+                includePaths == query.includePaths &&
+                algorithm == query.algorithm &&
+                Objects.equals(targetVertexNames, query.targetVertexNames) &&
+                Objects.equals(maxDistance, query.maxDistance) &&
+                limit == query.limit;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(startVertexName, targetVertexName, includePaths, algorithm, targetVertexNames, maxDistance, limit);
+    }
+
+    @Override
+    public String toString() {
+        String target = hasTarget() ? String.format(", to=%s", targetVertexName) : "";
+        String algorithmName = algorithm != SearchAlgorithm.DIJKSTRA ? String.format(", algorithm=%s", algorithm.getParameterValue()) : "";
+        String targets = hasTargets() ? String.format(", targets=%s", String.join(",", targetVertexNames)) : "";
+        String distance = maxDistance != null ? String.format(", maxDistance=%s", maxDistance.toPlainString()) : "";
+        String limitValue = limit != NO_LIMIT ? String.format(", limit=%d", limit) : "";
+        return String.format("startFrom=%s%s, includePaths=%s%s%s%s%s", startVertexName, target, includePaths.getParameterValue(),
+                algorithmName, targets, distance, limitValue);
+    }
+}
@@ -0,0 +1,77 @@
+package ml.echelon133.services.graphpathfinder.path;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+// Shortest paths found by a single search, narrowed down to vertexes which were asked for by the query.
+// Vertexes are identified by ints. Only a predecessor of every vertex is kept, and paths are rebuilt
+// from predecessors when they are needed, so the result takes O(V) memory no matter how deep the paths are.
+public abstract class PathResult {
+
+    public static final int NO_PREDECESSOR = -1;
+
+    private PathQuery query;
+
+    PathResult(PathQuery query) {
+        this.query = query;
+    }
+
+    public PathQuery getQuery() {
+        return query;
+    }
+
+    // number of vertexes of the whole graph, which bounds the length of every path
+    public abstract int getGraphVertexCount();
+
+    // number of vertexes in the result
+    public abstract int getVertexCount();
+
+    // id of the vertex at the given position of the result
+    public abstract int getVertexId(int index);
+
+    // returns -1 if the result does not contain a vertex with such name
+    public abstract int findVertexId(String vertexName);
+
+    public abstract String getVertexName(int vertexId);
+
+    public abstract int getPredecessor(int vertexId);
+
+    public abstract BigDecimal getSumOfWeights(int vertexId);
+
+    public boolean includesPathTo(int vertexId) {
+        switch (query.getIncludePaths()) {
+            case NONE:
+                return false;
+            case TARGET_ONLY:
+                // a result narrowed down to targets contains nothing but targets
+                if (query.hasTargets()) {
+                    return true;
+                }
+                return query.hasTarget() && query.getTargetVertexName().equals(getVertexName(vertexId));
+            default:
+                return true;
+        }
+    }
+
+    // writes ids of vertexes on the path to the given vertex (without the vertex itself) at the end of the buffer,
+    // and returns the index of the first one
+    int fillPathTo(int vertexId, int[] buffer) {
+        int first = buffer.length;
+        for (int v = getPredecessor(vertexId); v != NO_PREDECESSOR; v = getPredecessor(v)) {
+            buffer[--first] = v;
+        }
+        return first;
+    }
+
+    // names of vertexes on the path from the start vertex to the given vertex, without the vertex itself
+    public List<String> getPathTo(int vertexId) {
+        int[] buffer = new int[getGraphVertexCount()];
+        int first = fillPathTo(vertexId, buffer);
+        List<String> path = new ArrayList<>(buffer.length - first);
+        for (int i = first; i < buffer.length; i++) {
+            path.add(getVertexName(buffer[i]));
+        }
+        return path;
+    }
+}
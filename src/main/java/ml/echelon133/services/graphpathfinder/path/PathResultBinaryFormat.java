@@ -0,0 +1,137 @@
+package ml.echelon133.services.graphpathfinder.path;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Columnar binary representation of a PathResult, which is sent instead of JSON when the client accepts it.
+// Every vertex name is written once, in a dictionary, and vertexes are referenced by their position in it. Paths
+// are not written at all, because every path can be rebuilt by following predecessors:
+//
+//   magic        4 bytes, "PATH"
+//   version      1 byte, 1
+//   scale        varint, common scale of every sum of weights
+//   resultCount  varint, vertexes of the result, which come first in the dictionary, in the order of the result
+//   vertexCount  varint, vertexes of the dictionary: the result, followed by vertexes on paths to the result
+//   vertexCount x (varint length of UTF-8 name, name bytes)
+//   vertexCount x varint unscaled sum of weights, the sum being (unscaled sum) * 10^-scale
+//   vertexCount x varint trailing zeros, by how much the scale of the sum is lower than the common scale
+//   vertexCount x varint predecessor, 0 for none, (position of the predecessor in the dictionary + 1) otherwise
+//
+// Varints are unsigned LEB128, the same as in the binary graph format. Only vertexes with a path included by the query
+// bring their whole paths into the dictionary, other ones bring only their predecessors, which then have no predecessor
+// of their own written. The query is not written, so it has to be known to the reader.
+public final class PathResultBinaryFormat {
+
+    public static final String MEDIA_TYPE_VALUE = "application/x-path-result-binary";
+
+    static final byte[] MAGIC = {'P', 'A', 'T', 'H'};
+    static final int VERSION = 1;
+
+    private PathResultBinaryFormat() {
+    }
+
+    public static void write(PathResult result, OutputStream out) throws IOException {
+        int resultCount = result.getVertexCount();
+
+        // dictionary positions of vertexes by their ids in the result, -1 for vertexes which are not written
+        int[] positions = new int[result.getGraphVertexCount()];
+        Arrays.fill(positions, -1);
+        int[] dictionary = new int[Math.min(resultCount * 2 + 16, positions.length)];
+        int vertexCount = 0;
+        for (int i = 0; i < resultCount; i++) {
+            int vertexId = result.getVertexId(i);
+            positions[vertexId] = vertexCount;
+            dictionary[vertexCount++] = vertexId;
+        }
+
+        // vertexes which are only on paths of the result are added after it. Predecessors are written for vertexes
+        // of the result and for vertexes on included paths
+        boolean[] withPredecessor = new boolean[positions.length];
+        for (int i = 0; i < resultCount; i++) {
+            int vertexId = result.getVertexId(i);
+            withPredecessor[vertexId] = true;
+            boolean wholePath = result.includesPathTo(vertexId);
+            for (int v = result.getPredecessor(vertexId); v != PathResult.NO_PREDECESSOR; v = result.getPredecessor(v)) {
+                if (positions[v] == -1) {
+                    if (vertexCount == dictionary.length) {
+                        dictionary = Arrays.copyOf(dictionary, Math.min(dictionary.length * 2, positions.length));
+                    }
+                    positions[v] = vertexCount;
+                    dictionary[vertexCount++] = v;
+                }
+                // the rest of a path which has already been followed is in the dictionary
+                if (!wholePath || withPredecessor[v]) {
+                    break;
+                }
+                withPredecessor[v] = true;
+            }
+        }
+
+        BigDecimal[] sumsOfWeights = new BigDecimal[vertexCount];
+        int scale = 0;
+        for (int p = 0; p < vertexCount; p++) {
+            sumsOfWeights[p] = result.getSumOfWeights(dictionary[p]);
+            scale = Math.max(scale, sumsOfWeights[p].scale());
+        }
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.write(MAGIC);
+        data.writeByte(VERSION);
+        writeVarint(data, scale);
+        writeVarint(data, resultCount);
+        writeVarint(data, vertexCount);
+        for (int p = 0; p < vertexCount; p++) {
+            byte[] name = result.getVertexName(dictionary[p]).getBytes(StandardCharsets.UTF_8);
+            writeVarint(data, name.length);
+            data.write(name);
+        }
+        for (int p = 0; p < vertexCount; p++) {
+            writeVarint(data, sumsOfWeights[p].setScale(scale).unscaledValue());
+        }
+        // scales are kept, so that sums are read with the very same digits as they were written with
+        for (int p = 0; p < vertexCount; p++) {
+            writeVarint(data, scale - sumsOfWeights[p].scale());
+        }
+        for (int p = 0; p < vertexCount; p++) {
+            int vertexId = dictionary[p];
+            int predecessor = withPredecessor[vertexId] ? result.getPredecessor(vertexId) : PathResult.NO_PREDECESSOR;
+            writeVarint(data, predecessor == PathResult.NO_PREDECESSOR ? 0 : positions[predecessor] + 1);
+        }
+        data.flush();
+    }
+
+    public static byte[] toBytes(PathResult result) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(result, out);
+        return out.toByteArray();
+    }
+
+    private static void writeVarint(DataOutputStream data, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            data.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data.writeByte(value);
+    }
+
+    // sums of weights are never negative, and almost always fit in a long
+    private static void writeVarint(DataOutputStream data, BigInteger value) throws IOException {
+        while (value.bitLength() > 63) {
+            data.writeByte((value.intValue() & 0x7F) | 0x80);
+            value = value.shiftRight(7);
+        }
+        long longValue = value.longValue();
+        while ((longValue & ~0x7FL) != 0) {
+            data.writeByte((int) (longValue & 0x7F) | 0x80);
+            longValue >>>= 7;
+        }
+        data.writeByte((int) longValue);
+    }
+}
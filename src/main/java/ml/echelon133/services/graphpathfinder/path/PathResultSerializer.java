@@ -0,0 +1,86 @@
+package ml.echelon133.services.graphpathfinder.path;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+// Writes a PathResult in the same format as ResultMapSerializer of the graph library writes a result map,
+// but every 'pathToVertex' is rebuilt from predecessors right before it is written. Only one buffer,
+// as long as the longest possible path, is allocated for the whole result.
+public class PathResultSerializer extends StdSerializer<PathResult> {
+
+    public PathResultSerializer() {
+        super(PathResult.class);
+    }
+
+    @Override
+    public void serialize(PathResult result, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeStartObject();
+        writeResults(result, gen);
+        gen.writeEndObject();
+    }
+
+    // writes the result of a single search of a batch as one line, which is the usual result object
+    // with the name of the start vertex added to it, and flushes the generator
+    public static void writeBatchLine(PathResult result, JsonGenerator gen) throws IOException {
+        gen.setRootValueSeparator(null);
+        gen.writeStartObject();
+        gen.writeStringField("startFrom", result.getQuery().getStartVertexName());
+        writeResults(result, gen);
+        gen.writeEndObject();
+        gen.writeRaw('\n');
+        gen.flush();
+    }
+
+    private static void writeResults(PathResult result, JsonGenerator gen) throws IOException {
+        int[] pathBuffer = new int[result.getGraphVertexCount()];
+
+        gen.writeArrayFieldStart("results");
+        for (int i = 0; i < result.getVertexCount(); i++) {
+            gen.writeStartObject();
+            writeVertexResult(result, result.getVertexId(i), pathBuffer, gen);
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+    }
+
+    // writes every vertex result as a separate JSON object followed by a new line (NDJSON), flushing the generator
+    // whenever its buffer fills up, so that the first lines go out before the rest of the result is written
+    public static void writeLines(PathResult result, JsonGenerator gen) throws IOException {
+        int[] pathBuffer = new int[result.getGraphVertexCount()];
+
+        gen.setRootValueSeparator(null);
+        for (int i = 0; i < result.getVertexCount(); i++) {
+            gen.writeStartObject();
+            writeVertexResult(result, result.getVertexId(i), pathBuffer, gen);
+            gen.writeEndObject();
+            gen.writeRaw('\n');
+        }
+        gen.flush();
+    }
+
+    private static void writeVertexResult(PathResult result, int vertexId, int[] pathBuffer, JsonGenerator gen) throws IOException {
+        gen.writeFieldName(result.getVertexName(vertexId));
+        gen.writeStartObject();
+
+        int predecessor = result.getPredecessor(vertexId);
+        if (predecessor == PathResult.NO_PREDECESSOR) {
+            gen.writeNullField("previousVertex");
+        } else {
+            gen.writeStringField("previousVertex", result.getVertexName(predecessor));
+        }
+        gen.writeNumberField("sumOfWeights", result.getSumOfWeights(vertexId));
+
+        if (result.includesPathTo(vertexId)) {
+            gen.writeArrayFieldStart("pathToVertex");
+            for (int i = result.fillPathTo(vertexId, pathBuffer); i < pathBuffer.length; i++) {
+                gen.writeString(result.getVertexName(pathBuffer[i]));
+            }
+            gen.writeEndArray();
+        }
+
+        gen.writeEndObject();
+    }
+}
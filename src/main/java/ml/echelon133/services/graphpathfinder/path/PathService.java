@@ -1,11 +1,16 @@
 package ml.echelon133.services.graphpathfinder.path;
 
-import ml.echelon133.graph.Vertex;
-import ml.echelon133.graph.VertexResult;
-
-import java.math.BigDecimal;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface PathService {
-    Map<Vertex<BigDecimal>, VertexResult<BigDecimal>> calculateShortestPath(String graphId, String startVertexName) throws Exception;
+    PathResult calculateShortestPath(String graphId, PathQuery query) throws Exception;
+    byte[] calculateShortestPathAsJson(String graphId, PathQuery query) throws Exception;
+    byte[] calculateShortestPathEncoded(String graphId, PathQuery query, ResultEncoding encoding) throws Exception;
+    PathBatch createBatch(String graphId, List<PathQuery> queries) throws Exception;
+    CompletableFuture<PathResult> calculateShortestPathAsync(String graphId, PathQuery query);
+    CompletableFuture<byte[]> calculateShortestPathAsJsonAsync(String graphId, PathQuery query);
+    CompletableFuture<byte[]> calculateShortestPathEncodedAsync(String graphId, PathQuery query, ResultEncoding encoding);
+    CompletableFuture<PathBatch> createBatchAsync(String graphId, List<PathQuery> queries);
+    void evictGraph(String graphId);
 }
@@ -1,60 +1,217 @@
 package ml.echelon133.services.graphpathfinder.path;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import feign.FeignException;
 import ml.echelon133.graph.Graph;
 import ml.echelon133.graph.ShortestPathSolver;
 import ml.echelon133.graph.Vertex;
 import ml.echelon133.graph.VertexResult;
+import ml.echelon133.services.graphpathfinder.admission.AdmissionControl;
+import ml.echelon133.services.graphpathfinder.cache.CachedGraph;
+import ml.echelon133.services.graphpathfinder.cache.GraphCache;
+import ml.echelon133.services.graphpathfinder.cache.ResultCache;
+import ml.echelon133.services.graphpathfinder.engine.AllPairsPrecomputation;
+import ml.echelon133.services.graphpathfinder.engine.CompactGraph;
+import ml.echelon133.services.graphpathfinder.engine.ContractionHierarchies;
+import ml.echelon133.services.graphpathfinder.engine.DijkstraEngine;
+import ml.echelon133.services.graphpathfinder.engine.IncrementalRecomputation;
+import ml.echelon133.services.graphpathfinder.engine.ShortestPathTree;
+import ml.echelon133.services.graphpathfinder.metrics.PipelineMetrics;
 import ml.echelon133.services.graphpathfinder.path.exception.GraphDoesNotExistException;
 import ml.echelon133.services.graphpathfinder.path.exception.GraphDoesNotHaveGivenVertexException;
 import ml.echelon133.services.graphpathfinder.path.exception.GraphNotAvailableException;
-import ml.echelon133.services.graphpathfinder.storageclient.GraphStorageClient;
+import ml.echelon133.services.graphpathfinder.path.exception.InvalidParameterValueException;
+import ml.echelon133.services.graphpathfinder.path.exception.ServiceOverloadedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.BitSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPOutputStream;
 
 @Service
 public class PathServiceImpl implements PathService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(PathServiceImpl.class);
 
-    private GraphStorageClient graphStorageClient;
+    private static final int GZIP_BUFFER_SIZE = 8192;
+
+    private GraphCache graphCache;
+    private ResultCache resultCache;
+    private DijkstraEngine dijkstraEngine;
+    private ObjectMapper objectMapper;
+    private ForkJoinPool batchPool;
+    private AdmissionControl admissionControl;
+    private AllPairsPrecomputation allPairsPrecomputation;
+    private ContractionHierarchies contractionHierarchies;
+    private IncrementalRecomputation incrementalRecomputation;
+    private PipelineMetrics pipelineMetrics;
 
     @Autowired
-    public PathServiceImpl(GraphStorageClient graphStorageClient) {
-        this.graphStorageClient = graphStorageClient;
+    public PathServiceImpl(GraphCache graphCache, ResultCache resultCache, DijkstraEngine dijkstraEngine, ObjectMapper objectMapper,
+                           @Qualifier("pathBatchPool") ForkJoinPool batchPool,
+                           AdmissionControl admissionControl,
+                           AllPairsPrecomputation allPairsPrecomputation,
+                           ContractionHierarchies contractionHierarchies,
+                           IncrementalRecomputation incrementalRecomputation,
+                           PipelineMetrics pipelineMetrics) {
+        this.graphCache = graphCache;
+        this.resultCache = resultCache;
+        this.dijkstraEngine = dijkstraEngine;
+        this.objectMapper = objectMapper;
+        this.batchPool = batchPool;
+        this.admissionControl = admissionControl;
+        this.allPairsPrecomputation = allPairsPrecomputation;
+        this.contractionHierarchies = contractionHierarchies;
+        this.incrementalRecomputation = incrementalRecomputation;
+        this.pipelineMetrics = pipelineMetrics;
     }
 
-    @Override
-    public Map<Vertex<BigDecimal>, VertexResult<BigDecimal>> calculateShortestPath(String graphId, String startVertexName) throws Exception {
+    private Exception graphNotReceived(String graphId, FeignException ex) {
+        if (ex.status() == 404) {
+            String msg = String.format("Graph with ID %s does not exist. Cannot find shortest paths", graphId);
+            LOGGER.debug(msg);
+            return new GraphDoesNotExistException(msg);
+        } else {
+            // unexpected, the service implementation failed in an unusual way
+            String msg = String.format("Graph with ID %s is unreachable right now. Try again later", graphId);
+            LOGGER.debug(msg);
+            return new GraphNotAvailableException(msg);
+        }
+    }
 
-        Map<Vertex<BigDecimal>, VertexResult<BigDecimal>> result;
-        Graph<BigDecimal> graph;
+    private CachedGraph getGraph(String graphId) throws Exception {
+        CachedGraph cachedGraph;
 
-        // get a graph with specified id from our graph-store-service
+        // get a graph with specified id from the cache, which fetches it from our graph-store-service on a miss
         try {
-            graph = graphStorageClient.getGraph(graphId);
-            LOGGER.debug(String.format("Graph with ID %s received and deserialized", graphId));
+            cachedGraph = graphCache.getGraph(graphId);
+            LOGGER.debug(String.format("Graph with ID %s received", graphId));
         } catch (FeignException ex) {
+            throw graphNotReceived(graphId, ex);
+        }
+        return cachedGraph;
+    }
+
+    // same as getGraph, but the calling thread does not wait for the graph to be downloaded
+    private CompletableFuture<CachedGraph> getGraphAsync(String graphId) {
+        return graphCache.getGraphAsync(graphId).handle((cachedGraph, ex) -> {
+            if (ex == null) {
+                LOGGER.debug(String.format("Graph with ID %s received", graphId));
+                return cachedGraph;
+            }
+            Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            if (cause instanceof FeignException) {
+                throw new CompletionException(graphNotReceived(graphId, (FeignException) cause));
+            }
+            throw new CompletionException(cause);
+        });
+    }
+
+    private GraphDoesNotHaveGivenVertexException vertexNotFound(String graphId, String vertexName) {
+        String msg = String.format("Graph with ID %s does not have a vertex with name %s", graphId, vertexName);
+        LOGGER.debug(msg);
+        return new GraphDoesNotHaveGivenVertexException(msg);
+    }
+
+    private void checkVertexExists(String graphId, CachedGraph cachedGraph, String vertexName) throws GraphDoesNotHaveGivenVertexException {
+        boolean exists = cachedGraph.isCompact() ?
+                cachedGraph.getCompactGraph().findVertexId(vertexName) != -1 :
+                cachedGraph.getGraph().findVertex(vertexName) != null;
+        if (!exists) {
+            throw vertexNotFound(graphId, vertexName);
+        }
+    }
+
+    // object graphs are always solved by the solver of the graph library, whatever the algorithm
+    private void checkAlgorithmApplies(String graphId, CachedGraph cachedGraph, PathQuery query) throws InvalidParameterValueException {
+        if (cachedGraph.isCompact() && query.getAlgorithm().needsCoordinates() && cachedGraph.getCompactGraph().getCoordinates() == null) {
+            String msg = String.format("Graph with ID %s does not have coordinates of its vertexes, which %s needs",
+                    graphId, query.getAlgorithm().getParameterValue());
+            LOGGER.debug(msg);
+            throw new InvalidParameterValueException(msg);
+        }
+    }
+
+    private PathResult solve(String graphId, CachedGraph cachedGraph, PathQuery query) throws Exception {
+        PathResult result = pipelineMetrics.record(PipelineMetrics.Stage.SEARCH, () -> search(graphId, cachedGraph, query),
+                PathResult::getGraphVertexCount);
+        // a search may have attached something to the graph (i.e. its tree or landmarks), or started building an
+        // index or a hierarchy which got attached since the previous search
+        if (cachedGraph.isCompact()) {
+            graphCache.reweigh(graphId, cachedGraph);
+        }
+        return result;
+    }
+
+    private PathResult search(String graphId, CachedGraph cachedGraph, PathQuery query) throws Exception {
+        if (!cachedGraph.isCompact()) {
+            return solveWithObjectGraph(graphId, cachedGraph.getGraph(), query);
+        }
+
+        CompactGraph graph = cachedGraph.getCompactGraph();
+        allPairsPrecomputation.recordSearch(graph);
+        contractionHierarchies.prepare(graphId, graph);
+        int startId = graph.findVertexId(query.getStartVertexName());
+        if (startId == -1) {
+            throw vertexNotFound(graphId, query.getStartVertexName());
+        }
+
+        if (!query.hasTarget() && query.isBounded()) {
+            return searchWithinBounds(graphId, graph, startId, query);
+        }
+
+        if (!query.hasTarget()) {
+            ShortestPathTree tree = dijkstraEngine.solve(graph, startId);
+            incrementalRecomputation.recordTree(graph, tree);
+            return new TreePathResult(query, tree);
+        }
+
+        // result of a point-to-point query holds only the target, and is empty if the target cannot be reached
+        int targetId = graph.findVertexId(query.getTargetVertexName());
+        if (targetId == -1) {
+            throw vertexNotFound(graphId, query.getTargetVertexName());
+        }
+        checkAlgorithmApplies(graphId, cachedGraph, query);
+        return new TreePathResult(query, dijkstraEngine.solveBetween(graph, startId, targetId, query.getAlgorithm()), targetId);
+    }
 
-            if (ex.status() == 404) {
-                String msg = String.format("Graph with ID %s does not exist. Cannot find shortest paths", graphId);
-                LOGGER.debug(msg);
-                throw new GraphDoesNotExistException(msg);
-            } else {
-                // unexpected, the service implementation failed in an unusual way
-                String msg = String.format("Graph with ID %s is unreachable right now. Try again later", graphId);
-                LOGGER.debug(msg);
-                throw new GraphNotAvailableException(msg);
+    // a bounded search stops early, so its tree is not a full one, and cannot be kept for incremental updates
+    private PathResult searchWithinBounds(String graphId, CompactGraph graph, int startId, PathQuery query)
+            throws GraphDoesNotHaveGivenVertexException {
+        BitSet targets = null;
+        if (query.hasTargets()) {
+            targets = new BitSet(graph.getVertexCount());
+            for (String targetName : query.getTargetVertexNames()) {
+                int targetId = graph.findVertexId(targetName);
+                if (targetId == -1) {
+                    throw vertexNotFound(graphId, targetName);
+                }
+                targets.set(targetId);
             }
         }
+        long maxDistance = query.getMaxDistance() == null ?
+                ShortestPathTree.UNREACHABLE : graph.toSumOfWeights(query.getMaxDistance());
+        ShortestPathTree tree = dijkstraEngine.solveWithin(graph, startId, targets, maxDistance, query.getLimit());
+        return TreePathResult.withinBounds(query, tree, targets, maxDistance, query.getLimit());
+    }
+
+    private PathResult solveWithObjectGraph(String graphId, Graph<BigDecimal> graph, PathQuery query) throws Exception {
+
+        Map<Vertex<BigDecimal>, VertexResult<BigDecimal>> result;
 
         // find the start vertex with a name that was given as a param to the request ('startFrom')
-        Vertex<BigDecimal> startVertex = graph.findVertex(startVertexName);
+        Vertex<BigDecimal> startVertex = graph.findVertex(query.getStartVertexName());
 
         // instantiate our solver with the graph we got from graph-store-service
         // at this point this graph is 100% correct (because the deserializer didn't throw any errors)
@@ -63,11 +220,162 @@ public class PathServiceImpl implements PathService {
         try {
             result = sps.solveStartingFrom(startVertex);
         } catch (IllegalArgumentException ex) {
-            String msg = String.format("Graph with ID %s does not have a vertex with name %s", graphId, startVertexName);
-            LOGGER.debug(msg);
-            throw new GraphDoesNotHaveGivenVertexException(msg);
+            throw vertexNotFound(graphId, query.getStartVertexName());
+        }
+
+        // this solver cannot stop early, so its result is only narrowed down to the target
+        Vertex<BigDecimal> targetVertex = null;
+        if (query.hasTarget()) {
+            targetVertex = graph.findVertex(query.getTargetVertexName());
+            if (targetVertex == null) {
+                throw vertexNotFound(graphId, query.getTargetVertexName());
+            }
+        }
+        if (query.hasTargets()) {
+            for (String targetName : query.getTargetVertexNames()) {
+                if (graph.findVertex(targetName) == null) {
+                    throw vertexNotFound(graphId, targetName);
+                }
+            }
+        }
+
+        return new SolverPathResult(query, graph, result, targetVertex);
+    }
+
+    @Override
+    public PathResult calculateShortestPath(String graphId, PathQuery query) throws Exception {
+        return solve(graphId, getGraph(graphId), query);
+    }
+
+    // JSON is cached under the query itself, other encodings under the query paired with their encoding
+    private static Object cacheKey(PathQuery query, ResultEncoding encoding) {
+        return encoding == ResultEncoding.JSON ? query : List.of(encoding, query);
+    }
+
+    private byte[] getCachedResult(String graphId, CachedGraph cachedGraph, PathQuery query, ResultEncoding encoding) {
+        byte[] result = resultCache.getResult(graphId, cachedGraph.getVersion(), cacheKey(query, encoding));
+        if (result != null) {
+            LOGGER.debug(String.format("Serving cached paths of a graph with ID %s (version %s, %s, %s)",
+                    graphId, cachedGraph.getVersion(), query, encoding));
+            pipelineMetrics.recordResponseSize(cachedGraph.getVertexCount(), result.length, encoding.getResponseFormat());
         }
+        return result;
+    }
 
+    private byte[] solveAndEncode(String graphId, CachedGraph cachedGraph, PathQuery query, ResultEncoding encoding) throws Exception {
+        PathResult pathResult = solve(graphId, cachedGraph, query);
+        byte[] result = pipelineMetrics.record(PipelineMetrics.Stage.SERIALIZATION,
+                () -> encode(pathResult, encoding), bytes -> pathResult.getGraphVertexCount());
+        pipelineMetrics.recordResponseSize(pathResult.getGraphVertexCount(), result.length, encoding.getResponseFormat());
+        resultCache.putResult(graphId, cachedGraph.getVersion(), cacheKey(query, encoding), result);
         return result;
     }
+
+    private byte[] encode(PathResult pathResult, ResultEncoding encoding) throws IOException {
+        switch (encoding) {
+            case BINARY:
+                return PathResultBinaryFormat.toBytes(pathResult);
+            case GZIPPED_JSON:
+                // the result is compressed while it's being serialized, so the whole JSON is never held in memory
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try (GZIPOutputStream gzip = new GZIPOutputStream(out, GZIP_BUFFER_SIZE)) {
+                    objectMapper.writeValue(gzip, pathResult);
+                }
+                return out.toByteArray();
+            default:
+                return objectMapper.writeValueAsBytes(pathResult);
+        }
+    }
+
+    @Override
+    public byte[] calculateShortestPathAsJson(String graphId, PathQuery query) throws Exception {
+        return calculateShortestPathEncoded(graphId, query, ResultEncoding.JSON);
+    }
+
+    @Override
+    public byte[] calculateShortestPathEncoded(String graphId, PathQuery query, ResultEncoding encoding) throws Exception {
+        CachedGraph cachedGraph = getGraph(graphId);
+
+        byte[] result = getCachedResult(graphId, cachedGraph, query, encoding);
+        if (result != null) {
+            return result;
+        }
+        return solveAndEncode(graphId, cachedGraph, query, encoding);
+    }
+
+    @Override
+    public CompletableFuture<PathResult> calculateShortestPathAsync(String graphId, PathQuery query) {
+        return getGraphAsync(graphId)
+                .thenCompose(cachedGraph -> admissionControl.submit(graphId, AdmissionControl.estimateCost(cachedGraph),
+                        pipelineMetrics.inCurrentTrace(() -> solve(graphId, cachedGraph, query))));
+    }
+
+    @Override
+    public CompletableFuture<byte[]> calculateShortestPathAsJsonAsync(String graphId, PathQuery query) {
+        return calculateShortestPathEncodedAsync(graphId, query, ResultEncoding.JSON);
+    }
+
+    // a cached result is returned without going through admission control, so it's never rejected
+    @Override
+    public CompletableFuture<byte[]> calculateShortestPathEncodedAsync(String graphId, PathQuery query, ResultEncoding encoding) {
+        return getGraphAsync(graphId).thenCompose(cachedGraph -> {
+            byte[] result = getCachedResult(graphId, cachedGraph, query, encoding);
+            if (result != null) {
+                return CompletableFuture.completedFuture(result);
+            }
+            // solver threads are not the ones which handle requests, so spans of a search are linked to the request
+            return admissionControl.submit(graphId, AdmissionControl.estimateCost(cachedGraph),
+                    pipelineMetrics.inCurrentTrace(() -> solveAndEncode(graphId, cachedGraph, query, encoding)));
+        });
+    }
+
+    @Override
+    public PathBatch createBatch(String graphId, List<PathQuery> queries) throws Exception {
+        return createBatch(graphId, getGraph(graphId), queries);
+    }
+
+    @Override
+    public CompletableFuture<PathBatch> createBatchAsync(String graphId, List<PathQuery> queries) {
+        return getGraphAsync(graphId).thenCompose(cachedGraph -> {
+            try {
+                return CompletableFuture.completedFuture(createBatch(graphId, cachedGraph, queries));
+            } catch (GraphDoesNotHaveGivenVertexException | InvalidParameterValueException | ServiceOverloadedException ex) {
+                return CompletableFuture.failedFuture(ex);
+            }
+        });
+    }
+
+    private PathBatch createBatch(String graphId, CachedGraph cachedGraph, List<PathQuery> queries)
+            throws GraphDoesNotHaveGivenVertexException, InvalidParameterValueException, ServiceOverloadedException {
+        // every vertex is checked before any search starts, so that a wrong name is reported before results are sent
+        for (PathQuery query : queries) {
+            checkVertexExists(graphId, cachedGraph, query.getStartVertexName());
+            if (query.hasTarget()) {
+                checkVertexExists(graphId, cachedGraph, query.getTargetVertexName());
+            }
+            if (query.hasTargets()) {
+                for (String targetName : query.getTargetVertexNames()) {
+                    checkVertexExists(graphId, cachedGraph, targetName);
+                }
+            }
+            checkAlgorithmApplies(graphId, cachedGraph, query);
+        }
+
+        // searches of a batch run on a pool of their own, but they are admitted all at once, together with searches
+        // of single paths, so that batches cannot take the cores away from them without limits
+        Runnable release = admissionControl.admit(graphId, AdmissionControl.estimateCost(cachedGraph) * queries.size());
+
+        LOGGER.debug(String.format("Created a batch of %d searches over a graph with ID %s (version %s)",
+                queries.size(), graphId, cachedGraph.getVersion()));
+        // two searches per thread, so that a thread does not wait while the result of its previous search is written
+        return new PathBatch(queries, query -> solve(graphId, cachedGraph, query), batchPool, 2 * batchPool.getParallelism(),
+                release);
+    }
+
+    @Override
+    public void evictGraph(String graphId) {
+        LOGGER.debug(String.format("Evicting graph with ID %s and its results from caches", graphId));
+        graphCache.invalidate(graphId);
+        resultCache.invalidate(graphId);
+    }
 }
@@ -0,0 +1,35 @@
+package ml.echelon133.services.graphpathfinder.path;
+
+import ml.echelon133.services.graphpathfinder.metrics.PipelineMetrics;
+import org.springframework.http.MediaType;
+
+// Encodings in which a result is sent at once. Every one of them is cached apart, so a result is encoded only once
+// in the encoding which has been asked for
+public enum ResultEncoding {
+    JSON(MediaType.APPLICATION_JSON_UTF8_VALUE, null, PipelineMetrics.ResponseFormat.JSON),
+    GZIPPED_JSON(MediaType.APPLICATION_JSON_UTF8_VALUE, "gzip", PipelineMetrics.ResponseFormat.GZIPPED_JSON),
+    BINARY(PathResultBinaryFormat.MEDIA_TYPE_VALUE, null, PipelineMetrics.ResponseFormat.BINARY);
+
+    private String contentType;
+    private String contentEncoding;
+    private PipelineMetrics.ResponseFormat responseFormat;
+
+    ResultEncoding(String contentType, String contentEncoding, PipelineMetrics.ResponseFormat responseFormat) {
+        this.contentType = contentType;
+        this.contentEncoding = contentEncoding;
+        this.responseFormat = responseFormat;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    // null when the content is not compressed
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public PipelineMetrics.ResponseFormat getResponseFormat() {
+        return responseFormat;
+    }
+}
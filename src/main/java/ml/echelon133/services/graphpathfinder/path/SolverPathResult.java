@@ -0,0 +1,114 @@
+package ml.echelon133.services.graphpathfinder.path;
+
+import ml.echelon133.graph.Graph;
+import ml.echelon133.graph.Vertex;
+import ml.echelon133.graph.VertexResult;
+
+import java.math.BigDecimal;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+// Result of ShortestPathSolver, used for graphs which cannot be solved over a CompactGraph.
+// Only predecessors and sums of weights are taken from the solver's result map.
+class SolverPathResult extends PathResult {
+
+    private String[] vertexNames;
+    private Map<String, Integer> vertexIds;
+    private int[] predecessors;
+    private BigDecimal[] sumsOfWeights;
+    private int[] resultVertexIds;
+
+    // predecessors are taken from the whole result, but only the target is listed if the query has one
+    SolverPathResult(PathQuery query, Graph<BigDecimal> graph, Map<Vertex<BigDecimal>, VertexResult<BigDecimal>> result, Vertex<BigDecimal> target) {
+        super(query);
+        List<Vertex<BigDecimal>> vertexes = graph.getVertexes();
+        int vertexCount = vertexes.size();
+
+        vertexNames = new String[vertexCount];
+        vertexIds = new HashMap<>();
+        predecessors = new int[vertexCount];
+        sumsOfWeights = new BigDecimal[vertexCount];
+        Map<Vertex<BigDecimal>, Integer> idsOfVertexes = new IdentityHashMap<>(vertexCount);
+        for (int i = 0; i < vertexCount; i++) {
+            vertexNames[i] = vertexes.get(i).getName();
+            idsOfVertexes.put(vertexes.get(i), i);
+        }
+
+        int[] reachedVertexIds = new int[result.size()];
+        int index = 0;
+        for (VertexResult<BigDecimal> vertexResult : result.values()) {
+            int vertexId = idsOfVertexes.get(vertexResult.getSourceVertex());
+            Vertex<BigDecimal> previousVertex = vertexResult.getPreviousVertex();
+            predecessors[vertexId] = previousVertex == null ? NO_PREDECESSOR : idsOfVertexes.get(previousVertex);
+            sumsOfWeights[vertexId] = vertexResult.getSumOfWeights();
+            reachedVertexIds[index++] = vertexId;
+        }
+
+        if (target == null && query.isBounded()) {
+            resultVertexIds = withinBounds(query, reachedVertexIds);
+        } else if (target == null) {
+            resultVertexIds = reachedVertexIds;
+        } else {
+            resultVertexIds = result.containsKey(target) ? new int[] { idsOfVertexes.get(target) } : new int[0];
+        }
+        for (int vertexId : resultVertexIds) {
+            vertexIds.put(vertexNames[vertexId], vertexId);
+        }
+    }
+
+    // the solver always solves the whole graph, so its result is narrowed down afterwards, nearest vertexes first
+    private int[] withinBounds(PathQuery query, int[] reachedVertexIds) {
+        Set<String> targetNames = query.hasTargets() ? new HashSet<>(query.getTargetVertexNames()) : null;
+        BigDecimal maxDistance = query.getMaxDistance();
+        return IntStream.of(reachedVertexIds)
+                .filter(vertexId -> targetNames == null || targetNames.contains(vertexNames[vertexId]))
+                .filter(vertexId -> maxDistance == null || sumsOfWeights[vertexId].compareTo(maxDistance) <= 0)
+                .boxed()
+                .sorted(Comparator.comparing(vertexId -> sumsOfWeights[vertexId]))
+                .limit(query.getLimit())
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    @Override
+    public int getGraphVertexCount() {
+        return vertexNames.length;
+    }
+
+    @Override
+    public int getVertexCount() {
+        return resultVertexIds.length;
+    }
+
+    @Override
+    public int getVertexId(int index) {
+        return resultVertexIds[index];
+    }
+
+    @Override
+    public int findVertexId(String vertexName) {
+        Integer id = vertexIds.get(vertexName);
+        return id == null ? -1 : id;
+    }
+
+    @Override
+    public String getVertexName(int vertexId) {
+        return vertexNames[vertexId];
+    }
+
+    @Override
+    public int getPredecessor(int vertexId) {
+        return predecessors[vertexId];
+    }
+
+    @Override
+    public BigDecimal getSumOfWeights(int vertexId) {
+        return sumsOfWeights[vertexId];
+    }
+}
@@ -0,0 +1,111 @@
+package ml.echelon133.services.graphpathfinder.path;
+
+import ml.echelon133.services.graphpathfinder.engine.ShortestPathTree;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Result backed directly by arrays of a ShortestPathTree, vertexes are listed in the order in which they were settled.
+class TreePathResult extends PathResult {
+
+    private static final int ALL_SETTLED = -1;
+
+    private static final int LISTED = -2;
+
+    private ShortestPathTree tree;
+    private int targetId;
+    // vertexes of a result narrowed down by bounds of its query, null in other results
+    private int[] resultVertexIds;
+    private BitSet resultVertexes;
+
+    // result with every vertex reached by the search
+    TreePathResult(PathQuery query, ShortestPathTree tree) {
+        this(query, tree, ALL_SETTLED);
+    }
+
+    // result with only the target, empty if the target cannot be reached
+    TreePathResult(PathQuery query, ShortestPathTree tree, int targetId) {
+        super(query);
+        this.tree = tree;
+        this.targetId = targetId;
+    }
+
+    private TreePathResult(PathQuery query, ShortestPathTree tree, int[] resultVertexIds) {
+        this(query, tree, LISTED);
+        this.resultVertexIds = resultVertexIds;
+        this.resultVertexes = new BitSet(tree.getGraph().getVertexCount());
+        for (int vertexId : resultVertexIds) {
+            resultVertexes.set(vertexId);
+        }
+    }
+
+    // result with the nearest vertexes matching targets (any vertex, if targets are null), which are at most
+    // maxDistance away from the start vertex, up to limit of them. Settled order is the order of distances
+    // in every tree, so the scan stops at the first vertex which is too far away
+    static TreePathResult withinBounds(PathQuery query, ShortestPathTree tree, BitSet targets, long maxDistance, int limit) {
+        int[] vertexIds = new int[Math.min(limit, tree.getSettledCount())];
+        int count = 0;
+        for (int i = 0; i < tree.getSettledCount() && count < vertexIds.length; i++) {
+            int vertexId = tree.getSettledVertex(i);
+            if (tree.getDistance(vertexId) > maxDistance) {
+                break;
+            }
+            if (targets == null || targets.get(vertexId)) {
+                vertexIds[count++] = vertexId;
+            }
+        }
+        return new TreePathResult(query, tree, Arrays.copyOf(vertexIds, count));
+    }
+
+    @Override
+    public int getGraphVertexCount() {
+        return tree.getGraph().getVertexCount();
+    }
+
+    @Override
+    public int getVertexCount() {
+        if (targetId == ALL_SETTLED) {
+            return tree.getSettledCount();
+        }
+        if (targetId == LISTED) {
+            return resultVertexIds.length;
+        }
+        return tree.isReachable(targetId) ? 1 : 0;
+    }
+
+    @Override
+    public int getVertexId(int index) {
+        if (targetId == LISTED) {
+            return resultVertexIds[index];
+        }
+        return targetId == ALL_SETTLED ? tree.getSettledVertex(index) : targetId;
+    }
+
+    @Override
+    public int findVertexId(String vertexName) {
+        int vertexId = tree.getGraph().findVertexId(vertexName);
+        if (vertexId == -1 || !tree.isReachable(vertexId)) {
+            return -1;
+        }
+        if (targetId == LISTED) {
+            return resultVertexes.get(vertexId) ? vertexId : -1;
+        }
+        return targetId == ALL_SETTLED || targetId == vertexId ? vertexId : -1;
+    }
+
+    @Override
+    public String getVertexName(int vertexId) {
+        return tree.getGraph().getVertexName(vertexId);
+    }
+
+    @Override
+    public int getPredecessor(int vertexId) {
+        return tree.getPredecessor(vertexId);
+    }
+
+    @Override
+    public BigDecimal getSumOfWeights(int vertexId) {
+        return tree.getSumOfWeights(vertexId);
+    }
+}
@@ -0,0 +1,8 @@
+package ml.echelon133.services.graphpathfinder.path.exception;
+
+public class InvalidParameterValueException extends Exception {
+
+    public InvalidParameterValueException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,15 @@
+package ml.echelon133.services.graphpathfinder.path.exception;
+
+public class ServiceOverloadedException extends Exception {
+
+    private long retryAfterSeconds;
+
+    public ServiceOverloadedException(String msg, long retryAfterSeconds) {
+        super(msg);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
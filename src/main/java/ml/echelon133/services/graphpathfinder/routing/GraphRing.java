@@ -0,0 +1,109 @@
+package ml.echelon133.services.graphpathfinder.routing;
+
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Consistent hash ring of instances of this service. Every instance takes virtualNodes points of the ring, and a graph
+// belongs to the instance of the first point at or after the hash of its id, so graphs are spread evenly, and when
+// an instance joins or leaves, only graphs next to its points change their owner.
+class GraphRing {
+
+    private Set<String> memberKeys;
+    // points of every instance, sorted, and the instance of every point
+    private long[] points;
+    private ServiceInstance[] owners;
+
+    private GraphRing(Set<String> memberKeys, long[] points, ServiceInstance[] owners) {
+        this.memberKeys = memberKeys;
+        this.points = points;
+        this.owners = owners;
+    }
+
+    // instances with the same key are the same instance, so the ring does not depend on the order of instances
+    // or on duplicates in the registry
+    static GraphRing build(List<ServiceInstance> instances, int virtualNodes) {
+        TreeMap<String, ServiceInstance> members = new TreeMap<>();
+        for (ServiceInstance instance : instances) {
+            members.putIfAbsent(keyOf(instance), instance);
+        }
+
+        int pointCount = members.size() * virtualNodes;
+        long[] hashes = new long[pointCount];
+        ServiceInstance[] instancesOfHashes = new ServiceInstance[pointCount];
+        int index = 0;
+        for (ServiceInstance instance : members.values()) {
+            String key = keyOf(instance);
+            for (int node = 0; node < virtualNodes; node++) {
+                hashes[index] = hash(key + "#" + node);
+                instancesOfHashes[index++] = instance;
+            }
+        }
+
+        // the sort is stable and members are sorted by key, so points which collide are ordered the same way everywhere
+        int[] order = IntStream.range(0, pointCount).boxed()
+                .sorted(Comparator.comparingLong(i -> hashes[i]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        long[] points = new long[pointCount];
+        ServiceInstance[] owners = new ServiceInstance[pointCount];
+        for (int i = 0; i < pointCount; i++) {
+            points[i] = hashes[order[i]];
+            owners[i] = instancesOfHashes[order[i]];
+        }
+        return new GraphRing(Set.copyOf(members.keySet()), points, owners);
+    }
+
+    // the address of an instance identifies it in the registry and in the registration of the instance itself
+    static String keyOf(ServiceInstance instance) {
+        return instance.getHost() + ":" + instance.getPort();
+    }
+
+    // FNV-1a, followed by the finalizer of MurmurHash3, so that ids which differ only in their last characters
+    // still land far apart on the ring
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    Set<String> getMemberKeys() {
+        return memberKeys;
+    }
+
+    // null only if the ring has no instances at all
+    ServiceInstance findOwner(String graphId) {
+        if (points.length == 0) {
+            return null;
+        }
+        int index = Arrays.binarySearch(points, hash(graphId));
+        if (index < 0) {
+            index = -(index + 1);
+        }
+        // points with equal hashes are not told apart by the binary search, so the first of them is taken
+        while (index > 0 && index < points.length && points[index - 1] == points[index]) {
+            index--;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    @Override
+    public String toString() {
+        return memberKeys.stream().sorted().collect(Collectors.joining(", "));
+    }
+}
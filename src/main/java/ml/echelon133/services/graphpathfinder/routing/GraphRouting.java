@@ -0,0 +1,229 @@
+package ml.echelon133.services.graphpathfinder.routing;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import ml.echelon133.services.graphpathfinder.path.exception.ServiceOverloadedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.cloud.client.discovery.event.InstanceRegisteredEvent;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Splits graphs between instances of this service registered in the discovery registry, so that every graph is
+// fetched and cached by a single instance (its owner), instead of by every instance which gets a request for it.
+// A request for a graph owned by another instance is forwarded to the owner, and its response carries the address
+// of the owner, so that clients can send later requests for that graph there directly.
+@Component
+public class GraphRouting implements MeterBinder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GraphRouting.class);
+
+    // set on forwarded requests, which are always served by the instance which gets them. Instances see changes
+    // of the registry at different moments, so an instance which does not consider itself the owner yet must not
+    // forward the request again
+    public static final String FORWARDED_BY_HEADER = "X-Graph-Forwarded-By";
+    public static final String OWNER_HEADER = "X-Graph-Owner";
+
+    private DiscoveryClient discoveryClient;
+    private ServiceInstance self;
+    private String serviceId;
+    private int virtualNodes;
+    private HttpClient httpClient;
+    private Duration requestTimeout;
+
+    private volatile GraphRing ring;
+
+    private AtomicLong servedLocally = new AtomicLong();
+    private AtomicLong forwarded = new AtomicLong();
+    private AtomicLong servedInsteadOfOwner = new AtomicLong();
+    private AtomicLong timedOut = new AtomicLong();
+
+    @Autowired
+    public GraphRouting(ObjectProvider<DiscoveryClient> discoveryClient,
+                        ObjectProvider<Registration> registration,
+                        @Value("${spring.application.name}") String serviceId,
+                        @Value("${routing.enabled:true}") boolean enabled,
+                        @Value("${routing.virtual-nodes:128}") int virtualNodes,
+                        @Value("${routing.connect-timeout-ms:1000}") long connectTimeoutMs,
+                        @Value("${routing.request-timeout-ms:30000}") long requestTimeoutMs) {
+        // routing is disabled (every graph is served locally) when either the registry or this instance is missing
+        DiscoveryClient registry = enabled ? discoveryClient.getIfAvailable() : null;
+        Registration self = enabled ? registration.getIfAvailable() : null;
+        this.discoveryClient = self == null ? null : registry;
+        this.self = registry == null ? null : self;
+        this.serviceId = serviceId;
+        this.virtualNodes = virtualNodes;
+        this.httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(connectTimeoutMs)).build();
+        // responses of forwarded searches take as long as the searches themselves, so the default is the same
+        // as the default timeout of asynchronous requests of Tomcat, after which the client is not waiting anymore
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMs);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bindCounter(registry, "local", servedLocally);
+        bindCounter(registry, "forwarded", forwarded);
+        bindCounter(registry, "fallback", servedInsteadOfOwner);
+        bindCounter(registry, "timeout", timedOut);
+    }
+
+    private static void bindCounter(MeterRegistry registry, String route, AtomicLong count) {
+        FunctionCounter.builder("routing.requests", count, AtomicLong::get)
+                .tag("route", route)
+                .description("Requests for graphs served by their owner, forwarded to it, served instead of an owner which could not be reached, or rejected after their owner did not answer in time")
+                .register(registry);
+    }
+
+    // the registry of Eureka is fetched in the background, and every fetch is announced with a HeartbeatEvent
+    @EventListener({ HeartbeatEvent.class, InstanceRegisteredEvent.class })
+    public void refresh() {
+        if (discoveryClient == null) {
+            return;
+        }
+        // this instance owns its share of graphs even before the registry lists it
+        List<ServiceInstance> instances = new ArrayList<>(discoveryClient.getInstances(serviceId));
+        instances.add(self);
+        GraphRing current = ring;
+        GraphRing refreshed = GraphRing.build(instances, virtualNodes);
+        if (current == null || !current.getMemberKeys().equals(refreshed.getMemberKeys())) {
+            ring = refreshed;
+            LOGGER.info(String.format("Graphs are split between instances: %s", refreshed));
+        }
+    }
+
+    // null if the graph should be served by this instance, the owner of the graph otherwise
+    public ServiceInstance findOwner(String graphId, HttpServletRequest request) {
+        if (discoveryClient == null || request.getHeader(FORWARDED_BY_HEADER) != null) {
+            return null;
+        }
+        if (ring == null) {
+            refresh();
+        }
+        ServiceInstance owner = ring.findOwner(graphId);
+        return GraphRing.keyOf(owner).equals(GraphRing.keyOf(self)) ? null : owner;
+    }
+
+    // serves the request locally if this instance owns the graph, otherwise forwards it to the owner. An owner which
+    // cannot be reached (i.e. it has stopped, but is still in the registry) is served for. An owner which does not
+    // answer in time is busy, and serving for it would only add the same work to this instance, so such requests
+    // fail with ServiceOverloadedException. Responses of the owner, errors included, are returned as they are
+    public <T> CompletableFuture<T> route(String graphId, HttpServletRequest request,
+                                          Function<ServiceInstance, CompletableFuture<T>> forward,
+                                          Supplier<CompletableFuture<T>> local) {
+        ServiceInstance owner = findOwner(graphId, request);
+        if (owner == null) {
+            servedLocally.incrementAndGet();
+            return local.get();
+        }
+        LOGGER.debug(String.format("Forwarding request for graph with ID %s to its owner %s", graphId, GraphRing.keyOf(owner)));
+        return forward.apply(owner).handle((response, ex) -> {
+            if (ex == null) {
+                forwarded.incrementAndGet();
+                return CompletableFuture.completedFuture(response);
+            }
+            Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            if (cause instanceof HttpTimeoutException && !(cause instanceof HttpConnectTimeoutException)) {
+                timedOut.incrementAndGet();
+                String msg = String.format("Owner %s of graph with ID %s did not answer in %d ms",
+                        GraphRing.keyOf(owner), graphId, requestTimeout.toMillis());
+                LOGGER.warn(msg);
+                long retryAfter = Math.max(1, requestTimeout.toSeconds());
+                return CompletableFuture.<T>failedFuture(new ServiceOverloadedException(msg, retryAfter));
+            }
+            LOGGER.warn(String.format("Owner %s of graph with ID %s cannot be reached, serving the request locally: %s",
+                    GraphRing.keyOf(owner), graphId, ex.getMessage()));
+            servedInsteadOfOwner.incrementAndGet();
+            return local.get();
+        }).thenCompose(Function.identity());
+    }
+
+    // sends the request to the owner with the same method, path and parameters (whether they were given in the query
+    // string or in a form), and the given body (if any), and reads the whole response
+    public CompletableFuture<ResponseEntity<byte[]>> forward(ServiceInstance owner, HttpServletRequest request, byte[] body) {
+        return httpClient.sendAsync(createRequest(owner, request, body), HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> toResponseEntity(owner, response, response.body()));
+    }
+
+    // same as forward, but the response of the owner is streamed to the client while it's being received
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> forwardAsStream(ServiceInstance owner, HttpServletRequest request,
+                                                                                    byte[] body) {
+        return httpClient.sendAsync(createRequest(owner, request, body), HttpResponse.BodyHandlers.ofInputStream())
+                .thenApply(response -> {
+                    StreamingResponseBody streamingBody = outputStream -> {
+                        try (InputStream in = response.body()) {
+                            in.transferTo(outputStream);
+                        }
+                    };
+                    return toResponseEntity(owner, response, streamingBody);
+                });
+    }
+
+    private HttpRequest createRequest(ServiceInstance owner, HttpServletRequest request, byte[] body) {
+        StringJoiner query = new StringJoiner("&", "?", "").setEmptyValue("");
+        for (Map.Entry<String, String[]> parameter : request.getParameterMap().entrySet()) {
+            for (String value : parameter.getValue()) {
+                query.add(URLEncoder.encode(parameter.getKey(), StandardCharsets.UTF_8) + "=" + URLEncoder.encode(value, StandardCharsets.UTF_8));
+            }
+        }
+        URI uri = URI.create(owner.getUri().toString() + request.getRequestURI() + query);
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .timeout(requestTimeout)
+                .method(request.getMethod(), body == null ?
+                        HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofByteArray(body))
+                .header(FORWARDED_BY_HEADER, GraphRing.keyOf(self));
+        // the owner negotiates the format and compression of its response the same way it would with the client
+        for (String name : List.of(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING)) {
+            String value = request.getHeader(name);
+            if (value != null) {
+                builder.header(name, value);
+            }
+        }
+        if (body != null && request.getContentType() != null) {
+            builder.header(HttpHeaders.CONTENT_TYPE, request.getContentType());
+        }
+        return builder.build();
+    }
+
+    // only headers which describe the body or tell the client what to do next are passed on
+    private <T> ResponseEntity<T> toResponseEntity(ServiceInstance owner, HttpResponse<?> response, T body) {
+        HttpHeaders headers = new HttpHeaders();
+        for (String name : List.of(HttpHeaders.CONTENT_TYPE, HttpHeaders.CONTENT_ENCODING, HttpHeaders.VARY, HttpHeaders.RETRY_AFTER)) {
+            response.headers().firstValue(name).ifPresent(value -> headers.set(name, value));
+        }
+        headers.set(OWNER_HEADER, GraphRing.keyOf(owner));
+        return ResponseEntity.status(response.statusCode()).headers(headers).body(body);
+    }
+}
@@ -0,0 +1,169 @@
+package ml.echelon133.services.graphpathfinder.storageclient;
+
+import ml.echelon133.graph.json.exception.EdgeNullVertexException;
+import ml.echelon133.graph.json.exception.NegativeEdgeWeightException;
+import ml.echelon133.services.graphpathfinder.engine.CompactGraph;
+import ml.echelon133.services.graphpathfinder.engine.Coordinates;
+import ml.echelon133.services.graphpathfinder.engine.GraphSnapshot;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+// Binary representation of a graph, which graph-storage-service can send instead of JSON when it is accepted.
+// Vertex names are written once, edges reference vertexes by their position in that list:
+//
+//   magic        4 bytes, "GRPH"
+//   version      1 byte, 1 (or 2 for a graph with coordinates)
+//   weightScale  varint, every weight is (fixed-width weight) * 10^-weightScale
+//   vertexCount  varint
+//   edgeCount    varint
+//   vertexCount x (varint length of UTF-8 name, name bytes)
+//   vertexCount x (varint degree, degree x (varint target vertex, 8 byte big-endian weight))
+//   vertexCount x (8 byte big-endian double x, 8 byte big-endian double y), only in version 2
+//
+// Varints are unsigned LEB128 (7 bits per byte, least significant group first). Graphs with weights which
+// do not fit in a long at a common scale cannot be written in this format and have to be sent as JSON.
+public final class GraphBinaryFormat {
+
+    public static final String MEDIA_TYPE_VALUE = "application/x-graph-binary";
+
+    private static final byte[] MAGIC = {'G', 'R', 'P', 'H'};
+    private static final int VERSION = 1;
+    private static final int VERSION_WITH_COORDINATES = 2;
+
+    // initial capacity of the snapshot is not taken from the header above these values, so that a corrupted header
+    // cannot make the decoder allocate huge arrays before anything else is read
+    private static final int MAX_EXPECTED_VERTEX_COUNT = 1 << 20;
+    private static final int MAX_EXPECTED_EDGE_COUNT = 1 << 22;
+
+    private GraphBinaryFormat() {
+    }
+
+    // throws ArithmeticException if weights of the snapshot cannot be written in this format
+    public static void write(GraphSnapshot snapshot, OutputStream out) throws IOException {
+        CompactGraph graph = snapshot.toCompactGraph();
+        Coordinates coordinates = graph.getCoordinates();
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+
+        // readers which do not know coordinates can still read graphs which do not have them
+        data.write(MAGIC);
+        data.writeByte(coordinates == null ? VERSION : VERSION_WITH_COORDINATES);
+        writeVarint(data, graph.getWeightScale());
+        writeVarint(data, graph.getVertexCount());
+        writeVarint(data, graph.getEdgeCount());
+
+        for (int v = 0; v < graph.getVertexCount(); v++) {
+            byte[] name = graph.getVertexName(v).getBytes(StandardCharsets.UTF_8);
+            writeVarint(data, name.length);
+            data.write(name);
+        }
+
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        long[] weights = graph.getWeights();
+        for (int v = 0; v < graph.getVertexCount(); v++) {
+            writeVarint(data, offsets[v + 1] - offsets[v]);
+            for (int edge = offsets[v]; edge < offsets[v + 1]; edge++) {
+                writeVarint(data, targets[edge]);
+                data.writeLong(weights[edge]);
+            }
+        }
+        if (coordinates != null) {
+            for (int v = 0; v < graph.getVertexCount(); v++) {
+                data.writeDouble(coordinates.getX(v));
+                data.writeDouble(coordinates.getY(v));
+            }
+        }
+        data.flush();
+    }
+
+    // invalid edges are rejected with the same exceptions as in GraphSnapshotDeserializer,
+    // any other malformed input results in an IOException
+    public static GraphSnapshot read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+
+        byte[] magic = new byte[MAGIC.length];
+        data.readFully(magic);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (magic[i] != MAGIC[i]) {
+                throw new IOException("Input is not a graph in the binary graph format");
+            }
+        }
+        int version = data.readUnsignedByte();
+        if (version != VERSION && version != VERSION_WITH_COORDINATES) {
+            throw new IOException(String.format("Version %d of the binary graph format is not supported", version));
+        }
+
+        int weightScale = readVarint(data);
+        int vertexCount = readVarint(data);
+        int edgeCount = readVarint(data);
+        GraphSnapshot snapshot = new GraphSnapshot(
+                Math.min(vertexCount, MAX_EXPECTED_VERTEX_COUNT), Math.min(edgeCount, MAX_EXPECTED_EDGE_COUNT));
+
+        byte[] nameBuffer = new byte[64];
+        for (int v = 0; v < vertexCount; v++) {
+            int length = readVarint(data);
+            if (length > nameBuffer.length) {
+                nameBuffer = new byte[Math.max(length, nameBuffer.length * 2)];
+            }
+            data.readFully(nameBuffer, 0, length);
+            snapshot.addVertex(new String(nameBuffer, 0, length, StandardCharsets.UTF_8));
+        }
+
+        int edgesRead = 0;
+        for (int source = 0; source < vertexCount; source++) {
+            int degree = readVarint(data);
+            for (int i = 0; i < degree; i++) {
+                int target = readVarint(data);
+                long weight = data.readLong();
+                if (target >= vertexCount) {
+                    throw new EdgeNullVertexException(String.format(
+                            "Edge of vertex '%s' references vertex %d, which is not present in 'vertexes'",
+                            snapshot.getVertexName(source), target));
+                }
+                if (weight < 0) {
+                    throw new NegativeEdgeWeightException("Edge weight cannot be negative");
+                }
+                snapshot.addEdge(source, target, weight, weightScale);
+            }
+            edgesRead += degree;
+        }
+
+        if (edgesRead != edgeCount) {
+            throw new IOException(String.format("Expected %d edges, but %d were read", edgeCount, edgesRead));
+        }
+        if (version == VERSION_WITH_COORDINATES) {
+            for (int v = 0; v < vertexCount; v++) {
+                snapshot.addCoordinates(data.readDouble(), data.readDouble());
+            }
+        }
+        if (data.read() != -1) {
+            throw new IOException("Unexpected data after the end of the graph");
+        }
+        return snapshot;
+    }
+
+    private static void writeVarint(DataOutputStream data, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            data.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data.writeByte(value);
+    }
+
+    // reads a varint which has to fit in a non-negative int
+    private static int readVarint(DataInputStream data) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = data.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0 || (shift == 28 && b > 0x07)) {
+                    break;
+                }
+                return value;
+            }
+        }
+        throw new IOException("Varint in the binary graph format does not fit in a non-negative int");
+    }
+}
@@ -0,0 +1,155 @@
+package ml.echelon133.services.graphpathfinder.storageclient;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import ml.echelon133.graph.json.exception.*;
+import ml.echelon133.services.graphpathfinder.engine.GraphChanges;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+// Reads changes of a graph sent by graph-storage-service:
+// {"addedVertexes": [...], "coordinates": [[x, y], ...], "removedEdges": [...], "addedEdges": [...]}
+// Edges have the same format as in the graph JSON, and coordinates (if a graph has them) belong to added vertexes,
+// in the same order. Every field can be left out. Vertex names are resolved only when changes are applied to
+// a graph, so a document which references unknown vertexes is still read.
+public class GraphChangesDeserializer extends StdDeserializer<GraphChanges> {
+
+    public GraphChangesDeserializer() {
+        super(GraphChanges.class);
+    }
+
+    @Override
+    public GraphChanges deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (p.currentToken() != JsonToken.START_OBJECT) {
+            p.skipChildren();
+            throw new NodeIsNotObjectException("Graph changes are not an object");
+        }
+
+        GraphChanges changes = new GraphChanges();
+        int coordinateCount = 0;
+        boolean coordinatesFound = false;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = p.getCurrentName();
+            JsonToken value = p.nextToken();
+            if (!"addedVertexes".equals(fieldName) && !"coordinates".equals(fieldName)
+                    && !"removedEdges".equals(fieldName) && !"addedEdges".equals(fieldName)) {
+                p.skipChildren();
+                continue;
+            }
+            if (value != JsonToken.START_ARRAY) {
+                p.skipChildren();
+                throw new NodeIsNotArrayException(String.format("'%s' is not an array node.", fieldName));
+            }
+            JsonToken token;
+            while ((token = p.nextToken()) != JsonToken.END_ARRAY) {
+                switch (fieldName) {
+                    case "addedVertexes":
+                        if (token != JsonToken.VALUE_STRING) {
+                            throw new NodeIsNotTextualException("Vertex element in 'addedVertexes' is not textual");
+                        }
+                        changes.addVertex(p.getText());
+                        break;
+                    case "coordinates":
+                        coordinatesFound = true;
+                        readCoordinates(p, token, changes);
+                        coordinateCount++;
+                        break;
+                    case "removedEdges":
+                        readEdge(p, token, fieldName, changes, false);
+                        break;
+                    default:
+                        readEdge(p, token, fieldName, changes, true);
+                }
+            }
+        }
+
+        if (coordinatesFound && coordinateCount != changes.getAddedVertexCount()) {
+            throw new MissingNodeException("'coordinates' does not have an element for every added vertex");
+        }
+        return changes;
+    }
+
+    private static void readCoordinates(JsonParser p, JsonToken token, GraphChanges changes) throws IOException {
+        if (token != JsonToken.START_ARRAY) {
+            throw new NodeIsNotArrayException("Coordinates element in 'coordinates' is not an array");
+        }
+        double x = readCoordinate(p);
+        double y = readCoordinate(p);
+        if (p.nextToken() != JsonToken.END_ARRAY) {
+            throw new NodeIsNotNumberException("Coordinates element in 'coordinates' does not have exactly two numbers");
+        }
+        changes.addCoordinates(x, y);
+    }
+
+    private static double readCoordinate(JsonParser p) throws IOException {
+        JsonToken token = p.nextToken();
+        if (token != JsonToken.VALUE_NUMBER_INT && token != JsonToken.VALUE_NUMBER_FLOAT) {
+            throw new NodeIsNotNumberException("Coordinates element in 'coordinates' does not have exactly two numbers");
+        }
+        double coordinate = p.getDoubleValue();
+        if (Double.isInfinite(coordinate)) {
+            throw new NodeIsNotNumberException("Coordinate in 'coordinates' does not fit in a double");
+        }
+        return coordinate;
+    }
+
+    // changes are small, so weights are simply read as BigDecimals
+    private static void readEdge(JsonParser p, JsonToken token, String fieldName, GraphChanges changes, boolean added) throws IOException {
+        if (token != JsonToken.START_OBJECT) {
+            throw new NodeIsNotObjectException(String.format("Edge element in '%s' is not an object", fieldName));
+        }
+        String source = null;
+        String destination = null;
+        BigDecimal weight = null;
+        boolean sourceFound = false;
+        boolean destinationFound = false;
+        boolean weightFound = false;
+
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String edgeFieldName = p.getCurrentName();
+            JsonToken value = p.nextToken();
+            if ("source".equals(edgeFieldName)) {
+                sourceFound = true;
+                source = value == JsonToken.VALUE_STRING ? p.getText() : null;
+            } else if ("destination".equals(edgeFieldName)) {
+                destinationFound = true;
+                destination = value == JsonToken.VALUE_STRING ? p.getText() : null;
+            } else if ("weight".equals(edgeFieldName)) {
+                weightFound = true;
+                weight = value == JsonToken.VALUE_NUMBER_INT || value == JsonToken.VALUE_NUMBER_FLOAT ? p.getDecimalValue() : null;
+            }
+            p.skipChildren();
+        }
+
+        if (!sourceFound) {
+            throw new MissingNodeException("Edge object does not contain 'source' field");
+        }
+        if (!destinationFound) {
+            throw new MissingNodeException("Edge object does not contain 'destination' field");
+        }
+        if (!weightFound) {
+            throw new MissingNodeException("Edge object does not contain 'weight' field");
+        }
+        if (source == null) {
+            throw new NodeIsNotTextualException("Source vertex in Edge is not textual");
+        }
+        if (destination == null) {
+            throw new NodeIsNotTextualException("Destination vertex in Edge is not textual");
+        }
+        if (weight == null) {
+            throw new NodeIsNotNumberException("Weight cannot be deserialized as BigDecimal");
+        }
+        if (weight.signum() < 0) {
+            throw new NegativeEdgeWeightException("Edge weight cannot be negative");
+        }
+
+        if (added) {
+            changes.addEdge(source, destination, weight);
+        } else {
+            changes.removeEdge(source, destination, weight);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package ml.echelon133.services.graphpathfinder.storageclient;
+
+import feign.Response;
+import feign.codec.Decoder;
+import ml.echelon133.services.graphpathfinder.engine.GraphSnapshot;
+import ml.echelon133.services.graphpathfinder.metrics.PipelineMetrics;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.Map;
+
+// Decodes graphs sent in GraphBinaryFormat. Every other response (including graphs sent as JSON
+// by a graph-storage-service which does not support the binary format) is decoded by the delegate.
+// Graphs are read while they are received, so the time of decoding one includes the time of its download.
+public class GraphSnapshotDecoder implements Decoder {
+
+    private static final MediaType BINARY_MEDIA_TYPE = MediaType.valueOf(GraphBinaryFormat.MEDIA_TYPE_VALUE);
+
+    private Decoder delegate;
+    private PipelineMetrics pipelineMetrics;
+
+    public GraphSnapshotDecoder(Decoder delegate, PipelineMetrics pipelineMetrics) {
+        this.delegate = delegate;
+        this.pipelineMetrics = pipelineMetrics;
+    }
+
+    @Override
+    public Object decode(Response response, Type type) throws IOException {
+        if (type != GraphSnapshot.class || response.body() == null) {
+            return delegate.decode(response, type);
+        }
+        return pipelineMetrics.record(PipelineMetrics.Stage.DECODE, () -> decodeGraph(response, type),
+                snapshot -> snapshot == null ? 0 : ((GraphSnapshot) snapshot).getVertexCount());
+    }
+
+    private Object decodeGraph(Response response, Type type) throws IOException {
+        if (isBinary(response)) {
+            try (InputStream body = response.body().asInputStream()) {
+                return GraphBinaryFormat.read(body);
+            }
+        }
+        return delegate.decode(response, type);
+    }
+
+    private static boolean isBinary(Response response) {
+        for (Map.Entry<String, Collection<String>> header : response.headers().entrySet()) {
+            if (HttpHeaders.CONTENT_TYPE.equalsIgnoreCase(header.getKey())) {
+                return header.getValue().stream().anyMatch(value -> BINARY_MEDIA_TYPE.isCompatibleWith(MediaType.valueOf(value)));
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,343 @@
+package ml.echelon133.services.graphpathfinder.storageclient;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.node.TextNode;
+import ml.echelon133.graph.json.exception.*;
+import ml.echelon133.services.graphpathfinder.engine.GraphSnapshot;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+// Reads the graph JSON format of the graph library ({"vertexes": [...], "edges": [{"source", "destination", "weight"}]})
+// token by token, writing vertexes and edges straight into a GraphSnapshot. Nothing but the snapshot
+// and short-lived vertex name strings is allocated while reading.
+//
+// The format can be extended with "coordinates": [[x, y], ...], which has coordinates of every vertex, in the same
+// order as "vertexes". The graph library ignores that field.
+//
+// Validation is the same as in GraphDeserializer of the graph library, with the same exceptions and messages.
+// The only difference is that when a document has more than one error, the first one in the document is reported.
+public class GraphSnapshotDeserializer extends StdDeserializer<GraphSnapshot> {
+
+    public GraphSnapshotDeserializer() {
+        super(GraphSnapshot.class);
+    }
+
+    @Override
+    public GraphSnapshot deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        return new Reader(p).readGraph();
+    }
+
+    // state of a single deserialization, because one deserializer instance is shared between threads
+    private static class Reader {
+
+        private JsonParser parser;
+        private GraphSnapshot snapshot = new GraphSnapshot();
+
+        // edges which came before 'vertexes', resolved once all vertexes are known
+        private List<String> pendingEndpoints;
+        private List<BigDecimal> pendingWeights;
+        private boolean vertexesRead;
+
+        // value of the last weight read by readWeight
+        private long unscaledWeight;
+        private int weightScale;
+        private BigDecimal bigWeight;
+
+        Reader(JsonParser parser) {
+            this.parser = parser;
+        }
+
+        GraphSnapshot readGraph() throws IOException {
+            if (parser.currentToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                throw new MissingNodeException("Missing 'vertexes' JSON node.");
+            }
+
+            boolean vertexesFound = false;
+            boolean edgesFound = false;
+            boolean vertexesAreArray = false;
+            boolean edgesAreArray = false;
+            boolean coordinatesFound = false;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("vertexes".equals(fieldName)) {
+                    vertexesFound = true;
+                    vertexesAreArray = value == JsonToken.START_ARRAY;
+                    if (vertexesAreArray) {
+                        readVertexes();
+                    } else {
+                        parser.skipChildren();
+                    }
+                } else if ("coordinates".equals(fieldName)) {
+                    coordinatesFound = true;
+                    if (value != JsonToken.START_ARRAY) {
+                        parser.skipChildren();
+                        throw new NodeIsNotArrayException("'coordinates' is not an array node.");
+                    }
+                    readCoordinates();
+                } else if ("edges".equals(fieldName)) {
+                    edgesFound = true;
+                    edgesAreArray = value == JsonToken.START_ARRAY;
+                    if (edgesAreArray) {
+                        readEdges();
+                    } else {
+                        parser.skipChildren();
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+
+            if (!vertexesFound) {
+                throw new MissingNodeException("Missing 'vertexes' JSON node.");
+            }
+            if (!edgesFound) {
+                throw new MissingNodeException("Missing 'edges' JSON node.");
+            }
+            if (!vertexesAreArray) {
+                throw new NodeIsNotArrayException("'vertexes' is not an array node.");
+            }
+            if (!edgesAreArray) {
+                throw new NodeIsNotArrayException("'edges' is not an array node.");
+            }
+            addPendingEdges();
+            if (coordinatesFound && snapshot.getCoordinateCount() != snapshot.getVertexCount()) {
+                throw new MissingNodeException("'coordinates' does not have an element for every vertex");
+            }
+            return snapshot;
+        }
+
+        private void readCoordinates() throws IOException {
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token != JsonToken.START_ARRAY) {
+                    throw new NodeIsNotArrayException("Coordinates element in 'coordinates' is not an array");
+                }
+                double x = readCoordinate();
+                double y = readCoordinate();
+                if (parser.nextToken() != JsonToken.END_ARRAY) {
+                    throw new NodeIsNotNumberException("Coordinates element in 'coordinates' does not have exactly two numbers");
+                }
+                snapshot.addCoordinates(x, y);
+            }
+        }
+
+        private double readCoordinate() throws IOException {
+            JsonToken token = parser.nextToken();
+            if (token != JsonToken.VALUE_NUMBER_INT && token != JsonToken.VALUE_NUMBER_FLOAT) {
+                throw new NodeIsNotNumberException("Coordinates element in 'coordinates' does not have exactly two numbers");
+            }
+            double coordinate = parser.getDoubleValue();
+            if (Double.isInfinite(coordinate)) {
+                throw new NodeIsNotNumberException("Coordinate in 'coordinates' does not fit in a double");
+            }
+            return coordinate;
+        }
+
+        private void readVertexes() throws IOException {
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token != JsonToken.VALUE_STRING) {
+                    throw new NodeIsNotTextualException("Vertex element in 'vertexes' is not textual");
+                }
+                snapshot.addVertex(parser.getText());
+            }
+            vertexesRead = true;
+        }
+
+        private void readEdges() throws IOException {
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new NodeIsNotObjectException("Edge element in 'edges' is not an object");
+                }
+                readEdge();
+            }
+        }
+
+        private void readEdge() throws IOException {
+            String source = null;
+            String destination = null;
+            boolean sourceFound = false;
+            boolean destinationFound = false;
+            boolean weightFound = false;
+            boolean weightIsNumber = false;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("source".equals(fieldName)) {
+                    sourceFound = true;
+                    source = value == JsonToken.VALUE_STRING ? parser.getText() : null;
+                } else if ("destination".equals(fieldName)) {
+                    destinationFound = true;
+                    destination = value == JsonToken.VALUE_STRING ? parser.getText() : null;
+                } else if ("weight".equals(fieldName)) {
+                    weightFound = true;
+                    weightIsNumber = value == JsonToken.VALUE_NUMBER_INT || value == JsonToken.VALUE_NUMBER_FLOAT;
+                    if (weightIsNumber) {
+                        readWeight(value);
+                    }
+                }
+                parser.skipChildren();
+            }
+
+            if (!sourceFound) {
+                throw new MissingNodeException("Edge object does not contain 'source' field");
+            }
+            if (!destinationFound) {
+                throw new MissingNodeException("Edge object does not contain 'destination' field");
+            }
+            if (!weightFound) {
+                throw new MissingNodeException("Edge object does not contain 'weight' field");
+            }
+            if (source == null) {
+                throw new NodeIsNotTextualException("Source vertex in Edge is not textual");
+            }
+            if (destination == null) {
+                throw new NodeIsNotTextualException("Destination vertex in Edge is not textual");
+            }
+            if (!weightIsNumber) {
+                throw new NodeIsNotNumberException("Weight cannot be deserialized as BigDecimal");
+            }
+
+            if (!vertexesRead) {
+                // vertex names can be resolved only when all vertexes are known
+                addPendingEdge(source, destination, getWeight());
+                return;
+            }
+
+            int sourceId = snapshot.findVertexId(source);
+            int destinationId = snapshot.findVertexId(destination);
+            if (sourceId == -1 || destinationId == -1) {
+                throw edgeNullVertex(source, destination, getWeight());
+            }
+            if (bigWeight != null) {
+                checkNotNegative(bigWeight.signum());
+                snapshot.addEdge(sourceId, destinationId, bigWeight);
+            } else {
+                checkNotNegative(Long.signum(unscaledWeight));
+                snapshot.addEdge(sourceId, destinationId, unscaledWeight, weightScale);
+            }
+        }
+
+        // parses the text of a number token by hand, because JsonParser.getDecimalValue allocates a BigDecimal
+        // for every floating point weight. Numbers which do not fit in a long are still read as BigDecimals
+        private void readWeight(JsonToken token) throws IOException {
+            bigWeight = null;
+            if (token == JsonToken.VALUE_NUMBER_INT) {
+                if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+                    bigWeight = parser.getDecimalValue();
+                } else {
+                    unscaledWeight = parser.getLongValue();
+                    weightScale = 0;
+                }
+                return;
+            }
+
+            char[] chars = parser.getTextCharacters();
+            int i = parser.getTextOffset();
+            int end = i + parser.getTextLength();
+
+            boolean negative = chars[i] == '-';
+            if (negative) {
+                i++;
+            }
+            long unscaled = 0;
+            int scale = 0;
+            boolean fraction = false;
+            for (; i < end; i++) {
+                char c = chars[i];
+                if (c == '.') {
+                    fraction = true;
+                    continue;
+                }
+                if (c == 'e' || c == 'E') {
+                    break;
+                }
+                int digit = c - '0';
+                if (unscaled > (Long.MAX_VALUE - digit) / 10) {
+                    bigWeight = parser.getDecimalValue();
+                    return;
+                }
+                unscaled = unscaled * 10 + digit;
+                if (fraction) {
+                    scale++;
+                }
+            }
+
+            if (i < end) {
+                i++;
+                boolean negativeExponent = chars[i] == '-';
+                if (chars[i] == '-' || chars[i] == '+') {
+                    i++;
+                }
+                int exponent = 0;
+                for (; i < end; i++) {
+                    exponent = exponent * 10 + (chars[i] - '0');
+                    if (exponent > 100_000) {
+                        bigWeight = parser.getDecimalValue();
+                        return;
+                    }
+                }
+                scale += negativeExponent ? exponent : -exponent;
+            }
+
+            unscaledWeight = negative ? -unscaled : unscaled;
+            weightScale = scale;
+        }
+
+        private void checkNotNegative(int signum) throws NegativeEdgeWeightException {
+            if (signum < 0) {
+                // same message as the one of IllegalArgumentException thrown by the Edge constructor
+                throw new NegativeEdgeWeightException("Edge weight cannot be negative");
+            }
+        }
+
+        private BigDecimal getWeight() {
+            return bigWeight != null ? bigWeight : BigDecimal.valueOf(unscaledWeight, weightScale);
+        }
+
+        // the edge is written just like GraphDeserializer writes its JsonNode, except for unknown fields
+        private EdgeNullVertexException edgeNullVertex(String source, String destination, BigDecimal weight) {
+            String edge = String.format("{\"source\":%s,\"destination\":%s,\"weight\":%s}",
+                    TextNode.valueOf(source), TextNode.valueOf(destination), weight);
+            return new EdgeNullVertexException(String.format("Edge '%s' references a vertex that is not present in 'vertexes'", edge));
+        }
+
+        private void addPendingEdge(String source, String destination, BigDecimal weight) {
+            if (pendingEndpoints == null) {
+                pendingEndpoints = new ArrayList<>();
+                pendingWeights = new ArrayList<>();
+            }
+            pendingEndpoints.add(source);
+            pendingEndpoints.add(destination);
+            pendingWeights.add(weight);
+        }
+
+        private void addPendingEdges() throws IOException {
+            if (pendingEndpoints == null) {
+                return;
+            }
+            for (int i = 0; i < pendingWeights.size(); i++) {
+                String source = pendingEndpoints.get(2 * i);
+                String destination = pendingEndpoints.get(2 * i + 1);
+                int sourceId = snapshot.findVertexId(source);
+                int destinationId = snapshot.findVertexId(destination);
+                if (sourceId == -1 || destinationId == -1) {
+                    throw edgeNullVertex(source, destination, pendingWeights.get(i));
+                }
+                checkNotNegative(pendingWeights.get(i).signum());
+                snapshot.addEdge(sourceId, destinationId, pendingWeights.get(i));
+            }
+        }
+    }
+}
@@ -1,15 +1,39 @@
 package ml.echelon133.services.graphpathfinder.storageclient;
 
-import ml.echelon133.graph.Graph;
+import ml.echelon133.services.graphpathfinder.engine.GraphChanges;
+import ml.echelon133.services.graphpathfinder.engine.GraphSnapshot;
 import org.springframework.cloud.openfeign.FeignClient;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 
-import java.math.BigDecimal;
-
-@FeignClient(name = "${feign.graph-storage-service.name}", url = "${feign.graph-storage-service.url}")
+@FeignClient(name = "${feign.graph-storage-service.name}", url = "${feign.graph-storage-service.url}",
+        configuration = GraphStorageClientConfiguration.class)
 public interface GraphStorageClient {
 
-    @GetMapping("/api/graphs/{id}")
-    Graph<BigDecimal> getGraph(@PathVariable String id);
+    // binary graphs are preferred, JSON is still accepted from graph-storage-service instances which cannot send them
+    String GRAPH_ACCEPT_HEADER = HttpHeaders.ACCEPT + "=" + GraphBinaryFormat.MEDIA_TYPE_VALUE + ", "
+            + MediaType.APPLICATION_JSON_VALUE + ";q=0.9";
+
+    // whole response is returned, so that the ETag header (if the storage service sets it) can be used as graph version.
+    // The body is decoded by GraphSnapshotDecoder (binary) or GraphSnapshotDeserializer (JSON) straight into
+    // primitive arrays, without building a Graph
+    @GetMapping(value = "/api/graphs/{id}", headers = GRAPH_ACCEPT_HEADER)
+    ResponseEntity<GraphSnapshot> getGraph(@PathVariable String id);
+
+    // same as getGraph, except that a graph whose ETag is still the given version is not sent at all. Such response
+    // (304 Not Modified) is not a success for Feign, so it's thrown as a FeignException with that status
+    @GetMapping(value = "/api/graphs/{id}", headers = GRAPH_ACCEPT_HEADER)
+    ResponseEntity<GraphSnapshot> getGraphIfModified(@PathVariable String id,
+                                                     @RequestHeader(HttpHeaders.IF_NONE_MATCH) String version);
+
+    // changes made to a graph since the given version, with the version they lead to as ETag. A graph-storage-service
+    // which does not know that version anymore, or does not keep changes at all, answers with an error status
+    // (i.e. 404 or 410 Gone), which is thrown as a FeignException
+    @GetMapping(value = "/api/graphs/{id}/changes", produces = MediaType.APPLICATION_JSON_VALUE)
+    ResponseEntity<GraphChanges> getGraphChanges(@PathVariable String id, @RequestParam("since") String version);
 }
@@ -0,0 +1,23 @@
+package ml.echelon133.services.graphpathfinder.storageclient;
+
+import feign.codec.Decoder;
+import feign.optionals.OptionalDecoder;
+import ml.echelon133.services.graphpathfinder.metrics.PipelineMetrics;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
+import org.springframework.cloud.openfeign.support.ResponseEntityDecoder;
+import org.springframework.cloud.openfeign.support.SpringDecoder;
+import org.springframework.context.annotation.Bean;
+
+// Configuration of GraphStorageClient only. It's not a @Configuration, so that component scanning does not
+// make its beans the defaults of every Feign client.
+public class GraphStorageClientConfiguration {
+
+    // the same decoder chain as the default one of Spring Cloud OpenFeign, with binary graphs decoded before
+    // the message converters are asked
+    @Bean
+    public Decoder feignDecoder(ObjectFactory<HttpMessageConverters> messageConverters, PipelineMetrics pipelineMetrics) {
+        return new OptionalDecoder(new ResponseEntityDecoder(
+                new GraphSnapshotDecoder(new SpringDecoder(messageConverters), pipelineMetrics)));
+    }
+}
@@ -0,0 +1,25 @@
+package ml.echelon133.services.graphpathfinder.storageclient;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import ml.echelon133.graph.Graph;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+// Drop-in replacement of GraphDeserializer of the graph library, which reads the graph in a single pass
+// over the parser instead of reading the whole document into a tree of JsonNodes first.
+public class StreamingGraphDeserializer extends StdDeserializer<Graph<BigDecimal>> {
+
+    private GraphSnapshotDeserializer snapshotDeserializer = new GraphSnapshotDeserializer();
+
+    public StreamingGraphDeserializer() {
+        super(Graph.class);
+    }
+
+    @Override
+    public Graph<BigDecimal> deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        return snapshotDeserializer.deserialize(p, ctxt).toGraph();
+    }
+}
@@ -0,0 +1,119 @@
+package ml.echelon133.services.graphpathfinder;
+
+import brave.Tracing;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import ml.echelon133.services.graphpathfinder.admission.AdmissionControl;
+import ml.echelon133.services.graphpathfinder.cache.GraphCache;
+import ml.echelon133.services.graphpathfinder.cache.GraphSnapshotFiles;
+import ml.echelon133.services.graphpathfinder.cache.ResultCache;
+import ml.echelon133.services.graphpathfinder.engine.AllPairsPrecomputation;
+import ml.echelon133.services.graphpathfinder.engine.ContractionHierarchies;
+import ml.echelon133.services.graphpathfinder.engine.DeltaStepping;
+import ml.echelon133.services.graphpathfinder.engine.DijkstraEngine;
+import ml.echelon133.services.graphpathfinder.engine.IncrementalRecomputation;
+import ml.echelon133.services.graphpathfinder.engine.QueueType;
+import ml.echelon133.services.graphpathfinder.metrics.PipelineMetrics;
+import ml.echelon133.services.graphpathfinder.path.PathServiceImpl;
+import ml.echelon133.services.graphpathfinder.routing.GraphRouting;
+import ml.echelon133.services.graphpathfinder.storageclient.GraphStorageClient;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.serviceregistry.Registration;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+// Beans of the application created outside of it (by tests and benchmarks). Every optional part of the pipeline
+// is disabled, so that only the part which is tested or measured does any work.
+public final class TestBeans {
+
+    // defaults of engine.bidirectional-min-vertex-count and engine.landmark-count
+    public static final int BIDIRECTIONAL_MIN_VERTEX_COUNT = 10_000;
+    public static final int LANDMARK_COUNT = 8;
+
+    private static final String TMP_DIRECTORY = System.getProperty("java.io.tmpdir");
+
+    // searches of all services share a single lane, which admits everything
+    private static AdmissionControl unlimitedAdmissionControl;
+
+    private TestBeans() {
+    }
+
+    public static <T> ObjectProvider<T> providerOf(Class<T> type, T bean) {
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory(
+                bean == null ? Map.of() : Map.of(type.getName(), bean));
+        return beanFactory.getBeanProvider(type);
+    }
+
+    public static PipelineMetrics pipelineMetrics() {
+        return pipelineMetrics(new CompositeMeterRegistry());
+    }
+
+    // without tracing and histograms
+    public static PipelineMetrics pipelineMetrics(MeterRegistry registry) {
+        return new PipelineMetrics(registry, providerOf(Tracing.class, null), false);
+    }
+
+    public static GraphSnapshotFiles graphSnapshotFiles() {
+        return new GraphSnapshotFiles(false, TMP_DIRECTORY);
+    }
+
+    public static DeltaStepping deltaStepping() {
+        return new DeltaStepping(false, Long.MAX_VALUE, BigDecimal.ZERO, 1);
+    }
+
+    public static IncrementalRecomputation incrementalRecomputation() {
+        return new IncrementalRecomputation(false, 0, 0, 0);
+    }
+
+    public static AllPairsPrecomputation allPairsPrecomputation() {
+        return new AllPairsPrecomputation(dijkstraEngine(), false, 0, Integer.MAX_VALUE, 1);
+    }
+
+    public static ContractionHierarchies contractionHierarchies() {
+        return new ContractionHierarchies(false, Integer.MAX_VALUE, TMP_DIRECTORY, 1);
+    }
+
+    // serves every graph locally
+    public static GraphRouting graphRouting() {
+        return new GraphRouting(providerOf(DiscoveryClient.class, null), providerOf(Registration.class, null),
+                null, false, 1, 1000, 30_000);
+    }
+
+    public static synchronized AdmissionControl admissionControl() {
+        if (unlimitedAdmissionControl == null) {
+            unlimitedAdmissionControl = new AdmissionControl(0, Long.MAX_VALUE, 0, Long.MAX_VALUE, Long.MAX_VALUE, false);
+        }
+        return unlimitedAdmissionControl;
+    }
+
+    public static DijkstraEngine dijkstraEngine() {
+        return dijkstraEngine(QueueType.AUTO);
+    }
+
+    public static DijkstraEngine dijkstraEngine(QueueType queueType) {
+        return dijkstraEngine(queueType, BIDIRECTIONAL_MIN_VERTEX_COUNT, LANDMARK_COUNT);
+    }
+
+    public static DijkstraEngine dijkstraEngine(QueueType queueType, int bidirectionalMinVertexCount, int landmarkCount) {
+        return new DijkstraEngine(queueType.name(), bidirectionalMinVertexCount, landmarkCount, deltaStepping(),
+                pipelineMetrics());
+    }
+
+    // graphs are loaded on the common pool, the same way they are loaded on an executor of their own by the application
+    public static GraphCache graphCache(GraphStorageClient graphStorageClient, MeterRegistry meterRegistry, long maximumSizeMb) {
+        return new GraphCache(graphStorageClient, meterRegistry, maximumSizeMb, 30, "long", ForkJoinPool.commonPool(),
+                graphSnapshotFiles(), incrementalRecomputation(), false, pipelineMetrics());
+    }
+
+    public static PathServiceImpl pathService(GraphCache graphCache, ResultCache resultCache, DijkstraEngine dijkstraEngine,
+                                              ObjectMapper objectMapper) {
+        return new PathServiceImpl(graphCache, resultCache, dijkstraEngine, objectMapper, ForkJoinPool.commonPool(),
+                admissionControl(), allPairsPrecomputation(), contractionHierarchies(), incrementalRecomputation(),
+                pipelineMetrics());
+    }
+}
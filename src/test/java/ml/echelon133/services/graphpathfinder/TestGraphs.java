@@ -0,0 +1,90 @@
+package ml.echelon133.services.graphpathfinder;
+
+import ml.echelon133.graph.Graph;
+import ml.echelon133.graph.Vertex;
+import ml.echelon133.graph.WeightedGraph;
+import ml.echelon133.services.graphpathfinder.engine.CompactGraph;
+import ml.echelon133.services.graphpathfinder.engine.GraphSnapshot;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+// Graphs shared by tests. Vertexes are named "v0", "v1", ... and every graph is generated from the given random,
+// so a test gets the same graphs on every run. Weights are asked for after the ends of their edges are picked.
+public final class TestGraphs {
+
+    private TestGraphs() {
+    }
+
+    // edges connect random vertexes, so there are loops, parallel edges and vertexes which cannot be reached
+    public static Graph<BigDecimal> createRandomGraph(Random random, int vertexCount, int edgeCount, Supplier<BigDecimal> weights) {
+        Graph<BigDecimal> graph = new WeightedGraph<>();
+        List<Vertex<BigDecimal>> vertexes = new ArrayList<>();
+        for (int i = 0; i < vertexCount; i++) {
+            Vertex<BigDecimal> vertex = new Vertex<>("v" + i);
+            vertexes.add(vertex);
+            graph.addVertex(vertex);
+        }
+        for (int i = 0; i < edgeCount; i++) {
+            Vertex<BigDecimal> source = vertexes.get(random.nextInt(vertexCount));
+            Vertex<BigDecimal> destination = vertexes.get(random.nextInt(vertexCount));
+            graph.addEdge(source, destination, weights.get());
+        }
+        return graph;
+    }
+
+    // same as createRandomGraph, without building the object graph, which matters for graphs of many vertexes
+    public static GraphSnapshot createRandomSnapshot(Random random, int vertexCount, int edgeCount, Supplier<BigDecimal> weights) {
+        GraphSnapshot snapshot = new GraphSnapshot();
+        for (int i = 0; i < vertexCount; i++) {
+            snapshot.addVertex("v" + i);
+        }
+        for (int i = 0; i < edgeCount; i++) {
+            int source = random.nextInt(vertexCount);
+            int target = random.nextInt(vertexCount);
+            snapshot.addEdge(source, target, weights.get());
+        }
+        return snapshot;
+    }
+
+    // a grid which looks like a road network: coordinates of vertexes are both degrees of longitude and latitude and
+    // units of a plane, and weights are at least minWeight. Some roads go in one direction only, some are missing
+    // (so some vertexes cannot be reached at all) and some have a parallel road
+    public static CompactGraph createRoadGrid(Random random, int size, int minWeight) {
+        GraphSnapshot snapshot = new GraphSnapshot();
+        for (int row = 0; row < size; row++) {
+            for (int column = 0; column < size; column++) {
+                snapshot.addVertex("v" + (row * size + column));
+                snapshot.addCoordinates(20 + column * 0.01, 50 + row * 0.01);
+            }
+        }
+        for (int row = 0; row < size; row++) {
+            for (int column = 0; column < size; column++) {
+                int vertex = row * size + column;
+                if (column + 1 < size) {
+                    addRoad(random, snapshot, vertex, vertex + 1, minWeight);
+                }
+                if (row + 1 < size) {
+                    addRoad(random, snapshot, vertex, vertex + size, minWeight);
+                }
+            }
+        }
+        return snapshot.toCompactGraph();
+    }
+
+    private static void addRoad(Random random, GraphSnapshot snapshot, int first, int second, int minWeight) {
+        if (random.nextInt(20) == 0) {
+            return;
+        }
+        snapshot.addEdge(first, second, minWeight + random.nextInt(20), 0);
+        if (random.nextInt(5) != 0) {
+            snapshot.addEdge(second, first, minWeight + random.nextInt(20), 0);
+        }
+        if (random.nextInt(20) == 0) {
+            snapshot.addEdge(first, second, minWeight + random.nextInt(20), 0);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package ml.echelon133.services.graphpathfinder.admission;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ml.echelon133.services.graphpathfinder.path.exception.ServiceOverloadedException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdmissionControlTest {
+
+    private AdmissionControl admissionControl;
+    private CountDownLatch blockingSearches;
+
+    @Before
+    public void before() {
+        // lanes with a single thread each, searches with cost of at least 1000 are large
+        admissionControl = new AdmissionControl(1, 100, 1, 10_000, 1000, true);
+        blockingSearches = new CountDownLatch(1);
+    }
+
+    @After
+    public void after() {
+        blockingSearches.countDown();
+        admissionControl.shutdown();
+    }
+
+    private CompletableFuture<Boolean> submitBlockingSearch(long cost) {
+        return admissionControl.submit("graph", cost, () -> blockingSearches.await(10, TimeUnit.SECONDS));
+    }
+
+    private Throwable getFailure(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+        } catch (ExecutionException ex) {
+            return ex.getCause();
+        }
+        return null;
+    }
+
+    @Test
+    public void submitRejectsSearchesAboveLaneLimit() throws Exception {
+        // When
+        CompletableFuture<Boolean> first = submitBlockingSearch(60);
+        CompletableFuture<Boolean> second = submitBlockingSearch(30);
+        CompletableFuture<Boolean> third = submitBlockingSearch(20);
+
+        // Then
+        Throwable failure = getFailure(third);
+        assertThat(failure).isInstanceOf(ServiceOverloadedException.class);
+        assertThat(((ServiceOverloadedException) failure).getRetryAfterSeconds()).isBetween(1L, AdmissionControl.MAX_RETRY_AFTER_SECONDS);
+        blockingSearches.countDown();
+        assertThat(first.get(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(second.get(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void submitAdmitsSearchAboveLimitWhenLaneIsIdle() throws Exception {
+        // When
+        CompletableFuture<Integer> result = admissionControl.submit("graph", 50_000, () -> 5);
+
+        // Then
+        assertThat(result.get(10, TimeUnit.SECONDS)).isEqualTo(5);
+    }
+
+    @Test
+    public void submitKeepsLargeSearchesOutOfSmallLane() throws Exception {
+        // Given
+        submitBlockingSearch(5000);
+
+        // When
+        CompletableFuture<Integer> smallSearch = admissionControl.submit("graph", 100, () -> 1);
+        CompletableFuture<Integer> largeSearch = admissionControl.submit("graph", 6000, () -> 2);
+
+        // Then
+        assertThat(smallSearch.get(10, TimeUnit.SECONDS)).isEqualTo(1);
+        assertThat(getFailure(largeSearch)).isInstanceOf(ServiceOverloadedException.class);
+    }
+
+    @Test
+    public void submitReleasesCostOfFinishedSearches() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        admissionControl.bindTo(meterRegistry);
+
+        // When
+        admissionControl.submit("graph", 100, () -> 1).get(10, TimeUnit.SECONDS);
+        CompletableFuture<Integer> next = admissionControl.submit("graph", 100, () -> 2);
+
+        // Then
+        assertThat(next.get(10, TimeUnit.SECONDS)).isEqualTo(2);
+        assertThat(meterRegistry.get("path.solver.admitted").tag("lane", "small").functionCounter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("path.solver.rejected").tag("lane", "small").functionCounter().count()).isEqualTo(0);
+        assertThat(meterRegistry.get("path.solver.admitted.cost").tag("lane", "small").gauge().value()).isEqualTo(0);
+    }
+
+    @Test
+    public void admitKeepsCostAdmittedUntilReleased() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        admissionControl.bindTo(meterRegistry);
+
+        // Given
+        Runnable release = admissionControl.admit("graph", 80);
+
+        // When
+        Throwable rejected = getFailure(submitBlockingSearch(30));
+        release.run();
+        release.run();
+        CompletableFuture<Integer> next = admissionControl.submit("graph", 30, () -> 3);
+
+        // Then
+        assertThat(rejected).isInstanceOf(ServiceOverloadedException.class);
+        assertThat(next.get(10, TimeUnit.SECONDS)).isEqualTo(3);
+        assertThat(meterRegistry.get("path.solver.admitted.cost").tag("lane", "small").gauge().value()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,522 @@
+package ml.echelon133.services.graphpathfinder.cache;
+
+import feign.FeignException;
+import feign.Request;
+import feign.Response;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ml.echelon133.graph.Graph;
+import ml.echelon133.graph.Vertex;
+import ml.echelon133.graph.WeightedGraph;
+import ml.echelon133.services.graphpathfinder.TestBeans;
+import ml.echelon133.services.graphpathfinder.engine.CompactGraph;
+import ml.echelon133.services.graphpathfinder.engine.DijkstraEngine;
+import ml.echelon133.services.graphpathfinder.engine.GraphChanges;
+import ml.echelon133.services.graphpathfinder.engine.GraphSnapshot;
+import ml.echelon133.services.graphpathfinder.engine.IncrementalRecomputation;
+import ml.echelon133.services.graphpathfinder.engine.ShortestPathTree;
+import ml.echelon133.services.graphpathfinder.storageclient.GraphStorageClient;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.ResponseEntity;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GraphCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private GraphStorageClient graphClient;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private GraphCache graphCache;
+
+    @Before
+    public void before() {
+        meterRegistry = new SimpleMeterRegistry();
+        graphCache = TestBeans.graphCache(graphClient, meterRegistry, 64);
+    }
+
+    // graphs are loaded on the calling thread
+    private GraphCache createCache(String weightMode, GraphSnapshotFiles snapshotFiles,
+                                   IncrementalRecomputation incrementalRecomputation, boolean fetchChanges) {
+        return new GraphCache(graphClient, meterRegistry, 64, 30, weightMode, Runnable::run, snapshotFiles,
+                incrementalRecomputation, fetchChanges, TestBeans.pipelineMetrics());
+    }
+
+    private Graph<BigDecimal> createTestGraph() {
+        Graph<BigDecimal> testGraph = new WeightedGraph<>();
+        Vertex<BigDecimal> v1Vertex = new Vertex<>("v1");
+        Vertex<BigDecimal> v2Vertex = new Vertex<>("v2");
+        List.of(v1Vertex, v2Vertex).forEach(testGraph::addVertex);
+        testGraph.addEdge(v1Vertex, v2Vertex, new BigDecimal(20));
+        return testGraph;
+    }
+
+    @Test
+    public void getGraphFetchesGraphOnlyOnce() {
+        String graphId = "abcdefghijklmnoprst";
+        Graph<BigDecimal> testGraph = createTestGraph();
+
+        // Given
+        given(graphClient.getGraph(eq(graphId))).willReturn(ResponseEntity.ok(GraphSnapshot.fromGraph(testGraph)));
+
+        // When
+        CachedGraph first = graphCache.getGraph(graphId);
+        CachedGraph second = graphCache.getGraph(graphId);
+
+        // Then
+        assertThat(first.isCompact()).isTrue();
+        assertThat(first.getCompactGraph().getVertexCount()).isEqualTo(2);
+        assertThat(second).isSameAs(first);
+        verify(graphClient, times(1)).getGraph(graphId);
+        assertThat(meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.gets").tag("result", "miss").functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void getGraphLoadsGraphOnceForConcurrentMisses() throws Exception {
+        String graphId = "abcdefghijklmnoprst";
+        Graph<BigDecimal> testGraph = createTestGraph();
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        CountDownLatch releaseLoad = new CountDownLatch(1);
+
+        // Given
+        given(graphClient.getGraph(eq(graphId))).willAnswer(invocation -> {
+            loadStarted.countDown();
+            releaseLoad.await(5, TimeUnit.SECONDS);
+            return ResponseEntity.ok(GraphSnapshot.fromGraph(testGraph));
+        });
+
+        // When
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<CachedGraph>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(executor.submit(() -> graphCache.getGraph(graphId)));
+        }
+        loadStarted.await(5, TimeUnit.SECONDS);
+        releaseLoad.countDown();
+
+        // Then
+        for (Future<CachedGraph> future : futures) {
+            assertThat(future.get(5, TimeUnit.SECONDS).getCompactGraph().getEdgeCount()).isEqualTo(1);
+        }
+        executor.shutdown();
+        verify(graphClient, times(1)).getGraph(graphId);
+    }
+
+    @Test
+    public void getGraphDoesNotCacheFailedLoads() {
+        String graphId = "abcdefghijklmnoprst";
+        Graph<BigDecimal> testGraph = createTestGraph();
+        RuntimeException ex = new IllegalStateException("storage down");
+
+        // Given
+        given(graphClient.getGraph(eq(graphId))).willThrow(ex).willReturn(ResponseEntity.ok(GraphSnapshot.fromGraph(testGraph)));
+
+        // When
+        Exception received = null;
+        try {
+            graphCache.getGraph(graphId);
+        } catch (Exception e) {
+            received = e;
+        }
+        CachedGraph cachedGraph = graphCache.getGraph(graphId);
+
+        // Then
+        assertThat(received).isSameAs(ex);
+        assertThat(cachedGraph.getCompactGraph().findVertexId("v2")).isEqualTo(1);
+        verify(graphClient, times(2)).getGraph(graphId);
+    }
+
+    @Test
+    public void getGraphUsesETagAsVersion() {
+        String graphId = "abcdefghijklmnoprst";
+
+        // Given
+        given(graphClient.getGraph(eq(graphId)))
+                .willReturn(ResponseEntity.ok().eTag("\"5\"").body(GraphSnapshot.fromGraph(createTestGraph())))
+                .willReturn(ResponseEntity.ok(GraphSnapshot.fromGraph(createTestGraph())));
+        given(graphClient.getGraphIfModified(eq(graphId), eq("\"5\"")))
+                .willReturn(ResponseEntity.ok(GraphSnapshot.fromGraph(createTestGraph())));
+
+        // When
+        String etagVersion = graphCache.getGraph(graphId).getVersion();
+        graphCache.invalidate(graphId);
+        String firstLocalVersion = graphCache.getGraph(graphId).getVersion();
+        graphCache.invalidate(graphId);
+        String secondLocalVersion = graphCache.getGraph(graphId).getVersion();
+
+        // Then
+        assertThat(etagVersion).isEqualTo("\"5\"");
+        assertThat(firstLocalVersion).isNotEqualTo(secondLocalVersion);
+    }
+
+    @Test
+    public void getGraphKeepsObjectGraphWhenWeightsDoNotFitInLongs() {
+        String graphId = "abcdefghijklmnoprst";
+
+        Graph<BigDecimal> testGraph = new WeightedGraph<>();
+        Vertex<BigDecimal> v1Vertex = new Vertex<>("v1");
+        Vertex<BigDecimal> v2Vertex = new Vertex<>("v2");
+        List.of(v1Vertex, v2Vertex).forEach(testGraph::addVertex);
+        testGraph.addEdge(v1Vertex, v2Vertex, new BigDecimal("1000000000000000000000"));
+
+        // Given
+        given(graphClient.getGraph(eq(graphId))).willReturn(ResponseEntity.ok(GraphSnapshot.fromGraph(testGraph)));
+
+        // When
+        CachedGraph cachedGraph = graphCache.getGraph(graphId);
+
+        // Then
+        assertThat(cachedGraph.isCompact()).isFalse();
+        assertThat(cachedGraph.getGraph().getVertexes().size()).isEqualTo(2);
+        assertThat(cachedGraph.getGraph().getEdges().get(0).getWeight()).isEqualByComparingTo(new BigDecimal("1000000000000000000000"));
+    }
+
+    private Graph<BigDecimal> createGraphWithWeightsNotFittingInLongs() {
+        Graph<BigDecimal> testGraph = new WeightedGraph<>();
+        Vertex<BigDecimal> v1Vertex = new Vertex<>("v1");
+        Vertex<BigDecimal> v2Vertex = new Vertex<>("v2");
+        List.of(v1Vertex, v2Vertex).forEach(testGraph::addVertex);
+        testGraph.addEdge(v1Vertex, v2Vertex, new BigDecimal("12345678901234567890.5"));
+        return testGraph;
+    }
+
+    @Test
+    public void getGraphUsesFloatingPointWeightsInDoubleMode() {
+        String graphId = "abcdefghijklmnoprst";
+        GraphCache doubleModeCache = createCache("double", TestBeans.graphSnapshotFiles(), TestBeans.incrementalRecomputation(), false);
+
+        // Given
+        given(graphClient.getGraph(eq(graphId)))
+                .willReturn(ResponseEntity.ok(GraphSnapshot.fromGraph(createGraphWithWeightsNotFittingInLongs())));
+        given(graphClient.getGraph(eq("other")))
+                .willReturn(ResponseEntity.ok(GraphSnapshot.fromGraph(createTestGraph())));
+
+        // When
+        CachedGraph cachedGraph = doubleModeCache.getGraph(graphId);
+        CachedGraph otherGraph = doubleModeCache.getGraph("other");
+
+        // Then
+        assertThat(cachedGraph.isCompact()).isTrue();
+        assertThat(cachedGraph.getCompactGraph().isFloatingPoint()).isTrue();
+        // graphs which fit in longs keep exact weights
+        assertThat(otherGraph.getCompactGraph().isFloatingPoint()).isFalse();
+    }
+
+    @Test
+    public void getGraphKeepsObjectGraphInExactMode() {
+        String graphId = "abcdefghijklmnoprst";
+        GraphCache exactModeCache = createCache("exact", TestBeans.graphSnapshotFiles(), TestBeans.incrementalRecomputation(), false);
+
+        // Given
+        given(graphClient.getGraph(eq(graphId))).willReturn(ResponseEntity.ok(GraphSnapshot.fromGraph(createTestGraph())));
+
+        // When
+        CachedGraph cachedGraph = exactModeCache.getGraph(graphId);
+
+        // Then
+        assertThat(cachedGraph.isCompact()).isFalse();
+    }
+
+    private FeignException createNotModifiedException() {
+        return createStatusException(304);
+    }
+
+    private FeignException createStatusException(int status) {
+        Request request = Request.create(Request.HttpMethod.GET, "testurl", Map.of(), null, StandardCharsets.UTF_8);
+        return FeignException.errorStatus("GET", Response.builder().status(status).headers(Map.of()).request(request).build());
+    }
+
+    private GraphCache createCacheWithSnapshotFiles() {
+        GraphSnapshotFiles snapshotFiles = new GraphSnapshotFiles(true, temporaryFolder.getRoot().getPath());
+        return createCache("long", snapshotFiles, TestBeans.incrementalRecomputation(), false);
+    }
+
+    @Test
+    public void getGraphReadsGraphFromFileWhenItsVersionIsNotModified() {
+        String graphId = "abcdefghijklmnoprst";
+
+        // Given
+        given(graphClient.getGraph(eq(graphId)))
+                .willReturn(ResponseEntity.ok().eTag("\"5\"").body(GraphSnapshot.fromGraph(createTestGraph())));
+        given(graphClient.getGraphIfModified(eq(graphId), eq("\"5\""))).willThrow(createNotModifiedException());
+        CompactGraph downloaded = createCacheWithSnapshotFiles().getGraph(graphId).getCompactGraph();
+
+        // When
+        // a cache created after a restart
+        CachedGraph cachedGraph = createCacheWithSnapshotFiles().getGraph(graphId);
+
+        // Then
+        assertThat(cachedGraph.getVersion()).isEqualTo("\"5\"");
+        CompactGraph graph = cachedGraph.getCompactGraph();
+        assertThat(graph.getVertexName(0)).isEqualTo(downloaded.getVertexName(0));
+        assertThat(graph.getVertexName(1)).isEqualTo(downloaded.getVertexName(1));
+        assertThat(graph.getOffsets()).isEqualTo(downloaded.getOffsets());
+        assertThat(graph.getTargets()).isEqualTo(downloaded.getTargets());
+        assertThat(graph.getWeights()).isEqualTo(downloaded.getWeights());
+        assertThat(graph.getWeightScale()).isEqualTo(downloaded.getWeightScale());
+        verify(graphClient, times(1)).getGraph(graphId);
+        verify(graphClient, times(1)).getGraphIfModified(graphId, "\"5\"");
+    }
+
+    @Test
+    public void getGraphUsesGraphSentInsteadOfFileWhenItsVersionIsModified() {
+        String graphId = "abcdefghijklmnoprst";
+        Graph<BigDecimal> modifiedGraph = createTestGraph();
+        modifiedGraph.addVertex(new Vertex<>("v3"));
+
+        // Given
+        given(graphClient.getGraph(eq(graphId)))
+                .willReturn(ResponseEntity.ok().eTag("\"5\"").body(GraphSnapshot.fromGraph(createTestGraph())));
+        given(graphClient.getGraphIfModified(eq(graphId), eq("\"5\"")))
+                .willReturn(ResponseEntity.ok().eTag("\"6\"").body(GraphSnapshot.fromGraph(modifiedGraph)));
+        given(graphClient.getGraphIfModified(eq(graphId), eq("\"6\""))).willThrow(createNotModifiedException());
+        createCacheWithSnapshotFiles().getGraph(graphId);
+
+        // When
+        CachedGraph modified = createCacheWithSnapshotFiles().getGraph(graphId);
+        CachedGraph readFromFile = createCacheWithSnapshotFiles().getGraph(graphId);
+
+        // Then
+        assertThat(modified.getVersion()).isEqualTo("\"6\"");
+        assertThat(modified.getVertexCount()).isEqualTo(3);
+        assertThat(readFromFile.getVersion()).isEqualTo("\"6\"");
+        assertThat(readFromFile.getVertexCount()).isEqualTo(3);
+        verify(graphClient, times(1)).getGraph(graphId);
+    }
+
+    @Test
+    public void getGraphFetchesGraphWhenFileHoldsLengthsLargerThanItself() throws Exception {
+        String graphId = "abcdefghijklmnoprst";
+
+        // Given
+        given(graphClient.getGraph(eq(graphId)))
+                .willReturn(ResponseEntity.ok().eTag("\"5\"").body(GraphSnapshot.fromGraph(createTestGraph())));
+        given(graphClient.getGraphIfModified(eq(graphId), eq("\"5\""))).willThrow(createNotModifiedException());
+        createCacheWithSnapshotFiles().getGraph(graphId);
+        Path file = temporaryFolder.getRoot().listFiles()[0].toPath();
+        byte[] written = Files.readAllBytes(file);
+        // the file starts with its magic, the length of the version, the version and the magic of the graph
+        int vertexCountAt = 4 + 4 + 3 + 4;
+
+        // When
+        byte[] hugeVertexCount = written.clone();
+        ByteBuffer.wrap(hugeVertexCount).putInt(vertexCountAt, Integer.MAX_VALUE);
+        Files.write(file, hugeVertexCount);
+        CachedGraph afterHugeVertexCount = createCacheWithSnapshotFiles().getGraph(graphId);
+        byte[] hugeVersion = written.clone();
+        ByteBuffer.wrap(hugeVersion).putInt(4, Integer.MAX_VALUE);
+        Files.write(file, hugeVersion);
+        CachedGraph afterHugeVersion = createCacheWithSnapshotFiles().getGraph(graphId);
+
+        // Then
+        assertThat(afterHugeVertexCount.getVertexCount()).isEqualTo(2);
+        assertThat(afterHugeVersion.getVertexCount()).isEqualTo(2);
+        verify(graphClient, times(3)).getGraph(graphId);
+        verify(graphClient, times(1)).getGraphIfModified(graphId, "\"5\"");
+    }
+
+    @Test
+    public void getGraphDoesNotWriteGraphWithoutETag() {
+        String graphId = "abcdefghijklmnoprst";
+
+        // Given
+        given(graphClient.getGraph(eq(graphId))).willReturn(ResponseEntity.ok(GraphSnapshot.fromGraph(createTestGraph())));
+        createCacheWithSnapshotFiles().getGraph(graphId);
+
+        // When
+        createCacheWithSnapshotFiles().getGraph(graphId);
+
+        // Then
+        verify(graphClient, times(2)).getGraph(graphId);
+        verify(graphClient, never()).getGraphIfModified(any(), any());
+        assertThat(temporaryFolder.getRoot().list()).isEmpty();
+    }
+
+    @Test
+    public void getGraphCarriesTreesOverToNextVersionAfterInvalidate() {
+        String graphId = "abcdefghijklmnoprst";
+        IncrementalRecomputation recomputation = new IncrementalRecomputation(true, 8, 1000, 10);
+        GraphCache cacheWithRecomputation = createCache("long", TestBeans.graphSnapshotFiles(), recomputation, false);
+        DijkstraEngine engine = TestBeans.dijkstraEngine();
+        Graph<BigDecimal> changedGraph = createTestGraph();
+        changedGraph.addEdge(changedGraph.findVertex("v1"), changedGraph.findVertex("v2"), new BigDecimal(5));
+
+        // Given
+        given(graphClient.getGraph(eq(graphId)))
+                .willReturn(ResponseEntity.ok().eTag("\"1\"").body(GraphSnapshot.fromGraph(createTestGraph())));
+        given(graphClient.getGraphIfModified(eq(graphId), eq("\"1\"")))
+                .willReturn(ResponseEntity.ok().eTag("\"2\"").body(GraphSnapshot.fromGraph(changedGraph)));
+
+        // When
+        CompactGraph previous = cacheWithRecomputation.getGraph(graphId).getCompactGraph();
+        recomputation.recordTree(previous, engine.solve(previous, 0));
+        cacheWithRecomputation.invalidate(graphId);
+        CompactGraph next = cacheWithRecomputation.getGraph(graphId).getCompactGraph();
+
+        // Then
+        ShortestPathTree tree = next.getSourceTrees().getTree(0);
+        assertThat(tree.getGraph()).isSameAs(next);
+        assertThat(tree.getDistance(1)).isEqualTo(5);
+        assertThat(engine.solve(next, 0)).isSameAs(tree);
+    }
+
+    @Test
+    public void getGraphReusesPreviousVersionWhenItIsNotModifiedAfterInvalidate() {
+        String graphId = "abcdefghijklmnoprst";
+
+        // Given
+        given(graphClient.getGraph(eq(graphId)))
+                .willReturn(ResponseEntity.ok().eTag("\"5\"").body(GraphSnapshot.fromGraph(createTestGraph())));
+        given(graphClient.getGraphIfModified(eq(graphId), eq("\"5\""))).willThrow(createNotModifiedException());
+
+        // When
+        CachedGraph previous = graphCache.getGraph(graphId);
+        graphCache.invalidate(graphId);
+        CachedGraph cachedGraph = graphCache.getGraph(graphId);
+
+        // Then
+        assertThat(cachedGraph).isSameAs(previous);
+        verify(graphClient, times(1)).getGraph(graphId);
+        verify(graphClient, times(1)).getGraphIfModified(graphId, "\"5\"");
+        verify(graphClient, never()).getGraphChanges(any(), any());
+    }
+
+    private GraphCache createCacheFetchingChanges() {
+        return createCache("long", TestBeans.graphSnapshotFiles(), TestBeans.incrementalRecomputation(), true);
+    }
+
+    @Test
+    public void getGraphAppliesChangesToPreviousVersionAfterInvalidate() {
+        String graphId = "abcdefghijklmnoprst";
+        GraphCache cacheFetchingChanges = createCacheFetchingChanges();
+        GraphChanges changes = new GraphChanges();
+        changes.addVertex("v3");
+        changes.removeEdge("v1", "v2", new BigDecimal(20));
+        changes.addEdge("v1", "v2", new BigDecimal(15));
+        changes.addEdge("v2", "v3", new BigDecimal(4));
+
+        // Given
+        given(graphClient.getGraph(eq(graphId)))
+                .willReturn(ResponseEntity.ok().eTag("\"1\"").body(GraphSnapshot.fromGraph(createTestGraph())));
+        given(graphClient.getGraphChanges(eq(graphId), eq("\"1\""))).willReturn(ResponseEntity.ok().eTag("\"2\"").body(changes));
+
+        // When
+        cacheFetchingChanges.getGraph(graphId);
+        cacheFetchingChanges.invalidate(graphId);
+        CachedGraph cachedGraph = cacheFetchingChanges.getGraph(graphId);
+
+        // Then
+        assertThat(cachedGraph.getVersion()).isEqualTo("\"2\"");
+        CompactGraph graph = cachedGraph.getCompactGraph();
+        assertThat(graph.getVertexCount()).isEqualTo(3);
+        assertThat(graph.getVertexName(2)).isEqualTo("v3");
+        assertThat(graph.getOffsets()).containsExactly(0, 1, 2, 2);
+        assertThat(graph.getTargets()).containsExactly(1, 2);
+        assertThat(graph.getWeights()).containsExactly(15, 4);
+        verify(graphClient, times(1)).getGraph(graphId);
+        verify(graphClient, never()).getGraphIfModified(any(), any());
+    }
+
+    @Test
+    public void getGraphFetchesNextVersionWhenChangesAreNotSentOrDoNotMatchPreviousVersion() {
+        String graphId = "abcdefghijklmnoprst";
+        GraphCache cacheFetchingChanges = createCacheFetchingChanges();
+        Graph<BigDecimal> changedGraph = createTestGraph();
+        changedGraph.addVertex(new Vertex<>("v3"));
+        // the previous version does not have such edge
+        GraphChanges mismatchedChanges = new GraphChanges();
+        mismatchedChanges.removeEdge("v2", "v1", new BigDecimal(20));
+
+        // Given
+        given(graphClient.getGraph(eq(graphId)))
+                .willReturn(ResponseEntity.ok().eTag("\"1\"").body(GraphSnapshot.fromGraph(createTestGraph())));
+        given(graphClient.getGraphChanges(eq(graphId), eq("\"1\""))).willThrow(createStatusException(410));
+        given(graphClient.getGraphIfModified(eq(graphId), eq("\"1\"")))
+                .willReturn(ResponseEntity.ok().eTag("\"2\"").body(GraphSnapshot.fromGraph(changedGraph)));
+        given(graphClient.getGraphChanges(eq(graphId), eq("\"2\""))).willReturn(ResponseEntity.ok().eTag("\"3\"").body(mismatchedChanges));
+        given(graphClient.getGraphIfModified(eq(graphId), eq("\"2\"")))
+                .willReturn(ResponseEntity.ok().eTag("\"3\"").body(GraphSnapshot.fromGraph(createTestGraph())));
+
+        // When
+        cacheFetchingChanges.getGraph(graphId);
+        cacheFetchingChanges.invalidate(graphId);
+        CachedGraph afterGone = cacheFetchingChanges.getGraph(graphId);
+        cacheFetchingChanges.invalidate(graphId);
+        CachedGraph afterMismatch = cacheFetchingChanges.getGraph(graphId);
+
+        // Then
+        assertThat(afterGone.getVersion()).isEqualTo("\"2\"");
+        assertThat(afterGone.getVertexCount()).isEqualTo(3);
+        assertThat(afterMismatch.getVersion()).isEqualTo("\"3\"");
+        assertThat(afterMismatch.getVertexCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void reweighCountsStructuresAttachedToCachedGraphOnly() {
+        String graphId = "abcdefghijklmnoprst";
+        GraphCache cache = createCache("long", TestBeans.graphSnapshotFiles(), TestBeans.incrementalRecomputation(), false);
+        // a chain long enough for its reverse to weigh a few dozen kilobytes
+        GraphSnapshot snapshot = new GraphSnapshot();
+        for (int i = 0; i < 2000; i++) {
+            snapshot.addVertex("v" + i);
+            if (i > 0) {
+                snapshot.addEdge(i - 1, i, BigDecimal.ONE);
+            }
+        }
+
+        // Given
+        given(graphClient.getGraph(eq(graphId))).willReturn(ResponseEntity.ok(snapshot));
+        CachedGraph cachedGraph = cache.getGraph(graphId);
+        int loadedWeight = cachedGraph.getWeightInKilobytes();
+
+        // When
+        cachedGraph.getCompactGraph().getReverse();
+        cache.reweigh(graphId, cachedGraph);
+        int reweighedWeight = cachedGraph.getWeightInKilobytes();
+        int withReverseWeight = GraphCache.estimateSizeInKilobytes(cachedGraph);
+        cache.invalidate(graphId);
+        CompactGraph graph = cachedGraph.getCompactGraph();
+        IncrementalRecomputation keepingTrees = new IncrementalRecomputation(true, 16, 100_000, 1000);
+        keepingTrees.recordTree(graph, TestBeans.dijkstraEngine().solve(graph, 0));
+        cache.reweigh(graphId, cachedGraph);
+
+        // Then
+        assertThat(loadedWeight).isEqualTo(GraphCache.estimateSizeInKilobytes(new CachedGraph("other", snapshot.toCompactGraph())));
+        assertThat(reweighedWeight).isGreaterThan(loadedWeight);
+        assertThat(reweighedWeight).isEqualTo(withReverseWeight);
+        // an invalidated graph is not put back into the cache
+        cache.getGraph(graphId);
+        verify(graphClient, times(2)).getGraph(graphId);
+    }
+}
@@ -0,0 +1,122 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+import ml.echelon133.services.graphpathfinder.TestBeans;
+import ml.echelon133.services.graphpathfinder.TestGraphs;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class AStarSearchTest {
+
+    private DijkstraEngine engine = TestBeans.dijkstraEngine(QueueType.HEAP, 0, 4);
+
+    private List<SearchAlgorithm> aStarAlgorithms = List.of(
+            SearchAlgorithm.ASTAR_EUCLIDEAN,
+            SearchAlgorithm.ASTAR_HAVERSINE,
+            SearchAlgorithm.ASTAR_LANDMARKS
+    );
+
+    @Test
+    public void solveBetweenReturnsSameDistancesAsSearch() {
+        Random random = new Random(18);
+
+        for (int round = 0; round < 4; round++) {
+            // zero weights make the geometric heuristics useless, but they still have to give the shortest paths
+            CompactGraph graph = TestGraphs.createRoadGrid(random, 15, round % 2);
+            int sourceId = random.nextInt(graph.getVertexCount());
+            ShortestPathTree expected = engine.search(graph, sourceId);
+
+            for (int targetId = 0; targetId < graph.getVertexCount(); targetId++) {
+                for (SearchAlgorithm algorithm : aStarAlgorithms) {
+                    // When
+                    ShortestPathTree tree = engine.solveBetween(graph, sourceId, targetId, algorithm);
+
+                    // Then
+                    assertThat(tree.isReachable(targetId)).isEqualTo(expected.isReachable(targetId));
+                    if (!tree.isReachable(targetId)) {
+                        continue;
+                    }
+                    assertThat(tree.getDistance(targetId)).isEqualTo(expected.getDistance(targetId));
+                    int[] path = tree.getPathTo(targetId);
+                    assertThat(path.length == 0 || path[0] == sourceId).isTrue();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void heuristicsNeverOverestimateDistances() {
+        Random random = new Random(19);
+        CompactGraph graph = TestGraphs.createRoadGrid(random, 12, 1);
+
+        for (int targetId = 0; targetId < graph.getVertexCount(); targetId++) {
+            ShortestPathTree toTarget = engine.search(graph.getReverse(), targetId);
+            for (SearchAlgorithm algorithm : aStarAlgorithms) {
+                // When
+                Heuristic heuristic = engine.createHeuristic(graph, targetId, algorithm);
+
+                // Then
+                for (int vertexId = 0; vertexId < graph.getVertexCount(); vertexId++) {
+                    long estimate = heuristic.estimate(vertexId);
+                    if (toTarget.isReachable(vertexId)) {
+                        assertThat(estimate).isBetween(0L, toTarget.getDistance(vertexId));
+                    } else if (algorithm != SearchAlgorithm.ASTAR_LANDMARKS) {
+                        assertThat(estimate).isNotNegative();
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void solveSettlesFewerVertexesThanWithoutHeuristic() {
+        Random random = new Random(20);
+        CompactGraph graph = TestGraphs.createRoadGrid(random, 30, 1);
+        int sourceId = 0;
+        int targetId = graph.getVertexCount() / 2 + 15;
+
+        for (SearchAlgorithm algorithm : aStarAlgorithms) {
+            AStarSearch withoutHeuristic = new AStarSearch(graph, vertexId -> 0);
+            AStarSearch withHeuristic = new AStarSearch(graph, engine.createHeuristic(graph, targetId, algorithm));
+
+            // When
+            ShortestPathTree expected = withoutHeuristic.solve(sourceId, targetId);
+            ShortestPathTree tree = withHeuristic.solve(sourceId, targetId);
+
+            // Then
+            assertThat(tree.getDistance(targetId)).isEqualTo(expected.getDistance(targetId));
+            assertThat(withHeuristic.getSettledCount()).isLessThan(withoutHeuristic.getSettledCount());
+        }
+    }
+
+    @Test
+    public void getLandmarksBuildsLandmarksOnlyOnce() {
+        CompactGraph graph = TestGraphs.createRoadGrid(new Random(21), 10, 1);
+
+        // When
+        Landmarks landmarks = engine.getLandmarks(graph);
+
+        // Then
+        assertThat(landmarks.getLandmarkCount()).isEqualTo(4);
+        assertThat(engine.getLandmarks(graph)).isSameAs(landmarks);
+        assertThat(graph.getLandmarks()).isSameAs(landmarks);
+    }
+
+    @Test
+    public void solveBetweenThrowsWhenGraphDoesNotHaveCoordinates() {
+        GraphSnapshot snapshot = new GraphSnapshot();
+        snapshot.addVertex("v0");
+        snapshot.addVertex("v1");
+        snapshot.addEdge(0, 1, 1, 0);
+        CompactGraph graph = snapshot.toCompactGraph();
+
+        // Then
+        assertThat(engine.solveBetween(graph, 0, 1, SearchAlgorithm.ASTAR_LANDMARKS).getDistance(1)).isEqualTo(1);
+        assertThatThrownBy(() -> engine.solveBetween(graph, 0, 1, SearchAlgorithm.ASTAR_EUCLIDEAN))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
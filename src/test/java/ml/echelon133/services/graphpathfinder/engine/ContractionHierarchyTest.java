@@ -0,0 +1,170 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ml.echelon133.services.graphpathfinder.TestBeans;
+import ml.echelon133.services.graphpathfinder.TestGraphs;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class ContractionHierarchyTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private DijkstraEngine engine = TestBeans.dijkstraEngine();
+
+    private long findLightestEdge(CompactGraph graph, int source, int target) {
+        long lightest = Long.MAX_VALUE;
+        for (int edge = graph.getOffsets()[source]; edge < graph.getOffsets()[source + 1]; edge++) {
+            if (graph.getTargets()[edge] == target) {
+                lightest = Math.min(lightest, graph.getWeights()[edge]);
+            }
+        }
+        assertThat(lightest).isNotEqualTo(Long.MAX_VALUE);
+        return lightest;
+    }
+
+    private void assertSameShortestPaths(CompactGraph graph, Random random, int queries) {
+        for (int i = 0; i < queries; i++) {
+            int source = random.nextInt(graph.getVertexCount());
+            int target = random.nextInt(graph.getVertexCount());
+            ShortestPathTree expected = engine.search(graph, source);
+
+            // When
+            ShortestPathTree tree = engine.solveBetween(graph, source, target);
+
+            // Then
+            assertThat(tree.getDistance(target)).isEqualTo(expected.getDistance(target));
+            if (tree.isReachable(target)) {
+                for (int v = target; v != source; v = tree.getPredecessor(v)) {
+                    int predecessor = tree.getPredecessor(v);
+                    assertThat(tree.getDistance(v)).isEqualTo(tree.getDistance(predecessor) + findLightestEdge(graph, predecessor, v));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void solveBetweenWithContractionHierarchyReturnsSameShortestPathsAsSearch() {
+        Random random = new Random(21);
+
+        for (int round = 0; round < 5; round++) {
+            CompactGraph graph = TestGraphs.createRoadGrid(random, 20, 0);
+
+            // Given
+            graph.setContractionHierarchy(ContractionHierarchy.build(graph));
+
+            // Then
+            assertSameShortestPaths(graph, random, 200);
+        }
+    }
+
+    @Test
+    public void readFromReturnsHierarchyWhichWasWritten() throws IOException {
+        Random random = new Random(22);
+        CompactGraph graph = TestGraphs.createRoadGrid(random, 15, 0);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ContractionHierarchy.build(graph).writeTo(new DataOutputStream(bytes));
+
+        // When
+        ContractionHierarchy hierarchy = ContractionHierarchy.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), graph);
+        graph.setContractionHierarchy(hierarchy);
+
+        // Then
+        assertSameShortestPaths(graph, random, 100);
+        CompactGraph otherGraph = TestGraphs.createRoadGrid(random, 15, 0);
+        assertThatThrownBy(() -> ContractionHierarchy.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), otherGraph))
+                .isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void readFromThrowsExceptionWhenDataDamaged() throws IOException {
+        CompactGraph graph = TestGraphs.createRoadGrid(new Random(25), 15, 0);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ContractionHierarchy.build(graph).writeTo(new DataOutputStream(bytes));
+        byte[] written = bytes.toByteArray();
+        int vertexCount = graph.getVertexCount();
+        // magic, fingerprint, ranks and upward offsets come before the length of upward targets
+        int upwardTargetsAt = 4 + 8 + 4 + 4 * vertexCount + 4 + 4 * (vertexCount + 1);
+
+        byte[] hugeArray = written.clone();
+        ByteBuffer.wrap(hugeArray).putInt(upwardTargetsAt, Integer.MAX_VALUE);
+        byte[] unknownVertex = written.clone();
+        ByteBuffer.wrap(unknownVertex).putInt(upwardTargetsAt + 4, vertexCount);
+        byte[] truncated = Arrays.copyOf(written, written.length - 1);
+
+        // When
+        Throwable hugeArrayEx = catchThrowable(() -> ContractionHierarchy.readFrom(new DataInputStream(new ByteArrayInputStream(hugeArray)), graph));
+        Throwable unknownVertexEx = catchThrowable(() -> ContractionHierarchy.readFrom(new DataInputStream(new ByteArrayInputStream(unknownVertex)), graph));
+        Throwable truncatedEx = catchThrowable(() -> ContractionHierarchy.readFrom(new DataInputStream(new ByteArrayInputStream(truncated)), graph));
+
+        // Then
+        assertThat(hugeArrayEx).isInstanceOf(IOException.class).hasMessageStartingWith("Contraction hierarchy has an array of 2147483647 elements");
+        assertThat(unknownVertexEx).isInstanceOf(IOException.class).hasMessage("Contraction hierarchy has an edge of a vertex which does not exist");
+        assertThat(truncatedEx).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void estimateSizeInBytesCountsStatesKeptForLaterQueries() {
+        CompactGraph graph = TestGraphs.createRoadGrid(new Random(26), 15, 0);
+        ContractionHierarchy hierarchy = ContractionHierarchy.build(graph);
+        graph.setContractionHierarchy(hierarchy);
+        long sizeBeforeQueries = hierarchy.estimateSizeInBytes();
+
+        // When
+        engine.solveBetween(graph, 0, graph.getVertexCount() - 1);
+        long sizeAfterFirstQuery = hierarchy.estimateSizeInBytes();
+        engine.solveBetween(graph, graph.getVertexCount() - 1, 0);
+
+        // Then
+        assertThat(sizeAfterFirstQuery).isGreaterThan(sizeBeforeQueries + 36L * graph.getVertexCount());
+        // a query run by a single thread reuses the state of the previous one
+        assertThat(hierarchy.estimateSizeInBytes()).isEqualTo(sizeAfterFirstQuery);
+    }
+
+    @Test
+    public void prepareNowReadsHierarchyWrittenBeforeAndDeletesOlderVersions() throws Exception {
+        String directory = temporaryFolder.getRoot().getPath();
+        CompactGraph oldVersion = TestGraphs.createRoadGrid(new Random(23), 10, 0);
+        CompactGraph newVersion = TestGraphs.createRoadGrid(new Random(24), 10, 0);
+        new ContractionHierarchies(true, 1, directory, 1).prepareNow("graph", oldVersion);
+        new ContractionHierarchies(true, 1, directory, 1).prepareNow("graph", newVersion);
+        new ContractionHierarchies(true, 1, directory, 1).prepareNow("graph-2", newVersion);
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ContractionHierarchies restarted = new ContractionHierarchies(true, 1, directory, 1);
+        restarted.bindTo(meterRegistry);
+        CompactGraph sameVersion = TestGraphs.createRoadGrid(new Random(24), 10, 0);
+
+        // When
+        restarted.prepareNow("graph", sameVersion);
+
+        // Then
+        assertThat(sameVersion.getContractionHierarchy()).isNotNull();
+        assertThat(meterRegistry.get("precompute.contraction-hierarchy.loads").functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("precompute.contraction-hierarchy.builds").functionTimer().count()).isEqualTo(0);
+        List<String> files = Files.list(temporaryFolder.getRoot().toPath())
+                .map(file -> file.getFileName().toString())
+                .collect(Collectors.toList());
+        assertThat(files).containsExactlyInAnyOrder(
+                String.format("%s%016x.ch", ContractionHierarchies.toFilePrefix("graph"), ContractionHierarchy.fingerprint(newVersion)),
+                String.format("%s%016x.ch", ContractionHierarchies.toFilePrefix("graph-2"), ContractionHierarchy.fingerprint(newVersion)));
+    }
+}
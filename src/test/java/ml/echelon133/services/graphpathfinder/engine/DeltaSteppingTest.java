@@ -0,0 +1,134 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ml.echelon133.services.graphpathfinder.TestBeans;
+import ml.echelon133.services.graphpathfinder.TestGraphs;
+import org.junit.After;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DeltaSteppingTest {
+
+    private DijkstraEngine sequentialEngine = TestBeans.dijkstraEngine(QueueType.HEAP);
+
+    private List<DeltaStepping> createdDeltaSteppings = new ArrayList<>();
+
+    @After
+    public void after() {
+        createdDeltaSteppings.forEach(DeltaStepping::shutdown);
+    }
+
+    private DeltaStepping createDeltaStepping(long minEdgeCount, String delta) {
+        DeltaStepping deltaStepping = new DeltaStepping(true, minEdgeCount, new BigDecimal(delta), 4);
+        createdDeltaSteppings.add(deltaStepping);
+        return deltaStepping;
+    }
+
+    private CompactGraph createRandomGraph(Random random, int vertexCount, int edgeCount, int maxWeight) {
+        return TestGraphs.createRandomSnapshot(random, vertexCount, edgeCount,
+                () -> BigDecimal.valueOf(random.nextInt(maxWeight + 1))).toCompactGraph();
+    }
+
+    private long lightestEdgeWeight(CompactGraph graph, int source, int target) {
+        long lightest = Long.MAX_VALUE;
+        for (int edge = graph.getOffsets()[source]; edge < graph.getOffsets()[source + 1]; edge++) {
+            if (graph.getTargets()[edge] == target) {
+                lightest = Math.min(lightest, graph.getWeights()[edge]);
+            }
+        }
+        return lightest;
+    }
+
+    private void assertSameAsSequentialSearch(CompactGraph graph, ShortestPathTree tree) {
+        ShortestPathTree expected = sequentialEngine.search(graph, tree.getSourceId());
+        assertThat(tree.getSettledCount()).isEqualTo(expected.getSettledCount());
+        for (int v = 0; v < graph.getVertexCount(); v++) {
+            assertThat(tree.getDistance(v)).isEqualTo(expected.getDistance(v));
+        }
+
+        // every vertex comes after its predecessor and vertexes with shorter distances, and its distance is
+        // the distance of the predecessor plus the weight of the lightest edge between them
+        boolean[] settled = new boolean[graph.getVertexCount()];
+        long previousDistance = 0;
+        for (int i = 0; i < tree.getSettledCount(); i++) {
+            int vertex = tree.getSettledVertex(i);
+            int predecessor = tree.getPredecessor(vertex);
+            assertThat(settled[vertex]).isFalse();
+            assertThat(tree.getDistance(vertex)).isGreaterThanOrEqualTo(previousDistance);
+            if (predecessor == ShortestPathTree.NO_PREDECESSOR) {
+                assertThat(vertex).isEqualTo(tree.getSourceId());
+            } else {
+                assertThat(settled[predecessor]).isTrue();
+                assertThat(tree.getDistance(vertex)).isEqualTo(tree.getDistance(predecessor) + lightestEdgeWeight(graph, predecessor, vertex));
+            }
+            settled[vertex] = true;
+            previousDistance = tree.getDistance(vertex);
+        }
+    }
+
+    @Test
+    public void searchReturnsSameTreesAsDijkstraForEveryDelta() {
+        Random random = new Random(21);
+
+        for (String delta : List.of("0", "1", "7", "1000")) {
+            DeltaStepping deltaStepping = createDeltaStepping(0, delta);
+            for (int round = 0; round < 3; round++) {
+                // weights of up to 2 have many zeros and paths of equal length, larger ones have many heavy edges
+                CompactGraph graph = createRandomGraph(random, 20_000, 80_000, round == 0 ? 2 : 100);
+
+                // When
+                ShortestPathTree tree = deltaStepping.search(graph, random.nextInt(20_000));
+
+                // Then
+                assertThat(tree.getGraph()).isSameAs(graph);
+                assertSameAsSequentialSearch(graph, tree);
+            }
+        }
+    }
+
+    @Test
+    public void selectDeltaConvertsConfiguredDeltaToFixedPointAndKeepsBucketCountWithinLimit() {
+        GraphSnapshot snapshot = new GraphSnapshot();
+        snapshot.addVertex("v1");
+        snapshot.addVertex("v2");
+        snapshot.addEdge(0, 1, new BigDecimal("20.25"));
+        snapshot.addEdge(1, 0, new BigDecimal("10000"));
+        CompactGraph graph = snapshot.toCompactGraph();
+
+        // When
+        long configured = createDeltaStepping(0, "2.5").selectDelta(graph);
+        long tooSmall = createDeltaStepping(0, "0.01").selectDelta(graph);
+
+        // Then
+        assertThat(configured).isEqualTo(250);
+        assertThat(graph.getMaxWeight() / tooSmall + 2).isLessThanOrEqualTo(DeltaStepping.MAX_BUCKET_COUNT);
+    }
+
+    @Test
+    public void solveSearchesInParallelOnlyGraphsWithEnoughEdges() {
+        Random random = new Random(22);
+        DeltaStepping deltaStepping = createDeltaStepping(10_000, "0");
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        deltaStepping.bindTo(meterRegistry);
+        DijkstraEngine engine = new DijkstraEngine("auto", TestBeans.BIDIRECTIONAL_MIN_VERTEX_COUNT,
+                TestBeans.LANDMARK_COUNT, deltaStepping, TestBeans.pipelineMetrics());
+        CompactGraph largeGraph = createRandomGraph(random, 5000, 10_000, 100);
+        CompactGraph smallGraph = createRandomGraph(random, 5000, 9999, 100);
+
+        // When
+        ShortestPathTree largeTree = engine.solve(largeGraph, 0);
+        ShortestPathTree smallTree = engine.solve(smallGraph, 0);
+        engine.solveBetween(largeGraph, 0, 1);
+
+        // Then
+        assertSameAsSequentialSearch(largeGraph, largeTree);
+        assertSameAsSequentialSearch(smallGraph, smallTree);
+        assertThat(meterRegistry.get("engine.delta-stepping.searches").functionTimer().count()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,410 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+import ml.echelon133.graph.Graph;
+import ml.echelon133.graph.ShortestPathSolver;
+import ml.echelon133.graph.Vertex;
+import ml.echelon133.graph.VertexResult;
+import ml.echelon133.graph.WeightedGraph;
+import ml.echelon133.services.graphpathfinder.TestBeans;
+import ml.echelon133.services.graphpathfinder.TestGraphs;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class DijkstraEngineTest {
+
+    private DijkstraEngine engine = TestBeans.dijkstraEngine();
+
+    private List<DijkstraEngine> enginesWithEveryQueueType = List.of(
+            TestBeans.dijkstraEngine(QueueType.HEAP),
+            TestBeans.dijkstraEngine(QueueType.DIAL)
+    );
+
+    private Graph<BigDecimal> createRandomGraph(Random random, int vertexCount, int edgeCount, int weightScale) {
+        return TestGraphs.createRandomGraph(random, vertexCount, edgeCount,
+                () -> BigDecimal.valueOf(random.nextInt(1000), weightScale));
+    }
+
+    @Test
+    public void solveReturnsSameDistancesAsShortestPathSolver() {
+        Random random = new Random(42);
+
+        for (int round = 0; round < 20; round++) {
+            Graph<BigDecimal> graph = createRandomGraph(random, 200, 800, round % 3);
+            CompactGraph compactGraph = CompactGraph.fromGraph(graph);
+            Vertex<BigDecimal> start = graph.getVertexes().get(random.nextInt(200));
+
+            Map<Vertex<BigDecimal>, VertexResult<BigDecimal>> expected = new ShortestPathSolver<>(graph).solveStartingFrom(start);
+
+            for (DijkstraEngine testedEngine : enginesWithEveryQueueType) {
+                // When
+                ShortestPathTree tree = testedEngine.solve(compactGraph, compactGraph.findVertexId(start.getName()));
+
+                // Then
+                assertThat(tree.getSettledCount()).isEqualTo(expected.size());
+                for (Vertex<BigDecimal> vertex : graph.getVertexes()) {
+                    int vertexId = compactGraph.findVertexId(vertex.getName());
+                    VertexResult<BigDecimal> expectedResult = expected.get(vertex);
+                    if (expectedResult == null) {
+                        assertThat(tree.isReachable(vertexId)).isFalse();
+                    } else {
+                        assertThat(tree.getSumOfWeights(vertexId)).isEqualByComparingTo(expectedResult.getSumOfWeights());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void solveBuildsConsistentPredecessors() {
+        Random random = new Random(7);
+        Graph<BigDecimal> graph = createRandomGraph(random, 300, 1500, 1);
+        CompactGraph compactGraph = CompactGraph.fromGraph(graph);
+
+        // When
+        ShortestPathTree tree = engine.solve(compactGraph, 0);
+
+        // Then
+        for (int i = 0; i < tree.getSettledCount(); i++) {
+            int vertexId = tree.getSettledVertex(i);
+            int[] path = tree.getPathTo(vertexId);
+            if (vertexId == 0) {
+                assertThat(path).isEmpty();
+                continue;
+            }
+            assertThat(path[0]).isEqualTo(0);
+            assertThat(path[path.length - 1]).isEqualTo(tree.getPredecessor(vertexId));
+            assertThat(tree.getDistance(vertexId)).isGreaterThanOrEqualTo(tree.getDistance(tree.getPredecessor(vertexId)));
+        }
+    }
+
+    @Test
+    public void fromGraphKeepsDecimalWeightsExact() {
+        Graph<BigDecimal> graph = new WeightedGraph<>();
+        Vertex<BigDecimal> v1 = new Vertex<>("v1");
+        Vertex<BigDecimal> v2 = new Vertex<>("v2");
+        Vertex<BigDecimal> v3 = new Vertex<>("v3");
+        List.of(v1, v2, v3).forEach(graph::addVertex);
+        graph.addEdge(v1, v2, new BigDecimal("0.1"));
+        graph.addEdge(v2, v3, new BigDecimal("0.25"));
+
+        // When
+        CompactGraph compactGraph = CompactGraph.fromGraph(graph);
+        ShortestPathTree tree = engine.solve(compactGraph, compactGraph.findVertexId("v1"));
+
+        // Then
+        assertThat(compactGraph.getWeightScale()).isEqualTo(2);
+        assertThat(tree.getSumOfWeights(compactGraph.findVertexId("v3")).toPlainString()).isEqualTo("0.35");
+        assertThat(tree.getSumOfWeights(compactGraph.findVertexId("v1")).toPlainString()).isEqualTo("0");
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void fromGraphThrowsWhenSumOfWeightsOverflows() {
+        Graph<BigDecimal> graph = new WeightedGraph<>();
+        Vertex<BigDecimal> v1 = new Vertex<>("v1");
+        Vertex<BigDecimal> v2 = new Vertex<>("v2");
+        List.of(v1, v2).forEach(graph::addVertex);
+        graph.addEdge(v1, v2, new BigDecimal(Long.MAX_VALUE));
+        graph.addEdge(v2, v1, new BigDecimal(Long.MAX_VALUE));
+
+        // When
+        CompactGraph.fromGraph(graph);
+    }
+
+    @Test
+    public void solveWithFloatingPointWeightsReturnsSameDistancesAsWithFixedPointWeights() {
+        Random random = new Random(11);
+
+        for (int round = 0; round < 10; round++) {
+            Graph<BigDecimal> graph = createRandomGraph(random, 200, 800, round % 3);
+            GraphSnapshot snapshot = GraphSnapshot.fromGraph(graph);
+            CompactGraph fixedPointGraph = snapshot.toCompactGraph();
+            CompactGraph floatingPointGraph = snapshot.toFloatingPointCompactGraph();
+            int startId = random.nextInt(200);
+            int targetId = random.nextInt(200);
+
+            // When
+            ShortestPathTree expected = engine.solve(fixedPointGraph, startId);
+            ShortestPathTree tree = engine.solve(floatingPointGraph, startId);
+            ShortestPathTree between = engine.solveBetween(floatingPointGraph, startId, targetId);
+
+            // Then
+            assertThat(floatingPointGraph.isFloatingPoint()).isTrue();
+            assertThat(tree.getSettledCount()).isEqualTo(expected.getSettledCount());
+            for (int vertexId = 0; vertexId < 200; vertexId++) {
+                assertThat(tree.isReachable(vertexId)).isEqualTo(expected.isReachable(vertexId));
+                if (expected.isReachable(vertexId)) {
+                    assertThat(tree.getSumOfWeights(vertexId).doubleValue())
+                            .isCloseTo(expected.getSumOfWeights(vertexId).doubleValue(), within(1e-9));
+                }
+            }
+            assertThat(between.isReachable(targetId)).isEqualTo(expected.isReachable(targetId));
+            if (expected.isReachable(targetId)) {
+                assertThat(between.getSumOfWeights(targetId).doubleValue())
+                        .isCloseTo(expected.getSumOfWeights(targetId).doubleValue(), within(1e-9));
+            }
+        }
+    }
+
+    @Test
+    public void toFloatingPointCompactGraphKeepsWeightsWhichDoNotFitInLongs() {
+        GraphSnapshot snapshot = new GraphSnapshot();
+        int v1 = snapshot.addVertex("v1");
+        int v2 = snapshot.addVertex("v2");
+        int v3 = snapshot.addVertex("v3");
+        snapshot.addEdge(v1, v2, new BigDecimal("0.0000000000000000000001"));
+        snapshot.addEdge(v2, v3, new BigDecimal("12345678901234567890"));
+
+        // When
+        CompactGraph compactGraph = snapshot.toFloatingPointCompactGraph();
+        ShortestPathTree tree = engine.solve(compactGraph, v1);
+
+        // Then
+        assertThat(tree.getSumOfWeights(v2).toString()).isEqualTo("1E-22");
+        assertThat(tree.getSumOfWeights(v3).doubleValue()).isEqualTo(12345678901234567890.0);
+        assertThat(tree.getSumOfWeights(v1).toPlainString()).isEqualTo("0");
+    }
+
+    @Test
+    public void selectQueueTypeUsesDialOnlyForLargeGraphsWithSmallWeights() {
+        Random random = new Random(1);
+        CompactGraph small = CompactGraph.fromGraph(createRandomGraph(random, 100, 200, 0));
+        CompactGraph large = CompactGraph.fromGraph(createRandomGraph(random, DijkstraEngine.DIAL_MIN_VERTEX_COUNT, 100, 0));
+
+        Graph<BigDecimal> largeWithHeavyEdge = createRandomGraph(random, DijkstraEngine.DIAL_MIN_VERTEX_COUNT, 100, 0);
+        Vertex<BigDecimal> v0 = largeWithHeavyEdge.getVertexes().get(0);
+        largeWithHeavyEdge.addEdge(v0, v0, BigDecimal.valueOf(DijkstraEngine.DIAL_MAX_WEIGHT + 1));
+        CompactGraph heavy = CompactGraph.fromGraph(largeWithHeavyEdge);
+
+        // Then
+        assertThat(engine.selectQueueType(small)).isEqualTo(QueueType.HEAP);
+        assertThat(engine.selectQueueType(large)).isEqualTo(QueueType.DIAL);
+        assertThat(engine.selectQueueType(heavy)).isEqualTo(QueueType.HEAP);
+        assertThat(TestBeans.dijkstraEngine(QueueType.DIAL).selectQueueType(heavy)).isEqualTo(QueueType.HEAP);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void solveThrowsWhenStartVertexDoesNotExist() {
+        Graph<BigDecimal> graph = new WeightedGraph<>();
+        graph.addVertex(new Vertex<>("v1"));
+        CompactGraph compactGraph = CompactGraph.fromGraph(graph);
+
+        // When
+        engine.solve(compactGraph, compactGraph.findVertexId("v2"));
+    }
+
+    @Test
+    public void solveBetweenReturnsSameDistanceAsSolve() {
+        Random random = new Random(11);
+        List<DijkstraEngine> pointToPointEngines = List.of(
+                TestBeans.dijkstraEngine(QueueType.HEAP, Integer.MAX_VALUE, TestBeans.LANDMARK_COUNT),
+                TestBeans.dijkstraEngine(QueueType.HEAP, 0, TestBeans.LANDMARK_COUNT),
+                TestBeans.dijkstraEngine(QueueType.DIAL, 0, TestBeans.LANDMARK_COUNT)
+        );
+
+        for (int round = 0; round < 20; round++) {
+            // weights of the first rounds are mostly zeros, which makes both searches meet on many equal paths
+            int weightBound = round < 5 ? 2 : 1000;
+            Graph<BigDecimal> graph = new WeightedGraph<>();
+            List<Vertex<BigDecimal>> vertexes = new ArrayList<>();
+            for (int i = 0; i < 150; i++) {
+                vertexes.add(new Vertex<>("v" + i));
+                graph.addVertex(vertexes.get(i));
+            }
+            for (int i = 0; i < 450; i++) {
+                graph.addEdge(vertexes.get(random.nextInt(150)), vertexes.get(random.nextInt(150)), BigDecimal.valueOf(random.nextInt(weightBound)));
+            }
+            CompactGraph compactGraph = CompactGraph.fromGraph(graph);
+            int sourceId = random.nextInt(150);
+            ShortestPathTree expected = engine.solve(compactGraph, sourceId);
+
+            for (int targetId = 0; targetId < 150; targetId++) {
+                for (DijkstraEngine testedEngine : pointToPointEngines) {
+                    // When
+                    ShortestPathTree tree = testedEngine.solveBetween(compactGraph, sourceId, targetId);
+
+                    // Then
+                    assertThat(tree.isReachable(targetId)).isEqualTo(expected.isReachable(targetId));
+                    if (!tree.isReachable(targetId)) {
+                        continue;
+                    }
+                    assertThat(tree.getDistance(targetId)).isEqualTo(expected.getDistance(targetId));
+
+                    // the path has to be made of real edges and its length has to match the distance
+                    long length = 0;
+                    int previous = sourceId;
+                    int[] path = tree.getPathTo(targetId);
+                    for (int i = 1; i <= path.length; i++) {
+                        int next = i < path.length ? path[i] : targetId;
+                        length += lightestEdgeWeight(compactGraph, previous, next);
+                        previous = next;
+                    }
+                    assertThat(path.length == 0 || path[0] == sourceId).isTrue();
+                    assertThat(length).isEqualTo(expected.getDistance(targetId));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void solveWithinSettlesOnlyVertexesWithinBoundsWithSameDistancesAsSolve() {
+        Random random = new Random(23);
+
+        for (int round = 0; round < 10; round++) {
+            CompactGraph graph = CompactGraph.fromGraph(createRandomGraph(random, 300, 1200, round % 3));
+            int sourceId = random.nextInt(300);
+            ShortestPathTree expected = engine.solve(graph, sourceId);
+            long maxDistance = expected.getDistance(expected.getSettledVertex(expected.getSettledCount() / 2));
+            BitSet targets = new BitSet();
+            for (int i = 0; i < 5; i++) {
+                targets.set(random.nextInt(300));
+            }
+
+            for (DijkstraEngine testedEngine : enginesWithEveryQueueType) {
+                // When
+                ShortestPathTree withinDistance = testedEngine.solveWithin(graph, sourceId, null, maxDistance, Integer.MAX_VALUE);
+                ShortestPathTree nearest = testedEngine.solveWithin(graph, sourceId, null, ShortestPathTree.UNREACHABLE, 10);
+                ShortestPathTree toTargets = testedEngine.solveWithin(graph, sourceId, targets, ShortestPathTree.UNREACHABLE, Integer.MAX_VALUE);
+
+                // Then
+                for (int i = 0; i < expected.getSettledCount(); i++) {
+                    int vertex = expected.getSettledVertex(i);
+                    boolean inBounds = expected.getDistance(vertex) <= maxDistance;
+                    assertThat(withinDistance.isReachable(vertex) && withinDistance.getDistance(vertex) <= maxDistance).isEqualTo(inBounds);
+                }
+                assertThat(nearest.getSettledCount()).isEqualTo(Math.min(10, expected.getSettledCount()));
+                assertThat(nearest.getDistance(nearest.getSettledVertex(nearest.getSettledCount() - 1)))
+                        .isEqualTo(expected.getDistance(expected.getSettledVertex(nearest.getSettledCount() - 1)));
+                for (ShortestPathTree tree : List.of(withinDistance, nearest, toTargets)) {
+                    for (int i = 0; i < tree.getSettledCount(); i++) {
+                        int vertex = tree.getSettledVertex(i);
+                        assertThat(tree.getDistance(vertex)).isEqualTo(expected.getDistance(vertex));
+                    }
+                }
+                targets.stream().forEach(target -> {
+                    assertThat(toTargets.isReachable(target)).isEqualTo(expected.isReachable(target));
+                    if (expected.isReachable(target)) {
+                        assertThat(toTargets.getDistance(target)).isEqualTo(expected.getDistance(target));
+                    }
+                });
+            }
+        }
+    }
+
+    @Test
+    public void toSumOfWeightsRoundsDownToDistanceWhichIsNotGreater() {
+        GraphSnapshot snapshot = new GraphSnapshot();
+        snapshot.addVertex("v1");
+        snapshot.addVertex("v2");
+        snapshot.addEdge(0, 1, new BigDecimal("2.25"));
+        CompactGraph graph = snapshot.toCompactGraph();
+        CompactGraph floatingPointGraph = snapshot.toFloatingPointCompactGraph();
+
+        // When
+        long rounded = graph.toSumOfWeights(new BigDecimal("2.259"));
+        long huge = graph.toSumOfWeights(new BigDecimal("1e30"));
+        long floatingPoint = floatingPointGraph.toSumOfWeights(new BigDecimal("0.1"));
+
+        // Then
+        assertThat(rounded).isEqualTo(225);
+        assertThat(huge).isEqualTo(ShortestPathTree.UNREACHABLE - 1);
+        assertThat(new BigDecimal(Double.longBitsToDouble(floatingPoint))).isLessThanOrEqualTo(new BigDecimal("0.1"));
+    }
+
+    private long lightestEdgeWeight(CompactGraph graph, int source, int target) {
+        long lightest = Long.MAX_VALUE;
+        for (int edge = graph.getOffsets()[source]; edge < graph.getOffsets()[source + 1]; edge++) {
+            if (graph.getTargets()[edge] == target) {
+                lightest = Math.min(lightest, graph.getWeights()[edge]);
+            }
+        }
+        assertThat(lightest).isNotEqualTo(Long.MAX_VALUE);
+        return lightest;
+    }
+
+    @Test
+    public void getReverseReversesEveryEdge() {
+        Random random = new Random(3);
+        CompactGraph graph = CompactGraph.fromGraph(createRandomGraph(random, 50, 200, 0));
+
+        // When
+        CompactGraph reverse = graph.getReverse();
+
+        // Then
+        assertThat(reverse.getEdgeCount()).isEqualTo(graph.getEdgeCount());
+        assertThat(reverse.getReverse()).isSameAs(graph);
+        assertThat(graph.getReverse()).isSameAs(reverse);
+        for (int source = 0; source < graph.getVertexCount(); source++) {
+            for (int edge = graph.getOffsets()[source]; edge < graph.getOffsets()[source + 1]; edge++) {
+                int target = graph.getTargets()[edge];
+                long weight = graph.getWeights()[edge];
+                boolean found = false;
+                for (int reversed = reverse.getOffsets()[target]; reversed < reverse.getOffsets()[target + 1]; reversed++) {
+                    found |= reverse.getTargets()[reversed] == source && reverse.getWeights()[reversed] == weight;
+                }
+                assertThat(found).isTrue();
+            }
+        }
+    }
+
+    @Test
+    public void solveWithAllPairsIndexReturnsSameTreesAsSearch() {
+        Random random = new Random(11);
+        CompactGraph graph = CompactGraph.fromGraph(createRandomGraph(random, 100, 400, 1));
+        AllPairsPrecomputation precomputation = new AllPairsPrecomputation(engine, true, 100, 1, 2);
+
+        // When
+        precomputation.build(graph);
+
+        // Then
+        assertThat(graph.getAllPairsIndex()).isNotNull();
+        for (int source = 0; source < graph.getVertexCount(); source++) {
+            ShortestPathTree expected = engine.search(graph, source);
+            ShortestPathTree tree = engine.solve(graph, source);
+            assertThat(tree).isSameAs(graph.getAllPairsIndex().getTree(source));
+            for (int target = 0; target < graph.getVertexCount(); target++) {
+                assertThat(tree.getDistance(target)).isEqualTo(expected.getDistance(target));
+                assertThat(engine.solveBetween(graph, source, target).getDistance(target)).isEqualTo(expected.getDistance(target));
+            }
+        }
+    }
+
+    @Test
+    public void recordSearchBuildsIndexOnlyForSmallGraphsSearchedOftenEnough() throws Exception {
+        Random random = new Random(12);
+        CompactGraph smallGraph = CompactGraph.fromGraph(createRandomGraph(random, 50, 200, 0));
+        CompactGraph largeGraph = CompactGraph.fromGraph(createRandomGraph(random, 51, 200, 0));
+        AllPairsPrecomputation precomputation = new AllPairsPrecomputation(engine, true, 50, 3, 1);
+
+        try {
+            // When
+            for (int i = 0; i < 2; i++) {
+                precomputation.recordSearch(smallGraph);
+            }
+            for (int i = 0; i < 10; i++) {
+                precomputation.recordSearch(largeGraph);
+            }
+
+            // Then
+            assertThat(smallGraph.getAllPairsIndex()).isNull();
+            precomputation.recordSearch(smallGraph);
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (smallGraph.getAllPairsIndex() == null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(smallGraph.getAllPairsIndex()).isNotNull();
+            assertThat(smallGraph.getAllPairsIndex().getVertexCount()).isEqualTo(50);
+            assertThat(largeGraph.getAllPairsIndex()).isNull();
+        } finally {
+            precomputation.shutdown();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+import ml.echelon133.services.graphpathfinder.TestBeans;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IncrementalRecomputationTest {
+
+    private DijkstraEngine engine = TestBeans.dijkstraEngine();
+
+    private static class Edge {
+        private int source;
+        private int target;
+        private long weight;
+
+        Edge(int source, int target, long weight) {
+            this.source = source;
+            this.target = target;
+            this.weight = weight;
+        }
+    }
+
+    private List<Edge> createRandomEdges(Random random, int vertexCount, int edgeCount) {
+        List<Edge> edges = new ArrayList<>();
+        for (int i = 0; i < edgeCount; i++) {
+            // small weights, with some zeros, give many paths of equal length
+            edges.add(new Edge(random.nextInt(vertexCount), random.nextInt(vertexCount), random.nextInt(10)));
+        }
+        return edges;
+    }
+
+    private CompactGraph createGraph(int vertexCount, List<Edge> edges) {
+        GraphSnapshot snapshot = new GraphSnapshot();
+        for (int i = 0; i < vertexCount; i++) {
+            snapshot.addVertex("v" + i);
+        }
+        for (Edge edge : edges) {
+            snapshot.addEdge(edge.source, edge.target, edge.weight, 0);
+        }
+        return snapshot.toCompactGraph();
+    }
+
+    // removes, adds and changes weights of random edges, both on and off the paths of trees
+    private List<Edge> editRandomEdges(Random random, int vertexCount, List<Edge> edges, int editCount) {
+        List<Edge> edited = new ArrayList<>(edges);
+        for (int i = 0; i < editCount; i++) {
+            int index = random.nextInt(edited.size());
+            Edge edge = edited.get(index);
+            switch (random.nextInt(3)) {
+                case 0:
+                    edited.remove(index);
+                    break;
+                case 1:
+                    edited.set(index, new Edge(edge.source, edge.target, random.nextInt(30)));
+                    break;
+                default:
+                    edited.add(new Edge(random.nextInt(vertexCount), random.nextInt(vertexCount), random.nextInt(10)));
+            }
+        }
+        return edited;
+    }
+
+    private void assertSameAsSearch(CompactGraph graph, ShortestPathTree tree) {
+        ShortestPathTree expected = engine.search(graph, tree.getSourceId());
+        assertThat(tree.getGraph()).isSameAs(graph);
+        assertThat(tree.getSettledCount()).isEqualTo(expected.getSettledCount());
+        for (int v = 0; v < graph.getVertexCount(); v++) {
+            assertThat(tree.getDistance(v)).isEqualTo(expected.getDistance(v));
+        }
+
+        // every vertex comes after its predecessor, and its distance is the distance of the predecessor
+        // plus the weight of the lightest edge between them
+        boolean[] settled = new boolean[graph.getVertexCount()];
+        for (int i = 0; i < tree.getSettledCount(); i++) {
+            int vertex = tree.getSettledVertex(i);
+            int predecessor = tree.getPredecessor(vertex);
+            if (predecessor == ShortestPathTree.NO_PREDECESSOR) {
+                assertThat(vertex).isEqualTo(tree.getSourceId());
+            } else {
+                assertThat(settled[predecessor]).isTrue();
+                assertThat(tree.getDistance(vertex)).isEqualTo(tree.getDistance(predecessor) + lightestEdgeWeight(graph, predecessor, vertex));
+            }
+            settled[vertex] = true;
+        }
+    }
+
+    private long lightestEdgeWeight(CompactGraph graph, int source, int target) {
+        long lightest = Long.MAX_VALUE;
+        for (int edge = graph.getOffsets()[source]; edge < graph.getOffsets()[source + 1]; edge++) {
+            if (graph.getTargets()[edge] == target) {
+                lightest = Math.min(lightest, graph.getWeights()[edge]);
+            }
+        }
+        return lightest;
+    }
+
+    @Test
+    public void carryOverUpdatesTreesToSameTreesAsSearch() {
+        Random random = new Random(19);
+        IncrementalRecomputation recomputation = new IncrementalRecomputation(true, 8, 1000, 1000);
+
+        for (int round = 0; round < 30; round++) {
+            List<Edge> edges = createRandomEdges(random, 150, 500);
+            CompactGraph previous = createGraph(150, edges);
+            for (int i = 0; i < 5; i++) {
+                recomputation.recordTree(previous, engine.solve(previous, random.nextInt(150)));
+            }
+            List<Edge> editedEdges = editRandomEdges(random, 150, edges, 1 + round);
+            CompactGraph next = createGraph(150, editedEdges);
+
+            // When
+            recomputation.carryOver(previous, next);
+
+            // Then
+            assertThat(next.getSourceTrees().getTreeCount()).isEqualTo(previous.getSourceTrees().getTreeCount());
+            for (ShortestPathTree previousTree : previous.getSourceTrees().getTrees()) {
+                ShortestPathTree tree = next.getSourceTrees().getTree(previousTree.getSourceId());
+                assertSameAsSearch(next, tree);
+                assertThat(engine.solve(next, previousTree.getSourceId())).isSameAs(tree);
+            }
+        }
+    }
+
+    @Test
+    public void carryOverDropsTreesWhenGraphChangedTooMuch() {
+        Random random = new Random(20);
+        IncrementalRecomputation recomputation = new IncrementalRecomputation(true, 8, 1000, 1);
+        List<Edge> edges = createRandomEdges(random, 50, 200);
+        CompactGraph previous = createGraph(50, edges);
+        recomputation.recordTree(previous, engine.solve(previous, 0));
+
+        List<Edge> oneEdgeRemoved = new ArrayList<>(edges.subList(1, edges.size()));
+        List<Edge> twoEdgesAdded = new ArrayList<>(edges);
+        twoEdgesAdded.add(new Edge(0, 1, 0));
+        twoEdgesAdded.add(new Edge(1, 2, 0));
+        CompactGraph withOneEdgeRemoved = createGraph(50, oneEdgeRemoved);
+        CompactGraph withTwoEdgesAdded = createGraph(50, twoEdgesAdded);
+        CompactGraph withMoreVertexes = createGraph(51, edges);
+
+        // When
+        recomputation.carryOver(previous, withOneEdgeRemoved);
+        recomputation.carryOver(previous, withTwoEdgesAdded);
+        recomputation.carryOver(previous, withMoreVertexes);
+
+        // Then
+        assertSameAsSearch(withOneEdgeRemoved, withOneEdgeRemoved.getSourceTrees().getTree(0));
+        assertThat(withTwoEdgesAdded.getSourceTrees()).isNull();
+        assertThat(withMoreVertexes.getSourceTrees()).isNull();
+    }
+
+    @Test
+    public void betweenIgnoresEdgesWhichAreNotTheLightestOnes() {
+        List<Edge> edges = List.of(new Edge(0, 1, 5), new Edge(0, 1, 3), new Edge(1, 2, 4));
+        CompactGraph previous = createGraph(3, edges);
+        // a heavier parallel edge is removed, the lightest one between 1 and 2 gets heavier
+        CompactGraph next = createGraph(3, List.of(new Edge(0, 1, 3), new Edge(1, 2, 6), new Edge(2, 0, 1)));
+
+        // When
+        GraphDelta delta = GraphDelta.between(previous, next, 10);
+
+        // Then
+        assertThat(delta.getChangeCount()).isEqualTo(2);
+        assertThat(delta.getSource(0)).isEqualTo(1);
+        assertThat(delta.getTarget(0)).isEqualTo(2);
+        assertThat(delta.getPreviousWeight(0)).isEqualTo(4);
+        assertThat(delta.getWeight(0)).isEqualTo(6);
+        assertThat(delta.getSource(1)).isEqualTo(2);
+        assertThat(delta.getPreviousWeight(1)).isEqualTo(GraphDelta.NO_EDGE);
+        assertThat(delta.getWeight(1)).isEqualTo(1);
+    }
+}
@@ -0,0 +1,62 @@
+package ml.echelon133.services.graphpathfinder.engine;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class VertexQueueTest {
+
+    private static final long MAX_WEIGHT = 50;
+
+    // simulates the way Dijkstra uses a queue: it starts with a single vertex with key 0, then keys never go below
+    // the last polled key and are never larger than that key + MAX_WEIGHT
+    private void checkQueueAgainstLinearScan(VertexQueue queue, int vertexCount, Random random) {
+        long[] keys = new long[vertexCount];
+        Arrays.fill(keys, -1);
+        long lastPolledKey = 0;
+        int queued = 1;
+        keys[0] = 0;
+        queue.insertOrDecrease(0, 0);
+
+        for (int step = 0; step < 20_000; step++) {
+            if (queued == 0 || random.nextInt(3) != 0) {
+                int vertex = random.nextInt(vertexCount);
+                long key = lastPolledKey + random.nextInt((int) MAX_WEIGHT + 1);
+                if (keys[vertex] == -1) {
+                    queued++;
+                } else if (keys[vertex] <= key) {
+                    continue;
+                }
+                keys[vertex] = key;
+                queue.insertOrDecrease(vertex, key);
+            } else {
+                long minKey = Arrays.stream(keys).filter(k -> k != -1).min().getAsLong();
+                assertThat(queue.peekMinKey()).isEqualTo(minKey);
+                int vertex = queue.pollMin();
+
+                assertThat(keys[vertex]).isEqualTo(minKey);
+                lastPolledKey = minKey;
+                keys[vertex] = -1;
+                queued--;
+            }
+            assertThat(queue.isEmpty()).isEqualTo(queued == 0);
+        }
+    }
+
+    @Test
+    public void daryHeapPollsVertexesInOrderOfKeys() {
+        checkQueueAgainstLinearScan(new DaryHeap(4, 500), 500, new Random(3));
+        checkQueueAgainstLinearScan(new DaryHeap(2, 500), 500, new Random(4));
+        checkQueueAgainstLinearScan(new DaryHeap(4, 5), 5, new Random(5));
+    }
+
+    @Test
+    public void bucketQueuePollsVertexesInOrderOfKeys() {
+        checkQueueAgainstLinearScan(new BucketQueue(MAX_WEIGHT, 500), 500, new Random(6));
+        // with few vertexes the queue gets empty often
+        checkQueueAgainstLinearScan(new BucketQueue(MAX_WEIGHT, 5), 5, new Random(7));
+    }
+}
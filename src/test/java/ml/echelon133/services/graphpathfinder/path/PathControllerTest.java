@@ -1,33 +1,57 @@
 package ml.echelon133.services.graphpathfinder.path;
 
+import ml.echelon133.graph.Graph;
+import ml.echelon133.graph.ShortestPathSolver;
 import ml.echelon133.graph.Vertex;
 import ml.echelon133.graph.VertexResult;
+import ml.echelon133.graph.WeightedGraph;
 import ml.echelon133.services.graphpathfinder.GraphPathFinderApp;
+import ml.echelon133.services.graphpathfinder.TestBeans;
 import ml.echelon133.services.graphpathfinder.path.exception.GraphDoesNotExistException;
 import ml.echelon133.services.graphpathfinder.path.exception.GraphDoesNotHaveGivenVertexException;
 import ml.echelon133.services.graphpathfinder.path.exception.GraphNotAvailableException;
+import ml.echelon133.services.graphpathfinder.path.exception.ServiceOverloadedException;
+import ml.echelon133.services.graphpathfinder.engine.SearchAlgorithm;
+import ml.echelon133.services.graphpathfinder.metrics.PipelineMetrics;
+import ml.echelon133.services.graphpathfinder.routing.GraphRouting;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.boot.test.json.JacksonTester;
 import org.springframework.boot.test.json.JsonContent;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
 import java.math.BigDecimal;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -38,6 +62,12 @@ public class PathControllerTest {
     @Mock
     private PathService pathService;
 
+    @Spy
+    private PipelineMetrics pipelineMetrics = TestBeans.pipelineMetrics();
+
+    @Spy
+    private GraphRouting graphRouting = TestBeans.graphRouting();
+
     @InjectMocks
     private PathController pathController;
 
@@ -57,19 +87,29 @@ public class PathControllerTest {
         mockMvc = MockMvcBuilders
                 .standaloneSetup(pathController)
                 .setControllerAdvice(exceptionHandler)
-                .setMessageConverters(converter)
+                .setMessageConverters(new ByteArrayHttpMessageConverter(), converter)
                 .build();
     }
 
+    // handlers return futures (and streamed bodies), so requests are dispatched again for as long as
+    // their handling continues asynchronously
+    private MockHttpServletResponse performAsync(RequestBuilder request) throws Exception {
+        MvcResult result = mockMvc.perform(request).andReturn();
+        while (result.getRequest().isAsyncStarted()) {
+            result = mockMvc.perform(asyncDispatch(result)).andReturn();
+        }
+        return result.getResponse();
+    }
+
     @Test
     public void calcPathRespondsCorrectlyWhenParamStartFromEmpty() throws Exception {
         String graphId = "test";
         String startFrom = "";
 
         // When
-        MockHttpServletResponse response = mockMvc.perform(post("/api/graphs/" + graphId + "/paths")
+        MockHttpServletResponse response = performAsync(post("/api/graphs/" + graphId + "/paths")
                 .accept(MediaType.APPLICATION_JSON)
-                .param("startFrom", startFrom)).andReturn().getResponse();
+                .param("startFrom", startFrom));
 
         // Then
         assertThat(response.getContentAsString()).contains("Parameter 'startFrom' is required to proceed with the request");
@@ -81,8 +121,8 @@ public class PathControllerTest {
         String graphId = "test";
 
         // When
-        MockHttpServletResponse response = mockMvc.perform(post("/api/graphs/" + graphId + "/paths")
-                .accept(MediaType.APPLICATION_JSON)).andReturn().getResponse();
+        MockHttpServletResponse response = performAsync(post("/api/graphs/" + graphId + "/paths")
+                .accept(MediaType.APPLICATION_JSON));
 
         // Then
         assertThat(response.getContentAsString()).contains("Parameter 'startFrom' is required to proceed with the request");
@@ -96,12 +136,12 @@ public class PathControllerTest {
 
         // Given
         String exceptionMsg = String.format("Graph with ID %s does not exist. Cannot find shortest paths", graphId);
-        given(pathService.calculateShortestPath(eq(graphId), eq(startFrom))).willThrow(new GraphDoesNotExistException(exceptionMsg));
+        given(pathService.calculateShortestPathEncodedAsync(eq(graphId), eq(PathQuery.startingFrom(startFrom)), eq(ResultEncoding.JSON))).willReturn(CompletableFuture.failedFuture(new GraphDoesNotExistException(exceptionMsg)));
 
         // When
-        MockHttpServletResponse response = mockMvc.perform(post("/api/graphs/" + graphId + "/paths")
+        MockHttpServletResponse response = performAsync(post("/api/graphs/" + graphId + "/paths")
                 .accept(MediaType.APPLICATION_JSON)
-                .param("startFrom", startFrom)).andReturn().getResponse();
+                .param("startFrom", startFrom));
 
         // Then
         assertThat(response.getContentAsString()).contains(exceptionMsg);
@@ -115,18 +155,38 @@ public class PathControllerTest {
 
         // Given
         String exceptionMsg = String.format("Graph with ID %s is unreachable right now. Try again later", graphId);
-        given(pathService.calculateShortestPath(eq(graphId), eq(startFrom))).willThrow(new GraphNotAvailableException(exceptionMsg));
+        given(pathService.calculateShortestPathEncodedAsync(eq(graphId), eq(PathQuery.startingFrom(startFrom)), eq(ResultEncoding.JSON))).willReturn(CompletableFuture.failedFuture(new GraphNotAvailableException(exceptionMsg)));
 
         // When
-        MockHttpServletResponse response = mockMvc.perform(post("/api/graphs/" + graphId + "/paths")
+        MockHttpServletResponse response = performAsync(post("/api/graphs/" + graphId + "/paths")
                 .accept(MediaType.APPLICATION_JSON)
-                .param("startFrom", startFrom)).andReturn().getResponse();
+                .param("startFrom", startFrom));
 
         // Then
         assertThat(response.getContentAsString()).contains(exceptionMsg);
         assertThat(response.getStatus()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR.value());
     }
 
+    @Test
+    public void calcPathRespondsCorrectlyWhenServiceOverloaded() throws Exception {
+        String graphId = "asdf";
+        String startFrom = "v1";
+
+        // Given
+        String exceptionMsg = String.format("Too many searches are waiting to run. Cannot find shortest paths in graph with ID %s right now", graphId);
+        given(pathService.calculateShortestPathEncodedAsync(eq(graphId), eq(PathQuery.startingFrom(startFrom)), eq(ResultEncoding.JSON))).willReturn(CompletableFuture.failedFuture(new ServiceOverloadedException(exceptionMsg, 7)));
+
+        // When
+        MockHttpServletResponse response = performAsync(post("/api/graphs/" + graphId + "/paths")
+                .accept(MediaType.APPLICATION_JSON)
+                .param("startFrom", startFrom));
+
+        // Then
+        assertThat(response.getContentAsString()).contains(exceptionMsg);
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE.value());
+        assertThat(response.getHeader("Retry-After")).isEqualTo("7");
+    }
+
     @Test
     public void calcPathRespondsCorrectlyWhenGraphDoesNotHaveGivenStartVertex() throws Exception {
         String graphId = "asdf";
@@ -134,12 +194,12 @@ public class PathControllerTest {
 
         // Given
         String exceptionMsg = String.format("Graph with ID %s does not have a vertex with name %s", graphId, startFrom);
-        given(pathService.calculateShortestPath(eq(graphId), eq(startFrom))).willThrow(new GraphDoesNotHaveGivenVertexException(exceptionMsg));
+        given(pathService.calculateShortestPathEncodedAsync(eq(graphId), eq(PathQuery.startingFrom(startFrom)), eq(ResultEncoding.JSON))).willReturn(CompletableFuture.failedFuture(new GraphDoesNotHaveGivenVertexException(exceptionMsg)));
 
         // When
-        MockHttpServletResponse response = mockMvc.perform(post("/api/graphs/" + graphId + "/paths")
+        MockHttpServletResponse response = performAsync(post("/api/graphs/" + graphId + "/paths")
                 .accept(MediaType.APPLICATION_JSON)
-                .param("startFrom", startFrom)).andReturn().getResponse();
+                .param("startFrom", startFrom));
 
         // Then
         assertThat(response.getContentAsString()).contains(exceptionMsg);
@@ -169,16 +229,430 @@ public class PathControllerTest {
         JsonContent<Map<Vertex<BigDecimal>, VertexResult<BigDecimal>>> jsonContent = jsonPathResult.write(result);
 
         // Given
-        given(pathService.calculateShortestPath(eq(graphId), eq(startFrom))).willReturn(result);
+        given(pathService.calculateShortestPathEncodedAsync(eq(graphId), eq(PathQuery.startingFrom(startFrom)), eq(ResultEncoding.JSON))).willReturn(CompletableFuture.completedFuture(jsonContent.getJson().getBytes()));
 
         // When
-        MockHttpServletResponse response = mockMvc.perform(post("/api/graphs/" + graphId + "/paths")
+        MockHttpServletResponse response = performAsync(post("/api/graphs/" + graphId + "/paths")
                 .accept(MediaType.APPLICATION_JSON)
-                .param("startFrom", startFrom)).andReturn().getResponse();
+                .param("startFrom", startFrom));
 
         // Then
         assertThat(response.getContentAsString()).isEqualTo(jsonContent.getJson());
         assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
     }
 
+    @Test
+    public void evictGraphRespondsWithNoContent() throws Exception {
+        String graphId = "abcdefghijklmnoprst";
+
+        // When
+        MockHttpServletResponse response = mockMvc.perform(delete("/api/graphs/" + graphId + "/cache"))
+                .andReturn().getResponse();
+
+        // Then
+        verify(pathService).evictGraph(graphId);
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.NO_CONTENT.value());
+    }
+
+    @Test
+    public void calcPathForwardsRequestForGraphOwnedByAnotherInstance() throws Exception {
+        String graphId = "abcdefghijklmnoprst";
+        ServiceInstance owner = new DefaultServiceInstance("owner", "graph-path-finder-service", "10.0.0.2", 8080, false);
+        String json = "{\"results\":[]}";
+
+        // Given
+        doReturn(owner).when(graphRouting).findOwner(eq(graphId), any());
+        doReturn(CompletableFuture.completedFuture(ResponseEntity.ok().header(GraphRouting.OWNER_HEADER, "10.0.0.2:8080").body(json.getBytes())))
+                .when(graphRouting).forward(eq(owner), any(), eq(null));
+
+        // When
+        MockHttpServletResponse response = performAsync(post("/api/graphs/" + graphId + "/paths")
+                .accept(MediaType.APPLICATION_JSON)
+                .param("startFrom", "vertex1"));
+
+        // Then
+        assertThat(response.getContentAsString()).isEqualTo(json);
+        assertThat(response.getHeader(GraphRouting.OWNER_HEADER)).isEqualTo("10.0.0.2:8080");
+        verify(pathService, never()).calculateShortestPathEncodedAsync(any(), any(), any());
+    }
+
+    @Test
+    public void calcPathPassesTargetToService() throws Exception {
+        String graphId = "abcdefghijklmnoprst";
+        PathQuery expectedQuery = PathQuery.startingFrom("vertex1").withTarget("vertex2");
+        String json = "{\"results\":[]}";
+
+        // Given
+        given(pathService.calculateShortestPathEncodedAsync(eq(graphId), eq(expectedQuery), eq(ResultEncoding.JSON))).willReturn(CompletableFuture.completedFuture(json.getBytes()));
+
+        // When
+        MockHttpServletResponse response = performAsync(post("/api/graphs/" + graphId + "/paths")
+                .accept(MediaType.APPLICATION_JSON)
+                .param("startFrom", "vertex1")
+                .param("to", "vertex2"));
+
+        // Then
+        assertThat(response.getContentAsString()).isEqualTo(json);
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+    }
+
+    @Test
+    public void calcPathRespondsWithGzippedJsonOnlyWhenClientAcceptsGzip() throws Exception {
+        String graphId = "abcdefghijklmnoprst";
+        PathQuery expectedQuery = PathQuery.startingFrom("vertex1");
+        byte[] gzipped = {0x1f, (byte) 0x8b, 8, 0};
+        String json = "{\"results\":[]}";
+
+        // Given
+        given(pathService.calculateShortestPathEncodedAsync(eq(graphId), eq(expectedQuery), eq(ResultEncoding.GZIPPED_JSON))).willReturn(CompletableFuture.completedFuture(gzipped));
+        given(pathService.calculateShortestPathEncodedAsync(eq(graphId), eq(expectedQuery), eq(ResultEncoding.JSON))).willReturn(CompletableFuture.completedFuture(json.getBytes()));
+
+        // When
+        MockHttpServletResponse gzipResponse = performAsync(post("/api/graphs/" + graphId + "/paths")
+                .accept(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.ACCEPT_ENCODING, "deflate, GZIP;q=0.5")
+                .param("startFrom", "vertex1"));
+        MockHttpServletResponse refusedGzipResponse = performAsync(post("/api/graphs/" + graphId + "/paths")
+                .accept(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.ACCEPT_ENCODING, "br, gzip; q=0.0")
+                .param("startFrom", "vertex1"));
+
+        // Then
+        assertThat(gzipResponse.getContentAsByteArray()).isEqualTo(gzipped);
+        assertThat(gzipResponse.getHeader(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        assertThat(gzipResponse.getHeader(HttpHeaders.VARY)).isEqualTo(HttpHeaders.ACCEPT_ENCODING);
+        assertThat(refusedGzipResponse.getContentAsString()).isEqualTo(json);
+        assertThat(refusedGzipResponse.getHeader(HttpHeaders.CONTENT_ENCODING)).isNull();
+    }
+
+    @Test
+    public void calcPathRespondsWithBinaryResultWhenClientAcceptsIt() throws Exception {
+        String graphId = "abcdefghijklmnoprst";
+        PathQuery expectedQuery = PathQuery.startingFrom("vertex1").withLimit(10);
+        byte[] binary = {'P', 'A', 'T', 'H', 1, 0, 0, 0};
+
+        // Given
+        given(pathService.calculateShortestPathEncodedAsync(eq(graphId), eq(expectedQuery), eq(ResultEncoding.BINARY))).willReturn(CompletableFuture.completedFuture(binary));
+
+        // When
+        MockHttpServletResponse response = performAsync(post("/api/graphs/" + graphId + "/paths")
+                .accept(PathResultBinaryFormat.MEDIA_TYPE_VALUE)
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                .param("startFrom", "vertex1")
+                .param("limit", "10"));
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentType()).isEqualTo(PathResultBinaryFormat.MEDIA_TYPE_VALUE);
+        assertThat(response.getContentAsByteArray()).isEqualTo(binary);
+    }
+
+    @Test
+    public void calcPathRespondsCorrectlyWhenParamIncludePathsInvalid() throws Exception {
+        String graphId = "test";
+
+        // When
+        MockHttpServletResponse response = performAsync(post("/api/graphs/" + graphId + "/paths")
+                .accept(MediaType.APPLICATION_JSON)
+                .param("startFrom", "v1")
+                .param("includePaths", "sometimes"));
+
+        // Then
+        assertThat(response.getContentAsString()).contains("Parameter 'includePaths' has to be one of: true, false, target-only");
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+    }
+
+    @Test
+    public void calcPathPassesIncludePathsToService() throws Exception {
+        String graphId = "abcdefghijklmnoprst";
+        PathQuery expectedQuery = PathQuery.startingFrom("vertex1").withIncludePaths(IncludePaths.TARGET_ONLY);
+        String json = "{\"results\":[]}";
+
+        // Given
+        given(pathService.calculateShortestPathEncodedAsync(eq(graphId), eq(expectedQuery), eq(ResultEncoding.JSON))).willReturn(CompletableFuture.completedFuture(json.getBytes()));
+
+        // When
+        MockHttpServletResponse response = performAsync(post("/api/graphs/" + graphId + "/paths")
+                .accept(MediaType.APPLICATION_JSON)
+                .param("startFrom", "vertex1")
+                .param("includePaths", "target-only"));
+
+        // Then
+        assertThat(response.getContentAsString()).isEqualTo(json);
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+    }
+
+    @Test
+    public void calcPathRespondsCorrectlyWhenParamAlgorithmInvalid() throws Exception {
+        String graphId = "test";
+
+        // When
+        MockHttpServletResponse invalidResponse = performAsync(post("/api/graphs/" + graphId + "/paths")
+                .accept(MediaType.APPLICATION_JSON)
+                .param("startFrom", "v1")
+                .param("to", "v2")
+                .param("algorithm", "bellman-ford"));
+        MockHttpServletResponse withoutTargetResponse = performAsync(post("/api/graphs/" + graphId + "/paths")
+                .accept(MediaType.APPLICATION_JSON)
+                .param("startFrom", "v1")
+                .param("algorithm", "astar-landmarks"));
+
+        // Then
+        assertThat(invalidResponse.getContentAsString()).contains("Parameter 'algorithm' has to be one of: dijkstra, astar-euclidean, astar-haversine, astar-landmarks");
+        assertThat(invalidResponse.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+        assertThat(withoutTargetResponse.getContentAsString()).contains("Parameter 'algorithm' other than dijkstra requires parameter 'to'");
+        assertThat(withoutTargetResponse.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+    }
+
+    @Test
+    public void calcPathPassesAlgorithmToService() throws Exception {
+        String graphId = "abcdefghijklmnoprst";
+        PathQuery expectedQuery = PathQuery.startingFrom("vertex1").withTarget("vertex2").withAlgorithm(SearchAlgorithm.ASTAR_HAVERSINE);
+        String json = "{\"results\":[]}";
+
+        // Given
+        given(pathService.calculateShortestPathEncodedAsync(eq(graphId), eq(expectedQuery), eq(ResultEncoding.JSON))).willReturn(CompletableFuture.completedFuture(json.getBytes()));
+
+        // When
+        MockHttpServletResponse response = performAsync(post("/api/graphs/" + graphId + "/paths")
+                .accept(MediaType.APPLICATION_JSON)
+                .param("startFrom", "vertex1")
+                .param("to", "vertex2")
+                .param("algorithm", "astar-haversine"));
+
+        // Then
+        assertThat(response.getContentAsString()).isEqualTo(json);
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+    }
+
+    @Test
+    public void calcPathRespondsCorrectlyWhenBoundsInvalid() throws Exception {
+        String graphId = "test";
+
+        // When
+        MockHttpServletResponse withTargetResponse = performAsync(post("/api/graphs/" + graphId + "/paths")
+                .accept(MediaType.APPLICATION_JSON)
+                .param("startFrom", "v1")
+                .param("to", "v2")
+                .param("limit", "5"));
+        MockHttpServletResponse negativeDistanceResponse = performAsync(post("/api/graphs/" + graphId + "/paths")
+                .accept(MediaType.APPLICATION_JSON)
+                .param("startFrom", "v1")
+                .param("maxDistance", "-1"));
+        MockHttpServletResponse invalidLimitResponse = performAsync(post("/api/graphs/" + graphId + "/paths")
+                .accept(MediaType.APPLICATION_JSON)
+                .param("startFrom", "v1")
+                .param("limit", "0"));
+
+        // Then
+        assertThat(withTargetResponse.getContentAsString()).contains("Parameters 'targets', 'maxDistance' and 'limit' cannot be combined with parameter 'to'");
+        assertThat(withTargetResponse.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+        assertThat(negativeDistanceResponse.getContentAsString()).contains("Parameter 'maxDistance' has to be a non-negative number");
+        assertThat(negativeDistanceResponse.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+        assertThat(invalidLimitResponse.getContentAsString()).contains("Parameter 'limit' has to be a positive integer");
+        assertThat(invalidLimitResponse.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+    }
+
+    @Test
+    public void calcPathPassesBoundsToService() throws Exception {
+        String graphId = "abcdefghijklmnoprst";
+        PathQuery expectedQuery = PathQuery.startingFrom("vertex1")
+                .withTargets(List.of("vertex2", "vertex3"))
+                .withMaxDistance(new BigDecimal("12.5"))
+                .withLimit(1);
+        String json = "{\"results\":[]}";
+
+        // Given
+        given(pathService.calculateShortestPathEncodedAsync(eq(graphId), eq(expectedQuery), eq(ResultEncoding.JSON))).willReturn(CompletableFuture.completedFuture(json.getBytes()));
+
+        // When
+        MockHttpServletResponse response = performAsync(post("/api/graphs/" + graphId + "/paths")
+                .accept(MediaType.APPLICATION_JSON)
+                .param("startFrom", "vertex1")
+                .param("targets", "vertex3,vertex2")
+                .param("maxDistance", "12.50")
+                .param("limit", "1"));
+
+        // Then
+        assertThat(response.getContentAsString()).isEqualTo(json);
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+    }
+
+    @Test
+    public void calcPathStreamsOneResultPerLineWhenNdjsonAccepted() throws Exception {
+        String graphId = "abcdefghijklmnoprst";
+        PathQuery query = PathQuery.startingFrom("v1");
+
+        // prepare a result of a simple test graph
+        Graph<BigDecimal> testGraph = new WeightedGraph<>();
+        Vertex<BigDecimal> v1Vertex = new Vertex<>("v1");
+        Vertex<BigDecimal> v2Vertex = new Vertex<>("v2");
+        List.of(v1Vertex, v2Vertex).forEach(testGraph::addVertex);
+        testGraph.addEdge(v1Vertex, v2Vertex, new BigDecimal(20));
+        PathResult result = new SolverPathResult(query, testGraph, new ShortestPathSolver<>(testGraph).solveStartingFrom(v1Vertex), null);
+
+        // Given
+        given(pathService.calculateShortestPathAsync(eq(graphId), eq(query))).willReturn(CompletableFuture.completedFuture(result));
+
+        // When
+        MockHttpServletResponse response = performAsync(post("/api/graphs/" + graphId + "/paths")
+                .accept(PathController.APPLICATION_NDJSON_VALUE)
+                .param("startFrom", "v1"));
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentType()).isEqualTo(PathController.APPLICATION_NDJSON_VALUE);
+        assertThat(response.getContentAsString()).isIn(
+                "{\"v1\":{\"previousVertex\":null,\"sumOfWeights\":0,\"pathToVertex\":[]}}\n" +
+                "{\"v2\":{\"previousVertex\":\"v1\",\"sumOfWeights\":20,\"pathToVertex\":[\"v1\"]}}\n",
+                "{\"v2\":{\"previousVertex\":\"v1\",\"sumOfWeights\":20,\"pathToVertex\":[\"v1\"]}}\n" +
+                "{\"v1\":{\"previousVertex\":null,\"sumOfWeights\":0,\"pathToVertex\":[]}}\n");
+        verify(pathService, never()).calculateShortestPathEncodedAsync(any(), any(), any());
+    }
+
+    @Test
+    public void calcPathRespondsWithJsonWhenAnyTypeAccepted() throws Exception {
+        String graphId = "abcdefghijklmnoprst";
+        String json = "{\"results\":[]}";
+
+        // Given
+        given(pathService.calculateShortestPathEncodedAsync(eq(graphId), eq(PathQuery.startingFrom("v1")), eq(ResultEncoding.JSON))).willReturn(CompletableFuture.completedFuture(json.getBytes()));
+
+        // When
+        MockHttpServletResponse response = performAsync(post("/api/graphs/" + graphId + "/paths")
+                .accept(MediaType.ALL)
+                .param("startFrom", "v1"));
+
+        // Then
+        assertThat(response.getContentAsString()).isEqualTo(json);
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+    }
+
+    @Test
+    public void calcPathAsStreamRespondsCorrectlyWhenParamStartFromNotGiven() throws Exception {
+        String graphId = "test";
+
+        // When
+        MockHttpServletResponse response = performAsync(post("/api/graphs/" + graphId + "/paths")
+                .accept(PathController.APPLICATION_NDJSON_VALUE));
+
+        // Then
+        assertThat(response.getContentAsString()).contains("Parameter 'startFrom' is required to proceed with the request");
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+    }
+
+    @Test
+    public void calcPathsInBatchStreamsOneLinePerStartVertex() throws Exception {
+        String graphId = "abcdefghijklmnoprst";
+
+        // prepare a simple test graph
+        Graph<BigDecimal> testGraph = new WeightedGraph<>();
+        Vertex<BigDecimal> v1Vertex = new Vertex<>("v1");
+        Vertex<BigDecimal> v2Vertex = new Vertex<>("v2");
+        List.of(v1Vertex, v2Vertex).forEach(testGraph::addVertex);
+        testGraph.addEdge(v1Vertex, v2Vertex, new BigDecimal(20));
+        ShortestPathSolver<BigDecimal> solver = new ShortestPathSolver<>(testGraph);
+        Map<String, Vertex<BigDecimal>> vertexes = Map.of("v1", v1Vertex, "v2", v2Vertex);
+
+        List<PathQuery> queries = List.of(PathQuery.startingFrom("v1"), PathQuery.startingFrom("v2"));
+        PathBatch batch = new PathBatch(queries,
+                query -> new SolverPathResult(query, testGraph, solver.solveStartingFrom(vertexes.get(query.getStartVertexName())), null),
+                Runnable::run, 1, () -> {});
+
+        // Given
+        given(pathService.createBatchAsync(eq(graphId), eq(queries))).willReturn(CompletableFuture.completedFuture(batch));
+
+        // When
+        MockHttpServletResponse response = performAsync(post("/api/graphs/" + graphId + "/paths/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"startFrom\":[\"v1\",\"v2\"]}"));
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentType()).isEqualTo(PathController.APPLICATION_NDJSON_VALUE);
+        String v2Line = "{\"startFrom\":\"v2\",\"results\":[" +
+                "{\"v2\":{\"previousVertex\":null,\"sumOfWeights\":0,\"pathToVertex\":[]}}]}\n";
+        assertThat(response.getContentAsString()).isIn(
+                "{\"startFrom\":\"v1\",\"results\":[" +
+                        "{\"v1\":{\"previousVertex\":null,\"sumOfWeights\":0,\"pathToVertex\":[]}}," +
+                        "{\"v2\":{\"previousVertex\":\"v1\",\"sumOfWeights\":20,\"pathToVertex\":[\"v1\"]}}]}\n" + v2Line,
+                "{\"startFrom\":\"v1\",\"results\":[" +
+                        "{\"v2\":{\"previousVertex\":\"v1\",\"sumOfWeights\":20,\"pathToVertex\":[\"v1\"]}}," +
+                        "{\"v1\":{\"previousVertex\":null,\"sumOfWeights\":0,\"pathToVertex\":[]}}]}\n" + v2Line);
+    }
+
+    @Test
+    public void calcPathsInBatchPassesTargetAndIncludePathsToService() throws Exception {
+        String graphId = "abcdefghijklmnoprst";
+        List<PathQuery> expectedQueries = List.of(
+                PathQuery.startingFrom("v1").withTarget("v3").withIncludePaths(IncludePaths.NONE),
+                PathQuery.startingFrom("v2").withTarget("v3").withIncludePaths(IncludePaths.NONE));
+
+        // Given
+        given(pathService.createBatchAsync(eq(graphId), eq(expectedQueries)))
+                .willReturn(CompletableFuture.completedFuture(new PathBatch(List.of(), query -> null, Runnable::run, 1, () -> {})));
+
+        // When
+        MockHttpServletResponse response = performAsync(post("/api/graphs/" + graphId + "/paths/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"startFrom\":[\"v1\",\"v2\"]}")
+                .param("to", "v3")
+                .param("includePaths", "false"));
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        verify(pathService).createBatchAsync(eq(graphId), eq(expectedQueries));
+    }
+
+    @Test
+    public void calcPathsInBatchRespondsCorrectlyWhenListStartFromNotGiven() throws Exception {
+        String graphId = "test";
+
+        // When
+        MockHttpServletResponse response = performAsync(post("/api/graphs/" + graphId + "/paths/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"startFrom\":[]}"));
+
+        // Then
+        assertThat(response.getContentAsString()).contains("List 'startFrom' in the request body is required to proceed with the request");
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+    }
+
+    @Test
+    public void calcPathsInBatchRespondsCorrectlyWhenListStartFromTooLong() throws Exception {
+        String graphId = "test";
+        StringBuilder body = new StringBuilder("{\"startFrom\":[");
+        for (int i = 0; i <= PathController.MAX_BATCH_SIZE; i++) {
+            body.append(i == 0 ? "" : ",").append("\"v").append(i).append('"');
+        }
+        body.append("]}");
+
+        // When
+        MockHttpServletResponse response = performAsync(post("/api/graphs/" + graphId + "/paths/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body.toString()));
+
+        // Then
+        assertThat(response.getContentAsString()).contains("List 'startFrom' cannot have more than 10000 elements");
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+        verify(pathService, never()).createBatchAsync(any(), any());
+    }
+
+    @Test
+    public void calcPathsInBatchRespondsCorrectlyWhenGraphDoesNotHaveGivenVertex() throws Exception {
+        String graphId = "abcdefghijklmnoprst";
+        String msg = String.format("Graph with ID %s does not have a vertex with name %s", graphId, "v5");
+
+        // Given
+        given(pathService.createBatchAsync(eq(graphId), any())).willReturn(CompletableFuture.failedFuture(new GraphDoesNotHaveGivenVertexException(msg)));
+
+        // When
+        MockHttpServletResponse response = performAsync(post("/api/graphs/" + graphId + "/paths/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"startFrom\":[\"v1\",\"v5\"]}"));
+
+        // Then
+        assertThat(response.getContentAsString()).contains(msg);
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+    }
 }
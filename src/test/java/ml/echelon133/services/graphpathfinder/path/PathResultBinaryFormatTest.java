@@ -0,0 +1,143 @@
+package ml.echelon133.services.graphpathfinder.path;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ml.echelon133.graph.Graph;
+import ml.echelon133.graph.ShortestPathSolver;
+import ml.echelon133.graph.Vertex;
+import ml.echelon133.graph.WeightedGraph;
+import ml.echelon133.services.graphpathfinder.GraphPathFinderApp;
+import ml.echelon133.services.graphpathfinder.TestBeans;
+import ml.echelon133.services.graphpathfinder.TestGraphs;
+import ml.echelon133.services.graphpathfinder.engine.CompactGraph;
+import ml.echelon133.services.graphpathfinder.engine.ShortestPathTree;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class PathResultBinaryFormatTest {
+
+    private ObjectMapper mapper = GraphPathFinderApp.objectMapper();
+
+    private Graph<BigDecimal> createRandomGraph(Random random, int vertexCount, int edgeCount) {
+        return TestGraphs.createRandomGraph(random, vertexCount, edgeCount,
+                () -> BigDecimal.valueOf(1 + random.nextInt(1000), 1));
+    }
+
+    // a decoded result has to be written as the very same JSON as the result which was encoded
+    private void assertSameJsonAfterRead(PathResult result) throws Exception {
+        byte[] binary = PathResultBinaryFormat.toBytes(result);
+        PathResult decoded = PathResultBinaryReader.read(result.getQuery(), new ByteArrayInputStream(binary));
+        assertThat(new String(mapper.writeValueAsBytes(decoded))).isEqualTo(new String(mapper.writeValueAsBytes(result)));
+    }
+
+    @Test
+    public void readReturnsResultWithSamePathsAsWrittenResult() throws Exception {
+        Random random = new Random(7);
+        CompactGraph graph = CompactGraph.fromGraph(createRandomGraph(random, 200, 800));
+        ShortestPathTree tree = TestBeans.dijkstraEngine().solve(graph, 0);
+        PathQuery query = PathQuery.startingFrom("v0");
+        int target = tree.getSettledVertex(tree.getSettledCount() - 1);
+        BitSet targets = new BitSet();
+        for (int i = 0; i < 5; i++) {
+            targets.set(tree.getSettledVertex(random.nextInt(tree.getSettledCount())));
+        }
+
+        // Then
+        assertSameJsonAfterRead(new TreePathResult(query, tree));
+        assertSameJsonAfterRead(new TreePathResult(query.withIncludePaths(IncludePaths.NONE), tree));
+        assertSameJsonAfterRead(new TreePathResult(query.withTarget(graph.getVertexName(target))
+                .withIncludePaths(IncludePaths.TARGET_ONLY), tree, target));
+        // targets are usually far from each other, so most vertexes on their paths are not a part of the result
+        assertSameJsonAfterRead(TreePathResult.withinBounds(query.withLimit(5), tree, targets, Long.MAX_VALUE, 5));
+        assertSameJsonAfterRead(TreePathResult.withinBounds(query.withLimit(5).withIncludePaths(IncludePaths.NONE),
+                tree, targets, Long.MAX_VALUE, 5));
+        // sums of the solver keep trailing zeros of weights, i.e. 10.25 + 10.25 is 20.50
+        assertSameJsonAfterRead(createSolverPathResult());
+    }
+
+    private PathResult createSolverPathResult() {
+        Graph<BigDecimal> graph = new WeightedGraph<>();
+        Vertex<BigDecimal> v1 = new Vertex<>("v1");
+        Vertex<BigDecimal> v2 = new Vertex<>("v2");
+        Vertex<BigDecimal> v3 = new Vertex<>("v3");
+        Vertex<BigDecimal> v4 = new Vertex<>("v4");
+        List.of(v1, v2, v3, v4).forEach(graph::addVertex);
+        graph.addEdge(v1, v2, new BigDecimal("10.25"));
+        graph.addEdge(v2, v3, new BigDecimal("10.25"));
+        graph.addEdge(v3, v4, new BigDecimal("1E+2"));
+        PathQuery query = PathQuery.startingFrom("v1");
+        return new SolverPathResult(query, graph, new ShortestPathSolver<>(graph).solveStartingFrom(v1), null);
+    }
+
+    @Test
+    public void writeWritesEveryVertexNameOnlyOnce() throws Exception {
+        Random random = new Random(8);
+        CompactGraph graph = CompactGraph.fromGraph(createRandomGraph(random, 1000, 4000));
+        PathResult result = new TreePathResult(PathQuery.startingFrom("v0"), TestBeans.dijkstraEngine().solve(graph, 0));
+
+        // When
+        byte[] binary = PathResultBinaryFormat.toBytes(result);
+        byte[] json = mapper.writeValueAsBytes(result);
+
+        // Then
+        int nameBytes = 0;
+        for (int i = 0; i < result.getVertexCount(); i++) {
+            nameBytes += result.getVertexName(result.getVertexId(i)).length();
+        }
+        // names and a few bytes for every vertex
+        assertThat(binary.length).isLessThan(nameBytes + 8 * result.getVertexCount());
+        assertThat(binary.length).isLessThan(json.length / 5);
+    }
+
+    @Test
+    public void readReturnsSumsOfWeightsWhichDoNotFitInLong() throws Exception {
+        Graph<BigDecimal> graph = new WeightedGraph<>();
+        Vertex<BigDecimal> v1 = new Vertex<>("v1");
+        Vertex<BigDecimal> v2 = new Vertex<>("\u0105\u0119");
+        Vertex<BigDecimal> v3 = new Vertex<>("v3");
+        List.of(v1, v2, v3).forEach(graph::addVertex);
+        graph.addEdge(v1, v2, new BigDecimal("0.125"));
+        graph.addEdge(v2, v3, new BigDecimal("123456789012345678901234567890"));
+        PathQuery query = PathQuery.startingFrom("v1");
+        PathResult result = new SolverPathResult(query, graph, new ShortestPathSolver<>(graph).solveStartingFrom(v1), null);
+
+        // When
+        PathResult decoded = PathResultBinaryReader.read(query, new ByteArrayInputStream(PathResultBinaryFormat.toBytes(result)));
+
+        // Then
+        int decodedV3 = decoded.findVertexId("v3");
+        assertThat(decoded.getSumOfWeights(decodedV3)).isEqualByComparingTo(new BigDecimal("123456789012345678901234567890.125"));
+        assertThat(decoded.getPathTo(decodedV3)).isEqualTo(List.of("v1", "\u0105\u0119"));
+        assertThat(decoded.findVertexId("v4")).isEqualTo(-1);
+    }
+
+    @Test
+    public void readThrowsExceptionWhenInputMalformed() {
+        byte[] wrongMagic = {'G', 'R', 'P', 'H', 1, 0, 0, 0};
+        // a single vertex 'v', with a predecessor at position 1, past the end of the dictionary
+        byte[] unknownPredecessor = {'P', 'A', 'T', 'H', 1, 0, 1, 1, 1, 'v', 0, 0, 2};
+        byte[] trailingData = {'P', 'A', 'T', 'H', 1, 0, 0, 0, 0};
+        // a single vertex with a name of Integer.MAX_VALUE bytes, of which only one is present
+        byte[] truncatedName = {'P', 'A', 'T', 'H', 1, 0, 1, 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 'v'};
+
+        // When
+        Throwable wrongMagicEx = catchThrowable(() -> PathResultBinaryReader.read(PathQuery.startingFrom("v"), new ByteArrayInputStream(wrongMagic)));
+        Throwable unknownPredecessorEx = catchThrowable(() -> PathResultBinaryReader.read(PathQuery.startingFrom("v"), new ByteArrayInputStream(unknownPredecessor)));
+        Throwable trailingDataEx = catchThrowable(() -> PathResultBinaryReader.read(PathQuery.startingFrom("v"), new ByteArrayInputStream(trailingData)));
+        Throwable truncatedNameEx = catchThrowable(() -> PathResultBinaryReader.read(PathQuery.startingFrom("v"), new ByteArrayInputStream(truncatedName)));
+
+        // Then
+        assertThat(wrongMagicEx).isInstanceOf(IOException.class).hasMessage("Input is not a path result in the binary path result format");
+        assertThat(unknownPredecessorEx).isInstanceOf(IOException.class)
+                .hasMessage("Vertex 'v' has predecessor 1, which is not present in the dictionary");
+        assertThat(trailingDataEx).isInstanceOf(IOException.class).hasMessage("Unexpected data after the end of the path result");
+        assertThat(truncatedNameEx).isInstanceOf(EOFException.class);
+    }
+}
@@ -0,0 +1,202 @@
+package ml.echelon133.services.graphpathfinder.path;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static ml.echelon133.services.graphpathfinder.path.PathResultBinaryFormat.MAGIC;
+import static ml.echelon133.services.graphpathfinder.path.PathResultBinaryFormat.VERSION;
+
+// Reads results written in PathResultBinaryFormat the way a client would, so that tests can check what was written.
+final class PathResultBinaryReader {
+
+    private static final int MAX_EXPECTED_VERTEX_COUNT = 1 << 20;
+    // bounds sums of weights which are read, far above any sum of weights of an actual graph
+    private static final int MAX_VARINT_BITS = 1024;
+
+    // result read from the binary format, in which ids of vertexes are their positions in the dictionary
+    private static class DecodedPathResult extends PathResult {
+        private int resultCount;
+        private String[] names;
+        private BigDecimal[] sumsOfWeights;
+        private int[] predecessors;
+        private Map<String, Integer> idsOfResultVertexes;
+
+        DecodedPathResult(PathQuery query, int resultCount, String[] names, BigDecimal[] sumsOfWeights, int[] predecessors) {
+            super(query);
+            this.resultCount = resultCount;
+            this.names = names;
+            this.sumsOfWeights = sumsOfWeights;
+            this.predecessors = predecessors;
+            this.idsOfResultVertexes = new HashMap<>();
+            for (int i = 0; i < resultCount; i++) {
+                idsOfResultVertexes.put(names[i], i);
+            }
+        }
+
+        // no path leaves the dictionary, so it bounds the length of every path the same way the graph does
+        @Override
+        public int getGraphVertexCount() {
+            return names.length;
+        }
+
+        @Override
+        public int getVertexCount() {
+            return resultCount;
+        }
+
+        @Override
+        public int getVertexId(int index) {
+            return index;
+        }
+
+        @Override
+        public int findVertexId(String vertexName) {
+            Integer id = idsOfResultVertexes.get(vertexName);
+            return id == null ? -1 : id;
+        }
+
+        @Override
+        public String getVertexName(int vertexId) {
+            return names[vertexId];
+        }
+
+        @Override
+        public int getPredecessor(int vertexId) {
+            return predecessors[vertexId];
+        }
+
+        @Override
+        public BigDecimal getSumOfWeights(int vertexId) {
+            return sumsOfWeights[vertexId];
+        }
+    }
+
+    private PathResultBinaryReader() {
+    }
+
+    // any malformed input results in an IOException
+    static PathResult read(PathQuery query, InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+
+        byte[] magic = new byte[MAGIC.length];
+        data.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Input is not a path result in the binary path result format");
+        }
+        int version = data.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException(String.format("Version %d of the binary path result format is not supported", version));
+        }
+
+        int scale = readVarint(data);
+        int resultCount = readVarint(data);
+        int vertexCount = readVarint(data);
+        if (resultCount > vertexCount) {
+            throw new IOException(String.format("Result of %d vertexes cannot have a dictionary of %d vertexes", resultCount, vertexCount));
+        }
+
+        // names and the buffer of a name grow while they are read, so that a corrupted length cannot make the decoder
+        // allocate huge arrays. Other columns are allocated only after every name has been read
+        int capacity = Math.min(vertexCount, MAX_EXPECTED_VERTEX_COUNT);
+        String[] names = new String[capacity];
+        byte[] nameBuffer = new byte[64];
+        for (int p = 0; p < vertexCount; p++) {
+            int length = readVarint(data);
+            int read = Math.min(length, nameBuffer.length);
+            data.readFully(nameBuffer, 0, read);
+            while (read < length) {
+                // the buffer is only ever twice as large as the part of the name which has been read
+                nameBuffer = Arrays.copyOf(nameBuffer, (int) Math.min(length, 2L * nameBuffer.length));
+                data.readFully(nameBuffer, read, nameBuffer.length - read);
+                read = nameBuffer.length;
+            }
+            if (p == names.length) {
+                names = Arrays.copyOf(names, Math.min(names.length * 2, vertexCount));
+            }
+            names[p] = new String(nameBuffer, 0, length, StandardCharsets.UTF_8);
+        }
+
+        BigDecimal[] sumsOfWeights = new BigDecimal[vertexCount];
+        for (int p = 0; p < vertexCount; p++) {
+            sumsOfWeights[p] = new BigDecimal(readUnsignedVarint(data), scale);
+        }
+        for (int p = 0; p < vertexCount; p++) {
+            int trailingZeros = readVarint(data);
+            try {
+                sumsOfWeights[p] = sumsOfWeights[p].setScale(scale - trailingZeros);
+            } catch (ArithmeticException ex) {
+                throw new IOException(String.format("Sum of weights of vertex '%s' does not have %d trailing zeros",
+                        names[p], trailingZeros));
+            }
+        }
+        int[] predecessors = new int[vertexCount];
+        for (int p = 0; p < vertexCount; p++) {
+            int predecessor = readVarint(data);
+            if (predecessor > vertexCount) {
+                throw new IOException(String.format("Vertex '%s' has predecessor %d, which is not present in the dictionary",
+                        names[p], predecessor - 1));
+            }
+            predecessors[p] = predecessor - 1;
+        }
+
+        if (data.read() != -1) {
+            throw new IOException("Unexpected data after the end of the path result");
+        }
+        return new DecodedPathResult(query, resultCount, names, sumsOfWeights, predecessors);
+    }
+
+    // reads a varint which has to fit in a non-negative int
+    private static int readVarint(DataInputStream data) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = data.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0 || (shift == 28 && b > 0x07)) {
+                    break;
+                }
+                return value;
+            }
+        }
+        throw new IOException("Varint in the binary path result format does not fit in a non-negative int");
+    }
+
+    private static BigInteger readUnsignedVarint(DataInputStream data) throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = data.readUnsignedByte();
+            if (shift == 63) {
+                // the rest of a value which does not fit in a long
+                return readRemainingVarint(data, BigInteger.valueOf(value), b);
+            }
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return BigInteger.valueOf(value);
+    }
+
+    private static BigInteger readRemainingVarint(DataInputStream data, BigInteger value, int b) throws IOException {
+        int shift = 63;
+        while (true) {
+            value = value.or(BigInteger.valueOf(b & 0x7F).shiftLeft(shift));
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+            if (shift > MAX_VARINT_BITS) {
+                throw new IOException("Varint in the binary path result format is too long");
+            }
+            b = data.readUnsignedByte();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package ml.echelon133.services.graphpathfinder.path;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ml.echelon133.graph.Graph;
+import ml.echelon133.graph.ShortestPathSolver;
+import ml.echelon133.graph.Vertex;
+import ml.echelon133.graph.VertexResult;
+import ml.echelon133.services.graphpathfinder.GraphPathFinderApp;
+import ml.echelon133.services.graphpathfinder.TestBeans;
+import ml.echelon133.services.graphpathfinder.TestGraphs;
+import ml.echelon133.services.graphpathfinder.engine.CompactGraph;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PathResultSerializerTest {
+
+    private ObjectMapper mapper = GraphPathFinderApp.objectMapper();
+
+    private Graph<BigDecimal> createRandomGraph(Random random, int vertexCount, int edgeCount) {
+        // every weight is unique, so that every shortest path is unique as well
+        List<Integer> weights = new ArrayList<>();
+        for (int i = 1; i <= edgeCount; i++) {
+            weights.add(i);
+        }
+        Collections.shuffle(weights, random);
+        Iterator<Integer> nextWeights = weights.iterator();
+        return TestGraphs.createRandomGraph(random, vertexCount, edgeCount,
+                () -> BigDecimal.valueOf(1L << 20).add(BigDecimal.valueOf(nextWeights.next())));
+    }
+
+    // results are listed in a different order by each solver, so they are compared by vertex name
+    private Map<String, JsonNode> resultsByName(byte[] json) throws Exception {
+        Map<String, JsonNode> results = new HashMap<>();
+        for (JsonNode result : mapper.readTree(json).get("results")) {
+            String name = result.fieldNames().next();
+            results.put(name, result.get(name));
+        }
+        return results;
+    }
+
+    @Test
+    public void serializeWritesSameResultsAsResultMapSerializer() throws Exception {
+        Random random = new Random(5);
+        Graph<BigDecimal> graph = createRandomGraph(random, 100, 400);
+        Vertex<BigDecimal> start = graph.getVertexes().get(0);
+        PathQuery query = PathQuery.startingFrom(start.getName());
+        Map<Vertex<BigDecimal>, VertexResult<BigDecimal>> solverResult = new ShortestPathSolver<>(graph).solveStartingFrom(start);
+
+        CompactGraph compactGraph = CompactGraph.fromGraph(graph);
+        PathResult treeResult = new TreePathResult(query, TestBeans.dijkstraEngine().solve(compactGraph, 0));
+        PathResult wrappedSolverResult = new SolverPathResult(query, graph, solverResult, null);
+
+        // When
+        Map<String, JsonNode> expected = resultsByName(mapper.writeValueAsBytes(solverResult));
+        Map<String, JsonNode> fromTree = resultsByName(mapper.writeValueAsBytes(treeResult));
+        Map<String, JsonNode> fromSolver = resultsByName(mapper.writeValueAsBytes(wrappedSolverResult));
+
+        // Then
+        assertThat(fromTree).isEqualTo(expected);
+        assertThat(fromSolver).isEqualTo(expected);
+    }
+
+    @Test
+    public void serializeWritesOnlyTargetOfPointToPointResult() throws Exception {
+        Random random = new Random(6);
+        Graph<BigDecimal> graph = createRandomGraph(random, 100, 400);
+        Vertex<BigDecimal> start = graph.getVertexes().get(0);
+        Map<Vertex<BigDecimal>, VertexResult<BigDecimal>> solverResult = new ShortestPathSolver<>(graph).solveStartingFrom(start);
+        Vertex<BigDecimal> target = solverResult.keySet().stream().filter(v -> v != start).findFirst().get();
+        PathQuery query = PathQuery.startingFrom(start.getName()).withTarget(target.getName());
+
+        // When
+        Map<String, JsonNode> result = resultsByName(mapper.writeValueAsBytes(new SolverPathResult(query, graph, solverResult, target)));
+
+        // Then
+        assertThat(result.keySet()).containsExactly(target.getName());
+        assertThat(result.get(target.getName()).get("pathToVertex").size()).isEqualTo(solverResult.get(target).getPathToVertex().size());
+    }
+}
@@ -3,24 +3,45 @@ package ml.echelon133.services.graphpathfinder.path;
 import feign.FeignException;
 import feign.Request;
 import feign.Response;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import ml.echelon133.graph.Graph;
 import ml.echelon133.graph.Vertex;
-import ml.echelon133.graph.VertexResult;
 import ml.echelon133.graph.WeightedGraph;
+import ml.echelon133.services.graphpathfinder.GraphPathFinderApp;
+import ml.echelon133.services.graphpathfinder.TestBeans;
+import ml.echelon133.services.graphpathfinder.admission.AdmissionControl;
+import ml.echelon133.services.graphpathfinder.cache.GraphCache;
+import ml.echelon133.services.graphpathfinder.cache.ResultCache;
+import ml.echelon133.services.graphpathfinder.engine.DijkstraEngine;
+import ml.echelon133.services.graphpathfinder.engine.GraphSnapshot;
+import ml.echelon133.services.graphpathfinder.metrics.PipelineMetrics;
 import ml.echelon133.services.graphpathfinder.storageclient.GraphStorageClient;
+import ml.echelon133.services.graphpathfinder.path.exception.GraphDoesNotExistException;
+import ml.echelon133.services.graphpathfinder.path.exception.GraphDoesNotHaveGivenVertexException;
+import ml.echelon133.services.graphpathfinder.path.exception.ServiceOverloadedException;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.ResponseEntity;
 
+import java.io.ByteArrayInputStream;
 import java.math.BigDecimal;
 import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 @RunWith(MockitoJUnitRunner.class)
 public class PathServiceTest {
@@ -28,9 +49,14 @@ public class PathServiceTest {
     @Mock
     private GraphStorageClient graphClient;
 
-    @InjectMocks
     private PathServiceImpl pathService;
 
+    @Before
+    public void before() {
+        GraphCache graphCache = TestBeans.graphCache(graphClient, new SimpleMeterRegistry(), 64);
+        ResultCache resultCache = new ResultCache(new SimpleMeterRegistry(), 64, 30);
+        pathService = TestBeans.pathService(graphCache, resultCache, TestBeans.dijkstraEngine(), GraphPathFinderApp.objectMapper());
+    }
 
     private FeignException createFeignExceptionWithStatus(Integer status) {
         // Really hacky way to create a FeignException on our own...
@@ -74,30 +100,33 @@ public class PathServiceTest {
         testGraph.addEdge(v3Vertex, v1Vertex, new BigDecimal(40));
 
         // Given
-        given(graphClient.getGraph(eq(testGraphId))).willReturn(testGraph);
+        given(graphClient.getGraph(eq(testGraphId))).willReturn(ResponseEntity.ok(GraphSnapshot.fromGraph(testGraph)));
 
         // When
-        Map<Vertex<BigDecimal>, VertexResult<BigDecimal>> result = pathService.calculateShortestPath(testGraphId, "v1");
+        PathResult result = pathService.calculateShortestPath(testGraphId, PathQuery.startingFrom("v1"));
 
         // Then
-        VertexResult<BigDecimal> v1VertexResult = result.get(v1Vertex);
-        VertexResult<BigDecimal> v2VertexResult = result.get(v2Vertex);
-        VertexResult<BigDecimal> v3VertexResult = result.get(v3Vertex);
+
+        // the result is built from a compact copy of the graph, so its vertexes can only be matched by name
+        int v1 = result.findVertexId("v1");
+        int v2 = result.findVertexId("v2");
+        int v3 = result.findVertexId("v3");
 
         // expected v1 --> sumOfWeights = 0      | pathToVertex = []        | previousVertex = null
-        assertThat(v1VertexResult.getSumOfWeights()).isEqualByComparingTo(new BigDecimal(0));
-        assertThat(v1VertexResult.getPreviousVertex()).isNull();
-        assertThat(v1VertexResult.getPathToVertex()).isEqualTo(Collections.EMPTY_LIST);
+        assertThat(result.getSumOfWeights(v1)).isEqualByComparingTo(new BigDecimal(0));
+        assertThat(result.getPredecessor(v1)).isEqualTo(PathResult.NO_PREDECESSOR);
+        assertThat(result.getPathTo(v1)).isEqualTo(Collections.EMPTY_LIST);
 
         // expected v2 --> sumOfWeights = 20     | pathToVertex = [v1]      | previousVertex = v1
-        assertThat(v2VertexResult.getSumOfWeights()).isEqualByComparingTo(new BigDecimal(20));
-        assertThat(v2VertexResult.getPreviousVertex()).isEqualTo(v1Vertex);
-        assertThat(v2VertexResult.getPathToVertex()).isEqualTo(List.of(v1Vertex));
+        assertThat(result.getSumOfWeights(v2)).isEqualByComparingTo(new BigDecimal(20));
+        assertThat(result.getPredecessor(v2)).isEqualTo(v1);
+        assertThat(result.getPathTo(v2)).isEqualTo(List.of("v1"));
 
         // expected v3 --> sumOfWeights = 50     | pathToVertex = [v1, v2]  | previousVertex = v2
-        assertThat(v3VertexResult.getSumOfWeights()).isEqualByComparingTo(new BigDecimal(50));
-        assertThat(v3VertexResult.getPreviousVertex()).isEqualTo(v2Vertex);
-        assertThat(v3VertexResult.getPathToVertex()).isEqualTo(List.of(v1Vertex, v2Vertex));
+        assertThat(result.getSumOfWeights(v3)).isEqualByComparingTo(new BigDecimal(50));
+        assertThat(result.getPredecessor(v3)).isEqualTo(v2);
+        assertThat(result.getPathTo(v3)).isEqualTo(List.of("v1", "v2"));
+        assertThat(result.getVertexCount()).isEqualTo(3);
     }
 
     @Test
@@ -115,7 +144,7 @@ public class PathServiceTest {
 
         // When
         try {
-            Map<Vertex<BigDecimal>, VertexResult<BigDecimal>> result = pathService.calculateShortestPath(graphId, "v1");
+            PathResult result = pathService.calculateShortestPath(graphId, PathQuery.startingFrom("v1"));
         } catch (Exception e) {
             receivedMsg = e.getMessage();
         }
@@ -139,7 +168,7 @@ public class PathServiceTest {
 
         // When
         try {
-            Map<Vertex<BigDecimal>, VertexResult<BigDecimal>> result = pathService.calculateShortestPath(graphId, "v1");
+            PathResult result = pathService.calculateShortestPath(graphId, PathQuery.startingFrom("v1"));
         } catch (Exception e) {
             receivedMsg = e.getMessage();
         }
@@ -162,11 +191,193 @@ public class PathServiceTest {
         testGraph.addVertex(v1Vertex);
 
         // Given
-        given(graphClient.getGraph(eq(testGraphId))).willReturn(testGraph);
+        given(graphClient.getGraph(eq(testGraphId))).willReturn(ResponseEntity.ok(GraphSnapshot.fromGraph(testGraph)));
+
+        // When
+        try {
+            PathResult result = pathService.calculateShortestPath(testGraphId, PathQuery.startingFrom("v2"));
+        } catch (Exception e) {
+            receivedMsg = e.getMessage();
+        }
+
+        // Then
+        assertThat(receivedMsg).isEqualTo(expectedMsg);
+    }
+
+    private Graph<BigDecimal> createTestGraph() {
+        Graph<BigDecimal> testGraph = new WeightedGraph<>();
+        Vertex<BigDecimal> v1Vertex = new Vertex<>("v1");
+        Vertex<BigDecimal> v2Vertex = new Vertex<>("v2");
+        List.of(v1Vertex, v2Vertex).forEach(testGraph::addVertex);
+        testGraph.addEdge(v1Vertex, v2Vertex, new BigDecimal(20));
+        return testGraph;
+    }
+
+    @Test
+    public void calculateShortestPathAsJsonReusesResultOfTheSameGraphVersion() throws Exception {
+        String testGraphId = "abcdefghijklmnoprst";
+
+        // Given
+        given(graphClient.getGraph(eq(testGraphId))).willReturn(ResponseEntity.ok().eTag("\"1\"").body(GraphSnapshot.fromGraph(createTestGraph())));
+
+        // When
+        byte[] first = pathService.calculateShortestPathAsJson(testGraphId, PathQuery.startingFrom("v1"));
+        byte[] second = pathService.calculateShortestPathAsJson(testGraphId, PathQuery.startingFrom("v1"));
+        byte[] otherStart = pathService.calculateShortestPathAsJson(testGraphId, PathQuery.startingFrom("v2"));
+
+        // Then
+        assertThat(new String(first)).contains("\"sumOfWeights\":20");
+        assertThat(second).isSameAs(first);
+        assertThat(otherStart).isNotSameAs(first);
+        verify(graphClient, times(1)).getGraph(testGraphId);
+    }
+
+    @Test
+    public void calculateShortestPathAsJsonRecordsEveryStageTaggedBySizeOfGraph() throws Exception {
+        String testGraphId = "abcdefghijklmnoprst";
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        PipelineMetrics pipelineMetrics = TestBeans.pipelineMetrics(meterRegistry);
+        GraphCache graphCache = new GraphCache(graphClient, new SimpleMeterRegistry(), 64, 30, "long", Runnable::run,
+                TestBeans.graphSnapshotFiles(), TestBeans.incrementalRecomputation(), false, pipelineMetrics);
+        DijkstraEngine engine = new DijkstraEngine("auto", TestBeans.BIDIRECTIONAL_MIN_VERTEX_COUNT, TestBeans.LANDMARK_COUNT,
+                TestBeans.deltaStepping(), pipelineMetrics);
+        PathService measuredService = new PathServiceImpl(graphCache, new ResultCache(new SimpleMeterRegistry(), 64, 30),
+                engine, GraphPathFinderApp.objectMapper(), ForkJoinPool.commonPool(), TestBeans.admissionControl(),
+                TestBeans.allPairsPrecomputation(), TestBeans.contractionHierarchies(), TestBeans.incrementalRecomputation(),
+                pipelineMetrics);
+
+        // Given
+        given(graphClient.getGraph(eq(testGraphId))).willReturn(ResponseEntity.ok().eTag("\"1\"").body(GraphSnapshot.fromGraph(createTestGraph())));
+
+        // When
+        byte[] first = measuredService.calculateShortestPathAsJson(testGraphId, PathQuery.startingFrom("v1"));
+        byte[] second = measuredService.calculateShortestPathAsJson(testGraphId, PathQuery.startingFrom("v1"));
+
+        // Then
+        for (String stage : List.of("fetch", "conversion", "search", "serialization")) {
+            assertThat(meterRegistry.get("path.stage").tag("stage", stage).tag("size", "small").timer().count()).isEqualTo(1);
+        }
+        // both vertexes are settled, and the only edge is relaxed
+        assertThat(meterRegistry.get("engine.search.settled-vertexes").summary().totalAmount()).isEqualTo(2);
+        assertThat(meterRegistry.get("engine.search.relaxed-edges").summary().totalAmount()).isEqualTo(1);
+        assertThat(meterRegistry.get("engine.search.peak-queue-size").summary().max()).isEqualTo(1);
+        // a cached result is a response as well
+        DistributionSummary responseSize = meterRegistry.get("path.response.size").tag("format", "json").summary();
+        assertThat(responseSize.count()).isEqualTo(2);
+        assertThat(responseSize.totalAmount()).isEqualTo(first.length + second.length);
+    }
+
+    @Test
+    public void evictGraphCausesGraphAndResultsToBeCalculatedAgain() throws Exception {
+        String testGraphId = "abcdefghijklmnoprst";
+
+        // Given
+        given(graphClient.getGraph(eq(testGraphId))).willReturn(ResponseEntity.ok(GraphSnapshot.fromGraph(createTestGraph())));
+
+        // When
+        byte[] first = pathService.calculateShortestPathAsJson(testGraphId, PathQuery.startingFrom("v1"));
+        pathService.evictGraph(testGraphId);
+        byte[] second = pathService.calculateShortestPathAsJson(testGraphId, PathQuery.startingFrom("v1"));
+
+        // Then
+        assertThat(second).isNotSameAs(first);
+        assertThat(second).isEqualTo(first);
+        verify(graphClient, times(2)).getGraph(testGraphId);
+    }
+
+    @Test
+    public void calculateShortestPathReturnsOnlyTargetWhenTargetGiven() throws Exception {
+        String testGraphId = "abcdefghijklmnoprst";
+
+        // prepare a test graph with a vertex which cannot be reached from v1
+        Graph<BigDecimal> testGraph = new WeightedGraph<>();
+        Vertex<BigDecimal> v1Vertex = new Vertex<>("v1");
+        Vertex<BigDecimal> v2Vertex = new Vertex<>("v2");
+        Vertex<BigDecimal> v3Vertex = new Vertex<>("v3");
+        Vertex<BigDecimal> v4Vertex = new Vertex<>("v4");
+        List.of(v1Vertex, v2Vertex, v3Vertex, v4Vertex).forEach(testGraph::addVertex);
+        testGraph.addEdge(v1Vertex, v2Vertex, new BigDecimal(20));
+        testGraph.addEdge(v2Vertex, v3Vertex, new BigDecimal(30));
+        testGraph.addEdge(v1Vertex, v3Vertex, new BigDecimal(60));
+
+        // Given
+        given(graphClient.getGraph(eq(testGraphId))).willReturn(ResponseEntity.ok(GraphSnapshot.fromGraph(testGraph)));
+
+        // When
+        PathResult result = pathService.calculateShortestPath(testGraphId, PathQuery.startingFrom("v1").withTarget("v3"));
+        PathResult unreachable = pathService.calculateShortestPath(testGraphId, PathQuery.startingFrom("v1").withTarget("v4"));
+
+        // Then
+        assertThat(result.getVertexCount()).isEqualTo(1);
+        int v3 = result.getVertexId(0);
+
+        // expected v3 --> sumOfWeights = 50     | pathToVertex = [v1, v2]  | previousVertex = v2
+        assertThat(result.getVertexName(v3)).isEqualTo("v3");
+        assertThat(result.getSumOfWeights(v3)).isEqualByComparingTo(new BigDecimal(50));
+        assertThat(result.getVertexName(result.getPredecessor(v3))).isEqualTo("v2");
+        assertThat(result.getPathTo(v3)).isEqualTo(List.of("v1", "v2"));
+
+        assertThat(unreachable.getVertexCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void calculateShortestPathReturnsOnlyNearestVertexesWithinBounds() throws Exception {
+        String testGraphId = "abcdefghijklmnoprst";
+
+        // distances from v1: v1 = 0, v2 = 20, v3 = 50, v4 = 60
+        Graph<BigDecimal> testGraph = new WeightedGraph<>();
+        Vertex<BigDecimal> v1Vertex = new Vertex<>("v1");
+        Vertex<BigDecimal> v2Vertex = new Vertex<>("v2");
+        Vertex<BigDecimal> v3Vertex = new Vertex<>("v3");
+        Vertex<BigDecimal> v4Vertex = new Vertex<>("v4");
+        List.of(v1Vertex, v2Vertex, v3Vertex, v4Vertex).forEach(testGraph::addVertex);
+        testGraph.addEdge(v1Vertex, v2Vertex, new BigDecimal(20));
+        testGraph.addEdge(v2Vertex, v3Vertex, new BigDecimal(30));
+        testGraph.addEdge(v1Vertex, v3Vertex, new BigDecimal(60));
+        testGraph.addEdge(v3Vertex, v4Vertex, new BigDecimal(10));
+
+        // Given
+        given(graphClient.getGraph(eq(testGraphId))).willReturn(ResponseEntity.ok(GraphSnapshot.fromGraph(testGraph)));
+        PathQuery query = PathQuery.startingFrom("v1");
+
+        // When
+        PathResult withinDistance = pathService.calculateShortestPath(testGraphId, query.withMaxDistance(new BigDecimal("50.0")));
+        PathResult nearest = pathService.calculateShortestPath(testGraphId, query.withLimit(2));
+        PathResult targets = pathService.calculateShortestPath(testGraphId, query.withTargets(List.of("v4", "v3")));
+        PathResult targetsWithinDistance = pathService.calculateShortestPath(testGraphId,
+                query.withTargets(List.of("v4")).withMaxDistance(new BigDecimal(55)));
+
+        // Then
+        assertThat(vertexNamesOf(withinDistance)).isEqualTo(List.of("v1", "v2", "v3"));
+        assertThat(vertexNamesOf(nearest)).isEqualTo(List.of("v1", "v2"));
+        assertThat(vertexNamesOf(targets)).isEqualTo(List.of("v3", "v4"));
+        assertThat(targets.getSumOfWeights(targets.findVertexId("v4"))).isEqualByComparingTo(new BigDecimal(60));
+        assertThat(targets.getPathTo(targets.findVertexId("v4"))).isEqualTo(List.of("v1", "v2", "v3"));
+        assertThat(targets.findVertexId("v2")).isEqualTo(-1);
+        assertThat(targetsWithinDistance.getVertexCount()).isEqualTo(0);
+    }
+
+    private List<String> vertexNamesOf(PathResult result) {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < result.getVertexCount(); i++) {
+            names.add(result.getVertexName(result.getVertexId(i)));
+        }
+        return names;
+    }
+
+    @Test
+    public void calculateShortestPathThrowsExceptionWhenAnyOfTargetsNotInGraph() throws Exception {
+        String testGraphId = "abcdefghijklmnoprst";
+
+        String expectedMsg = String.format("Graph with ID %s does not have a vertex with name %s", testGraphId, "v5");
+        String receivedMsg = "";
+
+        // Given
+        given(graphClient.getGraph(eq(testGraphId))).willReturn(ResponseEntity.ok(GraphSnapshot.fromGraph(createTestGraph())));
 
         // When
         try {
-            Map<Vertex<BigDecimal>, VertexResult<BigDecimal>> result = pathService.calculateShortestPath(testGraphId, "v2");
+            pathService.calculateShortestPath(testGraphId, PathQuery.startingFrom("v1").withTargets(List.of("v2", "v5")));
         } catch (Exception e) {
             receivedMsg = e.getMessage();
         }
@@ -174,4 +385,243 @@ public class PathServiceTest {
         // Then
         assertThat(receivedMsg).isEqualTo(expectedMsg);
     }
+
+    @Test
+    public void calculateShortestPathThrowsExceptionWhenTargetVertexNameNotInGraph() throws Exception {
+        String testGraphId = "abcdefghijklmnoprst";
+
+        String expectedMsg = String.format("Graph with ID %s does not have a vertex with name %s", testGraphId, "v5");
+        String receivedMsg = "";
+
+        // Given
+        given(graphClient.getGraph(eq(testGraphId))).willReturn(ResponseEntity.ok(GraphSnapshot.fromGraph(createTestGraph())));
+
+        // When
+        try {
+            pathService.calculateShortestPath(testGraphId, PathQuery.startingFrom("v1").withTarget("v5"));
+        } catch (Exception e) {
+            receivedMsg = e.getMessage();
+        }
+
+        // Then
+        assertThat(receivedMsg).isEqualTo(expectedMsg);
+    }
+
+    @Test
+    public void calculateShortestPathAsJsonLeavesOutPathsWhenNotIncluded() throws Exception {
+        String testGraphId = "abcdefghijklmnoprst";
+
+        // Given
+        given(graphClient.getGraph(eq(testGraphId))).willReturn(ResponseEntity.ok(GraphSnapshot.fromGraph(createTestGraph())));
+
+        // When
+        String withPaths = new String(pathService.calculateShortestPathAsJson(testGraphId, PathQuery.startingFrom("v1")));
+        String withoutPaths = new String(pathService.calculateShortestPathAsJson(testGraphId,
+                PathQuery.startingFrom("v1").withIncludePaths(IncludePaths.NONE)));
+        String targetOnly = new String(pathService.calculateShortestPathAsJson(testGraphId,
+                PathQuery.startingFrom("v1").withTarget("v2").withIncludePaths(IncludePaths.TARGET_ONLY)));
+
+        // Then
+        assertThat(withPaths).isEqualTo("{\"results\":[" +
+                "{\"v1\":{\"previousVertex\":null,\"sumOfWeights\":0,\"pathToVertex\":[]}}," +
+                "{\"v2\":{\"previousVertex\":\"v1\",\"sumOfWeights\":20,\"pathToVertex\":[\"v1\"]}}]}");
+        assertThat(withoutPaths).isEqualTo("{\"results\":[" +
+                "{\"v1\":{\"previousVertex\":null,\"sumOfWeights\":0}}," +
+                "{\"v2\":{\"previousVertex\":\"v1\",\"sumOfWeights\":20}}]}");
+        assertThat(targetOnly).isEqualTo("{\"results\":[" +
+                "{\"v2\":{\"previousVertex\":\"v1\",\"sumOfWeights\":20,\"pathToVertex\":[\"v1\"]}}]}");
+    }
+
+    @Test
+    public void calculateShortestPathEncodedCachesEveryEncodingApart() throws Exception {
+        String testGraphId = "abcdefghijklmnoprst";
+        PathQuery query = PathQuery.startingFrom("v1");
+
+        // Given
+        given(graphClient.getGraph(eq(testGraphId))).willReturn(ResponseEntity.ok().eTag("\"1\"").body(GraphSnapshot.fromGraph(createTestGraph())));
+
+        // When
+        byte[] json = pathService.calculateShortestPathEncoded(testGraphId, query, ResultEncoding.JSON);
+        byte[] gzipped = pathService.calculateShortestPathEncoded(testGraphId, query, ResultEncoding.GZIPPED_JSON);
+        byte[] binary = pathService.calculateShortestPathEncoded(testGraphId, query, ResultEncoding.BINARY);
+        byte[] cachedGzipped = pathService.calculateShortestPathEncoded(testGraphId, query, ResultEncoding.GZIPPED_JSON);
+        byte[] cachedBinary = pathService.calculateShortestPathEncoded(testGraphId, query, ResultEncoding.BINARY);
+
+        // Then
+        assertThat(new GZIPInputStream(new ByteArrayInputStream(gzipped)).readAllBytes()).isEqualTo(json);
+        PathResult decoded = PathResultBinaryReader.read(query, new ByteArrayInputStream(binary));
+        assertThat(GraphPathFinderApp.objectMapper().writeValueAsBytes(decoded)).isEqualTo(json);
+        assertThat(cachedGzipped).isSameAs(gzipped);
+        assertThat(cachedBinary).isSameAs(binary);
+        verify(graphClient, times(1)).getGraph(testGraphId);
+    }
+
+    @Test
+    public void createBatchSolvesEveryQueryOverGraphLoadedOnce() throws Exception {
+        String testGraphId = "abcdefghijklmnoprst";
+
+        // prepare a cycle v1 -> v2 -> v3 -> v1
+        Graph<BigDecimal> testGraph = new WeightedGraph<>();
+        Vertex<BigDecimal> v1Vertex = new Vertex<>("v1");
+        Vertex<BigDecimal> v2Vertex = new Vertex<>("v2");
+        Vertex<BigDecimal> v3Vertex = new Vertex<>("v3");
+        List.of(v1Vertex, v2Vertex, v3Vertex).forEach(testGraph::addVertex);
+        testGraph.addEdge(v1Vertex, v2Vertex, new BigDecimal(20));
+        testGraph.addEdge(v2Vertex, v3Vertex, new BigDecimal(30));
+        testGraph.addEdge(v3Vertex, v1Vertex, new BigDecimal(40));
+
+        // Given
+        given(graphClient.getGraph(eq(testGraphId))).willReturn(ResponseEntity.ok(GraphSnapshot.fromGraph(testGraph)));
+
+        // When
+        PathBatch batch = pathService.createBatch(testGraphId,
+                List.of(PathQuery.startingFrom("v1"), PathQuery.startingFrom("v2"), PathQuery.startingFrom("v3").withTarget("v2")));
+        Map<String, PathResult> results = new HashMap<>();
+        batch.forEachResult(result -> results.put(result.getQuery().getStartVertexName(), result));
+
+        // Then
+        assertThat(results.size()).isEqualTo(3);
+
+        PathResult fromV1 = results.get("v1");
+        assertThat(fromV1.getSumOfWeights(fromV1.findVertexId("v3"))).isEqualByComparingTo(new BigDecimal(50));
+
+        PathResult fromV2 = results.get("v2");
+        assertThat(fromV2.getSumOfWeights(fromV2.findVertexId("v1"))).isEqualByComparingTo(new BigDecimal(70));
+        assertThat(fromV2.getPathTo(fromV2.findVertexId("v1"))).isEqualTo(List.of("v2", "v3"));
+
+        PathResult fromV3 = results.get("v3");
+        assertThat(fromV3.getVertexCount()).isEqualTo(1);
+        assertThat(fromV3.getSumOfWeights(fromV3.getVertexId(0))).isEqualByComparingTo(new BigDecimal(60));
+
+        verify(graphClient, times(1)).getGraph(testGraphId);
+    }
+
+    @Test
+    public void createBatchThrowsExceptionWhenAnyVertexNameNotInGraph() throws Exception {
+        String testGraphId = "abcdefghijklmnoprst";
+
+        String expectedMsg = String.format("Graph with ID %s does not have a vertex with name %s", testGraphId, "v5");
+        String receivedMsg = "";
+
+        // Given
+        given(graphClient.getGraph(eq(testGraphId))).willReturn(ResponseEntity.ok(GraphSnapshot.fromGraph(createTestGraph())));
+
+        // When
+        try {
+            pathService.createBatch(testGraphId, List.of(PathQuery.startingFrom("v1"), PathQuery.startingFrom("v2").withTarget("v5")));
+        } catch (GraphDoesNotHaveGivenVertexException e) {
+            receivedMsg = e.getMessage();
+        }
+
+        // Then
+        assertThat(receivedMsg).isEqualTo(expectedMsg);
+    }
+
+    @Test
+    public void calculateShortestPathAsJsonAsyncCompletesWithResult() throws Exception {
+        String testGraphId = "abcdefghijklmnoprst";
+
+        // Given
+        given(graphClient.getGraph(eq(testGraphId))).willReturn(ResponseEntity.ok(GraphSnapshot.fromGraph(createTestGraph())));
+
+        // When
+        byte[] asyncResult = pathService.calculateShortestPathAsJsonAsync(testGraphId, PathQuery.startingFrom("v1")).get();
+        byte[] result = pathService.calculateShortestPathAsJson(testGraphId, PathQuery.startingFrom("v1"));
+
+        // Then
+        assertThat(new String(asyncResult)).isEqualTo(new String(result));
+        verify(graphClient, times(1)).getGraph(testGraphId);
+    }
+
+    @Test
+    public void calculateShortestPathAsyncFailsWhenGraphDoesNotExist() throws Exception {
+        String testGraphId = "abcdefghijklmnoprst";
+
+        String expectedMsg = String.format("Graph with ID %s does not exist. Cannot find shortest paths", testGraphId);
+        Throwable received = null;
+
+        // Given
+        given(graphClient.getGraph(eq(testGraphId))).willThrow(createFeignExceptionWithStatus(404));
+
+        // When
+        try {
+            pathService.calculateShortestPathAsync(testGraphId, PathQuery.startingFrom("v1")).get();
+        } catch (ExecutionException e) {
+            received = e.getCause();
+        }
+
+        // Then
+        assertThat(received).isInstanceOf(GraphDoesNotExistException.class);
+        assertThat(received.getMessage()).isEqualTo(expectedMsg);
+    }
+
+    @Test
+    public void calculateShortestPathAsyncFailsWhenSolverHasTooMuchWork() throws Exception {
+        String testGraphId = "abcdefghijklmnoprst";
+        // a single lane with a single thread, which admits no more work than a single search
+        AdmissionControl admissionControl = new AdmissionControl(1, 1, 1, 1, Long.MAX_VALUE, false);
+        PathService overloadedService = createServiceWith(admissionControl);
+
+        String expectedMsg = String.format("Too many searches are waiting to run. Cannot find shortest paths in graph with ID %s right now", testGraphId);
+        Throwable received = null;
+        CountDownLatch blockingSearch = new CountDownLatch(1);
+
+        // Given
+        given(graphClient.getGraph(eq(testGraphId))).willReturn(ResponseEntity.ok(GraphSnapshot.fromGraph(createTestGraph())));
+        admissionControl.submit("other", 1, () -> blockingSearch.await(10, TimeUnit.SECONDS));
+
+        // When
+        try {
+            overloadedService.calculateShortestPathAsJsonAsync(testGraphId, PathQuery.startingFrom("v1")).get();
+        } catch (ExecutionException e) {
+            received = e.getCause();
+        } finally {
+            blockingSearch.countDown();
+            admissionControl.shutdown();
+        }
+
+        // Then
+        assertThat(received).isInstanceOf(ServiceOverloadedException.class);
+        assertThat(received.getMessage()).isEqualTo(expectedMsg);
+        assertThat(((ServiceOverloadedException) received).getRetryAfterSeconds()).isBetween(1L, 60L);
+    }
+
+    @Test
+    public void createBatchAsyncFailsWhenSolverHasTooMuchWork() throws Exception {
+        String testGraphId = "abcdefghijklmnoprst";
+        // a single lane which admits no more than a single batch over the test graph at a time
+        AdmissionControl admissionControl = new AdmissionControl(1, 10, 1, 10, Long.MAX_VALUE, false);
+        PathService overloadedService = createServiceWith(admissionControl);
+        List<PathQuery> queries = List.of(PathQuery.startingFrom("v1"), PathQuery.startingFrom("v2"));
+
+        Throwable received = null;
+
+        // Given
+        given(graphClient.getGraph(eq(testGraphId))).willReturn(ResponseEntity.ok(GraphSnapshot.fromGraph(createTestGraph())));
+
+        // When
+        PathBatch first = overloadedService.createBatchAsync(testGraphId, queries).get();
+        try {
+            overloadedService.createBatchAsync(testGraphId, queries).get();
+        } catch (ExecutionException e) {
+            received = e.getCause();
+        }
+        first.forEachResult(result -> {});
+        PathBatch afterFirst = overloadedService.createBatchAsync(testGraphId, queries).get();
+        admissionControl.shutdown();
+
+        // Then
+        assertThat(received).isInstanceOf(ServiceOverloadedException.class);
+        assertThat(((ServiceOverloadedException) received).getRetryAfterSeconds()).isBetween(1L, 60L);
+        assertThat(afterFirst.size()).isEqualTo(2);
+    }
+
+    private PathService createServiceWith(AdmissionControl admissionControl) {
+        GraphCache graphCache = TestBeans.graphCache(graphClient, new SimpleMeterRegistry(), 64);
+        ResultCache resultCache = new ResultCache(new SimpleMeterRegistry(), 64, 30);
+        return new PathServiceImpl(graphCache, resultCache, TestBeans.dijkstraEngine(),
+                GraphPathFinderApp.objectMapper(), ForkJoinPool.commonPool(), admissionControl,
+                TestBeans.allPairsPrecomputation(), TestBeans.contractionHierarchies(), TestBeans.incrementalRecomputation(),
+                TestBeans.pipelineMetrics());
+    }
 }
@@ -0,0 +1,260 @@
+package ml.echelon133.services.graphpathfinder.routing;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ml.echelon133.services.graphpathfinder.TestBeans;
+import ml.echelon133.services.graphpathfinder.path.exception.ServiceOverloadedException;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.discovery.simple.SimpleDiscoveryClient;
+import org.springframework.cloud.client.discovery.simple.SimpleDiscoveryProperties;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class GraphRoutingTest {
+
+    private static final String SERVICE_ID = "graph-path-finder-service";
+    private static final int GRAPH_COUNT = 3000;
+
+    // local stand-in for the registry, which every instance reads
+    private SimpleDiscoveryProperties registry = new SimpleDiscoveryProperties();
+    private SimpleDiscoveryClient discoveryClient = new SimpleDiscoveryClient(registry);
+
+    private HttpServer ownerServer;
+
+    @After
+    public void after() {
+        if (ownerServer != null) {
+            ownerServer.stop(0);
+        }
+    }
+
+    // an instance in the registry, which is also the registration of the instance it stands for
+    private static class RegisteredInstance extends SimpleDiscoveryProperties.SimpleServiceInstance implements Registration {
+        RegisteredInstance(URI uri) {
+            super(uri);
+        }
+    }
+
+    private RegisteredInstance register(String uri) {
+        RegisteredInstance instance = new RegisteredInstance(URI.create(uri));
+        instance.setServiceId(SERVICE_ID);
+        registry.getInstances().computeIfAbsent(SERVICE_ID, id -> new ArrayList<>()).add(instance);
+        return instance;
+    }
+
+    private GraphRouting createRouting(RegisteredInstance self, long requestTimeoutMs) {
+        return new GraphRouting(TestBeans.providerOf(DiscoveryClient.class, discoveryClient),
+                TestBeans.providerOf(Registration.class, self), SERVICE_ID, true, 128, 1000, requestTimeoutMs);
+    }
+
+    private GraphRouting createRouting(RegisteredInstance self) {
+        return createRouting(self, 30000);
+    }
+
+    // owner of every graph as seen by the given instance, null standing for the instance itself
+    private Map<String, String> ownersSeenBy(ServiceInstance self, GraphRouting routing) {
+        Map<String, String> owners = new HashMap<>();
+        for (int i = 0; i < GRAPH_COUNT; i++) {
+            ServiceInstance owner = routing.findOwner("graph-" + i, new MockHttpServletRequest());
+            owners.put("graph-" + i, GraphRing.keyOf(owner == null ? self : owner));
+        }
+        return owners;
+    }
+
+    @Test
+    public void everyInstanceSeesSameOwnerOfEveryGraphAndOwnersHaveSimilarShares() {
+        List<RegisteredInstance> instances = List.of(
+                register("http://10.0.0.1:8080"), register("http://10.0.0.2:8080"), register("http://10.0.0.3:8080"));
+
+        // When
+        List<Map<String, String>> views = new ArrayList<>();
+        for (RegisteredInstance instance : instances) {
+            views.add(ownersSeenBy(instance, createRouting(instance)));
+        }
+
+        // Then
+        assertThat(views.get(1)).isEqualTo(views.get(0));
+        assertThat(views.get(2)).isEqualTo(views.get(0));
+        for (RegisteredInstance instance : instances) {
+            long owned = views.get(0).values().stream().filter(GraphRing.keyOf(instance)::equals).count();
+            assertThat(owned).isBetween(GRAPH_COUNT / 5L, GRAPH_COUNT / 2L);
+        }
+    }
+
+    @Test
+    public void onlyGraphsOfInstanceWhichJoinsOrLeavesChangeTheirOwner() {
+        RegisteredInstance first = register("http://10.0.0.1:8080");
+        register("http://10.0.0.2:8080");
+        register("http://10.0.0.3:8080");
+        GraphRouting routing = createRouting(first);
+        Map<String, String> before = ownersSeenBy(first, routing);
+
+        // When
+        ServiceInstance joined = register("http://10.0.0.4:8080");
+        routing.refresh();
+        Map<String, String> afterJoin = ownersSeenBy(first, routing);
+        registry.getInstances().get(SERVICE_ID).remove(joined);
+        routing.refresh();
+        Map<String, String> afterLeave = ownersSeenBy(first, routing);
+
+        // Then
+        long moved = 0;
+        for (String graphId : before.keySet()) {
+            if (!afterJoin.get(graphId).equals(before.get(graphId))) {
+                assertThat(afterJoin.get(graphId)).isEqualTo(GraphRing.keyOf(joined));
+                moved++;
+            }
+        }
+        assertThat(moved).isBetween(GRAPH_COUNT / 8L, GRAPH_COUNT / 3L);
+        assertThat(afterLeave).isEqualTo(before);
+    }
+
+    @Test
+    public void forwardedRequestIsServedByInstanceWhichGetsIt() {
+        RegisteredInstance self = register("http://10.0.0.1:8080");
+        register("http://10.0.0.2:8080");
+        GraphRouting routing = createRouting(self);
+        MockHttpServletRequest forwardedRequest = new MockHttpServletRequest();
+        forwardedRequest.addHeader(GraphRouting.FORWARDED_BY_HEADER, "10.0.0.2:8080");
+
+        for (int i = 0; i < 100; i++) {
+            // When
+            ServiceInstance owner = routing.findOwner("graph-" + i, forwardedRequest);
+
+            // Then
+            assertThat(owner).isNull();
+        }
+    }
+
+    @Test
+    public void routeForwardsRequestToOwnerAndPassesItsResponseOn() throws Exception {
+        AtomicReference<String> receivedRequest = new AtomicReference<>();
+        ownerServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        ownerServer.createContext("/api/graphs/", exchange -> {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            receivedRequest.set(String.format("%s %s %s %s", exchange.getRequestMethod(), exchange.getRequestURI(),
+                    exchange.getRequestHeaders().getFirst(GraphRouting.FORWARDED_BY_HEADER), body));
+            byte[] response = "{\"results\":[]}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        ownerServer.start();
+        RegisteredInstance self = register("http://127.0.0.1:1");
+        ServiceInstance owner = register("http://127.0.0.1:" + ownerServer.getAddress().getPort());
+        GraphRouting routing = createRouting(self);
+        String graphId = findGraphOwnedBy(routing, owner);
+
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/graphs/" + graphId + "/paths/batch");
+        request.addParameter("to", "v 2");
+        request.setContentType(MediaType.APPLICATION_JSON_VALUE);
+
+        // When
+        ResponseEntity<byte[]> response = routing.route(graphId, request,
+                o -> routing.forward(o, request, "{\"startFrom\":[\"v1\"]}".getBytes(StandardCharsets.UTF_8)),
+                () -> CompletableFuture.completedFuture(ResponseEntity.noContent().build())).get();
+
+        // Then
+        assertThat(receivedRequest.get()).isEqualTo(String.format("POST /api/graphs/%s/paths/batch?to=v+2 127.0.0.1:1 {\"startFrom\":[\"v1\"]}", graphId));
+        assertThat(response.getStatusCodeValue()).isEqualTo(200);
+        assertThat(new String(response.getBody(), StandardCharsets.UTF_8)).isEqualTo("{\"results\":[]}");
+        assertThat(response.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_JSON);
+        assertThat(response.getHeaders().getFirst(GraphRouting.OWNER_HEADER)).isEqualTo(GraphRing.keyOf(owner));
+    }
+
+    @Test
+    public void routeServesRequestLocallyWhenOwnerCannotBeReached() throws Exception {
+        // nothing listens on a port which has been closed
+        int port;
+        try (ServerSocket closed = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = closed.getLocalPort();
+        }
+        RegisteredInstance self = register("http://127.0.0.1:1");
+        ServiceInstance owner = register("http://127.0.0.1:" + port);
+        GraphRouting routing = createRouting(self);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        routing.bindTo(meterRegistry);
+        String graphId = findGraphOwnedBy(routing, owner);
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/graphs/" + graphId + "/paths");
+
+        // When
+        ResponseEntity<byte[]> response = routing.route(graphId, request, o -> routing.forward(o, request, null),
+                () -> CompletableFuture.completedFuture(ResponseEntity.noContent().build())).get();
+
+        // Then
+        assertThat(response.getStatusCodeValue()).isEqualTo(204);
+        assertThat(meterRegistry.get("routing.requests").tag("route", "fallback").functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void routeRejectsRequestWhenOwnerDoesNotAnswerInTime() throws Exception {
+        CountDownLatch answer = new CountDownLatch(1);
+        ownerServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        ownerServer.createContext("/api/graphs/", exchange -> {
+            try {
+                answer.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+            }
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        ownerServer.start();
+        RegisteredInstance self = register("http://127.0.0.1:1");
+        ServiceInstance owner = register("http://127.0.0.1:" + ownerServer.getAddress().getPort());
+        GraphRouting routing = createRouting(self, 200);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        routing.bindTo(meterRegistry);
+        String graphId = findGraphOwnedBy(routing, owner);
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/graphs/" + graphId + "/paths");
+
+        // When
+        Throwable thrown;
+        try {
+            thrown = catchThrowable(() -> routing.route(graphId, request, o -> routing.forward(o, request, null),
+                    () -> CompletableFuture.completedFuture(ResponseEntity.noContent().build())).get());
+        } finally {
+            answer.countDown();
+        }
+
+        // Then
+        assertThat(thrown).hasCauseInstanceOf(ServiceOverloadedException.class);
+        assertThat(((ServiceOverloadedException) thrown.getCause()).getRetryAfterSeconds()).isEqualTo(1);
+        assertThat(meterRegistry.get("routing.requests").tag("route", "timeout").functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("routing.requests").tag("route", "fallback").functionCounter().count()).isEqualTo(0);
+    }
+
+    private String findGraphOwnedBy(GraphRouting routing, ServiceInstance owner) {
+        for (int i = 0; ; i++) {
+            ServiceInstance found = routing.findOwner("graph-" + i, new MockHttpServletRequest());
+            if (found != null && GraphRing.keyOf(found).equals(GraphRing.keyOf(owner))) {
+                return "graph-" + i;
+            }
+        }
+    }
+}
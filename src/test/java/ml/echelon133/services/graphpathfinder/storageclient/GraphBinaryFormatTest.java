@@ -0,0 +1,167 @@
+package ml.echelon133.services.graphpathfinder.storageclient;
+
+import ml.echelon133.graph.json.exception.EdgeNullVertexException;
+import ml.echelon133.graph.json.exception.NegativeEdgeWeightException;
+import ml.echelon133.services.graphpathfinder.engine.GraphSnapshot;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class GraphBinaryFormatTest {
+
+    // a graph with vertexes 'v1' and 'v2' and a single edge from 'v1' to the given target, weight scale 1
+    private byte[] createSingleEdgeGraph(int target, long weight) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeBytes("GRPH");
+        data.writeByte(1);
+        data.writeByte(1);
+        data.writeByte(2);
+        data.writeByte(1);
+        data.writeByte(2);
+        data.writeBytes("v1");
+        data.writeByte(2);
+        data.writeBytes("v2");
+        data.writeByte(1);
+        data.writeByte(target);
+        data.writeLong(weight);
+        data.writeByte(0);
+        return bytes.toByteArray();
+    }
+
+    private byte[] write(GraphSnapshot snapshot) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GraphBinaryFormat.write(snapshot, bytes);
+        return bytes.toByteArray();
+    }
+
+    private GraphSnapshot read(byte[] bytes) throws IOException {
+        return GraphBinaryFormat.read(new ByteArrayInputStream(bytes));
+    }
+
+    @Test
+    public void readReturnsWrittenGraph() throws Exception {
+        GraphSnapshot snapshot = new GraphSnapshot();
+        int[] ids = new int[300];
+        for (int i = 0; i < ids.length; i++) {
+            // long names and ids which take more than one varint byte
+            ids[i] = snapshot.addVertex("\u0105\u0119-" + "x".repeat(i));
+        }
+        snapshot.addEdge(ids[299], ids[0], new BigDecimal("0.125"));
+        snapshot.addEdge(ids[0], ids[299], new BigDecimal("40"));
+        snapshot.addEdge(ids[0], ids[150], BigDecimal.ZERO);
+
+        // When
+        GraphSnapshot received = read(write(snapshot));
+
+        // Then
+        assertThat(received.getVertexCount()).isEqualTo(300);
+        assertThat(received.getVertexName(ids[299])).isEqualTo(snapshot.getVertexName(ids[299]));
+        assertThat(received.getEdgeCount()).isEqualTo(3);
+        // edges are grouped by their source vertex
+        assertThat(received.getSource(0)).isEqualTo(ids[0]);
+        assertThat(received.getTarget(0)).isEqualTo(ids[299]);
+        assertThat(received.getWeight(0)).isEqualByComparingTo("40");
+        assertThat(received.getTarget(1)).isEqualTo(ids[150]);
+        assertThat(received.getWeight(1)).isEqualByComparingTo("0");
+        assertThat(received.getSource(2)).isEqualTo(ids[299]);
+        assertThat(received.getWeight(2)).isEqualByComparingTo("0.125");
+    }
+
+    @Test
+    public void readReturnsWrittenCoordinates() throws Exception {
+        GraphSnapshot snapshot = new GraphSnapshot();
+        snapshot.addVertex("v1");
+        snapshot.addCoordinates(21.0122, 52.2297);
+        snapshot.addVertex("v2");
+        snapshot.addCoordinates(-0.5, Double.MIN_VALUE);
+        snapshot.addEdge(0, 1, BigDecimal.ONE);
+
+        // When
+        GraphSnapshot received = read(write(snapshot));
+        GraphSnapshot withoutCoordinates = read(createSingleEdgeGraph(1, 25));
+
+        // Then
+        assertThat(received.getCoordinates().getX(0)).isEqualTo(21.0122);
+        assertThat(received.getCoordinates().getY(0)).isEqualTo(52.2297);
+        assertThat(received.getCoordinates().getX(1)).isEqualTo(-0.5);
+        assertThat(received.getCoordinates().getY(1)).isEqualTo(Double.MIN_VALUE);
+        assertThat(withoutCoordinates.getCoordinates()).isNull();
+    }
+
+    @Test
+    public void readAcceptsValidGraph() throws Exception {
+        // When
+        GraphSnapshot received = read(createSingleEdgeGraph(1, 25));
+
+        // Then
+        assertThat(received.getVertexName(received.getSource(0))).isEqualTo("v1");
+        assertThat(received.getVertexName(received.getTarget(0))).isEqualTo("v2");
+        assertThat(received.getWeight(0)).isEqualByComparingTo("2.5");
+    }
+
+    @Test
+    public void readThrowsExceptionWhenWeightNegative() throws Exception {
+        // When
+        Throwable ex = catchThrowable(() -> read(createSingleEdgeGraph(1, -25)));
+
+        // Then
+        assertThat(ex).isInstanceOf(NegativeEdgeWeightException.class).hasMessage("Edge weight cannot be negative");
+    }
+
+    @Test
+    public void readThrowsExceptionWhenTargetVertexDoesNotExist() throws Exception {
+        // When
+        Throwable ex = catchThrowable(() -> read(createSingleEdgeGraph(2, 25)));
+
+        // Then
+        assertThat(ex).isInstanceOf(EdgeNullVertexException.class)
+                .hasMessage("Edge of vertex 'v1' references vertex 2, which is not present in 'vertexes'");
+    }
+
+    @Test
+    public void readThrowsExceptionWhenInputMalformed() throws Exception {
+        byte[] graph = createSingleEdgeGraph(1, 25);
+
+        byte[] wrongMagic = graph.clone();
+        wrongMagic[0] = '{';
+        byte[] wrongVersion = graph.clone();
+        wrongVersion[4] = 3;
+        byte[] wrongEdgeCount = graph.clone();
+        wrongEdgeCount[7] = 2;
+        byte[] trailingData = Arrays.copyOf(graph, graph.length + 1);
+
+        // When
+        Throwable wrongMagicEx = catchThrowable(() -> read(wrongMagic));
+        Throwable wrongVersionEx = catchThrowable(() -> read(wrongVersion));
+        Throwable wrongEdgeCountEx = catchThrowable(() -> read(wrongEdgeCount));
+        Throwable trailingDataEx = catchThrowable(() -> read(trailingData));
+        Throwable truncatedEx = catchThrowable(() -> read(Arrays.copyOf(graph, graph.length - 3)));
+
+        // Then
+        assertThat(wrongMagicEx).isInstanceOf(IOException.class).hasMessage("Input is not a graph in the binary graph format");
+        assertThat(wrongVersionEx).isInstanceOf(IOException.class).hasMessage("Version 3 of the binary graph format is not supported");
+        assertThat(wrongEdgeCountEx).isInstanceOf(IOException.class).hasMessage("Expected 2 edges, but 1 were read");
+        assertThat(trailingDataEx).isInstanceOf(IOException.class).hasMessage("Unexpected data after the end of the graph");
+        assertThat(truncatedEx).isInstanceOf(EOFException.class);
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void writeThrowsExceptionWhenWeightsDoNotFit() throws Exception {
+        GraphSnapshot snapshot = new GraphSnapshot();
+        int v1 = snapshot.addVertex("v1");
+        snapshot.addEdge(v1, v1, new BigDecimal("12345678901234567890.5"));
+
+        // When
+        write(snapshot);
+    }
+}
@@ -0,0 +1,192 @@
+package ml.echelon133.services.graphpathfinder.storageclient;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import ml.echelon133.graph.Edge;
+import ml.echelon133.graph.Graph;
+import ml.echelon133.graph.Vertex;
+import ml.echelon133.graph.json.EdgeSerializer;
+import ml.echelon133.graph.json.GraphDeserializer;
+import ml.echelon133.graph.json.GraphSerializer;
+import ml.echelon133.graph.json.VertexSerializer;
+import ml.echelon133.services.graphpathfinder.GraphPathFinderApp;
+import ml.echelon133.services.graphpathfinder.TestGraphs;
+import ml.echelon133.services.graphpathfinder.engine.CompactGraph;
+import ml.echelon133.services.graphpathfinder.engine.GraphSnapshot;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GraphSnapshotDeserializerTest {
+
+    private ObjectMapper mapper = GraphPathFinderApp.objectMapper();
+
+    private ObjectMapper libraryMapper() {
+        ObjectMapper libraryMapper = new ObjectMapper();
+        SimpleModule module = new SimpleModule();
+        module.addSerializer(new GraphSerializer(libraryMapper.constructType(Graph.class)));
+        module.addSerializer(new VertexSerializer(libraryMapper.constructType(Vertex.class)));
+        module.addSerializer(new EdgeSerializer(libraryMapper.constructType(Edge.class)));
+        module.addDeserializer(Graph.class, new GraphDeserializer(
+                libraryMapper.getTypeFactory().constructParametricType(Graph.class, BigDecimal.class)));
+        libraryMapper.registerModule(module);
+        return libraryMapper;
+    }
+
+    private Graph<BigDecimal> createRandomGraph(Random random, int vertexCount, int edgeCount) {
+        return TestGraphs.createRandomGraph(random, vertexCount, edgeCount,
+                () -> BigDecimal.valueOf(random.nextInt(100_000), random.nextInt(4)));
+    }
+
+    private Exception deserializationError(ObjectMapper objectMapper, String json, Class<?> type) {
+        try {
+            objectMapper.readValue(json, type);
+        } catch (Exception ex) {
+            return ex;
+        }
+        return null;
+    }
+
+    @Test
+    public void deserializeBuildsSameGraphAsGraphDeserializer() throws Exception {
+        ObjectMapper libraryMapper = libraryMapper();
+        Graph<BigDecimal> graph = createRandomGraph(new Random(8), 300, 1200);
+        String json = libraryMapper.writeValueAsString(graph);
+
+        // When
+        GraphSnapshot snapshot = mapper.readValue(json, GraphSnapshot.class);
+        Graph<BigDecimal> expected = libraryMapper.readValue(json, Graph.class);
+
+        // Then
+        CompactGraph fromSnapshot = snapshot.toCompactGraph();
+        CompactGraph fromExpected = CompactGraph.fromGraph(expected);
+        assertThat(fromSnapshot.getVertexCount()).isEqualTo(fromExpected.getVertexCount());
+        assertThat(fromSnapshot.getWeightScale()).isEqualTo(fromExpected.getWeightScale());
+        assertThat(fromSnapshot.getOffsets()).isEqualTo(fromExpected.getOffsets());
+        assertThat(fromSnapshot.getTargets()).isEqualTo(fromExpected.getTargets());
+        assertThat(fromSnapshot.getWeights()).isEqualTo(fromExpected.getWeights());
+
+        // the object graph built from the snapshot has the same edges in the same order
+        List<Edge<BigDecimal>> expectedEdges = expected.getEdges();
+        List<Edge<BigDecimal>> edges = mapper.readValue(json, Graph.class).getEdges();
+        assertThat(edges.size()).isEqualTo(expectedEdges.size());
+        for (int i = 0; i < edges.size(); i++) {
+            assertThat(edges.get(i).getSource().getName()).isEqualTo(expectedEdges.get(i).getSource().getName());
+            assertThat(edges.get(i).getDestination().getName()).isEqualTo(expectedEdges.get(i).getDestination().getName());
+            assertThat(edges.get(i).getWeight()).isEqualByComparingTo(expectedEdges.get(i).getWeight());
+        }
+    }
+
+    @Test
+    public void deserializeReadsDecimalWeightsExactly() throws Exception {
+        String json = "{\"vertexes\":[\"v1\",\"v2\"],\"edges\":[" +
+                "{\"source\":\"v1\",\"destination\":\"v2\",\"weight\":1.50}," +
+                "{\"source\":\"v2\",\"destination\":\"v1\",\"weight\":2.5e-1}," +
+                "{\"source\":\"v1\",\"destination\":\"v1\",\"weight\":3E2}," +
+                "{\"source\":\"v2\",\"destination\":\"v2\",\"weight\":12345678901234567890123}]}";
+
+        // When
+        GraphSnapshot snapshot = mapper.readValue(json, GraphSnapshot.class);
+
+        // Then
+        assertThat(snapshot.getWeight(0)).isEqualByComparingTo("1.5");
+        assertThat(snapshot.getWeight(1)).isEqualByComparingTo("0.25");
+        assertThat(snapshot.getWeight(2)).isEqualByComparingTo("300");
+        assertThat(snapshot.getWeight(3)).isEqualByComparingTo("12345678901234567890123");
+    }
+
+    @Test
+    public void deserializeAcceptsEdgesBeforeVertexes() throws Exception {
+        String json = "{\"edges\":[{\"weight\":4,\"destination\":\"v2\",\"source\":\"v1\",\"label\":{\"a\":[1]}}]," +
+                "\"name\":\"test\",\"vertexes\":[\"v1\",\"v2\"]}";
+
+        // When
+        GraphSnapshot snapshot = mapper.readValue(json, GraphSnapshot.class);
+
+        // Then
+        assertThat(snapshot.getVertexCount()).isEqualTo(2);
+        assertThat(snapshot.getEdgeCount()).isEqualTo(1);
+        assertThat(snapshot.getVertexName(snapshot.getSource(0))).isEqualTo("v1");
+        assertThat(snapshot.getVertexName(snapshot.getTarget(0))).isEqualTo("v2");
+        assertThat(snapshot.getWeight(0)).isEqualByComparingTo("4");
+    }
+
+    @Test
+    public void deserializeReadsCoordinatesOfVertexes() throws Exception {
+        String json = "{\"vertexes\":[\"v1\",\"v2\"],\"coordinates\":[[21.0122, 52.2297],[-0.5, 1e2]]," +
+                "\"edges\":[{\"source\":\"v1\",\"destination\":\"v2\",\"weight\":1}]}";
+
+        // When
+        GraphSnapshot snapshot = mapper.readValue(json, GraphSnapshot.class);
+        CompactGraph graph = snapshot.toCompactGraph();
+
+        // Then
+        assertThat(graph.getCoordinates().getVertexCount()).isEqualTo(2);
+        assertThat(graph.getCoordinates().getX(0)).isEqualTo(21.0122);
+        assertThat(graph.getCoordinates().getY(0)).isEqualTo(52.2297);
+        assertThat(graph.getCoordinates().getX(1)).isEqualTo(-0.5);
+        assertThat(graph.getCoordinates().getY(1)).isEqualTo(100);
+    }
+
+    @Test
+    public void deserializeThrowsWhenCoordinatesInvalid() {
+        List<String> invalidDocuments = List.of(
+                "{\"vertexes\":[\"v1\",\"v2\"],\"coordinates\":[[1,2]],\"edges\":[]}",
+                "{\"vertexes\":[\"v1\"],\"coordinates\":{},\"edges\":[]}",
+                "{\"vertexes\":[\"v1\"],\"coordinates\":[[1]],\"edges\":[]}",
+                "{\"vertexes\":[\"v1\"],\"coordinates\":[[1,\"2\"]],\"edges\":[]}"
+        );
+
+        for (String json : invalidDocuments) {
+            // When
+            Exception received = deserializationError(mapper, json, GraphSnapshot.class);
+
+            // Then
+            assertThat(received).as(json).isInstanceOf(IOException.class);
+        }
+    }
+
+    @Test
+    public void deserializeThrowsSameExceptionsAsGraphDeserializer() {
+        ObjectMapper libraryMapper = libraryMapper();
+        List<String> invalidDocuments = List.of(
+                "[]",
+                "{\"edges\":[]}",
+                "{\"vertexes\":[]}",
+                "{\"vertexes\":{},\"edges\":[]}",
+                "{\"vertexes\":[],\"edges\":null}",
+                "{\"vertexes\":[\"v1\",2],\"edges\":[]}",
+                "{\"vertexes\":[\"v1\"],\"edges\":[\"v1\"]}",
+                "{\"vertexes\":[\"v1\"],\"edges\":[{\"destination\":\"v1\",\"weight\":1}]}",
+                "{\"vertexes\":[\"v1\"],\"edges\":[{\"source\":\"v1\",\"weight\":1}]}",
+                "{\"vertexes\":[\"v1\"],\"edges\":[{\"source\":\"v1\",\"destination\":\"v1\"}]}",
+                "{\"vertexes\":[\"v1\"],\"edges\":[{\"source\":null,\"destination\":\"v1\",\"weight\":1}]}",
+                "{\"vertexes\":[\"v1\"],\"edges\":[{\"source\":\"v1\",\"destination\":[],\"weight\":1}]}",
+                "{\"vertexes\":[\"v1\"],\"edges\":[{\"source\":\"v1\",\"destination\":\"v1\",\"weight\":\"1\"}]}",
+                "{\"vertexes\":[\"v1\"],\"edges\":[{\"source\":\"v1\",\"destination\":\"v2\",\"weight\":1}]}",
+                "{\"vertexes\":[\"v1\"],\"edges\":[{\"source\":\"v3\",\"destination\":\"v1\",\"weight\":2.5}]}",
+                "{\"vertexes\":[\"v1\"],\"edges\":[{\"source\":\"v1\",\"destination\":\"v1\",\"weight\":-1}]}",
+                "{\"vertexes\":[\"v1\"],\"edges\":[{\"source\":\"v1\",\"destination\":\"v1\",\"weight\":-0.5}]}",
+                "{\"edges\":[{\"source\":\"v1\",\"destination\":\"v1\",\"weight\":-0.5}],\"vertexes\":[\"v1\"]}"
+        );
+
+        for (String json : invalidDocuments) {
+            // When
+            Exception expected = deserializationError(libraryMapper, json, Graph.class);
+            Exception fromSnapshot = deserializationError(mapper, json, GraphSnapshot.class);
+            Exception fromGraph = deserializationError(mapper, json, Graph.class);
+
+            // Then
+            assertThat(expected).as(json).isNotNull();
+            for (Exception received : List.of(fromSnapshot, fromGraph)) {
+                assertThat(received).as(json).isExactlyInstanceOf(expected.getClass());
+                assertThat(received.getMessage()).as(json).isEqualTo(expected.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package ml.echelon133.services.graphpathfinder.storageclient;
+
+import feign.Feign;
+import feign.FeignException;
+import ml.echelon133.services.graphpathfinder.GraphPathFinderApp;
+import ml.echelon133.services.graphpathfinder.TestBeans;
+import ml.echelon133.services.graphpathfinder.TestGraphs;
+import ml.echelon133.services.graphpathfinder.engine.CompactGraph;
+import ml.echelon133.services.graphpathfinder.engine.GraphChanges;
+import ml.echelon133.services.graphpathfinder.engine.GraphSnapshot;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
+import org.springframework.cloud.openfeign.support.SpringMvcContract;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+
+public class GraphStorageClientTest {
+
+    private StubGraphStorageServer server;
+
+    private GraphStorageClient graphClient;
+
+    @Before
+    public void before() throws Exception {
+        server = new StubGraphStorageServer();
+        HttpMessageConverters messageConverters =
+                new HttpMessageConverters(new MappingJackson2HttpMessageConverter(GraphPathFinderApp.objectMapper()));
+        graphClient = Feign.builder()
+                .contract(new SpringMvcContract())
+                .decoder(new GraphStorageClientConfiguration().feignDecoder(() -> messageConverters, TestBeans.pipelineMetrics()))
+                .target(GraphStorageClient.class, server.getUrl());
+    }
+
+    @After
+    public void after() {
+        server.close();
+    }
+
+    private GraphSnapshot createRandomSnapshot(Random random, int vertexCount, int edgesPerVertex) {
+        return TestGraphs.createRandomSnapshot(random, vertexCount, vertexCount * edgesPerVertex,
+                () -> BigDecimal.valueOf(random.nextInt(100_000), 2));
+    }
+
+    private void assertSameGraph(GraphSnapshot received, GraphSnapshot expected) {
+        assertSameGraph(received.toCompactGraph(), expected.toCompactGraph());
+    }
+
+    private void assertSameGraph(CompactGraph receivedGraph, CompactGraph expectedGraph) {
+        assertThat(receivedGraph.getVertexCount()).isEqualTo(expectedGraph.getVertexCount());
+        for (int v = 0; v < expectedGraph.getVertexCount(); v++) {
+            assertThat(receivedGraph.getVertexName(v)).isEqualTo(expectedGraph.getVertexName(v));
+        }
+        assertThat(receivedGraph.getWeightScale()).isEqualTo(expectedGraph.getWeightScale());
+        assertThat(receivedGraph.getOffsets()).isEqualTo(expectedGraph.getOffsets());
+        assertThat(receivedGraph.getTargets()).isEqualTo(expectedGraph.getTargets());
+        assertThat(receivedGraph.getWeights()).isEqualTo(expectedGraph.getWeights());
+    }
+
+    @Test
+    public void getGraphDecodesBinaryGraph() {
+        String graphId = "abcdefghijklmnoprst";
+        GraphSnapshot snapshot = createRandomSnapshot(new Random(9), 200, 3);
+
+        // Given
+        server.putGraph(graphId, snapshot);
+
+        // When
+        ResponseEntity<GraphSnapshot> response = graphClient.getGraph(graphId);
+
+        // Then
+        assertThat(server.getLastContentType()).isEqualTo(GraphBinaryFormat.MEDIA_TYPE_VALUE);
+        assertThat(response.getHeaders().getETag()).isEqualTo("\"abcdefghijklmnoprst-1\"");
+        assertSameGraph(response.getBody(), snapshot);
+    }
+
+    @Test
+    public void getGraphDecodesJsonGraphWhenBinaryNotSent() {
+        String graphId = "abcdefghijklmnoprst";
+        GraphSnapshot snapshot = createRandomSnapshot(new Random(9), 200, 3);
+
+        // Given
+        server.putGraph(graphId, snapshot);
+        server.setBinaryEnabled(false);
+
+        // When
+        ResponseEntity<GraphSnapshot> response = graphClient.getGraph(graphId);
+
+        // Then
+        assertThat(server.getLastContentType()).startsWith("application/json");
+        assertThat(response.getHeaders().getETag()).isEqualTo("\"abcdefghijklmnoprst-1\"");
+        assertSameGraph(response.getBody(), snapshot);
+    }
+
+    @Test
+    public void getGraphDecodesJsonGraphWhenWeightsDoNotFitBinaryFormat() {
+        String graphId = "abcdefghijklmnoprst";
+        GraphSnapshot snapshot = new GraphSnapshot();
+        int v1 = snapshot.addVertex("v1");
+        int v2 = snapshot.addVertex("v2");
+        snapshot.addEdge(v1, v2, new BigDecimal("12345678901234567890.5"));
+
+        // Given
+        server.putGraph(graphId, snapshot);
+
+        // When
+        GraphSnapshot received = graphClient.getGraph(graphId).getBody();
+
+        // Then
+        assertThat(server.getLastContentType()).startsWith("application/json");
+        assertThat(received.getEdgeCount()).isEqualTo(1);
+        assertThat(received.getWeight(0)).isEqualByComparingTo("12345678901234567890.5");
+    }
+
+    @Test
+    public void getGraphReceivesFewerBytesInBinaryFormat() {
+        String graphId = "abcdefghijklmnoprst";
+
+        // Given
+        server.putGraph(graphId, createRandomSnapshot(new Random(9), 10_000, 4));
+
+        // When
+        graphClient.getGraph(graphId);
+        int binarySize = server.getLastBodySize();
+        server.setBinaryEnabled(false);
+        graphClient.getGraph(graphId);
+        int jsonSize = server.getLastBodySize();
+
+        // Then
+        assertThat(binarySize).isLessThan(jsonSize / 4);
+    }
+
+    @Test
+    public void getGraphThrowsFeignExceptionWhenGraphDoesNotExist() {
+        // When
+        FeignException ex = catchThrowableOfType(() -> graphClient.getGraph("abcdefghijklmnoprst"), FeignException.class);
+
+        // Then
+        assertThat(ex.status()).isEqualTo(404);
+    }
+
+    @Test
+    public void getGraphIfModifiedThrowsFeignExceptionWhenGraphIsNotModified() {
+        String graphId = "abcdefghijklmnoprst";
+        GraphSnapshot snapshot = createRandomSnapshot(new Random(9), 200, 3);
+
+        // Given
+        server.putGraph(graphId, snapshot);
+
+        // When
+        FeignException ex = catchThrowableOfType(() -> graphClient.getGraphIfModified(graphId, "\"abcdefghijklmnoprst-1\""), FeignException.class);
+        ResponseEntity<GraphSnapshot> modified = graphClient.getGraphIfModified(graphId, "\"abcdefghijklmnoprst-0\"");
+
+        // Then
+        assertThat(ex.status()).isEqualTo(304);
+        assertSameGraph(modified.getBody(), snapshot);
+    }
+
+    private static String toEdgeJson(GraphSnapshot snapshot, int source, int target, BigDecimal weight) {
+        return String.format("{\"source\": \"%s\", \"destination\": \"%s\", \"weight\": %s}",
+                snapshot.getVertexName(source), snapshot.getVertexName(target), weight.toPlainString());
+    }
+
+    @Test
+    public void getGraphChangesDecodesChangesWhichLeadToNextVersion() {
+        String graphId = "abcdefghijklmnoprst";
+        GraphSnapshot snapshot = createRandomSnapshot(new Random(9), 200, 3);
+        // the first edge is removed, the second one gets a new weight, and a new vertex gets two edges
+        GraphSnapshot nextSnapshot = new GraphSnapshot();
+        for (int v = 0; v < snapshot.getVertexCount(); v++) {
+            nextSnapshot.addVertex(snapshot.getVertexName(v));
+        }
+        int added = nextSnapshot.addVertex("v200");
+        for (int edge = 2; edge < snapshot.getEdgeCount(); edge++) {
+            nextSnapshot.addEdge(snapshot.getSource(edge), snapshot.getTarget(edge), snapshot.getWeight(edge));
+        }
+        nextSnapshot.addEdge(snapshot.getSource(1), snapshot.getTarget(1), new BigDecimal("1.5"));
+        nextSnapshot.addEdge(added, 0, new BigDecimal("12.25"));
+        nextSnapshot.addEdge(0, added, BigDecimal.ZERO);
+        String changesJson = String.format("{\"addedVertexes\": [\"v200\"], \"removedEdges\": [%s, %s], \"addedEdges\": [%s, %s, %s]}",
+                toEdgeJson(snapshot, snapshot.getSource(0), snapshot.getTarget(0), snapshot.getWeight(0)),
+                toEdgeJson(snapshot, snapshot.getSource(1), snapshot.getTarget(1), snapshot.getWeight(1)),
+                toEdgeJson(nextSnapshot, snapshot.getSource(1), snapshot.getTarget(1), new BigDecimal("1.5")),
+                toEdgeJson(nextSnapshot, added, 0, new BigDecimal("12.25")),
+                toEdgeJson(nextSnapshot, 0, added, BigDecimal.ZERO));
+
+        // Given
+        server.putGraph(graphId, snapshot);
+        CompactGraph previous = graphClient.getGraph(graphId).getBody().toCompactGraph();
+        server.updateGraph(graphId, nextSnapshot, changesJson);
+
+        // When
+        ResponseEntity<GraphChanges> response = graphClient.getGraphChanges(graphId, "\"abcdefghijklmnoprst-1\"");
+
+        // Then
+        assertThat(response.getHeaders().getETag()).isEqualTo("\"abcdefghijklmnoprst-2\"");
+        GraphChanges changes = response.getBody();
+        assertThat(changes.getAddedVertexCount()).isEqualTo(1);
+        assertThat(changes.getRemovedEdgeCount()).isEqualTo(2);
+        assertThat(changes.getAddedEdgeCount()).isEqualTo(3);
+        assertSameGraph(changes.applyTo(previous), nextSnapshot.toCompactGraph());
+    }
+
+    @Test
+    public void getGraphChangesThrowsFeignExceptionWhenVersionIsNotThePreviousOne() {
+        String graphId = "abcdefghijklmnoprst";
+        GraphSnapshot snapshot = createRandomSnapshot(new Random(9), 200, 3);
+
+        // Given
+        server.putGraph(graphId, snapshot);
+        server.updateGraph(graphId, snapshot, "{}");
+        server.updateGraph(graphId, snapshot, "{}");
+
+        // When
+        FeignException ex = catchThrowableOfType(() -> graphClient.getGraphChanges(graphId, "\"abcdefghijklmnoprst-1\""), FeignException.class);
+        GraphChanges changes = graphClient.getGraphChanges(graphId, "\"abcdefghijklmnoprst-2\"").getBody();
+
+        // Then
+        assertThat(ex.status()).isEqualTo(410);
+        assertThat(changes.getChangeCount()).isEqualTo(0);
+    }
+}
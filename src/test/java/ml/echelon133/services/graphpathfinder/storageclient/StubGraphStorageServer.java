@@ -0,0 +1,175 @@
+package ml.echelon133.services.graphpathfinder.storageclient;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import ml.echelon133.services.graphpathfinder.engine.GraphSnapshot;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Local stand-in for graph-storage-service, which serves GET /api/graphs/{id} either in GraphBinaryFormat
+// (when it's accepted and binaryEnabled is set) or as JSON, and remembers the size of the last response body.
+// The first version of every graph has ETag "{id}-1", every update increments that number, and a request with
+// a matching If-None-Match header gets 304 Not Modified. GET /api/graphs/{id}/changes?since={ETag} serves changes
+// given with the last update, but only since the version right before it, and 410 Gone for any other version.
+class StubGraphStorageServer implements AutoCloseable {
+
+    private HttpServer server;
+    private Map<String, GraphSnapshot> graphs = new ConcurrentHashMap<>();
+    private Map<String, Integer> versions = new ConcurrentHashMap<>();
+    private Map<String, String> changes = new ConcurrentHashMap<>();
+    private volatile boolean binaryEnabled = true;
+    private volatile String lastContentType;
+    private volatile int lastBodySize;
+
+    StubGraphStorageServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/api/graphs/", this::handle);
+        server.start();
+    }
+
+    String getUrl() {
+        return String.format("http://localhost:%d", server.getAddress().getPort());
+    }
+
+    void putGraph(String graphId, GraphSnapshot snapshot) {
+        graphs.put(graphId, snapshot);
+        versions.put(graphId, 1);
+        changes.remove(graphId);
+    }
+
+    // changesJson is what the changes endpoint sends, it's not checked against either version of the graph
+    void updateGraph(String graphId, GraphSnapshot snapshot, String changesJson) {
+        graphs.put(graphId, snapshot);
+        versions.merge(graphId, 1, Integer::sum);
+        changes.put(graphId, changesJson);
+    }
+
+    static String getETag(String graphId, int version) {
+        return "\"" + graphId + "-" + version + "\"";
+    }
+
+    void setBinaryEnabled(boolean binaryEnabled) {
+        this.binaryEnabled = binaryEnabled;
+    }
+
+    String getLastContentType() {
+        return lastContentType;
+    }
+
+    int getLastBodySize() {
+        return lastBodySize;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String graphId = exchange.getRequestURI().getPath().substring("/api/graphs/".length());
+        boolean changesRequested = graphId.endsWith("/changes");
+        if (changesRequested) {
+            graphId = graphId.substring(0, graphId.length() - "/changes".length());
+        }
+        GraphSnapshot snapshot = graphs.get(graphId);
+        if (snapshot == null) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+
+        int version = versions.get(graphId);
+        String etag = getETag(graphId, version);
+        if (changesRequested) {
+            handleChanges(exchange, graphId, version);
+            return;
+        }
+        if (etag.equals(exchange.getRequestHeaders().getFirst(HttpHeaders.IF_NONE_MATCH))) {
+            exchange.getResponseHeaders().set(HttpHeaders.ETAG, etag);
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+
+        String accept = exchange.getRequestHeaders().getFirst(HttpHeaders.ACCEPT);
+        boolean binaryAccepted = accept != null && accept.contains(GraphBinaryFormat.MEDIA_TYPE_VALUE);
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        String contentType = null;
+        if (binaryEnabled && binaryAccepted) {
+            try {
+                GraphBinaryFormat.write(snapshot, body);
+                contentType = GraphBinaryFormat.MEDIA_TYPE_VALUE;
+            } catch (ArithmeticException ex) {
+                // weights which do not fit the binary format are sent as JSON
+                body.reset();
+            }
+        }
+        if (contentType == null) {
+            writeJson(snapshot, body);
+            contentType = MediaType.APPLICATION_JSON_UTF8_VALUE;
+        }
+
+        lastContentType = contentType;
+        lastBodySize = body.size();
+        exchange.getResponseHeaders().set(HttpHeaders.CONTENT_TYPE, contentType);
+        exchange.getResponseHeaders().set(HttpHeaders.ETAG, etag);
+        exchange.sendResponseHeaders(200, body.size());
+        try (OutputStream out = exchange.getResponseBody()) {
+            body.writeTo(out);
+        }
+    }
+
+    private void handleChanges(HttpExchange exchange, String graphId, int version) throws IOException {
+        // the query is "since=" followed by an encoded ETag, which has no characters other than quotes to encode
+        String query = exchange.getRequestURI().getQuery();
+        String changesJson = changes.get(graphId);
+        if (changesJson == null || query == null || !query.equals("since=" + getETag(graphId, version - 1))) {
+            exchange.sendResponseHeaders(410, -1);
+            exchange.close();
+            return;
+        }
+
+        byte[] body = changesJson.getBytes(StandardCharsets.UTF_8);
+        lastContentType = MediaType.APPLICATION_JSON_UTF8_VALUE;
+        lastBodySize = body.length;
+        exchange.getResponseHeaders().set(HttpHeaders.CONTENT_TYPE, lastContentType);
+        exchange.getResponseHeaders().set(HttpHeaders.ETAG, getETag(graphId, version));
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void writeJson(GraphSnapshot snapshot, OutputStream out) throws IOException {
+        try (JsonGenerator gen = new JsonFactory().createGenerator(out)) {
+            gen.writeStartObject();
+            gen.writeArrayFieldStart("vertexes");
+            for (int v = 0; v < snapshot.getVertexCount(); v++) {
+                gen.writeString(snapshot.getVertexName(v));
+            }
+            gen.writeEndArray();
+            gen.writeArrayFieldStart("edges");
+            for (int edge = 0; edge < snapshot.getEdgeCount(); edge++) {
+                gen.writeStartObject();
+                gen.writeStringField("source", snapshot.getVertexName(snapshot.getSource(edge)));
+                gen.writeStringField("destination", snapshot.getVertexName(snapshot.getTarget(edge)));
+                gen.writeNumberField("weight", snapshot.getWeight(edge));
+                gen.writeEndObject();
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}